@@ -12,7 +12,8 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Util class to spawn different executor services. This class makes sure that executor services are registered shutdown hook with
- * Runtime, so they can shutdown safely in case of JVM shutdown signal.
+ * Runtime, so they can shutdown safely in case of JVM shutdown signal. The executors which are stopped by their owners in dependency
+ * order, like the ones of the shelf pods and the dispatcher, are created without a hook.
  */
 @Slf4j public class ExecutorServicesUtil {
 
@@ -46,12 +47,37 @@ import java.util.concurrent.atomic.AtomicLong;
         });
     }
 
+    /**
+     * Creates a fixed thread pool without a shutdown hook, for an executor which is always stopped by its owner. The shutdown hooks
+     * run concurrently, so a hook would stop the executor at an arbitrary point of the JVM shutdown, like before the executors it
+     * depends on are drained.
+     *
+     * @param threadNamePrefix
+     * @param threadsCount
+     * @return
+     */
+    public static ExecutorService createFixedThreadPool(String threadNamePrefix, int threadsCount) {
+        return Executors.newFixedThreadPool(threadsCount, getThreadFactory(threadNamePrefix));
+    }
+
     public static ExecutorService createFixedThreadPool(String threadNamePrefix, int threadsCount, long waitTimeToShutdownInMs) {
         ExecutorService executorService = Executors.newFixedThreadPool(threadsCount, getThreadFactory(threadNamePrefix));
         Runtime.getRuntime().addShutdownHook(getShutdownHook(executorService, waitTimeToShutdownInMs));
         return executorService;
     }
 
+    /**
+     * Creates a scheduled thread pool without a shutdown hook, for an executor which is always stopped by its owner,
+     * look at {@link #createFixedThreadPool(String, int)}.
+     *
+     * @param threadNamePrefix
+     * @param threadsCount
+     * @return
+     */
+    public static ScheduledExecutorService createScheduledThreadPool(String threadNamePrefix, int threadsCount) {
+        return Executors.newScheduledThreadPool(threadsCount, getThreadFactory(threadNamePrefix));
+    }
+
     public static ScheduledExecutorService createScheduledThreadPool(String threadNamePrefix, int threadsCount,
         long waitTimeToShutdownInMs) {
         ScheduledExecutorService scheduledExecutorService =
@@ -0,0 +1,17 @@
+package com.cloudkitchens.fulfillment.common;
+
+/**
+ * Source of the current time for the components which decide by time, like expiring orders.
+ * <p>
+ * The daemons run on {@link SystemClock}, simulations run on a {@link VirtualClock} which they advance themselves, so hours of
+ * shelf activity can be simulated in milliseconds.
+ */
+public interface IClock {
+
+    /**
+     * Returns the current time in milliseconds, in the same scale as {@link System#currentTimeMillis()}.
+     *
+     * @return
+     */
+    long currentTimeMillis();
+}
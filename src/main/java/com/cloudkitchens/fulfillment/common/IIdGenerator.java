@@ -0,0 +1,17 @@
+package com.cloudkitchens.fulfillment.common;
+
+/**
+ * Generates 64-bit identifiers for orders and shelves.
+ * <p>
+ * Implementations should be thread-safe, and they are expected to be called from hot paths like order creation,
+ * so they should not block or contend on shared state.
+ */
+public interface IIdGenerator {
+
+    /**
+     * Returns a new identifier, which is unique across all the calls made on this generator.
+     *
+     * @return
+     */
+    long nextId();
+}
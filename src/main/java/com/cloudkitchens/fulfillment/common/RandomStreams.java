@@ -0,0 +1,46 @@
+package com.cloudkitchens.fulfillment.common;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Derives the seeds of the random components of a run, like the courier delays and the order arrivals, from one master seed.
+ * <p>
+ * Each component draws from its own named stream, so a component which draws more or fewer numbers does not shift the numbers seen by
+ * the other components, and adding a new stream does not change the existing ones. The same master seed gives the same streams.
+ */
+@ThreadSafe public class RandomStreams {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long masterSeed;
+
+    public RandomStreams(long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+
+    public long getMasterSeed() {
+        return masterSeed;
+    }
+
+    /**
+     * Returns the seed of the given stream, which depends only on the master seed and the stream name.
+     *
+     * @param streamName
+     * @return
+     */
+    public long seedFor(String streamName) {
+        return new SplittableRandom(masterSeed ^ (streamName.hashCode() * GOLDEN_GAMMA)).nextLong();
+    }
+
+    /**
+     * Returns a new {@link Random} seeded for the given stream.
+     *
+     * @param streamName
+     * @return
+     */
+    public Random newRandom(String streamName) {
+        return new Random(seedFor(streamName));
+    }
+}
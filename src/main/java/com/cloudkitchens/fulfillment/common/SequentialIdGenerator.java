@@ -0,0 +1,17 @@
+package com.cloudkitchens.fulfillment.common;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates 1, 2, 3 and so on. Unlike {@link TimeOrderedIdGenerator} the ids do not depend on the time or on the calling thread, so
+ * two runs which create their orders in the same order get the same ids. Used by the deterministic runs.
+ */
+@ThreadSafe public class SequentialIdGenerator implements IIdGenerator {
+
+    private final AtomicLong lastId = new AtomicLong();
+
+    @Override public long nextId() {
+        return lastId.incrementAndGet();
+    }
+}
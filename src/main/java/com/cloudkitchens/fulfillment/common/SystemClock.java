@@ -0,0 +1,13 @@
+package com.cloudkitchens.fulfillment.common;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The wall clock, i.e. {@link System#currentTimeMillis()}.
+ */
+@ThreadSafe public class SystemClock implements IClock {
+
+    @Override public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
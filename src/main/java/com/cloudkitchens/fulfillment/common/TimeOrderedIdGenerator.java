@@ -0,0 +1,124 @@
+package com.cloudkitchens.fulfillment.common;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.ref.WeakReference;
+
+/**
+ * Generates time ordered 64-bit ids without any shared mutable state on the hot path.
+ * <p>
+ * An id is laid out as following (from most significant bit to the least significant bit)
+ * <p>
+ * 41 bits - milliseconds elapsed since {@link #EPOCH_IN_MS}, good for about 69 years.
+ * 10 bits - slot of the generating thread, each thread gets a slot on its first call.
+ * 12 bits - per thread sequence within the same millisecond.
+ * <p>
+ * Each thread keeps its own last timestamp and sequence, so two threads never touch the same memory while generating ids.
+ * If a thread exhausts its sequence within a millisecond, then it borrows the next millisecond instead of spinning,
+ * so ids stay unique and increasing for that thread. Ids from different threads are ordered by time up to a millisecond.
+ * <p>
+ * A slot is held by its thread until the thread terminates, then it is handed to a new thread along with the last timestamp and
+ * sequence of the terminated thread, so the new thread continues after the ids generated in that slot. As a slot is never shared by
+ * two live threads, the ids are unique however many threads come and go, as long as no more than 1024 threads which have generated
+ * ids are alive at the same time.
+ * <p>
+ * Compared to UUID.randomUUID(), this does not go through a shared SecureRandom, and the ids can be compared as plain longs.
+ */
+@ThreadSafe public class TimeOrderedIdGenerator implements IIdGenerator {
+
+    // 2019-01-01T00:00:00Z
+    private static final long EPOCH_IN_MS = 1546300800000l;
+    private static final int SLOT_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_SLOT = (1 << SLOT_BITS) - 1;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+
+    // Thread holding each slot, along with the state of the slot.
+    @GuardedBy("this") private final SlotOwner[] slotOwners = new SlotOwner[MAX_SLOT + 1];
+    @GuardedBy("this") private int assignedSlots;
+    private final ThreadLocal<ThreadState> threadStates = ThreadLocal.withInitial(this::acquireSlot);
+
+    @Override public long nextId() {
+        ThreadState threadState = threadStates.get();
+        long timestamp = System.currentTimeMillis() - EPOCH_IN_MS;
+        if (timestamp > threadState.lastTimestamp) {
+            threadState.lastTimestamp = timestamp;
+            threadState.sequence = 0;
+        } else if (threadState.sequence == MAX_SEQUENCE) {
+            // Either the sequence is exhausted within this millisecond, or the clock went backwards. In both cases
+            // lets continue from the last timestamp, so the ids generated by this thread are never repeated.
+            threadState.lastTimestamp++;
+            threadState.sequence = 0;
+        } else {
+            threadState.sequence++;
+        }
+        return threadState.lastTimestamp << (SLOT_BITS + SEQUENCE_BITS) | (long) threadState.slot << SEQUENCE_BITS | threadState.sequence;
+    }
+
+    /**
+     * Assigns a slot to the calling thread on its first call, an unused slot if there is one, otherwise the slot of a thread which
+     * has terminated. This runs once per thread, so the scan for a terminated thread is not on the hot path.
+     *
+     * @return
+     * @throws IllegalStateException if all the slots are held by live threads.
+     */
+    private synchronized ThreadState acquireSlot() {
+        Thread current = Thread.currentThread();
+        if (assignedSlots <= MAX_SLOT) {
+            ThreadState threadState = new ThreadState(assignedSlots);
+            slotOwners[assignedSlots++] = new SlotOwner(current, threadState);
+            return threadState;
+        }
+        for (int slot = 0; slot <= MAX_SLOT; slot++) {
+            SlotOwner slotOwner = slotOwners[slot];
+            Thread owner = slotOwner.thread.get();
+            // A terminated thread has written its state before isAlive() returns false, so the state is visible to this thread.
+            if (owner == null || !owner.isAlive()) {
+                slotOwners[slot] = new SlotOwner(current, slotOwner.threadState);
+                return slotOwner.threadState;
+            }
+        }
+        throw new IllegalStateException("All " + (MAX_SLOT + 1) + " slots are held by live threads, thread:" + current.getName());
+    }
+
+    /**
+     * Returns the timestamp in milliseconds at which the given id was generated.
+     *
+     * @param id
+     * @return
+     */
+    public static long getTimestampInMs(long id) {
+        return (id >>> (SLOT_BITS + SEQUENCE_BITS)) + EPOCH_IN_MS;
+    }
+
+    /**
+     * Returns the slot of the thread which generated the given id.
+     *
+     * @param id
+     * @return
+     */
+    public static int getSlot(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_SLOT;
+    }
+
+    private static class SlotOwner {
+        // Weakly held, so a terminated thread can be collected while its slot waits for a new thread.
+        private final WeakReference<Thread> thread;
+        private final ThreadState threadState;
+
+        private SlotOwner(Thread thread, ThreadState threadState) {
+            this.thread = new WeakReference<>(thread);
+            this.threadState = threadState;
+        }
+    }
+
+    private static class ThreadState {
+        private final int slot;
+        private long lastTimestamp = -1;
+        private int sequence;
+
+        private ThreadState(int slot) {
+            this.slot = slot;
+        }
+    }
+}
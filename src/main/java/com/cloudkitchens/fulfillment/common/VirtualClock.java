@@ -0,0 +1,33 @@
+package com.cloudkitchens.fulfillment.common;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A clock which only moves when it is told to. Simulations advance it from one event to the next instead of waiting for the time
+ * to pass.
+ */
+@ThreadSafe public class VirtualClock implements IClock {
+
+    private volatile long currentTimeMillis;
+
+    public VirtualClock(long currentTimeMillis) {
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    @Override public long currentTimeMillis() {
+        return currentTimeMillis;
+    }
+
+    /**
+     * Moves the clock to the given time.
+     *
+     * @param currentTimeMillis
+     * @throws IllegalArgumentException if the given time is before the current time, the clock can't go back.
+     */
+    public void advanceTo(long currentTimeMillis) {
+        if (currentTimeMillis < this.currentTimeMillis)
+            throw new IllegalArgumentException(
+                "Clock can't go back from:" + this.currentTimeMillis + " to:" + currentTimeMillis);
+        this.currentTimeMillis = currentTimeMillis;
+    }
+}
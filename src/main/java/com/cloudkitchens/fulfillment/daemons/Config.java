@@ -13,4 +13,29 @@ import java.util.List;
     private double poissonMeanPerSecond;
     private int minDelayForPickupInSecs, maxDelayForPickupInSecs;
     private List<ShelfInput> shelfInputs;
+    // Which IShelfPod implementation to run, look at FulfillmentDaemons for the supported values.
+    private String shelfPodEngine;
+    // Which index orders the stored orders of the array engine by expiry, look at FulfillmentDaemons for the supported values.
+    private String orderIndex;
+    // Which IEvictionPolicy to apply when the overflow shelf is full, look at FulfillmentDaemons for the supported values.
+    private String overflowEvictionPolicy;
+    // Which IPickupStrategy selects the order for a courier, look at FulfillmentDaemons for the supported values.
+    private String pickupStrategy;
+    // Directory of the binary shelf event log, the event log is disabled if this is not set.
+    private String eventLogDirectory;
+    // Directory of the periodic outcome reports, the reports are only logged at the end if this is not set.
+    private String analyticsReportDirectory;
+    private int analyticsReportIntervalInSecs;
+    // Master seed of the random streams of a run, the runs are not repeatable if this is not set.
+    private Long seed;
+    // Runs the orders through a single threaded simulation on a virtual clock instead of the daemons, look at VirtualClockSimulation.
+    private boolean singleThreaded;
+    // Keeps ingesting the orders file in a loop until the daemons are shut down, instead of exiting after its last order.
+    private boolean continuous;
+    // One in these many lock acquisitions of the heap engine is timed for the lock contention report, 0 disables the report.
+    private int lockContentionSamplingInterval;
+    // How long the order ids are remembered to ignore the retried adds, at least the maximum shelf life of the orders. 0 disables it.
+    private int deduplicationWindowInSecs;
+    // How the shelf values of the orders decay, look at FulfillmentDaemons for the supported values.
+    private String decayModel;
 }
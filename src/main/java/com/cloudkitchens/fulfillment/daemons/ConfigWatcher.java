@@ -0,0 +1,96 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Watches the daemons config file, and whenever the file is changed, reads it again and hands the new {@link Config} to the listener.
+ * <p>
+ * The {@link WatchService} watches the directory of the file, as files can't be watched directly, and the events of the other files
+ * in the directory are ignored. Editors may write a file in several steps, so a change which can't be read or applied is logged and
+ * skipped, and the daemons keep running with the current config until the next change.
+ */
+@Slf4j public class ConfigWatcher {
+
+    private final Path configFile;
+    private final Consumer<Config> listener;
+    private volatile WatchService watchService;
+    private volatile ExecutorService executorService;
+
+    /**
+     * @param configFile
+     * @param listener   applies the changed config, it can throw an unchecked exception to reject the config.
+     */
+    public ConfigWatcher(Path configFile, Consumer<Config> listener) {
+        this.configFile = configFile.toAbsolutePath();
+        this.listener = listener;
+    }
+
+    public void startBackgroundActivities() throws IOException {
+        watchService = configFile.getFileSystem().newWatchService();
+        configFile.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        executorService = ExecutorServicesUtil.createFixedThreadPool("config-watcher-", 1, 30);
+        executorService.submit(new WatcherThread());
+        log.info("Watching configFile={} for changes.", configFile);
+    }
+
+    public void stopBackgroundActivities() throws IOException {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Reads the config file and hands it to the listener.
+     */
+    void reload() {
+        try {
+            Config config = FulfillmentDaemons.createConfig(configFile.toString());
+            listener.accept(config);
+            log.info("Applied the changed configFile={}", configFile);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not apply the changed configFile={}, continuing with the current config.", configFile, e);
+        }
+    }
+
+    /**
+     * Blocks on the watch service until the directory of the config file has any change, and reloads the config if the change was
+     * on the config file.
+     */
+    private class WatcherThread implements Runnable {
+
+        @Override public void run() {
+            log.info("Launching config watcher thread.");
+            while (true) {
+                try {
+                    WatchKey watchKey = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : watchKey.pollEvents()) {
+                        if (configFile.getFileName().equals(event.context()))
+                            changed = true;
+                    }
+                    watchKey.reset();
+                    if (changed) {
+                        reload();
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    //If the thread is interrupted or the watch service is closed, lets not proceed further this task.
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.function.IntSupplier;
+
+/**
+ * Counts the orders which are live on a {@link com.cloudkitchens.fulfillment.entities.shelves.IShelfPod}, i.e. added but not yet
+ * delivered, expired, evicted or cancelled, so the daemons can stop as soon as the last order is done instead of sleeping for the
+ * longest delay for pickup.
+ * <p>
+ * The count is only exact once no more orders are added, as an order can be polled on another thread before its add is notified.
+ */
+@ThreadSafe public class DrainMonitor implements IShelfPodObserver {
+
+    // Pickups which find the shelves empty are not notified, so the outstanding pickups are checked at this interval.
+    private static final long PICKUPS_CHECK_INTERVAL_IN_MS = 50;
+
+    private long liveOrders;
+
+    public synchronized long getLiveOrders() {
+        return liveOrders;
+    }
+
+    @Override public synchronized void postAddOrder(Order order, AddResult addResult) {
+        if (addResult.isAdded()) {
+            liveOrders++;
+        }
+    }
+
+    @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+        switch (shelfOperation) {
+            case Poll:
+            case Expire:
+            case Evict:
+            case Cancel:
+                orderEnded();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized void orderEnded() {
+        if (--liveOrders == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until every live order has ended, or until no pickup is outstanding, as then the remaining orders can only expire on
+     * the shelves, or until the given timeout elapses.
+     *
+     * @param outstandingPickups number of the couriers on their way.
+     * @param timeoutInMs
+     * @return true if every live order has ended.
+     * @throws InterruptedException
+     */
+    public synchronized boolean awaitDrained(IntSupplier outstandingPickups, long timeoutInMs) throws InterruptedException {
+        long deadlineInMs = System.currentTimeMillis() + timeoutInMs;
+        while (liveOrders > 0 && outstandingPickups.getAsInt() > 0) {
+            long remainingInMs = deadlineInMs - System.currentTimeMillis();
+            if (remainingInMs <= 0)
+                break;
+            wait(Math.min(remainingInMs, PICKUPS_CHECK_INTERVAL_IN_MS));
+        }
+        return liveOrders <= 0;
+    }
+}
@@ -1,11 +1,35 @@
 package com.cloudkitchens.fulfillment.daemons;
 
+import com.cloudkitchens.fulfillment.common.IIdGenerator;
+import com.cloudkitchens.fulfillment.common.RandomStreams;
+import com.cloudkitchens.fulfillment.common.SequentialIdGenerator;
+import com.cloudkitchens.fulfillment.common.SystemClock;
+import com.cloudkitchens.fulfillment.common.TimeOrderedIdGenerator;
 import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.decay.ExponentialDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.LinearDecayModel;
+import com.cloudkitchens.fulfillment.entities.pickup.CourierArrivals;
 import com.cloudkitchens.fulfillment.entities.pickup.Dispatcher;
+import com.cloudkitchens.fulfillment.entities.shelves.ArrayShelfPod;
 import com.cloudkitchens.fulfillment.entities.shelves.IShelfPod;
 import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
 import com.cloudkitchens.fulfillment.entities.shelves.ShelfPod;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPodOptions;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.OrderIndexType;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.OutcomeSinkObserver;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.analytics.OutcomeAnalytics;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.analytics.OutcomeReporter;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog.ShelfEventLog;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.IEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.NoEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.ValueMaximizingEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.DeadlineAwarePickupStrategy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.EarliestDeadlinePickupStrategy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.FifoPickupStrategy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.HighestValuePickupStrategy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.IPickupStrategy;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
@@ -13,6 +37,8 @@ import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.math3.distribution.PoissonDistribution;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -24,23 +50,77 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * This class launches {@link IShelfPod} instance and {@link Dispatcher} as well. Shelves are setup based on the config provided,
  * otherwise default config is used for all shelves, look at daemons_config.json in the resources folder for the default config.
  * <p>
  * Reads the orders json file(file name is passed as the parameter), and inserts the orders into {@link IShelfPod}, and dispatcher
- * sends messages for pickup. The orders are inserted based on poisson distribution. When all the orders are inserted,
- * after specific delay the daemons stops all the background threads and exits.
+ * sends messages for pickup. The orders are inserted based on poisson distribution. When all the orders are inserted, the daemons
+ * wait until the last order is picked up, expired or no courier is on the way, at most for the longest delay for pickup, and then
+ * stop the dispatcher before the shelf pod and exit.
+ * <p>
+ * While the daemons are running, the config file is watched by {@link ConfigWatcher}. The shelf capacities, the decay rate factors,
+ * the poisson mean and the delays for pickup are applied to the running daemons when the file changes, the other settings take effect
+ * only on the next launch.
+ * <p>
+ * When a seed is configured, the delays for pickup and the poisson samples are drawn from {@link RandomStreams} of the seed, and the
+ * order ids are sequential, so runs with the same seed get the same orders at the same offsets. The threads can still interleave
+ * differently, so for bit-identical outcome reports use singleThreaded, which runs a {@link VirtualClockSimulation} of the config
+ * instead of the daemons.
+ * <p>
+ * When continuous is configured, the orders file is replayed in a loop and the daemons run until the JVM is shut down, for example
+ * by SIGTERM. The orders are streamed from the file, and each order is released once it reaches its end state, after it is handed
+ * to the outcome sink, so the heap stays flat however long the daemons run.
  */
 @Slf4j public class FulfillmentDaemons {
 
-    private static final Map<String, Temperature> STR_VALUES_TO_TEMPERATURE =
+    static final Map<String, Temperature> STR_VALUES_TO_TEMPERATURE =
         ImmutableMap.of("hot", Temperature.Hot, "cold", Temperature.Cold, "frozen", Temperature.Frozen, "overflow", Temperature.Overflow);
+    private static final IIdGenerator ID_GENERATOR = new TimeOrderedIdGenerator();
+    public static final String DEFAULT_SHELF_POD_ENGINE = "array";
+    // array - ArrayShelfPod, which keeps order attributes in primitive arrays, and does not allocate per add, move, poll or expiry.
+    // heap - ShelfPod, which keeps Order objects in concurrent queues, needed by the pickup strategies other than earliestDeadline
+    // and by the lock contention report.
+    private static final Map<String, BiFunction<List<Shelf>, ShelfPodOptions, IShelfPod>> SHELF_POD_ENGINES =
+        ImmutableMap.of(DEFAULT_SHELF_POD_ENGINE, ArrayShelfPod::new, "heap", ShelfPod::new);
+    private static final String DEFAULT_ORDER_INDEX = "heap";
+    // heap - binary heaps, O(log n) per operation.
+    // calendar - calendar queues of expiry buckets, amortized O(1) per operation, for the pods holding hundreds of thousands of orders.
+    static final Map<String, OrderIndexType> ORDER_INDEXES =
+        ImmutableMap.of(DEFAULT_ORDER_INDEX, OrderIndexType.Heap, "calendar", OrderIndexType.CalendarQueue);
+    private static final String DEFAULT_DECAY_MODEL = "linear";
+    // linear - an order loses (1 + decayRate * decayRateFactor) of value per unit of time.
+    // exponential - the decay proportional to the decay rate slows down as the value drops, look at ExponentialDecayModel.
+    static final Map<String, IDecayModel> DECAY_MODELS =
+        ImmutableMap.of(DEFAULT_DECAY_MODEL, new LinearDecayModel(), "exponential", new ExponentialDecayModel());
+    private static final String DEFAULT_OVERFLOW_EVICTION_POLICY = "none";
+    // none - an order which finds the overflow shelf full is discarded.
+    // value - the soonest expiring overflow order is evicted, if the incoming order has more normalized value than it.
+    static final Map<String, IEvictionPolicy> OVERFLOW_EVICTION_POLICIES =
+        ImmutableMap.of(DEFAULT_OVERFLOW_EVICTION_POLICY, new NoEvictionPolicy(), "value", new ValueMaximizingEvictionPolicy());
+    private static final int DEFAULT_ANALYTICS_REPORT_INTERVAL_IN_SECS = 10;
+    // A courier dispatched with the longest delay may be scheduled a bit late, so the drain waits this much longer than the delay.
+    private static final long DRAIN_GRACE_PERIOD_IN_MS = 2000;
+    private static final String DEFAULT_PICKUP_STRATEGY = "earliestDeadline";
+    // earliestDeadline - the order expiring soonest is picked up.
+    // highestValue - the order with the most remaining shelf value is picked up.
+    // fifo - the orders are picked up in the order they were created.
+    // deadlineAware - the orders which will be fresh for the next courier are skipped.
+    private static final Map<String, Function<CourierArrivals, IPickupStrategy>> PICKUP_STRATEGIES = ImmutableMap
+        .of(DEFAULT_PICKUP_STRATEGY, courierArrivals -> new EarliestDeadlinePickupStrategy(), "highestValue",
+            courierArrivals -> new HighestValuePickupStrategy(), "fifo", courierArrivals -> new FifoPickupStrategy(), "deadlineAware",
+            DeadlineAwarePickupStrategy::new);
 
     /**
      * Pass configFile and ordersFile using JVM parameters, and this will run the daemons using those configs.
@@ -70,8 +150,8 @@ import java.util.UUID;
         log.info("Launching daemons with configFile={} and ordersFile={}", configFileAbsolutePath, ordersFilePath);
         launchFulfillmentDaemons(configFileAbsolutePath, ordersFilePath);
         log.info("Daemons added orders to shelf, and delivered them.");
-        //If you want to see how the orders handled by the fulfillment service then run the following command
-        //grep orderInfo /tmp/css.log | awk -F' - ' '{print $2}' | awk -F'{' '{print $2}' | awk -F'}' '{print $1}' > /tmp/orders.csv
+        //If you want to see how the orders handled by the fulfillment service then look at the outcome reports in analyticsReportDirectory,
+        //or reproduce the orderInfo lines from the event log using ShelfEventLogReader.
         System.exit(0); // 0 indicating normal exit.
     }
 
@@ -80,12 +160,21 @@ import java.util.UUID;
      *
      * @param daemonsConfigFilePath
      * @param ordersFilePath
-     * @throws FileNotFoundException
+     * @throws IOException
      * @throws InterruptedException
      */
     public static void launchFulfillmentDaemons(String daemonsConfigFilePath, String ordersFilePath)
-        throws FileNotFoundException, InterruptedException {
+        throws IOException, InterruptedException {
         Config config = createConfig(daemonsConfigFilePath);
+        if (config.isSingleThreaded()) {
+            runSingleThreaded(config, getOrders(ordersFilePath));
+            return;
+        }
+        AtomicReference<Config> liveConfig = new AtomicReference<>(config);
+        RandomStreams randomStreams = config.getSeed() == null ? null : new RandomStreams(config.getSeed());
+        if (randomStreams != null) {
+            log.info("Running with seed={}", randomStreams.getMasterSeed());
+        }
 
         log.info("Configurations poissonMeanPerSec={}, minDelayForPickupInSecs, maxDelayForPickupInSecs={}",
             config.getPoissonMeanPerSecond(), config.getMinDelayForPickupInSecs(), config.getMaxDelayForPickupInSecs());
@@ -94,40 +183,158 @@ import java.util.UUID;
         for (Shelf shelf : shelves) {
             log.info("Available shelf={}", shelf);
         }
-        ShelfPod shelfPod = new ShelfPod(shelves);
-        Dispatcher dispatcher = new Dispatcher(shelfPod, config.getMinDelayForPickupInSecs(), config.getMaxDelayForPickupInSecs());
+        CourierArrivals courierArrivals = new CourierArrivals();
+        ShelfPodOptions shelfPodOptions = createShelfPodOptions(config, courierArrivals);
+        IShelfPod shelfPod = createShelfPod(config.getShelfPodEngine(), shelves, shelfPodOptions);
+        Dispatcher dispatcher =
+            new Dispatcher(shelfPod, config.getMinDelayForPickupInSecs(), config.getMaxDelayForPickupInSecs(), courierArrivals,
+                randomStreams == null ? new Random() : randomStreams.newRandom(VirtualClockSimulation.DISPATCHER_STREAM));
+
+        ShelfEventLog shelfEventLog = null;
+        if (config.getEventLogDirectory() != null) {
+            log.info("Recording shelf events to eventLogDirectory={}", config.getEventLogDirectory());
+            shelfEventLog = new ShelfEventLog(new File(config.getEventLogDirectory()));
+            shelfEventLog.startBackgroundActivities();
+            shelfPod.addObserver(shelfEventLog);
+        }
+
+        OutcomeAnalytics outcomeAnalytics = new OutcomeAnalytics(shelves, new SystemClock(), shelfPodOptions.getDecayModel());
+        shelfPod.addObserver(outcomeAnalytics);
+        // The outcomes are aggregated by the analytics and recorded by the event log, so the sink does not keep the orders.
+        shelfPod.addObserver(new OutcomeSinkObserver(order -> log.debug("orderOutcome={}", order)));
+        DrainMonitor drainMonitor = new DrainMonitor();
+        shelfPod.addObserver(drainMonitor);
+        OutcomeReporter outcomeReporter = null;
+        if (config.getAnalyticsReportDirectory() != null) {
+            log.info("Writing outcome reports to analyticsReportDirectory={}", config.getAnalyticsReportDirectory());
+            outcomeReporter = new OutcomeReporter(outcomeAnalytics, new File(config.getAnalyticsReportDirectory()),
+                config.getAnalyticsReportIntervalInSecs());
+            outcomeReporter.startBackgroundActivities();
+        }
 
         dispatcher.startBackgroundActivities();
         shelfPod.startBackgroundActivities();
+        ConfigWatcher configWatcher = new ConfigWatcher(Paths.get(daemonsConfigFilePath),
+            changedConfig -> applyConfig(changedConfig, shelfPod, dispatcher, liveConfig));
+        configWatcher.startBackgroundActivities();
+
+        RandomGenerator orderArrivals =
+            randomStreams == null ? new Well19937c() : new Well19937c(randomStreams.seedFor(VirtualClockSimulation.ORDER_ARRIVALS_STREAM));
+        IIdGenerator idGenerator = randomStreams == null ? ID_GENERATOR : new SequentialIdGenerator();
+        // In the continuous mode the shutdown is held until the daemons are stopped, so the event log and the reports are flushed.
+        CountDownLatch stopped = config.isContinuous() ? registerShutdownHook(Thread.currentThread()) : new CountDownLatch(1);
+        try (OrderInputReader inputItr = new OrderInputReader(new File(ordersFilePath), config.isContinuous())) {
+            if (config.isContinuous()) {
+                addOrdersToShelfPodContinuously(liveConfig, inputItr, shelfPod, dispatcher, orderArrivals, idGenerator, drainMonitor);
+            } else {
+                addOrdersToShelfPodUsingWithPoissonDistribution(liveConfig, inputItr, shelfPod, dispatcher, orderArrivals, idGenerator,
+                    drainMonitor);
+            }
+            configWatcher.stopBackgroundActivities();
+            if (shelfEventLog != null) {
+                shelfEventLog.stopBackgroundActivities();
+            }
+            if (outcomeReporter != null) {
+                outcomeReporter.stopBackgroundActivities();
+            }
+            log.info("outcomeReport={}", new Gson().toJson(outcomeAnalytics.getReport()));
+        } finally {
+            stopped.countDown();
+        }
+    }
 
-        List<OrderInput> orderInputs = getOrders(ordersFilePath);
-        Iterator<OrderInput> inputItr = orderInputs.iterator();
-        addOrdersToShelfPodUsingWithPoissonDistribution(config, inputItr, shelfPod, dispatcher);
+    /**
+     * Registers a shutdown hook which interrupts the given thread, and waits until the returned latch is counted down.
+     *
+     * @param ingestingThread
+     * @return
+     */
+    private static CountDownLatch registerShutdownHook(Thread ingestingThread) {
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ingestingThread.interrupt();
+            try {
+                stopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "daemons-shutdown-hook"));
+        return stopped;
     }
 
     /**
-     * Adds orders to the shelf following poisson distribution.
+     * Applies the changed config to the running daemons. Everything is validated before anything is applied, so either all of the
+     * changes are applied or none of them.
      *
      * @param config
+     * @param shelfPod
+     * @param dispatcher
+     * @param liveConfig the config which is read by the orders insertion, it is replaced by the given config.
+     * @throws IllegalArgumentException if the given config can't be applied.
+     */
+    private static void applyConfig(Config config, IShelfPod shelfPod, Dispatcher dispatcher, AtomicReference<Config> liveConfig) {
+        if (config.getPoissonMeanPerSecond() <= 0)
+            throw new IllegalArgumentException("poissonMeanPerSecond should be positive, given:" + config.getPoissonMeanPerSecond());
+        if (config.getMinDelayForPickupInSecs() < 0 || config.getMaxDelayForPickupInSecs() < config.getMinDelayForPickupInSecs())
+            throw new IllegalArgumentException(
+                "Invalid delays for pickup, min:" + config.getMinDelayForPickupInSecs() + " max:" + config.getMaxDelayForPickupInSecs());
+        shelfPod.reconfigure(reconfigureShelves(shelfPod.getShelves(), config.getShelfInputs()));
+        dispatcher.setDelaysForPickup(config.getMinDelayForPickupInSecs(), config.getMaxDelayForPickupInSecs());
+        liveConfig.set(config);
+        log.info("Applied configurations poissonMeanPerSec={}, minDelayForPickupInSecs={}, maxDelayForPickupInSecs={}",
+            config.getPoissonMeanPerSecond(), config.getMinDelayForPickupInSecs(), config.getMaxDelayForPickupInSecs());
+    }
+
+    /**
+     * Creates {@link Shelf} objects based on the given shelfInputs, keeping the ids of the current shelves of the same temperature.
+     *
+     * @param currentShelves
+     * @param shelfInputs
+     * @return
+     * @throws IllegalArgumentException if a shelfInput does not match any of the current shelves.
+     */
+    private static List<Shelf> reconfigureShelves(List<Shelf> currentShelves, List<ShelfInput> shelfInputs) {
+        Map<Temperature, Shelf> currentShelvesByTemperature = new HashMap<>();
+        for (Shelf shelf : currentShelves) {
+            currentShelvesByTemperature.put(shelf.getTemperature(), shelf);
+        }
+        List<Shelf> shelves = new ArrayList<>();
+        for (ShelfInput shelfInput : shelfInputs) {
+            Temperature temperature = Temperature.forName(shelfInput.getTemperature());
+            Shelf currentShelf = currentShelvesByTemperature.get(temperature);
+            if (currentShelf == null)
+                throw new IllegalArgumentException("Unknown shelf temperature:" + shelfInput.getTemperature());
+            shelves.add(new Shelf(currentShelf.getId(), shelfInput.getDecayRateFactor(), shelfInput.getCapacity(), temperature));
+        }
+        return shelves;
+    }
+
+    /**
+     * Adds orders to the shelf following poisson distribution. The poisson mean is read from the live config before every batch,
+     * so a changed mean takes effect from the next batch.
+     *
+     * @param liveConfig
      * @param inputItr
      * @param shelfPod
      * @param dispatcher
+     * @param orderArrivals random generator of the poisson samples.
+     * @param idGenerator
+     * @param drainMonitor  observer of the shelf pod, which tells when the last order is done.
      * @throws InterruptedException
      */
-    private static void addOrdersToShelfPodUsingWithPoissonDistribution(Config config, Iterator<OrderInput> inputItr, ShelfPod shelfPod,
-        Dispatcher dispatcher) throws InterruptedException {
-        PoissonDistribution pd = new PoissonDistribution(config.getPoissonMeanPerSecond());
-        List<Order> orders = new ArrayList<>();
+    private static void addOrdersToShelfPodUsingWithPoissonDistribution(AtomicReference<Config> liveConfig, Iterator<OrderInput> inputItr,
+        IShelfPod shelfPod, Dispatcher dispatcher, RandomGenerator orderArrivals, IIdGenerator idGenerator, DrainMonitor drainMonitor)
+        throws InterruptedException {
+        PoissonDistribution pd = createPoissonDistribution(orderArrivals, liveConfig.get().getPoissonMeanPerSecond());
         while (true) {
+            Config config = liveConfig.get();
+            if (pd.getMean() != config.getPoissonMeanPerSecond()) {
+                pd = createPoissonDistribution(orderArrivals, config.getPoissonMeanPerSecond());
+            }
             int samples = pd.sample();
 
             for (int i = 0; i < samples && inputItr.hasNext(); i++) {
-                OrderInput orderInput = inputItr.next();
-                Order order =
-                    new Order(UUID.randomUUID().toString(), orderInput.getName(), STR_VALUES_TO_TEMPERATURE.get(orderInput.getTemp()),
-                        orderInput.getShelfLife(), orderInput.getDecayRate());
-                orders.add(order);
-                shelfPod.addOrder(order);
+                shelfPod.addOrder(createOrder(inputItr.next(), idGenerator));
             }
 
             printOrdersInTheShelf(shelfPod);
@@ -136,28 +343,108 @@ import java.util.UUID;
             Thread.sleep(1000);
 
             if (!inputItr.hasNext()) {
-                // When the last batch of orders are inserted, they will be picked up only after getMaxDelayForPickupInSecs(in the worst case).
-                // So lets sleep for that time
-                Thread.sleep(config.getMaxDelayForPickupInSecs() * 1000 + 2000);
-                dispatcher.stopBackgroundActivities();
-                shelfPod.stopBackgroundActivities();
-
+                drainAndStop(config, drainMonitor, shelfPod, dispatcher);
                 printOrdersInTheShelf(shelfPod);
-                logOrders(orders);
                 return;
             }
         }
     }
 
     /**
-     * Lets log the orders and the corresponding state. So we can stats like delivered and expired.
+     * Adds orders to the shelf following poisson distribution until the calling thread is interrupted by the shutdown hook, then stops
+     * the dispatcher and the shelf pod. Unlike the batch mode, the orders on the shelves are not printed after every batch, the
+     * outcome reports show how the daemons are doing.
+     *
+     * @param liveConfig
+     * @param inputItr      endless orders.
+     * @param shelfPod
+     * @param dispatcher
+     * @param orderArrivals random generator of the poisson samples.
+     * @param idGenerator
+     * @param drainMonitor  observer of the shelf pod, which tells when the last order is done.
+     */
+    private static void addOrdersToShelfPodContinuously(AtomicReference<Config> liveConfig, OrderInputReader inputItr,
+        IShelfPod shelfPod, Dispatcher dispatcher, RandomGenerator orderArrivals, IIdGenerator idGenerator, DrainMonitor drainMonitor) {
+        log.info("Running continuously, the orders are replayed until the daemons are shut down.");
+
+        PoissonDistribution pd = createPoissonDistribution(orderArrivals, liveConfig.get().getPoissonMeanPerSecond());
+        long orders = 0;
+        try {
+            while (inputItr.hasNext()) {
+                Config config = liveConfig.get();
+                if (pd.getMean() != config.getPoissonMeanPerSecond()) {
+                    pd = createPoissonDistribution(orderArrivals, config.getPoissonMeanPerSecond());
+                }
+                int samples = pd.sample();
+                for (int i = 0; i < samples && inputItr.hasNext(); i++) {
+                    shelfPod.addOrder(createOrder(inputItr.next(), idGenerator));
+                    orders++;
+                }
+                Thread.sleep(1000);
+            }
+        } catch (InterruptedException e) {
+            log.info("Shutting down the daemons after orders={} and passes={} over the orders file.", orders, inputItr.getPasses());
+        }
+        try {
+            drainAndStop(liveConfig.get(), drainMonitor, shelfPod, dispatcher);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the orders on the shelves to be picked up once no more orders are added, then stops the dispatcher before the shelf
+     * pod, so no courier finds the pod stopped. The wait ends as soon as the last order is done, or no courier is on the way, and at
+     * most after the longest delay for pickup, when the last order would have been picked up anyway.
+     *
+     * @param config
+     * @param drainMonitor
+     * @param shelfPod
+     * @param dispatcher
+     * @throws InterruptedException
+     */
+    private static void drainAndStop(Config config, DrainMonitor drainMonitor, IShelfPod shelfPod, Dispatcher dispatcher)
+        throws InterruptedException {
+        long startInMs = System.currentTimeMillis();
+        try {
+            boolean drained = drainMonitor.awaitDrained(dispatcher::getOutstandingPickups,
+                TimeUnit.SECONDS.toMillis(config.getMaxDelayForPickupInSecs()) + DRAIN_GRACE_PERIOD_IN_MS);
+            log.info("Drained the shelves in drainTimeInMs={}, drained={} liveOrders={} outstandingPickups={}",
+                System.currentTimeMillis() - startInMs, drained, drainMonitor.getLiveOrders(), dispatcher.getOutstandingPickups());
+        } finally {
+            dispatcher.stopBackgroundActivities();
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    private static Order createOrder(OrderInput orderInput, IIdGenerator idGenerator) {
+        return new Order(idGenerator.nextId(), orderInput.getName(), Temperature.valueOf(orderInput.getTemp()),
+            orderInput.getShelfLife(), orderInput.getDecayRate());
+    }
+
+    private static PoissonDistribution createPoissonDistribution(RandomGenerator randomGenerator, double mean) {
+        return new PoissonDistribution(randomGenerator, mean, PoissonDistribution.DEFAULT_EPSILON, PoissonDistribution.DEFAULT_MAX_ITERATIONS);
+    }
+
+    /**
+     * Runs the orders through a {@link VirtualClockSimulation} of the config, and logs the outcome report. The report is the same
+     * for every run with the same seed, config and orders.
      *
-     * @param orders
+     * @param config
+     * @param orderInputs
      */
-    private static void logOrders(List<Order> orders) {
-        log.info("All the orders status is as following at the end of adding and delivery.");
-        for (Order order : orders)
-            log.info("orderInfo={}", order);
+    private static void runSingleThreaded(Config config, List<OrderInput> orderInputs) {
+        long seed = config.getSeed() == null ? System.nanoTime() : config.getSeed();
+        log.info("Running single threaded simulation with seed={}, the simulation uses the array engine with earliestDeadline pickups.",
+            seed);
+        VirtualClockSimulation simulation = new VirtualClockSimulation(config, orderInputs, seed);
+        OutcomeAnalytics outcomeAnalytics =
+            new OutcomeAnalytics(simulation.getShelves(), simulation.getClock(), simulation.getDecayModel());
+        simulation.addObserver(outcomeAnalytics);
+        SimulationResult result = simulation.run();
+        log.info("Simulated orders={} delivered={} wasted={} overflowMoves={}", result.getOrders(), result.getDelivered(),
+            result.getWasted(), result.getOverflowMoves());
+        log.info("outcomeReport={}", new Gson().toJson(outcomeAnalytics.getReport()));
     }
 
     /**
@@ -182,13 +469,16 @@ import java.util.UUID;
      *
      * @param configFilePath
      * @return
-     * @throws FileNotFoundException
+     * @throws IOException
      */
-    private static Config createConfig(String configFilePath) throws FileNotFoundException {
+    static Config createConfig(String configFilePath) throws IOException {
         Config.ConfigBuilder configBuilder = Config.builder();
         JsonParser parser = new JsonParser();
-        BufferedReader br = new BufferedReader(new FileReader(configFilePath));
-        JsonObject configJson = parser.parse(br).getAsJsonObject();
+        JsonObject configJson;
+        // The config is read again whenever the file changes, so the reader has to be closed.
+        try (BufferedReader br = new BufferedReader(new FileReader(configFilePath))) {
+            configJson = parser.parse(br).getAsJsonObject();
+        }
 
         double poissonMeanPerSecond = configJson.get("poissonMeanPerSecond").getAsDouble();
         configBuilder.poissonMeanPerSecond(poissonMeanPerSecond);
@@ -205,19 +495,111 @@ import java.util.UUID;
         List<ShelfInput> shelfInputs = gson.fromJson(configJson.getAsJsonArray("shelves"), type);
         configBuilder.shelfInputs(shelfInputs);
 
+        String shelfPodEngine =
+            configJson.has("shelfPodEngine") ? configJson.get("shelfPodEngine").getAsString() : DEFAULT_SHELF_POD_ENGINE;
+        configBuilder.shelfPodEngine(shelfPodEngine);
+        configBuilder.orderIndex(configJson.has("orderIndex") ? configJson.get("orderIndex").getAsString() : DEFAULT_ORDER_INDEX);
+        configBuilder.decayModel(configJson.has("decayModel") ? configJson.get("decayModel").getAsString() : DEFAULT_DECAY_MODEL);
+
+        String overflowEvictionPolicy = configJson.has("overflowEvictionPolicy") ?
+            configJson.get("overflowEvictionPolicy").getAsString() :
+            DEFAULT_OVERFLOW_EVICTION_POLICY;
+        configBuilder.overflowEvictionPolicy(overflowEvictionPolicy);
+
+        String pickupStrategy =
+            configJson.has("pickupStrategy") ? configJson.get("pickupStrategy").getAsString() : DEFAULT_PICKUP_STRATEGY;
+        configBuilder.pickupStrategy(pickupStrategy);
+
+        if (configJson.has("eventLogDirectory")) {
+            configBuilder.eventLogDirectory(configJson.get("eventLogDirectory").getAsString());
+        }
+
+        if (configJson.has("analyticsReportDirectory")) {
+            configBuilder.analyticsReportDirectory(configJson.get("analyticsReportDirectory").getAsString());
+        }
+        int analyticsReportIntervalInSecs = configJson.has("analyticsReportIntervalInSecs") ?
+            configJson.get("analyticsReportIntervalInSecs").getAsInt() :
+            DEFAULT_ANALYTICS_REPORT_INTERVAL_IN_SECS;
+        configBuilder.analyticsReportIntervalInSecs(analyticsReportIntervalInSecs);
+
+        if (configJson.has("seed")) {
+            configBuilder.seed(configJson.get("seed").getAsLong());
+        }
+        configBuilder.singleThreaded(configJson.has("singleThreaded") && configJson.get("singleThreaded").getAsBoolean());
+        configBuilder.continuous(configJson.has("continuous") && configJson.get("continuous").getAsBoolean());
+        if (configJson.has("lockContentionSamplingInterval")) {
+            configBuilder.lockContentionSamplingInterval(configJson.get("lockContentionSamplingInterval").getAsInt());
+        }
+        if (configJson.has("deduplicationWindowInSecs")) {
+            configBuilder.deduplicationWindowInSecs(configJson.get("deduplicationWindowInSecs").getAsInt());
+        }
+
         return configBuilder.build();
     }
 
     /**
-     * Creates {@link Shelf} objects based on the given shelfInputs.
+     * Creates {@link ShelfPodOptions} based on the given config.
+     *
+     * @param config
+     * @param courierArrivals arrivals of the dispatched couriers, used by the deadlineAware pickup strategy.
+     * @return
+     * @throws IllegalArgumentException if the given overflow eviction policy or pickup strategy is not supported.
+     */
+    private static ShelfPodOptions createShelfPodOptions(Config config, CourierArrivals courierArrivals) {
+        IEvictionPolicy evictionPolicy = OVERFLOW_EVICTION_POLICIES.get(config.getOverflowEvictionPolicy());
+        if (evictionPolicy == null)
+            throw new IllegalArgumentException(
+                "Unknown overflowEvictionPolicy:" + config.getOverflowEvictionPolicy() + ", supported:"
+                    + OVERFLOW_EVICTION_POLICIES.keySet());
+        Function<CourierArrivals, IPickupStrategy> pickupStrategyFactory = PICKUP_STRATEGIES.get(config.getPickupStrategy());
+        if (pickupStrategyFactory == null)
+            throw new IllegalArgumentException(
+                "Unknown pickupStrategy:" + config.getPickupStrategy() + ", supported:" + PICKUP_STRATEGIES.keySet());
+        OrderIndexType orderIndexType = ORDER_INDEXES.get(config.getOrderIndex());
+        if (orderIndexType == null)
+            throw new IllegalArgumentException("Unknown orderIndex:" + config.getOrderIndex() + ", supported:" + ORDER_INDEXES.keySet());
+        IDecayModel decayModel = DECAY_MODELS.get(config.getDecayModel());
+        if (decayModel == null)
+            throw new IllegalArgumentException("Unknown decayModel:" + config.getDecayModel() + ", supported:" + DECAY_MODELS.keySet());
+        log.info("Using overflowEvictionPolicy={} pickupStrategy={} orderIndex={} decayModel={}", config.getOverflowEvictionPolicy(),
+            config.getPickupStrategy(), config.getOrderIndex(), config.getDecayModel());
+        return ShelfPodOptions.builder().evictionPolicy(evictionPolicy).pickupStrategy(pickupStrategyFactory.apply(courierArrivals))
+            .orderIndexType(orderIndexType).decayModel(decayModel)
+            .lockContentionSamplingInterval(config.getLockContentionSamplingInterval())
+            .deduplicationWindowInMs(TimeUnit.SECONDS.toMillis(config.getDeduplicationWindowInSecs())).build();
+    }
+
+    /**
+     * Creates {@link IShelfPod} implementation for the given engine name.
+     *
+     * @param shelfPodEngine
+     * @param shelves
+     * @param shelfPodOptions
+     * @return
+     * @throws IllegalArgumentException if the given engine is not supported.
+     */
+    public static IShelfPod createShelfPod(String shelfPodEngine, List<Shelf> shelves, ShelfPodOptions shelfPodOptions) {
+        BiFunction<List<Shelf>, ShelfPodOptions, IShelfPod> shelfPodFactory = SHELF_POD_ENGINES.get(shelfPodEngine);
+        if (shelfPodFactory == null)
+            throw new IllegalArgumentException("Unknown shelfPodEngine:" + shelfPodEngine + ", supported:" + SHELF_POD_ENGINES.keySet());
+        log.info("Creating shelfPod with engine={}", shelfPodEngine);
+        return shelfPodFactory.apply(shelves, shelfPodOptions);
+    }
+
+    /**
+     * Creates {@link Shelf} objects based on the given shelfInputs. A temperature other than hot, cold, frozen and overflow, like
+     * ambient, is defined as a new shelf type, and the orders of that temperature are stored on its shelf. A shelfInput marked as
+     * overflow is defined as an overflow tier instead, like a chilled overflow rack.
      *
      * @return
      */
-    private static List<Shelf> createShelves(List<ShelfInput> shelfInputs) {
+    static List<Shelf> createShelves(List<ShelfInput> shelfInputs) {
         List<Shelf> shelves = new ArrayList<>();
         for (ShelfInput shelfInput : shelfInputs) {
-            shelves.add(new Shelf(UUID.randomUUID().toString(), shelfInput.getDecayRateFactor(), shelfInput.getCapacity(),
-                STR_VALUES_TO_TEMPERATURE.get(shelfInput.getTemperature())));
+            Temperature temperature = shelfInput.isOverflow() ?
+                Temperature.defineOverflow(shelfInput.getTemperature()) :
+                Temperature.define(shelfInput.getTemperature());
+            shelves.add(new Shelf(ID_GENERATOR.nextId(), shelfInput.getDecayRateFactor(), shelfInput.getCapacity(), temperature));
         }
         return shelves;
     }
@@ -229,7 +611,7 @@ import java.util.UUID;
      * @return
      * @throws FileNotFoundException
      */
-    private static List<OrderInput> getOrders(String filePath) throws FileNotFoundException {
+    static List<OrderInput> getOrders(String filePath) throws FileNotFoundException {
         Gson gson = new Gson();
         BufferedReader br = new BufferedReader(new FileReader(filePath));
         Type type = new TypeToken<List<OrderInput>>() {
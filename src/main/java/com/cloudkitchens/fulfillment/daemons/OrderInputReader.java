@@ -0,0 +1,95 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the orders of an orders file one at a time, instead of reading the whole file into a list, so only the next order is
+ * held in memory however big the file is.
+ * <p>
+ * When cyclic, the file is opened again after its last order and the orders are replayed, which gives the continuous daemons an
+ * endless source of orders. A cyclic reader of a file without any orders has no orders, rather than reopening the file forever.
+ */
+@NotThreadSafe public class OrderInputReader implements Iterator<OrderInput>, Closeable {
+
+    private static final Gson GSON = new Gson();
+
+    private final File ordersFile;
+    private final boolean cyclic;
+    private JsonReader jsonReader;
+    private OrderInput next;
+    private long passes;
+
+    /**
+     * @param ordersFile json array of the orders.
+     * @param cyclic     whether the orders are replayed from the start after the last order.
+     * @throws IOException
+     */
+    public OrderInputReader(File ordersFile, boolean cyclic) throws IOException {
+        this.ordersFile = ordersFile;
+        this.cyclic = cyclic;
+        open();
+        this.next = readNext();
+    }
+
+    /**
+     * Returns the number of times the file was read till its end.
+     *
+     * @return
+     */
+    public long getPasses() {
+        return passes;
+    }
+
+    @Override public boolean hasNext() {
+        return next != null;
+    }
+
+    /**
+     * @return
+     * @throws UncheckedIOException if the file can't be read.
+     */
+    @Override public OrderInput next() {
+        if (next == null)
+            throw new NoSuchElementException();
+        OrderInput result = next;
+        try {
+            next = readNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read orders from " + ordersFile, e);
+        }
+        return result;
+    }
+
+    @Override public void close() throws IOException {
+        jsonReader.close();
+    }
+
+    private void open() throws IOException {
+        jsonReader = new JsonReader(new BufferedReader(new FileReader(ordersFile)));
+        jsonReader.beginArray();
+    }
+
+    private OrderInput readNext() throws IOException {
+        if (!jsonReader.hasNext()) {
+            passes++;
+            jsonReader.close();
+            if (!cyclic)
+                return null;
+            open();
+            if (!jsonReader.hasNext())
+                return null;
+        }
+        return GSON.fromJson(jsonReader, OrderInput.class);
+    }
+}
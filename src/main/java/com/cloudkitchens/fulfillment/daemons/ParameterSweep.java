@@ -0,0 +1,198 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Answers what-if questions about the shelf capacities, the decay rate factors, the poisson mean and the delays for pickup without
+ * editing daemons_config.json and running the daemons in real time for each attempt.
+ * <p>
+ * The configurations are generated from a {@link SweepSpace}, and each one is simulated by a {@link VirtualClockSimulation} on a
+ * {@link ForkJoinPool}. The simulations share nothing, so they scale with the number of cores. The results are written as a csv
+ * table with one row per configuration.
+ */
+@Slf4j public class ParameterSweep {
+
+    private static final String GRID_SEARCH = "grid";
+    private static final String RANDOM_SEARCH = "random";
+    private static final String DEFAULT_SWEEP_RESULTS_FILE = "/tmp/css-sweep.csv";
+    // The capacity and the decay rate factor of each of these shelves are two dimensions of the search space, in this order.
+    private static final List<String> SHELF_TEMPERATURES = ImmutableList.copyOf(FulfillmentDaemons.STR_VALUES_TO_TEMPERATURE.keySet());
+
+    /**
+     * Pass sweepFile and ordersFile using JVM parameters, optionally sweepResultsFile and parallelism.
+     * <p>
+     * Example: -DsweepFile=/workplace/css/sweep_space.json -DordersFile=/workplace/css/orders.json -DsweepResultsFile=/tmp/css-sweep.csv
+     *
+     * @param args
+     * @throws IOException
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (!System.getProperties().containsKey("sweepFile") || !System.getProperties().containsKey("ordersFile")) {
+            log.error("sweepFile and ordersFile have to be passed as arguments for JVM properties. Quitting the sweep.");
+            System.exit(-1);
+        }
+        SweepSpace sweepSpace;
+        try (BufferedReader br = new BufferedReader(new FileReader(System.getProperty("sweepFile")))) {
+            sweepSpace = new Gson().fromJson(br, SweepSpace.class);
+        }
+        List<OrderInput> orderInputs = FulfillmentDaemons.getOrders(System.getProperty("ordersFile"));
+        int parallelism = Integer.getInteger("parallelism", Runtime.getRuntime().availableProcessors());
+        File sweepResultsFile = new File(System.getProperty("sweepResultsFile", DEFAULT_SWEEP_RESULTS_FILE));
+
+        List<Config> configs = createConfigs(sweepSpace);
+        log.info("Running sweep with configs={} orders={} parallelism={}", configs.size(), orderInputs.size(), parallelism);
+        long startTimeInMs = System.currentTimeMillis();
+        List<SimulationResult> results = run(configs, orderInputs, sweepSpace.getSeed(), parallelism);
+        writeResults(results, sweepResultsFile);
+        log.info("Sweep completed in timeTakenInMs={}, results are written to sweepResultsFile={}",
+            System.currentTimeMillis() - startTimeInMs, sweepResultsFile);
+        System.exit(0);
+    }
+
+    /**
+     * Simulates the given configs in parallel. Config at index i is simulated with seed + i, so a sweep is repeatable.
+     *
+     * @param configs
+     * @param orderInputs
+     * @param seed
+     * @param parallelism
+     * @return the results in the same order as the given configs.
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public static List<SimulationResult> run(List<Config> configs, List<OrderInput> orderInputs, long seed, int parallelism)
+        throws InterruptedException, ExecutionException {
+        ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+        try {
+            return forkJoinPool.submit(() -> IntStream.range(0, configs.size()).parallel()
+                .mapToObj(i -> new VirtualClockSimulation(configs.get(i), orderInputs, seed + i).run()).collect(Collectors.toList()))
+                .get();
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * Generates the configs of the given search space.
+     *
+     * @param sweepSpace
+     * @return
+     * @throws IllegalArgumentException if the search space is not valid.
+     */
+    public static List<Config> createConfigs(SweepSpace sweepSpace) {
+        List<List<Object>> dimensions = getDimensions(sweepSpace);
+        List<List<Object>> points;
+        if (GRID_SEARCH.equals(sweepSpace.getSearch())) {
+            points = Lists.cartesianProduct(dimensions);
+        } else if (RANDOM_SEARCH.equals(sweepSpace.getSearch())) {
+            Random random = new Random(sweepSpace.getSeed());
+            points = new ArrayList<>(sweepSpace.getSamples());
+            for (int i = 0; i < sweepSpace.getSamples(); i++) {
+                List<Object> point = new ArrayList<>(dimensions.size());
+                for (List<Object> dimension : dimensions) {
+                    point.add(dimension.get(random.nextInt(dimension.size())));
+                }
+                points.add(point);
+            }
+        } else {
+            throw new IllegalArgumentException(
+                "Unknown search:" + sweepSpace.getSearch() + ", supported:" + ImmutableList.of(GRID_SEARCH, RANDOM_SEARCH));
+        }
+        // Combinations where the max delay is less than the min delay are not valid, so they are skipped.
+        return points.stream().map(ParameterSweep::toConfig)
+            .filter(config -> config.getMinDelayForPickupInSecs() <= config.getMaxDelayForPickupInSecs()).collect(Collectors.toList());
+    }
+
+    private static List<List<Object>> getDimensions(SweepSpace sweepSpace) {
+        List<List<Object>> dimensions = new ArrayList<>();
+        dimensions.add(getDimension("poissonMeanPerSecond", sweepSpace.getPoissonMeanPerSecond()));
+        dimensions.add(getDimension("minDelayForPickupInSecs", sweepSpace.getMinDelayForPickupInSecs()));
+        dimensions.add(getDimension("maxDelayForPickupInSecs", sweepSpace.getMaxDelayForPickupInSecs()));
+        List<Object> overflowEvictionPolicies = getDimension("overflowEvictionPolicy", sweepSpace.getOverflowEvictionPolicy());
+        for (Object overflowEvictionPolicy : overflowEvictionPolicies) {
+            if (!FulfillmentDaemons.OVERFLOW_EVICTION_POLICIES.containsKey(overflowEvictionPolicy))
+                throw new IllegalArgumentException("Unknown overflowEvictionPolicy:" + overflowEvictionPolicy + ", supported:"
+                    + FulfillmentDaemons.OVERFLOW_EVICTION_POLICIES.keySet());
+        }
+        dimensions.add(overflowEvictionPolicies);
+        for (String temperature : SHELF_TEMPERATURES) {
+            dimensions.add(getDimension("capacities." + temperature,
+                sweepSpace.getCapacities() == null ? null : sweepSpace.getCapacities().get(temperature)));
+            dimensions.add(getDimension("decayRateFactors." + temperature,
+                sweepSpace.getDecayRateFactors() == null ? null : sweepSpace.getDecayRateFactors().get(temperature)));
+        }
+        return dimensions;
+    }
+
+    private static List<Object> getDimension(String name, List<?> values) {
+        if (values == null || values.isEmpty())
+            throw new IllegalArgumentException("No values are given for " + name);
+        return ImmutableList.copyOf(values);
+    }
+
+    /**
+     * Builds a config from a point of the search space, the values are in the order of {@link #getDimensions(SweepSpace)}.
+     *
+     * @param point
+     * @return
+     */
+    private static Config toConfig(List<Object> point) {
+        List<ShelfInput> shelfInputs = new ArrayList<>();
+        for (int i = 0; i < SHELF_TEMPERATURES.size(); i++) {
+            shelfInputs.add(new ShelfInput(SHELF_TEMPERATURES.get(i), (Double) point.get(5 + 2 * i), (Integer) point.get(4 + 2 * i)));
+        }
+        return Config.builder().poissonMeanPerSecond((Double) point.get(0)).minDelayForPickupInSecs((Integer) point.get(1))
+            .maxDelayForPickupInSecs((Integer) point.get(2)).overflowEvictionPolicy((String) point.get(3)).shelfInputs(shelfInputs)
+            .build();
+    }
+
+    /**
+     * Writes the results as a csv table, one row per config.
+     *
+     * @param results
+     * @param sweepResultsFile
+     * @throws IOException
+     */
+    static void writeResults(List<SimulationResult> results, File sweepResultsFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(sweepResultsFile, "UTF-8")) {
+            StringBuilder header =
+                new StringBuilder("poissonMeanPerSecond,minDelayForPickupInSecs,maxDelayForPickupInSecs,overflowEvictionPolicy");
+            for (String temperature : SHELF_TEMPERATURES) {
+                header.append(',').append(temperature).append("Capacity,").append(temperature).append("DecayRateFactor");
+            }
+            writer.println(header.append(",orders,delivered,wasted,deliveryRate,wasteRate,overflowMoves"));
+            for (SimulationResult result : results) {
+                Config config = result.getConfig();
+                StringBuilder row = new StringBuilder().append(config.getPoissonMeanPerSecond()).append(',')
+                    .append(config.getMinDelayForPickupInSecs()).append(',').append(config.getMaxDelayForPickupInSecs()).append(',')
+                    .append(config.getOverflowEvictionPolicy());
+                for (ShelfInput shelfInput : config.getShelfInputs()) {
+                    row.append(',').append(shelfInput.getCapacity()).append(',').append(shelfInput.getDecayRateFactor());
+                }
+                row.append(',').append(result.getOrders()).append(',').append(result.getDelivered()).append(',').append(result.getWasted())
+                    .append(',').append(String.format(Locale.ROOT, "%.4f", result.getDeliveryRate())).append(',')
+                    .append(String.format(Locale.ROOT, "%.4f", result.getWasteRate())).append(',').append(result.getOverflowMoves());
+                writer.println(row);
+            }
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.cloudkitchens.fulfillment.daemons;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 
-@Getter public class ShelfInput {
+@Getter @NoArgsConstructor @AllArgsConstructor public class ShelfInput {
     private String temperature;
     private double decayRateFactor;
     private int capacity;
+    // Whether the shelf is an overflow tier, the shelf of the overflow temperature is one regardless of this.
+    private boolean overflow;
+
+    public ShelfInput(String temperature, double decayRateFactor, int capacity) {
+        this(temperature, decayRateFactor, capacity, false);
+    }
 }
@@ -0,0 +1,25 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Outcome of a {@link VirtualClockSimulation} run. Every order ends up either delivered or wasted, wasted covers the orders which
+ * came expired, found no space, expired on a shelf or were evicted from the overflow shelf.
+ */
+@Getter @Builder public class SimulationResult {
+    private final Config config;
+    private final int orders;
+    private final int delivered;
+    private final int wasted;
+    // Number of orders moved from the overflow shelf to a regular shelf.
+    private final int overflowMoves;
+
+    public double getDeliveryRate() {
+        return orders == 0 ? 0 : (double) delivered / orders;
+    }
+
+    public double getWasteRate() {
+        return orders == 0 ? 0 : (double) wasted / orders;
+    }
+}
@@ -0,0 +1,27 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * POJO for storing the search space of {@link ParameterSweep}. Look at sweep_space.json for example search space.
+ * <p>
+ * Every parameter lists the values to try. With the grid search every combination of the values is simulated, with the random search
+ * {@link #samples} combinations are drawn. The capacities and the decay rate factors are given per shelf temperature(hot, cold, frozen
+ * and overflow), and all the temperatures have to be present.
+ */
+@Getter public class SweepSpace {
+    // grid or random.
+    private String search;
+    // Number of configurations drawn by the random search.
+    private int samples;
+    // Seed of the random search and of the simulations, the same seed gives the same results.
+    private long seed;
+    private List<Double> poissonMeanPerSecond;
+    private List<Integer> minDelayForPickupInSecs, maxDelayForPickupInSecs;
+    private List<String> overflowEvictionPolicy;
+    private Map<String, List<Integer>> capacities;
+    private Map<String, List<Double>> decayRateFactors;
+}
@@ -0,0 +1,177 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.cloudkitchens.fulfillment.common.IClock;
+import com.cloudkitchens.fulfillment.common.RandomStreams;
+import com.cloudkitchens.fulfillment.common.VirtualClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.LinearDecayModel;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.ArrayShelfPod;
+import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPodOptions;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.OrderIndexType;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+import org.apache.commons.math3.distribution.PoissonDistribution;
+import org.apache.commons.math3.random.Well19937c;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays what {@link FulfillmentDaemons} does for a config, but on a {@link VirtualClock} in a single thread, so a run which takes
+ * minutes on the wall clock completes in milliseconds, and many runs can be executed in parallel without affecting each other.
+ * <p>
+ * Every simulated second a poisson distributed batch of orders is added to an {@link ArrayShelfPod}, and a courier arrival is scheduled
+ * for each order stored, with a uniformly distributed delay like {@link com.cloudkitchens.fulfillment.entities.pickup.Dispatcher}.
+ * The clock jumps from one event(a batch or a courier arrival) to the next, and the expired orders are removed at every event, as the
+ * expiry thread of the pod would have done by then. When the orders run out, the remaining couriers arrive, and whatever is left on
+ * the shelves is left to expire.
+ * <p>
+ * Nothing depends on the wall clock or on thread scheduling, the courier delays and the order arrivals are drawn from separate
+ * {@link RandomStreams} of the seed, and the order ids are sequential. So the same config, orders and seed give bit-identical
+ * results, including the reports of the observers which read the time from {@link #getClock()}.
+ */
+@NotThreadSafe public class VirtualClockSimulation {
+
+    static final String DISPATCHER_STREAM = "dispatcher";
+    static final String ORDER_ARRIVALS_STREAM = "orderArrivals";
+    private static final IDecayModel LINEAR_DECAY_MODEL = new LinearDecayModel();
+
+    private final Config config;
+    private final List<OrderInput> orderInputs;
+    private final VirtualClock clock = new VirtualClock(0);
+    private final PriorityQueue<Long> courierArrivals = new PriorityQueue<>();
+    private final Random random;
+    private final PoissonDistribution poissonDistribution;
+    private final ArrayShelfPod shelfPod;
+    private final OutcomeCounter outcomeCounter = new OutcomeCounter();
+
+    /**
+     * @param config      the shelves, poisson mean, delays for pickup and overflow eviction policy to simulate.
+     * @param orderInputs
+     * @param seed        the same seed gives the same result for the same config and orders.
+     */
+    public VirtualClockSimulation(Config config, List<OrderInput> orderInputs, long seed) {
+        this.config = config;
+        this.orderInputs = orderInputs;
+        RandomStreams randomStreams = new RandomStreams(seed);
+        this.random = randomStreams.newRandom(DISPATCHER_STREAM);
+        this.poissonDistribution = new PoissonDistribution(new Well19937c(randomStreams.seedFor(ORDER_ARRIVALS_STREAM)),
+            config.getPoissonMeanPerSecond(), PoissonDistribution.DEFAULT_EPSILON, PoissonDistribution.DEFAULT_MAX_ITERATIONS);
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().clock(clock)
+            .evictionPolicy(FulfillmentDaemons.OVERFLOW_EVICTION_POLICIES.get(config.getOverflowEvictionPolicy()))
+            .orderIndexType(FulfillmentDaemons.ORDER_INDEXES.getOrDefault(config.getOrderIndex(), OrderIndexType.Heap))
+            .decayModel(getDecayModel()).build();
+        this.shelfPod = new ArrayShelfPod(FulfillmentDaemons.createShelves(config.getShelfInputs()), shelfPodOptions);
+        shelfPod.addObserver(outcomeCounter);
+    }
+
+    public IDecayModel getDecayModel() {
+        return FulfillmentDaemons.DECAY_MODELS.getOrDefault(config.getDecayModel(), LINEAR_DECAY_MODEL);
+    }
+
+    public IClock getClock() {
+        return clock;
+    }
+
+    public List<Shelf> getShelves() {
+        return shelfPod.getShelves();
+    }
+
+    /**
+     * Adds an observer of the simulated shelf pod, it is notified from the thread running the simulation.
+     *
+     * @param shelfPodObserver
+     */
+    public void addObserver(IShelfPodObserver shelfPodObserver) {
+        shelfPod.addObserver(shelfPodObserver);
+    }
+
+    /**
+     * Runs the simulation until all the orders are either delivered or wasted. A simulation can be run only once.
+     *
+     * @return
+     */
+    public SimulationResult run() {
+        int next = 0;
+        long orderId = 0;
+        for (long second = 0; next < orderInputs.size(); second++) {
+            long batchTimestampInMs = TimeUnit.SECONDS.toMillis(second);
+            arriveCouriersUntil(batchTimestampInMs);
+            advanceTo(batchTimestampInMs);
+            int samples = poissonDistribution.sample();
+            for (int i = 0; i < samples && next < orderInputs.size(); i++) {
+                OrderInput orderInput = orderInputs.get(next++);
+                Order order = new Order(orderId++, OrderNameDictionary.intern(orderInput.getName()),
+                    Temperature.valueOf(orderInput.getTemp()), orderInput.getShelfLife(),
+                    orderInput.getDecayRate(), batchTimestampInMs, OrderState.Created, 0, 0);
+                if (shelfPod.addOrder(order).isAdded()) {
+                    dispatch(batchTimestampInMs);
+                }
+            }
+        }
+        arriveCouriersUntil(Long.MAX_VALUE);
+        // Every order still on the shelves has missed its courier, so it is left to expire. Expiring an order may move an overflow
+        // order to a regular shelf which changes its expiry, so the soonest expiry is looked up again after every step.
+        for (List<Order> orders = shelfPod.getOrders(); !orders.isEmpty(); orders = shelfPod.getOrders()) {
+            advanceTo(Math.max(clock.currentTimeMillis(), orders.get(0).getExpiryTimestampInMs(0)));
+        }
+        return SimulationResult.builder().config(config).orders(orderInputs.size()).delivered(outcomeCounter.delivered)
+            .wasted(outcomeCounter.wasted).overflowMoves(outcomeCounter.overflowMoves).build();
+    }
+
+    private void dispatch(long nowInMs) {
+        int min = config.getMinDelayForPickupInSecs(), max = config.getMaxDelayForPickupInSecs();
+        int delay = min + random.nextInt(max - min + 1);
+        courierArrivals.add(nowInMs + TimeUnit.SECONDS.toMillis(delay));
+    }
+
+    private void arriveCouriersUntil(long timestampInMs) {
+        while (!courierArrivals.isEmpty() && courierArrivals.peek() <= timestampInMs) {
+            advanceTo(courierArrivals.poll());
+            shelfPod.pollOrder();
+        }
+    }
+
+    private void advanceTo(long timestampInMs) {
+        clock.advanceTo(timestampInMs);
+        shelfPod.expireOrders();
+    }
+
+    /**
+     * Counts the end states and the moves of the orders, the pod is driven by a single thread so plain fields are enough.
+     */
+    private static class OutcomeCounter implements IShelfPodObserver {
+        private int delivered, wasted, overflowMoves;
+
+        @Override public void postAddOrder(Order order, AddResult addResult) {
+            if (!addResult.isAdded())
+                wasted++;
+        }
+
+        @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+            switch (shelfOperation) {
+                case Poll:
+                    delivered++;
+                    break;
+                case Expire:
+                case Evict:
+                    wasted++;
+                    break;
+                case Move:
+                    overflowMoves++;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
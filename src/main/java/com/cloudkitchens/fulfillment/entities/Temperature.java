@@ -2,20 +2,173 @@ package com.cloudkitchens.fulfillment.entities;
 
 import com.google.common.collect.ImmutableList;
 
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Orders and Shelves are associated with Temperature type.
- * Though {@link Temperature#Overflow} is associated only with IShelfPod, its easy to maintain one enum for both Order and IShelfPod.
+ * Though {@link Temperature#Overflow} is associated only with IShelfPod, its easy to maintain one type for both Order and IShelfPod.
+ * <p>
+ * Temperatures are the shelf types. {@link #Hot}, {@link #Cold}, {@link #Frozen} and {@link #Overflow} are built in, and more types,
+ * like ambient or chilled-drinks, can be defined at runtime through {@link #define(String)}, like from the shelves of the config.
+ * Each temperature is given a dense id by the order of definition, its {@link #ordinal()}, so the data per shelf can be kept in arrays
+ * indexed by it, see {@link com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry}. A temperature is defined once per name, so
+ * temperatures are compared by identity like an enum.
+ * <p>
+ * The shelf pods size their arrays by the temperatures defined when they are created, so the temperatures should be defined before.
+ * <p>
+ * An overflow temperature is the type of an overflow shelf, it stores the orders of any temperature which found no space on their
+ * regular shelf. {@link #Overflow} is built in, and more overflow tiers, like a chilled overflow rack, can be defined through
+ * {@link #defineOverflow(String)}. No order is of an overflow temperature.
  */
-public enum Temperature {
+@ThreadSafe public final class Temperature {
 
-    Hot, Cold, Frozen, Overflow;
+    // The ordinal of a temperature is packed into a byte by the orders and the order stores.
+    public static final int MAX_TEMPERATURES = Byte.MAX_VALUE + 1;
+    private static final String OVERFLOW_NAME = "Overflow";
 
-    private static final List<Temperature> REG_SHELVES = ImmutableList.of(Hot, Cold, Frozen);
+    // Replaced as a whole on each definition, so the lookups by ordinal take no lock.
+    private static volatile Temperature[] temperatures = new Temperature[0];
+    private static volatile List<Temperature> regularShelves = ImmutableList.of();
+
+    public static final Temperature Hot = define("Hot");
+    public static final Temperature Cold = define("Cold");
+    public static final Temperature Frozen = define("Frozen");
+    public static final Temperature Overflow = define(OVERFLOW_NAME);
+
+    private final String name;
+    private final int ordinal;
+    private final boolean overflow;
+
+    private Temperature(String name, int ordinal, boolean overflow) {
+        this.name = name;
+        this.ordinal = ordinal;
+        this.overflow = overflow;
+    }
+
+    /**
+     * Returns the temperature of the given name, which is defined if it is not yet. Names are matched ignoring the case, so "hot"
+     * returns {@link #Hot}.
+     *
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if the name is blank, or if {@link #MAX_TEMPERATURES} are already defined.
+     */
+    public static Temperature define(String name) {
+        return define(name, OVERFLOW_NAME.equalsIgnoreCase(name));
+    }
+
+    /**
+     * Returns the overflow temperature of the given name, which is defined if it is not yet. Names are matched ignoring the case.
+     *
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if the name is blank, if it is of a temperature which is not an overflow temperature, or if
+     *                                  {@link #MAX_TEMPERATURES} are already defined.
+     */
+    public static Temperature defineOverflow(String name) {
+        Temperature temperature = define(name, true);
+        if (!temperature.overflow)
+            throw new IllegalArgumentException("Temperature:" + temperature + " is already defined as a regular temperature.");
+        return temperature;
+    }
+
+    private static synchronized Temperature define(String name, boolean overflow) {
+        Temperature temperature = forName(name);
+        if (temperature != null)
+            return temperature;
+        if (name == null || name.trim().isEmpty())
+            throw new IllegalArgumentException("Temperature name can't be blank, given:" + name);
+        Temperature[] current = temperatures;
+        if (current.length == MAX_TEMPERATURES)
+            throw new IllegalArgumentException("Can't define more than " + MAX_TEMPERATURES + " temperatures, given:" + name);
+        temperature = new Temperature(name, current.length, overflow);
+        Temperature[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[temperature.ordinal] = temperature;
+        ImmutableList.Builder<Temperature> updatedRegularShelves = ImmutableList.builder();
+        for (Temperature defined : updated) {
+            if (!defined.overflow)
+                updatedRegularShelves.add(defined);
+        }
+        temperatures = updated;
+        regularShelves = updatedRegularShelves.build();
+        return temperature;
+    }
+
+    /**
+     * Returns the temperature of the given name ignoring the case, or null if there is none.
+     *
+     * @param name
+     * @return
+     */
+    public static Temperature forName(String name) {
+        for (Temperature temperature : temperatures) {
+            if (temperature.name.equalsIgnoreCase(name))
+                return temperature;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the temperature of the given name ignoring the case.
+     *
+     * @param name
+     * @return
+     * @throws IllegalArgumentException if no temperature of the name is defined.
+     */
+    public static Temperature valueOf(String name) {
+        Temperature temperature = forName(name);
+        if (temperature == null)
+            throw new IllegalArgumentException("Unknown temperature:" + name + ", defined:" + Arrays.toString(temperatures));
+        return temperature;
+    }
+
+    /**
+     * Returns the temperature of the given ordinal, running time complexity is O(1).
+     *
+     * @param ordinal
+     * @return
+     */
+    public static Temperature forOrdinal(int ordinal) {
+        return temperatures[ordinal];
+    }
+
+    /**
+     * Returns the temperatures defined so far, in the order of their ordinals.
+     *
+     * @return
+     */
+    public static Temperature[] values() {
+        return temperatures.clone();
+    }
+
+    public static int count() {
+        return temperatures.length;
+    }
 
     public static List<Temperature> getRegularShelves() {
-        return REG_SHELVES;
+        return regularShelves;
     }
 
+    public int ordinal() {
+        return ordinal;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns whether this is the type of an overflow shelf.
+     *
+     * @return
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    @Override public String toString() {
+        return name;
+    }
 }
@@ -0,0 +1,32 @@
+package com.cloudkitchens.fulfillment.entities.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of the expiry thread of {@link com.cloudkitchens.fulfillment.entities.shelves.ShelfPod} handling an order
+ * whose expiry timestamp has passed. The lateness shows how far the expiry thread lags behind the orders.
+ */
+@Name("com.cloudkitchens.fulfillment.Expiry") @Label("Expiry") @Category({"CloudKitchens", "Fulfillment"})
+@Description("An order taken off the expiry queue by the expiry thread.") @StackTrace(false)
+public class ExpiryEvent extends Event {
+
+    @Label("Order Id") public long orderId;
+
+    @Label("Temperature") public String temperature;
+
+    @Label("Order State") @Description("State of the order after the expiry, an order which reached an end state earlier is skipped.")
+    public String orderState;
+
+    @Label("Expired") public boolean expired;
+
+    @Label("Lateness") @Description("Time between the expiry timestamp of the order and its expiry.") @Timespan(Timespan.MILLISECONDS)
+    public long lateness;
+
+    @Label("Expiry Queue Size") @Description("Orders left in the queue of the expiry thread.") public int expiryQueueSize;
+}
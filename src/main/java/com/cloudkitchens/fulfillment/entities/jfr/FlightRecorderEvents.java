@@ -0,0 +1,74 @@
+package com.cloudkitchens.fulfillment.entities.jfr;
+
+import jdk.jfr.EventType;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Begins the flight recorder events of the fulfillment service. An event is created only if it is enabled in a running recording,
+ * otherwise null is returned, so the hot paths do not allocate anything while nothing is recorded, whether or not the JIT compiler
+ * manages to remove an unused event. The callers check the returned event for null before filling and committing it.
+ * <p>
+ * The events are recorded like the built-in ones, for example
+ * <p>
+ * java -XX:StartFlightRecording=duration=60s,filename=/tmp/css.jfr ...
+ * <p>
+ * and they are shown under CloudKitchens/Fulfillment in JDK Mission Control, next to the GC and the lock events of the recording.
+ * On a JVM without the jdk.jfr API(java 8 before update 262) no event is ever created, and the event classes are never loaded.
+ */
+@ThreadSafe public final class FlightRecorderEvents {
+
+    private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+    private FlightRecorderEvents() {
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.EventType");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public static ShelfOperationEvent beginShelfOperation() {
+        if (!AVAILABLE || !EventTypes.SHELF_OPERATION.isEnabled())
+            return null;
+        ShelfOperationEvent event = new ShelfOperationEvent();
+        event.begin();
+        return event;
+    }
+
+    public static OverflowMoveEvent beginOverflowMove() {
+        if (!AVAILABLE || !EventTypes.OVERFLOW_MOVE.isEnabled())
+            return null;
+        OverflowMoveEvent event = new OverflowMoveEvent();
+        event.begin();
+        return event;
+    }
+
+    public static ExpiryEvent beginExpiry() {
+        if (!AVAILABLE || !EventTypes.EXPIRY.isEnabled())
+            return null;
+        ExpiryEvent event = new ExpiryEvent();
+        event.begin();
+        return event;
+    }
+
+    public static PickupEvent beginPickup() {
+        if (!AVAILABLE || !EventTypes.PICKUP.isEnabled())
+            return null;
+        PickupEvent event = new PickupEvent();
+        event.begin();
+        return event;
+    }
+
+    // Loaded on the first use, which happens only if the flight recorder is available.
+    private static class EventTypes {
+        private static final EventType SHELF_OPERATION = EventType.getEventType(ShelfOperationEvent.class);
+        private static final EventType OVERFLOW_MOVE = EventType.getEventType(OverflowMoveEvent.class);
+        private static final EventType EXPIRY = EventType.getEventType(ExpiryEvent.class);
+        private static final EventType PICKUP = EventType.getEventType(PickupEvent.class);
+    }
+}
@@ -0,0 +1,28 @@
+package com.cloudkitchens.fulfillment.entities.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a mover thread of {@link com.cloudkitchens.fulfillment.entities.shelves.ShelfPod} handling an overflow
+ * order, from taking the order off its queue until the order is moved to the regular shelf, or skipped as it has already left the
+ * overflow shelf.
+ */
+@Name("com.cloudkitchens.fulfillment.OverflowMove") @Label("Overflow Move") @Category({"CloudKitchens", "Fulfillment"})
+@Description("An overflow order handled by a mover thread.") @StackTrace(false)
+public class OverflowMoveEvent extends Event {
+
+    @Label("Order Id") public long orderId;
+
+    @Label("Temperature") public String temperature;
+
+    @Label("Order State") @Description("State of the order after the move.") public String orderState;
+
+    @Label("Moved") public boolean moved;
+
+    @Label("Mover Queue Size") @Description("Overflow orders left in the queue of the mover thread.") public int moverQueueSize;
+}
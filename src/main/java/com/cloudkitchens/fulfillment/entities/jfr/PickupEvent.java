@@ -0,0 +1,29 @@
+package com.cloudkitchens.fulfillment.entities.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a courier of {@link com.cloudkitchens.fulfillment.entities.pickup.Dispatcher} arriving and polling an
+ * order from the shelves. The lateness shows how far the pickup threads lag behind the scheduled arrivals.
+ */
+@Name("com.cloudkitchens.fulfillment.Pickup") @Label("Pickup") @Category({"CloudKitchens", "Fulfillment"})
+@Description("A courier polling an order from the shelves.") @StackTrace(false)
+public class PickupEvent extends Event {
+
+    @Label("Order Id") @Description("Id of the picked up order, 0 if no order was picked up.") public long orderId;
+
+    @Label("Temperature") public String temperature;
+
+    @Label("Order State") public String orderState;
+
+    @Label("Lateness") @Description("Time between the scheduled arrival of the courier and its arrival.") @Timespan(Timespan.MILLISECONDS)
+    public long lateness;
+
+    @Label("Outstanding Pickups") @Description("Couriers on the way after this one.") public int outstandingPickups;
+}
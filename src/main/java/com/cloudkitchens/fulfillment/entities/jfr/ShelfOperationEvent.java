@@ -0,0 +1,36 @@
+package com.cloudkitchens.fulfillment.entities.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of an add, move, poll or expiry on a {@link com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPod}.
+ * The duration of the event is the duration of the operation, which includes the time spent waiting for a space on the shelf.
+ * Look at {@link FlightRecorderEvents} for recording the events.
+ */
+@Name("com.cloudkitchens.fulfillment.ShelfOperation") @Label("Shelf Operation") @Category({"CloudKitchens", "Fulfillment"})
+@Description("An order added to, moved between, polled from or expired on the shelves.") @StackTrace(false)
+public class ShelfOperationEvent extends Event {
+
+    @Label("Operation") public String operation;
+
+    @Label("Order Id") public long orderId;
+
+    @Label("Temperature") public String temperature;
+
+    @Label("Shelf") @Description("Shelf which stored the order at the end of the operation, or which was tried.") public String shelf;
+
+    @Label("Order State") @Description("State of the order at the end of the operation.") public String orderState;
+
+    @Label("Space Wait Time") @Description("Time spent waiting for a space on the shelf.") @Timespan(Timespan.NANOSECONDS)
+    public long spaceWaitTime;
+
+    @Label("Available Spaces") @Description("Spaces left on the shelf at the end of the operation.") public int availableSpaces;
+
+    @Label("Stored Orders") @Description("Orders stored on all the shelves at the end of the operation.") public int storedOrders;
+}
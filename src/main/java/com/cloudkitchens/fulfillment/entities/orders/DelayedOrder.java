@@ -1,10 +1,9 @@
 package com.cloudkitchens.fulfillment.entities.orders;
 
-import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
 import com.google.common.primitives.Ints;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
@@ -16,30 +15,22 @@ import java.util.concurrent.TimeUnit;
  */
 @Slf4j public class DelayedOrder implements Delayed {
     private final Order order;
-    private final Map<Temperature, Double> decayRateFactors;
     private final long expiryTimestampInMs;
 
-    public DelayedOrder(Order order, Map<Temperature, Double> decayRateFactors) {
+    public DelayedOrder(Order order, ShelfRegistry shelfRegistry) {
         this.order = order;
-        this.decayRateFactors = decayRateFactors;
-        this.expiryTimestampInMs = getExpiryTimestampInMs();
+        this.expiryTimestampInMs = getExpiryTimestampInMs(shelfRegistry);
     }
 
     public Order getOrder() {
         return order;
     }
 
-    private long getExpiryTimestampInMs() {
+    private long getExpiryTimestampInMs(ShelfRegistry shelfRegistry) {
         if (order.hasReachedEndState()) {
             return 0;
         }
-        return order.getExpiryTimestampInMs(getDecayRateFactor());
-    }
-
-    private double getDecayRateFactor() {
-        return order.getOrderState() == OrderState.StoredInOverflowShelf ?
-            decayRateFactors.get(Temperature.Overflow) :
-            decayRateFactors.get(order.getTemperature());
+        return order.getExpiryTimestampInMs(shelfRegistry.getDecayRateFactor(order));
     }
 
     @Override public long getDelay(TimeUnit unit) {
@@ -48,6 +39,9 @@ import java.util.concurrent.TimeUnit;
     }
 
     @Override public int compareTo(Delayed that) {
+        if (!(that instanceof DelayedOrder))
+            // The delay queue may hold other delayed elements along with the orders, like the shelf reservations.
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), that.getDelay(TimeUnit.MILLISECONDS));
         return Ints.saturatedCast(this.expiryTimestampInMs - ((DelayedOrder) that).expiryTimestampInMs);
     }
 
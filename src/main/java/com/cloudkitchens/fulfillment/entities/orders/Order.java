@@ -1,51 +1,93 @@
 package com.cloudkitchens.fulfillment.entities.orders;
 
 import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.LinearDecayModel;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.ImmutableSet;
-import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Maintains order information, order state information, and shelf value of the order.
+ * <p>
+ * A pod can hold a very large number of live orders, so this class is kept compact. The id is a plain long, the name is
+ * interned through {@link OrderNameDictionary}, temperature and shelf life are packed into one int, and the order state
+ * is stored as the ordinal of {@link OrderState} in a volatile int which is updated through {@link #STATE_UPDATER}.
+ * This avoids an extra AtomicReference and String objects per order.
+ * <p>
+ * The shelf value decays as per an {@link IDecayModel}, which the shelf pod passes along with the decayRateFactor of the shelf. The
+ * methods which take only a decayRateFactor use the {@link LinearDecayModel}.
  */
-@ThreadSafe @Slf4j public class Order {
+@ThreadSafe public class Order {
 
-    private static final Set<OrderState> END_STATES = ImmutableSet
-        .of(OrderState.ExpiredInRegularShelf, OrderState.ExpiredInOverflowShelf, OrderState.ExpiredOnNoSpace, OrderState.CameExpired,
-            OrderState.DeliveredFromRegularShelf, OrderState.DeliveredFromOverflowShelf);
+    private static final AtomicIntegerFieldUpdater<Order> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Order.class, "state");
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+    private static final int END_STATES_MASK =
+        mask(OrderState.ExpiredInRegularShelf, OrderState.ExpiredInOverflowShelf, OrderState.ExpiredOnNoSpace, OrderState.CameExpired,
+            OrderState.EvictedFromOverflowShelf, OrderState.DeliveredFromRegularShelf, OrderState.DeliveredFromOverflowShelf,
+            OrderState.Cancelled);
+    private static final int STORED_STATES_MASK = mask(OrderState.StoredInRegularShelf, OrderState.StoredInOverflowShelf);
+    private static final IDecayModel LINEAR_DECAY_MODEL = new LinearDecayModel();
 
-    private final String name;
-    private final Temperature temperature;
-    private final int shelfLifeInSecs;
-    private final double decayRate;
-    private final String id;
+    // Lower 24 bits of temperatureAndShelfLife hold the shelf life, the upper bits hold the temperature's ordinal.
+    private static final int SHELF_LIFE_BITS = 24;
+    private static final int MAX_SHELF_LIFE_IN_SECS = (1 << SHELF_LIFE_BITS) - 1;
+
+    private final long id;
     private final long createdTimestampInMs;
-    private final AtomicReference<OrderState> orderStateAtomicReference;
+    private final double decayRate;
+    private final int temperatureAndShelfLife;
+    private final int nameId;
+    private volatile int state;
     private volatile long timeSpentOnOverflowShelfInMs;
+    // Timestamp at which the shelf value reaches zero on the shelf which currently stores this order, zero if it was never stored.
+    private volatile long expiryTimestampInMs;
 
-    public Order(String id, String name, Temperature temperature, int shelfLifeInSecs, double decayRate) {
-        this(id, name, temperature, shelfLifeInSecs, decayRate, OrderState.Created, 0l);
+    public Order(long id, String name, Temperature temperature, int shelfLifeInSecs, double decayRate) {
+        this(id, OrderNameDictionary.intern(name), temperature, shelfLifeInSecs, decayRate, System.currentTimeMillis(),
+            OrderState.Created, 0l, 0l);
     }
 
-    private Order(String id, String name, Temperature temperature, int shelfLifeInSecs, double decayRate, OrderState orderState,
-        long timeSpentOnOverflowShelfInMs) {
+    /**
+     * Rebuilds an order from its attributes. This is used by shelf pods which store the order attributes themselves instead
+     * of keeping Order instances, and create an Order only when it has to be handed out.
+     *
+     * @param id
+     * @param nameId                       id of the name in {@link OrderNameDictionary}
+     * @param temperature
+     * @param shelfLifeInSecs
+     * @param decayRate
+     * @param createdTimestampInMs
+     * @param orderState
+     * @param timeSpentOnOverflowShelfInMs
+     * @param expiryTimestampInMs          expiry timestamp on the current shelf, zero if the order was never stored on a shelf.
+     */
+    public Order(long id, int nameId, Temperature temperature, int shelfLifeInSecs, double decayRate, long createdTimestampInMs,
+        OrderState orderState, long timeSpentOnOverflowShelfInMs, long expiryTimestampInMs) {
+        if (shelfLifeInSecs < 0 || shelfLifeInSecs > MAX_SHELF_LIFE_IN_SECS)
+            throw new IllegalArgumentException(
+                "shelfLifeInSecs should be between 0 and " + MAX_SHELF_LIFE_IN_SECS + ", given:" + shelfLifeInSecs);
         this.id = id;
-        this.name = name;
-        this.temperature = temperature;
-        this.shelfLifeInSecs = shelfLifeInSecs;
+        this.nameId = nameId;
+        this.temperatureAndShelfLife = temperature.ordinal() << SHELF_LIFE_BITS | shelfLifeInSecs;
         this.decayRate = decayRate;
-        this.createdTimestampInMs = System.currentTimeMillis();
-        this.orderStateAtomicReference = new AtomicReference<>(orderState);
+        this.createdTimestampInMs = createdTimestampInMs;
+        this.state = orderState.ordinal();
         this.timeSpentOnOverflowShelfInMs = timeSpentOnOverflowShelfInMs;
+        this.expiryTimestampInMs = expiryTimestampInMs;
+    }
+
+    private static int mask(OrderState... orderStates) {
+        int mask = 0;
+        for (OrderState orderState : orderStates)
+            mask |= 1 << orderState.ordinal();
+        return mask;
     }
 
     public Order getDeepCopy() {
-        return new Order(id, name, temperature, shelfLifeInSecs, decayRate, orderStateAtomicReference.get(), timeSpentOnOverflowShelfInMs);
+        return new Order(id, nameId, getTemperature(), getShelfLifeInSecs(), decayRate, createdTimestampInMs, getOrderState(),
+            timeSpentOnOverflowShelfInMs, expiryTimestampInMs);
     }
 
     /**
@@ -54,7 +96,7 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public String getName() {
-        return name;
+        return OrderNameDictionary.lookup(nameId);
     }
 
     /**
@@ -63,7 +105,7 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public Temperature getTemperature() {
-        return temperature;
+        return Temperature.forOrdinal(temperatureAndShelfLife >>> SHELF_LIFE_BITS);
     }
 
     /**
@@ -72,7 +114,7 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public int getShelfLifeInSecs() {
-        return shelfLifeInSecs;
+        return temperatureAndShelfLife & MAX_SHELF_LIFE_IN_SECS;
     }
 
 
@@ -90,7 +132,7 @@ import java.util.concurrent.atomic.AtomicReference;
      *
      * @return
      */
-    public String getId() {
+    public long getId() {
         return id;
     }
 
@@ -107,8 +149,12 @@ import java.util.concurrent.atomic.AtomicReference;
     /**
      * Provides the shelf life value of this order. A value zero or less than zero indicates this order is expired.
      * The unit of returned value is in milliseconds.
-     *
      * <p>
+     * Shelf value decays linearly({@link LinearDecayModel}), for every millisecond an order loses (1 + decayRate * decayRateFactor)
+     * milliseconds of value.
+     * So for an order which was never stored on a shelf, shelfValue = shelfLife - orderAge - decayRate * decayRateFactor * orderAge.
+     * For a stored order the value is derived from its expiry timestamp on the current shelf, which also accounts for the value
+     * it lost on the previous shelf.
      *
      * @param decayRateFactor, decayRateFactor determines how fast the order will lose its value in a shelf(depending upon the shelf type).
      *                         A value of 2 means the order will decay 2 times faster. This parameter is passed by the IShelfPod which stores this
@@ -116,10 +162,32 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public long getCurrShelfValueInMs(double decayRateFactor) {
-        long orderAgeInMs = System.currentTimeMillis() - createdTimestampInMs;
-        long decayedOrderAgeInMs = new Double(decayRate * decayRateFactor * orderAgeInMs).longValue();
-        long shelfValue = (shelfLifeInSecs * 1000 - orderAgeInMs) - decayedOrderAgeInMs;
-        return shelfValue;
+        return getCurrShelfValueInMs(decayRateFactor, System.currentTimeMillis());
+    }
+
+    /**
+     * Same as {@link #getCurrShelfValueInMs(double)}, but as of the given time instead of the wall clock.
+     *
+     * @param decayRateFactor
+     * @param nowInMs
+     * @return
+     */
+    public long getCurrShelfValueInMs(double decayRateFactor, long nowInMs) {
+        return getCurrShelfValueInMs(LINEAR_DECAY_MODEL, decayRateFactor, nowInMs);
+    }
+
+    /**
+     * Same as {@link #getCurrShelfValueInMs(double, long)}, but the value decays as per the given model. The value follows from the
+     * time left until the expiry timestamp.
+     *
+     * @param decayModel
+     * @param decayRateFactor
+     * @param nowInMs
+     * @return
+     */
+    public long getCurrShelfValueInMs(IDecayModel decayModel, double decayRateFactor, long nowInMs) {
+        long remainingTimeInMs = getExpiryTimestampInMs(decayModel, decayRateFactor) - nowInMs;
+        return (long) decayModel.getShelfValueInMs(remainingTimeInMs, getShelfLifeInSecs() * 1000l, decayRate * decayRateFactor);
     }
 
     /**
@@ -130,7 +198,18 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public boolean hasExpired(double decayRateFactor) {
-        long expiredTime = getExpiryTimestampInMs(decayRateFactor);
+        return hasExpired(LINEAR_DECAY_MODEL, decayRateFactor);
+    }
+
+    /**
+     * Same as {@link #hasExpired(double)}, but the value decays as per the given model.
+     *
+     * @param decayModel
+     * @param decayRateFactor
+     * @return
+     */
+    public boolean hasExpired(IDecayModel decayModel, double decayRateFactor) {
+        long expiredTime = getExpiryTimestampInMs(decayModel, decayRateFactor);
         return (expiredTime - System.currentTimeMillis()) <= 0;
     }
 
@@ -141,18 +220,104 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public double getNormalizedValue(double decayRateFactor) {
-        double result = getCurrShelfValueInMs(decayRateFactor) / getShelfLifeInSecs() / 1000.0;
+        return getNormalizedValue(decayRateFactor, System.currentTimeMillis());
+    }
+
+    /**
+     * Same as {@link #getNormalizedValue(double)}, but as of the given time instead of the wall clock.
+     *
+     * @param decayRateFactor
+     * @param nowInMs
+     * @return
+     */
+    public double getNormalizedValue(double decayRateFactor, long nowInMs) {
+        return getNormalizedValue(LINEAR_DECAY_MODEL, decayRateFactor, nowInMs);
+    }
+
+    /**
+     * Same as {@link #getNormalizedValue(double, long)}, but the value decays as per the given model.
+     *
+     * @param decayModel
+     * @param decayRateFactor
+     * @param nowInMs
+     * @return
+     */
+    public double getNormalizedValue(IDecayModel decayModel, double decayRateFactor, long nowInMs) {
+        double result = getCurrShelfValueInMs(decayModel, decayRateFactor, nowInMs) / getShelfLifeInSecs() / 1000.0;
         return result;
     }
 
     /**
-     * Gets the expiry timestamp, this will change specific to each shelf.
+     * Gets the expiry timestamp, i.e. the timestamp at which the shelf value reaches zero.
+     * <p>
+     * Once the order is stored on a shelf, the expiry timestamp is fixed by {@link #placeOnShelf(double)} or
+     * {@link #moveToShelf(double, double)}, and the given decayRateFactor is not used. Otherwise the expiry timestamp is
+     * calculated as if the order was stored on a shelf with the given decayRateFactor since its creation.
+     * <p>
+     * As the expiry timestamp does not change with time, orders can be kept sorted by it.
      *
      * @param decayRateFactor
      * @return
      */
     public long getExpiryTimestampInMs(double decayRateFactor) {
-        return getCreatedTimestamp() + getCurrShelfValueInMs(decayRateFactor) - getTimeSpentOnOverflowShelfInMs();
+        return getExpiryTimestampInMs(LINEAR_DECAY_MODEL, decayRateFactor);
+    }
+
+    /**
+     * Same as {@link #getExpiryTimestampInMs(double)}, but the value of an order which is not stored yet decays as per the given model.
+     *
+     * @param decayModel
+     * @param decayRateFactor
+     * @return
+     */
+    public long getExpiryTimestampInMs(IDecayModel decayModel, double decayRateFactor) {
+        long expiryTimestampInMs = this.expiryTimestampInMs;
+        if (expiryTimestampInMs != 0)
+            return expiryTimestampInMs;
+        return decayModel.getExpiryTimestampInMs(createdTimestampInMs, getShelfLifeInSecs(), decayRate * decayRateFactor);
+    }
+
+    /**
+     * Fixes the expiry timestamp of this order for the shelf it is being stored on. This should be called by the IShelfPod when
+     * the order is stored on a shelf for the first time, before the order is visible to other threads through the shelf.
+     *
+     * @param decayRateFactor decayRateFactor of the shelf which stores the order.
+     */
+    public void placeOnShelf(double decayRateFactor) {
+        placeOnShelf(LINEAR_DECAY_MODEL, decayRateFactor);
+    }
+
+    /**
+     * Same as {@link #placeOnShelf(double)}, but the value decays as per the given model.
+     *
+     * @param decayModel
+     * @param decayRateFactor
+     */
+    public void placeOnShelf(IDecayModel decayModel, double decayRateFactor) {
+        expiryTimestampInMs = decayModel.getExpiryTimestampInMs(createdTimestampInMs, getShelfLifeInSecs(), decayRate * decayRateFactor);
+    }
+
+    /**
+     * Recalculates the expiry timestamp of this order when it is moved between shelves. The shelf value remaining at the time of
+     * the move is carried over to the new shelf, and it decays from there with the new shelf's decayRateFactor.
+     *
+     * @param fromDecayRateFactor decayRateFactor of the shelf which stored the order till now.
+     * @param toDecayRateFactor   decayRateFactor of the shelf to which the order is moved.
+     */
+    public void moveToShelf(double fromDecayRateFactor, double toDecayRateFactor) {
+        moveToShelf(LINEAR_DECAY_MODEL, fromDecayRateFactor, toDecayRateFactor);
+    }
+
+    /**
+     * Same as {@link #moveToShelf(double, double)}, but the value decays as per the given model.
+     *
+     * @param decayModel
+     * @param fromDecayRateFactor
+     * @param toDecayRateFactor
+     */
+    public void moveToShelf(IDecayModel decayModel, double fromDecayRateFactor, double toDecayRateFactor) {
+        expiryTimestampInMs = decayModel.getMovedExpiryTimestampInMs(expiryTimestampInMs, System.currentTimeMillis(), getShelfLifeInSecs(),
+            decayRate * fromDecayRateFactor, decayRate * toDecayRateFactor);
     }
 
     /**
@@ -161,7 +326,7 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public OrderState getOrderState() {
-        return orderStateAtomicReference.get();
+        return ORDER_STATES[state];
     }
 
     /**
@@ -170,7 +335,7 @@ import java.util.concurrent.atomic.AtomicReference;
      * @param orderState
      */
     public void setOrderState(OrderState orderState) {
-        orderStateAtomicReference.set(orderState);
+        state = orderState.ordinal();
     }
 
     /**
@@ -181,16 +346,16 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public boolean compareAndSet(OrderState oldState, OrderState newState) {
-        return orderStateAtomicReference.compareAndSet(oldState, newState);
+        return STATE_UPDATER.compareAndSet(this, oldState.ordinal(), newState.ordinal());
     }
 
     /**
-     * If the order is reached one of the stages {Expired, PickedUp} then this value returns true, otherwise false.
+     * If the order is reached one of the stages {Expired, PickedUp, Cancelled} then this value returns true, otherwise false.
      *
      * @return
      */
     public boolean hasReachedEndState() {
-        return END_STATES.contains(getOrderState());
+        return (1 << state & END_STATES_MASK) != 0;
     }
 
     /**
@@ -200,13 +365,12 @@ import java.util.concurrent.atomic.AtomicReference;
      * @return
      */
     public boolean isCurrentlyInAnyShelf() {
-        return getOrderState() == OrderState.StoredInRegularShelf || getOrderState() == OrderState.StoredInOverflowShelf;
+        return (1 << state & STORED_STATES_MASK) != 0;
     }
 
     /**
-     * If an order stays in overflow shelf for a period of time, and then if it moves back to regular shelf, then we need to account the time
-     * spent on overflow shelf, and subtract that value from shelf value of this order. This function provides the time spent on the
-     * overflow shelf.
+     * If an order stays in overflow shelf for a period of time, and then if it moves back to regular shelf, then this function provides
+     * the time spent on the overflow shelf. The value lost on the overflow shelf is already accounted by {@link #moveToShelf(double, double)}.
      *
      * @return
      */
@@ -215,8 +379,8 @@ import java.util.concurrent.atomic.AtomicReference;
     }
 
     /**
-     * If an order stays in overflow shelf for a period of time, and then if it moves back to regular shelf, then we need to account the time
-     * spent on overflow shelf, and subtract that value from shelf value of this order. This provides the ability to set that value.
+     * If an order stays in overflow shelf for a period of time, and then if it moves back to regular shelf, then this provides the ability
+     * to record the time spent on the overflow shelf.
      *
      * @param timeSpentOnOverflowShelfInMs
      */
@@ -224,8 +388,17 @@ import java.util.concurrent.atomic.AtomicReference;
         this.timeSpentOnOverflowShelfInMs = timeSpentOnOverflowShelfInMs;
     }
 
+    /**
+     * Returns the id of this order's name in {@link OrderNameDictionary}.
+     *
+     * @return
+     */
+    public int getNameId() {
+        return nameId;
+    }
+
     public int hashCode() {
-        return Objects.hash(name, temperature, shelfLifeInSecs, id);
+        return Long.hashCode(id) * 31 + temperatureAndShelfLife * 17 + nameId;
     }
 
     public boolean equals(Object other) {
@@ -234,12 +407,11 @@ import java.util.concurrent.atomic.AtomicReference;
         if (!(other instanceof Order))
             return false;
         Order that = (Order) other;
-        return Objects.equals(name, this.name) && Objects.equals(this.temperature, that.temperature) && Objects
-            .equals(this.shelfLifeInSecs, that.shelfLifeInSecs) && Objects.equals(id, that.id);
+        return this.id == that.id && this.nameId == that.nameId && this.temperatureAndShelfLife == that.temperatureAndShelfLife;
     }
 
     public String toString() {
-        return MoreObjects.toStringHelper(Order.class).add("orderId", id).add("name", name).add("temperature", temperature)
-            .add("shelfLifeInSecs", shelfLifeInSecs).add("decayRate", decayRate).add("orderState", getOrderState()).toString();
+        return MoreObjects.toStringHelper(Order.class).add("orderId", id).add("name", getName()).add("temperature", getTemperature())
+            .add("shelfLifeInSecs", getShelfLifeInSecs()).add("decayRate", decayRate).add("orderState", getOrderState()).toString();
     }
 }
@@ -0,0 +1,58 @@
+package com.cloudkitchens.fulfillment.entities.orders;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns order names into dense integer ids. Kitchens send the same menu item names over and over, so instead of every
+ * {@link Order} holding its own String instance, an order holds just the id of its name in this dictionary.
+ * <p>
+ * Lookups by id are a plain array read. Interning an already known name is a single concurrent map read, only the first
+ * occurrence of a name takes a lock. The dictionary never shrinks, it is expected to be bounded by the size of the menu.
+ */
+@ThreadSafe public final class OrderNameDictionary {
+
+    private static final Map<String, Integer> NAME_TO_ID = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    // Published only after the new name is written into it, so any thread which has seen an id also sees the name.
+    private static volatile String[] names = new String[64];
+    private static int size;
+
+    private OrderNameDictionary() {
+    }
+
+    /**
+     * Returns the id of the given name, assigning a new id if the name was never seen before.
+     *
+     * @param name
+     * @return
+     */
+    public static int intern(String name) {
+        Integer id = NAME_TO_ID.get(name);
+        if (id != null)
+            return id;
+        synchronized (LOCK) {
+            id = NAME_TO_ID.get(name);
+            if (id != null)
+                return id;
+            String[] current = names;
+            String[] updated = size < current.length ? current : Arrays.copyOf(current, current.length * 2);
+            updated[size] = name;
+            names = updated;
+            NAME_TO_ID.put(name, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the name for an id returned by {@link #intern(String)}.
+     *
+     * @param id
+     * @return
+     */
+    public static String lookup(int id) {
+        return names[id];
+    }
+}
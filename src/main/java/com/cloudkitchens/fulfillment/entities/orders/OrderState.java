@@ -9,14 +9,16 @@ package com.cloudkitchens.fulfillment.entities.orders;
  * <p>
  * (1) Created
  * (2) Stored -> {2.1 StoredInRegularShelf, 2.2 StoredInOverflowShelf}
- * (3) Expired -> {ExpiredInRegularShelf, ExpiredInOverflowShelf, ExpiredOnNoSpace, CameExpired}
+ * (3) Expired -> {ExpiredInRegularShelf, ExpiredInOverflowShelf, ExpiredOnNoSpace, CameExpired, EvictedFromOverflowShelf}
  * (4) Delivered -> {DeliveredFromRegularShelf, DeliveredFromOverflowShelf}
+ * (5) Cancelled
  * <p>
  * Following state movements are only allowed
  * <p>
  * (1) -> (3)
  * (1) -> (2) -> (3)
  * (1) -> (2) -> (4)
+ * (1) -> (2) -> (5)
  * <p>
  * <p>
  * Within (2), following is the only state movement allowed
@@ -30,10 +32,15 @@ package com.cloudkitchens.fulfillment.entities.orders;
  * (1) -> (2.2) -> (2.1) -> (3)
  * (1) -> (2.2) -> (4)
  * (1) -> (2.2) -> (2.1) -> (4)
+ * (1) -> (2.2) -> (5)
+ * (1) -> (2.2) -> (2.1) -> (5)
  * <p>
  * <p>
  * Since the fulfillment service is running in a multi threaded environment, when one thread is trying to move
  * an order from Overflow shelf to Regular shelf, the order may be delivered by another thread from Overflow shelf.
  * Hence using these states, mover thread/delivery thread can resolve any potential race conditions.
+ * <p>
+ * EvictedFromOverflowShelf is used when an order is removed from a full overflow shelf to make space for a more valuable order.
+ * Cancelled is used when an order is removed from the shelves because the customer has cancelled it.
  */
-public enum OrderState {Created, StoredInRegularShelf, StoredInOverflowShelf, ExpiredInRegularShelf, ExpiredInOverflowShelf, ExpiredOnNoSpace, CameExpired, DeliveredFromRegularShelf, DeliveredFromOverflowShelf}
+public enum OrderState {Created, StoredInRegularShelf, StoredInOverflowShelf, ExpiredInRegularShelf, ExpiredInOverflowShelf, ExpiredOnNoSpace, CameExpired, EvictedFromOverflowShelf, DeliveredFromRegularShelf, DeliveredFromOverflowShelf, Cancelled}
@@ -1,11 +1,9 @@
 package com.cloudkitchens.fulfillment.entities.orders.comparators;
 
-import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
-import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
 
 import java.util.Comparator;
-import java.util.Map;
 
 /**
  * Compares expiry timestamp of two orders, and the return values are
@@ -14,34 +12,29 @@ import java.util.Map;
  * -1 if the first order is expiring sooner than the second order
  * 1 if the first order is expiring later than the second order
  * <p>
- * This comparator takes {@link #decayRateFactors} which is used for determining expiry time. As an order's expiration timestamp changes
- * depending upon the shelf where it is stored, decayRateFactor is used as parameter which can be provided dynamically by shelves.
+ * This comparator takes {@link #shelfRegistry} whose decayRateFactors are used for determining expiry time. As an order's expiration
+ * timestamp changes depending upon the shelf where it is stored, decayRateFactor is used as parameter which can be provided dynamically
+ * by shelves.
  * As decayRateFactor is provided by the IShelfPod, this compare function can't be implemented as Comparable in hOrder class.
  * <p>
  * This comparator is used in sorting orders for maintaining the orders in a priority queue(so that soon to be
  * expired order can be given to Dispatcher) and displaying purposes as well.
  */
 public class OrderExpiryComparator implements Comparator<Order> {
-    private final Map<Temperature, Double> decayRateFactors;
+    private final ShelfRegistry shelfRegistry;
 
-    public OrderExpiryComparator(Map<Temperature, Double> decayRateFactors) {
-        this.decayRateFactors = decayRateFactors;
+    public OrderExpiryComparator(ShelfRegistry shelfRegistry) {
+        this.shelfRegistry = shelfRegistry;
     }
 
     @Override public int compare(Order first, Order second) {
-        double firstOrderDecayRate = getDecayRate(first);
-        double secondOrderDecayRate = getDecayRate(second);
+        double firstOrderDecayRate = shelfRegistry.getDecayRateFactor(first);
+        double secondOrderDecayRate = shelfRegistry.getDecayRateFactor(second);
 
         int result = Long.compare(first.getExpiryTimestampInMs(firstOrderDecayRate), second.getExpiryTimestampInMs(secondOrderDecayRate));
         // In case of a tie, lets use their ids to sort it. So we will have consistency.
         if (result == 0)
-            return first.getId().compareTo(second.getId());
+            return Long.compare(first.getId(), second.getId());
         return result;
     }
-
-    private double getDecayRate(Order order) {
-        return order.getOrderState() == OrderState.StoredInOverflowShelf ?
-            decayRateFactors.get(Temperature.Overflow) :
-            decayRateFactors.get(order.getTemperature());
-    }
 }
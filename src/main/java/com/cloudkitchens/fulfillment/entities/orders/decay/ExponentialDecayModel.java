@@ -0,0 +1,29 @@
+package com.cloudkitchens.fulfillment.entities.orders.decay;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A decay which slows down as the value drops, for every millisecond an order loses (1 + decayRate * shelfValue / shelfLife)
+ * milliseconds of value. A fresh order decays as fast as with {@link LinearDecayModel}, and the part of the decay which is
+ * proportional to the value falls off exponentially, so the order lasts longer.
+ * <p>
+ * Solving the decay for the value v and k = decayRate / shelfLife gives v(t) = (v0 + 1 / k) * e^(-k * t) - 1 / k, so a value v reaches
+ * zero in ln(1 + k * v) / k, and the value which reaches zero in t is (e^(k * t) - 1) / k. Without a decay rate this is the aging
+ * of one millisecond per millisecond, like the linear decay.
+ */
+@Immutable public class ExponentialDecayModel implements IDecayModel {
+
+    @Override public double getTimeToZeroInMs(double shelfValueInMs, long shelfLifeInMs, double decayRate) {
+        if (decayRate == 0 || shelfLifeInMs == 0)
+            return shelfValueInMs;
+        double k = decayRate / shelfLifeInMs;
+        return Math.log1p(k * shelfValueInMs) / k;
+    }
+
+    @Override public double getShelfValueInMs(double timeToZeroInMs, long shelfLifeInMs, double decayRate) {
+        if (decayRate == 0 || shelfLifeInMs == 0)
+            return timeToZeroInMs;
+        double k = decayRate / shelfLifeInMs;
+        return Math.expm1(k * timeToZeroInMs) / k;
+    }
+}
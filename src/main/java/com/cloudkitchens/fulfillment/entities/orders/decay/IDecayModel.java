@@ -0,0 +1,70 @@
+package com.cloudkitchens.fulfillment.entities.orders.decay;
+
+/**
+ * Decides how the shelf value of an order decays on a shelf.
+ * <p>
+ * The value lost per millisecond may depend on the remaining value, but not on the time otherwise, so the value of an order at any time
+ * is decided by the time left until its value reaches zero. A model provides this in both directions in a closed form, the time a value
+ * takes to reach zero and the value which reaches zero in a given time. So the expiry timestamp of an order is calculated once when it
+ * is placed on a shelf and once when it is moved, the value at any time follows from the expiry timestamp, and the shelf pods keep
+ * ordering and expiring the orders by their expiry timestamps whatever the curve is.
+ * <p>
+ * The decay rate given to a model is the decayRate of the order times the decayRateFactor of the shelf which stores it. A fresh order
+ * has the value of its shelf life, the models which normalize the value use the shelf life for that.
+ * <p>
+ * Implementations should be immutable, they are called from many threads and under the locks of the shelf pods, so they should be cheap.
+ */
+public interface IDecayModel {
+
+    /**
+     * Returns how long it takes the given shelf value to reach zero.
+     *
+     * @param shelfValueInMs remaining shelf value, not negative.
+     * @param shelfLifeInMs  shelf life of the order, which is the value of a fresh order.
+     * @param decayRate      decayRate of the order times the decayRateFactor of its shelf.
+     * @return
+     */
+    double getTimeToZeroInMs(double shelfValueInMs, long shelfLifeInMs, double decayRate);
+
+    /**
+     * Returns the shelf value which reaches zero in the given time, the inverse of
+     * {@link #getTimeToZeroInMs(double, long, double)}. A negative time, i.e. an order past its expiry, gives a negative value.
+     *
+     * @param timeToZeroInMs
+     * @param shelfLifeInMs
+     * @param decayRate
+     * @return
+     */
+    double getShelfValueInMs(double timeToZeroInMs, long shelfLifeInMs, double decayRate);
+
+    /**
+     * Returns the expiry timestamp of an order which is stored on a shelf since its creation.
+     *
+     * @param createdTimestampInMs
+     * @param shelfLifeInSecs
+     * @param decayRate
+     * @return
+     */
+    default long getExpiryTimestampInMs(long createdTimestampInMs, int shelfLifeInSecs, double decayRate) {
+        long shelfLifeInMs = shelfLifeInSecs * 1000l;
+        return createdTimestampInMs + (long) getTimeToZeroInMs(shelfLifeInMs, shelfLifeInMs, decayRate);
+    }
+
+    /**
+     * Returns the expiry timestamp of an order which is moved between shelves at the given time. The shelf value remaining at the
+     * time of the move is carried over to the new shelf, and it decays from there with the decay rate of the new shelf.
+     *
+     * @param expiryTimestampInMs expiry timestamp on the shelf which stored the order till now.
+     * @param nowInMs
+     * @param shelfLifeInSecs
+     * @param fromDecayRate       decay rate of the order on the shelf which stored it till now.
+     * @param toDecayRate         decay rate of the order on the shelf to which it is moved.
+     * @return
+     */
+    default long getMovedExpiryTimestampInMs(long expiryTimestampInMs, long nowInMs, int shelfLifeInSecs, double fromDecayRate,
+        double toDecayRate) {
+        long shelfLifeInMs = shelfLifeInSecs * 1000l;
+        double remainingShelfValueInMs = getShelfValueInMs(Math.max(0, expiryTimestampInMs - nowInMs), shelfLifeInMs, fromDecayRate);
+        return nowInMs + (long) getTimeToZeroInMs(remainingShelfValueInMs, shelfLifeInMs, toDecayRate);
+    }
+}
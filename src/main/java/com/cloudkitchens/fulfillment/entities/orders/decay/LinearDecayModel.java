@@ -0,0 +1,18 @@
+package com.cloudkitchens.fulfillment.entities.orders.decay;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The default decay, for every millisecond an order loses (1 + decayRate) milliseconds of value. So for an order which was never
+ * moved, shelfValue = shelfLife - orderAge - decayRate * orderAge.
+ */
+@Immutable public class LinearDecayModel implements IDecayModel {
+
+    @Override public double getTimeToZeroInMs(double shelfValueInMs, long shelfLifeInMs, double decayRate) {
+        return shelfValueInMs / (1 + decayRate);
+    }
+
+    @Override public double getShelfValueInMs(double timeToZeroInMs, long shelfLifeInMs, double decayRate) {
+        return timeToZeroInMs * (1 + decayRate);
+    }
+}
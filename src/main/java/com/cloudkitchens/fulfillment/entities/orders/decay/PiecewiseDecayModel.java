@@ -0,0 +1,84 @@
+package com.cloudkitchens.fulfillment.entities.orders.decay;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+
+/**
+ * A decay given by a lookup table of value bands, for every millisecond an order whose normalized value(shelfValue / shelfLife) is in
+ * a band loses (1 + decayRate * multiplier of the band) milliseconds of value. For example the bands {0, 0.5} with the multipliers
+ * {2, 0.5} make an order decay slowly while it is fresh and twice as fast as the linear decay once it has lost half of its value.
+ * <p>
+ * The value decays linearly within a band, so the time to zero is the sum of the times spent in the bands below the value, and
+ * both directions are O(number of bands) per order placement or move. The band of the highest value extends beyond the shelf life,
+ * and a negative value decays like the band of the lowest value.
+ */
+@Immutable public class PiecewiseDecayModel implements IDecayModel {
+
+    // Lower bounds of the bands of the normalized value, ascending and starting from 0.
+    private final double[] valueFractions;
+    private final double[] decayMultipliers;
+
+    /**
+     * @param valueFractions   lower bounds of the bands of the normalized value, ascending and starting from 0.
+     * @param decayMultipliers multiplier of the decay rate in each band, not negative.
+     * @throws IllegalArgumentException if the bands are not as above.
+     */
+    public PiecewiseDecayModel(double[] valueFractions, double[] decayMultipliers) {
+        if (valueFractions.length == 0 || valueFractions.length != decayMultipliers.length)
+            throw new IllegalArgumentException(
+                "One multiplier is needed per band, given bands:" + valueFractions.length + " multipliers:" + decayMultipliers.length);
+        if (valueFractions[0] != 0)
+            throw new IllegalArgumentException("The lowest band should start from 0, given:" + valueFractions[0]);
+        for (int i = 0; i < valueFractions.length; i++) {
+            if (i > 0 && valueFractions[i] <= valueFractions[i - 1])
+                throw new IllegalArgumentException("Bands should be ascending, given:" + Arrays.toString(valueFractions));
+            if (decayMultipliers[i] < 0)
+                throw new IllegalArgumentException("Multipliers can't be negative, given:" + Arrays.toString(decayMultipliers));
+        }
+        this.valueFractions = valueFractions.clone();
+        this.decayMultipliers = decayMultipliers.clone();
+    }
+
+    @Override public double getTimeToZeroInMs(double shelfValueInMs, long shelfLifeInMs, double decayRate) {
+        if (shelfValueInMs <= 0)
+            return shelfValueInMs / getDecayPerMs(0, decayRate);
+        double timeToZeroInMs = 0;
+        for (int band = 0; band < valueFractions.length; band++) {
+            double lowerBoundInMs = valueFractions[band] * shelfLifeInMs;
+            if (shelfValueInMs <= lowerBoundInMs)
+                break;
+            double upperBoundInMs = band + 1 < valueFractions.length ? valueFractions[band + 1] * shelfLifeInMs : Double.MAX_VALUE;
+            timeToZeroInMs += (Math.min(shelfValueInMs, upperBoundInMs) - lowerBoundInMs) / getDecayPerMs(band, decayRate);
+        }
+        return timeToZeroInMs;
+    }
+
+    @Override public double getShelfValueInMs(double timeToZeroInMs, long shelfLifeInMs, double decayRate) {
+        if (timeToZeroInMs <= 0)
+            return timeToZeroInMs * getDecayPerMs(0, decayRate);
+        double remainingTimeInMs = timeToZeroInMs;
+        int lastBand = valueFractions.length - 1;
+        for (int band = 0; band < lastBand; band++) {
+            double lowerBoundInMs = valueFractions[band] * shelfLifeInMs;
+            double bandWidthInMs = valueFractions[band + 1] * shelfLifeInMs - lowerBoundInMs;
+            double decayPerMs = getDecayPerMs(band, decayRate);
+            // Time the value spends in this band on its way to zero.
+            double bandTimeInMs = bandWidthInMs / decayPerMs;
+            if (remainingTimeInMs <= bandTimeInMs)
+                return lowerBoundInMs + remainingTimeInMs * decayPerMs;
+            remainingTimeInMs -= bandTimeInMs;
+        }
+        return valueFractions[lastBand] * shelfLifeInMs + remainingTimeInMs * getDecayPerMs(lastBand, decayRate);
+    }
+
+    private double getDecayPerMs(int band, double decayRate) {
+        return 1 + decayRate * decayMultipliers[band];
+    }
+
+    @Override public String toString() {
+        return MoreObjects.toStringHelper(PiecewiseDecayModel.class).add("valueFractions", Arrays.toString(valueFractions))
+            .add("decayMultipliers", Arrays.toString(decayMultipliers)).toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.cloudkitchens.fulfillment.entities.pickup;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps the expected arrival timestamps of the couriers which were dispatched, but did not pickup an order yet.
+ * The {@link Dispatcher} records an arrival when it dispatches a courier, and removes it when the courier arrives.
+ * <p>
+ * All the operations are O(log N).
+ */
+@ThreadSafe public class CourierArrivals {
+
+    public static final long NONE = -1;
+
+    // More than one courier can arrive at the same millisecond, so the number of couriers is kept per arrival timestamp.
+    private final ConcurrentNavigableMap<Long, Integer> arrivals = new ConcurrentSkipListMap<>();
+
+    public void addArrival(long arrivalTimestampInMs) {
+        arrivals.merge(arrivalTimestampInMs, 1, Integer::sum);
+    }
+
+    public void removeArrival(long arrivalTimestampInMs) {
+        arrivals.computeIfPresent(arrivalTimestampInMs, (timestamp, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Returns the earliest arrival timestamp after the given timestamp.
+     *
+     * @param timestampInMs
+     * @return arrival timestamp, or {@link #NONE} if no courier is expected after the given timestamp.
+     */
+    public long getNextArrivalAfter(long timestampInMs) {
+        Map.Entry<Long, Integer> entry = arrivals.higherEntry(timestampInMs);
+        return entry == null ? NONE : entry.getKey();
+    }
+}
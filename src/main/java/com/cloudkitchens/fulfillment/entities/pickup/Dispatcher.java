@@ -1,52 +1,161 @@
 package com.cloudkitchens.fulfillment.entities.pickup;
 
 import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
+import com.cloudkitchens.fulfillment.entities.jfr.FlightRecorderEvents;
+import com.cloudkitchens.fulfillment.entities.jfr.PickupEvent;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
 import com.cloudkitchens.fulfillment.entities.shelves.IShelfPod;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
 import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
 import com.google.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Comparator;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class listens to ShelfPod's addOrder events, and dispatches a message for order pickup.
  * Since we dont have any real integration with cab service, this class will submit a task with scheduled delay of 2-10 seconds
  * which pickups order from the shelf (mimicking that in realtime it may take that many seconds to pickup the order).
+ * <p>
+ * A courier picks up whichever order the pickup strategy selects, not necessarily the order it was dispatched for, so there should be
+ * as many couriers on the way as orders on the shelves. When an order leaves the shelves without a pickup(expired, evicted or
+ * cancelled), one courier is called back: the courier of that order if it is still on the way, otherwise the courier arriving last.
+ * Otherwise the courier would arrive to an empty shelf, or take the order meant for another courier.
  */
 @Slf4j @Singleton public class Dispatcher implements IShelfPodObserver {
 
     private static final String PICKUP_THREAD_NAME_PREFIX = "pickup-threads-";
     private static final String PICKUP_RESULTS_READER_THREAD_NAME_PRE = "pickup-results-reader-";
     private static final int THREAD_COUNT = 30;
-    private final Random random = new Random();
+    private static final Comparator<PickupTask> PICKUP_ARRIVAL_ORDER =
+        Comparator.<PickupTask>comparingLong(pickupTask -> pickupTask.arrivalTimestampInMs).thenComparingLong(pickupTask -> pickupTask.sequence);
+    private final Random random;
 
-    private final int minDelayForPickupInSecs, maxDelayForPickupInSecs;
+    // Replaced as a whole by setDelaysForPickup(), so a dispatch never sees the min of one range with the max of another.
+    private volatile PickupDelays pickupDelays;
     private final IShelfPod shelfPod;
+    private final CourierArrivals courierArrivals;
+    private final AtomicInteger outstandingPickups = new AtomicInteger();
+    private final AtomicLong cancelledPickups = new AtomicLong();
+    private final AtomicLong emptyPickups = new AtomicLong();
+    private final AtomicLong pickupSequence = new AtomicLong();
+    // The pickups which are scheduled and not yet started or cancelled, in the order of their arrival. Whoever removes a pickup from
+    // here owns it, either the pickup task which starts it, or the callback of a courier.
+    private final ConcurrentNavigableMap<PickupTask, Boolean> pendingPickups = new ConcurrentSkipListMap<>(PICKUP_ARRIVAL_ORDER);
+    // The pickup dispatched for each order on the shelves, an entry is removed when the order leaves the shelves.
+    private final ConcurrentMap<Long, PickupTask> pickupsByOrderId = new ConcurrentHashMap<>();
+    // An order is on the shelves before its add is notified, so it can leave them before that. Then one of these markers is left in
+    // pickupsByOrderId for the order instead of its pickup, and the dispatch of the order removes it.
+    private final PickupTask pickedUpBeforeDispatch = new PickupTask(0, 0);
+    private final PickupTask leftBeforeDispatch = new PickupTask(0, 0);
     private volatile ExecutorCompletionService<Boolean> completionService;
     private volatile ScheduledExecutorService scheduledExecutorService;
     private volatile ExecutorService executorService;
 
     public Dispatcher(IShelfPod shelfPod, int minDelayForPickupInSecs, int maxDelayForPickupInSecs) {
-        this.minDelayForPickupInSecs = minDelayForPickupInSecs;
-        this.maxDelayForPickupInSecs = maxDelayForPickupInSecs;
+        this(shelfPod, minDelayForPickupInSecs, maxDelayForPickupInSecs, new CourierArrivals());
+    }
+
+    /**
+     * @param shelfPod
+     * @param minDelayForPickupInSecs
+     * @param maxDelayForPickupInSecs
+     * @param courierArrivals         where the arrival time of each dispatched courier is recorded, this can be shared with
+     *                                a {@link com.cloudkitchens.fulfillment.entities.shelves.strategies.IPickupStrategy}.
+     */
+    public Dispatcher(IShelfPod shelfPod, int minDelayForPickupInSecs, int maxDelayForPickupInSecs, CourierArrivals courierArrivals) {
+        this(shelfPod, minDelayForPickupInSecs, maxDelayForPickupInSecs, courierArrivals, new Random());
+    }
+
+    /**
+     * @param shelfPod
+     * @param minDelayForPickupInSecs
+     * @param maxDelayForPickupInSecs
+     * @param courierArrivals
+     * @param random                  draws the delays for pickup, a seeded random makes the delays repeatable.
+     */
+    public Dispatcher(IShelfPod shelfPod, int minDelayForPickupInSecs, int maxDelayForPickupInSecs, CourierArrivals courierArrivals,
+        Random random) {
+        this.random = random;
+        this.pickupDelays = new PickupDelays(minDelayForPickupInSecs, maxDelayForPickupInSecs);
         this.shelfPod = shelfPod;
+        this.courierArrivals = courierArrivals;
+    }
+
+    /**
+     * Changes the delay range of the pickups dispatched from now on, the pickups which were already dispatched are not affected.
+     *
+     * @param minDelayForPickupInSecs
+     * @param maxDelayForPickupInSecs
+     * @throws IllegalArgumentException if the given range is not valid.
+     */
+    public void setDelaysForPickup(int minDelayForPickupInSecs, int maxDelayForPickupInSecs) {
+        this.pickupDelays = new PickupDelays(minDelayForPickupInSecs, maxDelayForPickupInSecs);
+        log.info("Changed delays for pickup, minDelayForPickupInSecs={} maxDelayForPickupInSecs={}", minDelayForPickupInSecs,
+            maxDelayForPickupInSecs);
+    }
+
+    /**
+     * Returns the number of pickups which were dispatched, but whose courier has not arrived yet.
+     *
+     * @return
+     */
+    public int getOutstandingPickups() {
+        return outstandingPickups.get();
+    }
+
+    /**
+     * Returns the number of couriers which were called back before arriving, as their orders left the shelves without a pickup.
+     *
+     * @return
+     */
+    public long getCancelledPickups() {
+        return cancelledPickups.get();
+    }
 
+    /**
+     * Returns the number of couriers which arrived, but did not pick up any order.
+     *
+     * @return
+     */
+    public long getEmptyPickups() {
+        return emptyPickups.get();
+    }
+
+    /**
+     * Returns the number of orders whose pickup is tracked, which are the orders on the shelves, along with the orders which left
+     * the shelves before their add was notified and are not dispatched yet.
+     *
+     * @return
+     */
+    public int getTrackedOrders() {
+        return pickupsByOrderId.size();
     }
 
     public void startBackgroundActivities() {
-        this.scheduledExecutorService = ExecutorServicesUtil
-            .createScheduledThreadPool(PICKUP_THREAD_NAME_PREFIX, THREAD_COUNT, ExecutorServicesUtil.WAIT_TIME_TO_SHUTDOWN_MS);
-        this.executorService = ExecutorServicesUtil
-            .createScheduledThreadPool(PICKUP_RESULTS_READER_THREAD_NAME_PRE, 1, ExecutorServicesUtil.WAIT_TIME_TO_SHUTDOWN_MS);
+        this.scheduledExecutorService = ExecutorServicesUtil.createScheduledThreadPool(PICKUP_THREAD_NAME_PREFIX, THREAD_COUNT);
+        this.executorService = ExecutorServicesUtil.createScheduledThreadPool(PICKUP_RESULTS_READER_THREAD_NAME_PRE, 1);
+        if (scheduledExecutorService instanceof ScheduledThreadPoolExecutor) {
+            // Called back couriers would otherwise stay in the work queue until their arrival.
+            ((ScheduledThreadPoolExecutor) scheduledExecutorService).setRemoveOnCancelPolicy(true);
+        }
 
         this.completionService = new ExecutorCompletionService<>(scheduledExecutorService);
 
@@ -60,6 +169,7 @@ import java.util.concurrent.TimeUnit;
             executorService.shutdownNow();
         if (scheduledExecutorService != null)
             scheduledExecutorService.shutdownNow();
+        log.info("Stopped dispatcher, cancelledPickups={} emptyPickups={}", cancelledPickups.get(), emptyPickups.get());
     }
 
     /**
@@ -79,7 +189,7 @@ import java.util.concurrent.TimeUnit;
             while (true) {
                 try {
                     Future<Boolean> result = completionService.take();
-                    log.info("Pickup task completed, isSuccessful={}", result.get());
+                    log.debug("Pickup task completed, isSuccessful={}", result.get());
                 } catch (InterruptedException e) {
                     //If the thread is interrupted, lets not proceed further this task.
                     return;
@@ -91,37 +201,173 @@ import java.util.concurrent.TimeUnit;
     }
 
 
-    private static class PickupTask implements Callable<Boolean> {
+    private class PickupTask implements Callable<Boolean> {
 
-        private final IShelfPod shelfPod;
+        private final long arrivalTimestampInMs;
+        private final long sequence;
+        // Set right after scheduling, the task can start before that only if it is scheduled without delay.
+        private volatile ScheduledFuture<Boolean> future;
 
-        public PickupTask(IShelfPod shelfPod) {
-            this.shelfPod = shelfPod;
+        public PickupTask(long arrivalTimestampInMs, long sequence) {
+            this.arrivalTimestampInMs = arrivalTimestampInMs;
+            this.sequence = sequence;
         }
 
         @Override public Boolean call() {
-            Order order = shelfPod.pollOrder();
-            log.info("Picked up an order={} ", order);
-            if (order != null)
-                return true;
-            return false;
+            if (pendingPickups.remove(this) == null) {
+                // This courier was called back.
+                return false;
+            }
+            // This courier has arrived, so it is no more an upcoming arrival.
+            courierArrivals.removeArrival(arrivalTimestampInMs);
+            PickupEvent event = FlightRecorderEvents.beginPickup();
+            Order order = null;
+            long orderId;
+            try {
+                // The order itself is needed only for the flight recorder event, otherwise the id is polled so no order is created.
+                if (event != null) {
+                    order = shelfPod.pollOrder();
+                    orderId = order == null ? -1 : order.getId();
+                } else {
+                    orderId = shelfPod.pollOrderId();
+                }
+                log.debug("Picked up an orderId={} ", orderId);
+                if (orderId != -1)
+                    return true;
+                emptyPickups.incrementAndGet();
+                return false;
+            } finally {
+                int outstanding = outstandingPickups.decrementAndGet();
+                if (event != null && event.shouldCommit()) {
+                    if (order != null) {
+                        event.orderId = order.getId();
+                        event.temperature = order.getTemperature().name();
+                        event.orderState = order.getOrderState().name();
+                    }
+                    event.lateness = System.currentTimeMillis() - arrivalTimestampInMs;
+                    event.outstandingPickups = outstanding;
+                    event.commit();
+                }
+            }
+        }
+
+        /**
+         * Calls back this courier, unless it has already arrived or it was called back already.
+         *
+         * @return true if this courier is called back.
+         */
+        private boolean cancel() {
+            if (pendingPickups.remove(this) == null)
+                return false;
+            ScheduledFuture<Boolean> future = this.future;
+            if (future != null)
+                future.cancel(false);
+            courierArrivals.removeArrival(arrivalTimestampInMs);
+            outstandingPickups.decrementAndGet();
+            cancelledPickups.incrementAndGet();
+            return true;
+        }
+    }
+
+
+    private static class PickupDelays {
+        private final int minInSecs, maxInSecs;
+
+        public PickupDelays(int minInSecs, int maxInSecs) {
+            if (minInSecs < 0 || maxInSecs < minInSecs)
+                throw new IllegalArgumentException("Invalid delays for pickup, min:" + minInSecs + " max:" + maxInSecs);
+            this.minInSecs = minInSecs;
+            this.maxInSecs = maxInSecs;
         }
     }
 
 
     /**
      * This submits a pickup task to pickup the order with same random delay(mimicking real driver's arrival time).
+     * <p>
+     * If the order has already left the shelves, it was either picked up by a courier dispatched for another order, which then needs
+     * this courier, or it left without a pickup, and this courier is called back right away.
+     *
+     * @param order
      */
-    private void dispatch() {
+    private void dispatch(Order order) {
         // The following random generates a number between 2 and 10, assumption that taxi will take about 2-10 seconds for picking up the order.
-        int delay = minDelayForPickupInSecs + random.nextInt(maxDelayForPickupInSecs - minDelayForPickupInSecs + 1);
-        scheduledExecutorService.schedule(new PickupTask(shelfPod), delay, TimeUnit.SECONDS);
-        log.info("Dispatched a message for pickup.");
+        PickupDelays pickupDelays = this.pickupDelays;
+        int delay = pickupDelays.minInSecs + random.nextInt(pickupDelays.maxInSecs - pickupDelays.minInSecs + 1);
+        long arrivalTimestampInMs = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay);
+        courierArrivals.addArrival(arrivalTimestampInMs);
+        outstandingPickups.incrementAndGet();
+        PickupTask pickupTask = new PickupTask(arrivalTimestampInMs, pickupSequence.incrementAndGet());
+        pendingPickups.put(pickupTask, Boolean.TRUE);
+        PickupTask marker = pickupsByOrderId.putIfAbsent(order.getId(), pickupTask);
+        if (marker != null) {
+            pickupsByOrderId.remove(order.getId(), marker);
+            if (marker == leftBeforeDispatch) {
+                pickupTask.cancel();
+                log.debug("Called back the pickup of an order which left the shelves before its dispatch, orderId={}", order.getId());
+                return;
+            }
+        }
+        pickupTask.future = scheduledExecutorService.schedule(pickupTask, delay, TimeUnit.SECONDS);
+        log.debug("Dispatched a message for pickup.");
+    }
+
+    /**
+     * Calls back one courier, as an order has left the shelves without a pickup. The courier of the order is preferred, but it may
+     * have picked up another order already, then the courier of that order is on the way for nothing, and the last one is called back.
+     *
+     * @param pickupTask the courier dispatched for the order, or null.
+     */
+    private void cancelPickup(PickupTask pickupTask) {
+        if (pickupTask != null && pickupTask.cancel())
+            return;
+        for (PickupTask lastPickupTask : pendingPickups.descendingKeySet()) {
+            if (lastPickupTask.cancel())
+                return;
+        }
     }
 
     @Override public void postAddOrder(Order order, AddResult addResult) {
         if (addResult.isAdded()) {
-            dispatch();
+            dispatch(order);
+        }
+    }
+
+    @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+        switch (shelfOperation) {
+            case Poll:
+                removePickup(order, pickedUpBeforeDispatch);
+                break;
+            case Expire:
+            case Evict:
+            case Cancel:
+                PickupTask pickupTask = removePickup(order, leftBeforeDispatch);
+                if (pickupTask != null) {
+                    cancelPickup(pickupTask);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Removes the pickup of the given order which has left the shelves. If the order is not dispatched yet, the given marker is left
+     * for its dispatch instead.
+     *
+     * @param order
+     * @param marker
+     * @return the pickup of the order, or null if the order is not dispatched yet.
+     */
+    private PickupTask removePickup(Order order, PickupTask marker) {
+        PickupTask pickupTask = pickupsByOrderId.remove(order.getId());
+        if (pickupTask == null) {
+            pickupTask = pickupsByOrderId.putIfAbsent(order.getId(), marker);
+            if (pickupTask != null) {
+                // Dispatched in between.
+                pickupsByOrderId.remove(order.getId(), pickupTask);
+            }
         }
+        return pickupTask;
     }
 }
@@ -0,0 +1,1060 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
+import com.cloudkitchens.fulfillment.common.IClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.CalendarQueue;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.HandleHeap;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.IHandleIndex;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.IdIndex;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.OrderStore;
+import com.cloudkitchens.fulfillment.entities.shelves.dedup.DuplicateOrderFilter;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+import com.cloudkitchens.fulfillment.entities.shelves.pending.PendingOrder;
+import com.cloudkitchens.fulfillment.entities.shelves.pending.PendingOrderQueue;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.IEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.EarliestDeadlinePickupStrategy;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An alternative {@link IShelfPod} engine meant for pods which hold millions of orders.
+ * <p>
+ * {@link ShelfPod} keeps every {@link Order} object alive along with the nodes of its queues, so the heap grows with the number of
+ * stored orders and so does the GC work. This engine instead copies the order attributes into an {@link OrderStore}, which keeps them
+ * in primitive arrays indexed by an int handle. All the indexes work on handles as well.
+ * <p>
+ * 1. Priority index, an {@link IHandleIndex} of all the stored orders ordered by expiry timestamp. This is used for the pickups, and
+ * it also acts as the expiry schedule, as the head of this index is always the next order to expire.
+ * 2. Mover queues, one {@link IHandleIndex} per regular shelf, containing the orders of that shelf's temperature which are stored
+ * in the overflow shelves.
+ * 3. Overflow indexes, one {@link IHandleIndex} per overflow shelf, containing the orders stored in that shelf.
+ * 4. Id index, an {@link IdIndex} from the order id to its handle, used for looking up and cancelling an order by its id.
+ * <p>
+ * All the arrays are allocated once while constructing the pod(capacity is the sum of capacities of all shelves), so the memory
+ * used by the pod and the time spent by the GC on it do not depend on the number of stored orders. {@link Order} instances are
+ * created only at the API boundary, i.e. when an order is returned from {@link #pollOrder()} or {@link #getOrders()}. As the pod does
+ * not retain the Order instances passed to {@link #addOrder(Order)}, those instances reflect only the result of the add operation.
+ * <p>
+ * The expiry timestamp of an order is calculated once when it is placed on a shelf, which is the time at which its shelf value reaches
+ * zero. When an order is moved from the overflow shelf, its remaining shelf value is carried over to the regular shelf.
+ * <p>
+ * The indexes are {@link HandleHeap}s by default. For the pods holding hundreds of thousands of orders, {@link CalendarQueue}s can be
+ * selected by {@link ShelfPodOptions#getOrderIndexType()} instead, whose add, remove and poll are amortized O(1).
+ * <p>
+ * All the operations are guarded by a single lock, and they are O(log n), or amortized O(1) with the calendar queues. Orders are moved
+ * from the overflow shelf as soon as space is freed on a regular shelf, by the same thread which freed the space. Only expiry needs a
+ * background thread, which sleeps until the expiry timestamp of the head of the priority index.
+ * <p>
+ * There can be more than one overflow shelf, like a chilled overflow rack next to the regular one, each with its own capacity and
+ * decay rate factor, see {@link Temperature#defineOverflow(String)}. An overflow order is placed on the slowest decaying overflow shelf
+ * which has a space, which is where it keeps the most of its value. A space freed on an overflow shelf is taken by the soonest
+ * expiring order of the faster decaying overflow shelves right away, so the orders cascade towards the slower decaying shelves as the
+ * spaces free up. The orders to move are found from the heads of the overflow indexes, so no shelf is scanned.
+ * <p>
+ * When all the overflow shelves are full, the soonest expiring overflow order(the minimum of the overflow index heads) is offered to the
+ * {@link IEvictionPolicy} as the eviction candidate.
+ * <p>
+ * The priority index doubles as the expiry schedule, so this engine supports only {@link EarliestDeadlinePickupStrategy}.
+ * <p>
+ * The shelves are kept in a {@link ShelfRegistry}, and the occupancies and the mover queues in arrays, all indexed by the ordinals of
+ * the temperatures, so no operation looks up a map.
+ * <p>
+ * The shelves can be reconfigured while the pod is running, though as the arrays are not reallocated, the sum of the capacities can't
+ * grow beyond the sum this pod was created with.
+ * <p>
+ * Once the pod is warmed up, adding, polling by {@link #pollOrderId()}, moving and expiring orders allocate nothing as long as no
+ * observer is registered. The {@link AddResult}s are flyweights of the {@link ShelfRegistry}, one per shelf, order state and outcome,
+ * and the {@link Order} instances for the observers are created only when there are observers. The candidate order offered to the
+ * {@link IEvictionPolicy} is created once per candidate, so the adds rejected on full shelves do not allocate either, only an
+ * eviction does.
+ * <p>
+ * A {@link Reservation} counts in the occupancy of its shelf like a stored order, and is kept in a map by its id and in a heap by its
+ * expiry timestamp, both under the same lock. The expiry thread sleeps until the earlier of the head order and the head reservation
+ * expires. A committed or released reservation is left in the heap, and is skipped once it reaches the head.
+ * <p>
+ * The orders of {@link #addOrderAsync(Order, long)} which found no space wait in a {@link PendingOrderQueue}. The operations which free
+ * a space offer it to the pending orders after releasing the lock, so the futures never complete under the lock, and the expiry
+ * thread wakes up at the deadlines of the pending orders as well.
+ * <p>
+ * The time is read from the {@link IClock} of {@link ShelfPodOptions}. A pod driven by a
+ * {@link com.cloudkitchens.fulfillment.common.VirtualClock} is not expected to start the background activities, the driver advances
+ * the clock and calls {@link #expireOrders()} instead.
+ */
+@Slf4j @ThreadSafe public class ArrayShelfPod implements IShelfPod {
+
+    private static final int NONE = -1;
+
+    // Replaced as a whole under the lock by reconfigure(), and read without the lock by getShelves().
+    private volatile ShelfRegistry shelfRegistry;
+    // Stored orders and held reservations on each shelf.
+    private final int[] occupancy;
+    private final int[] reservedSpaces;
+    private final OrderStore orderStore;
+    private final IHandleIndex priorityIndex;
+    private final IHandleIndex[] moverQueues;
+    // Orders stored on each overflow shelf, indexed by the ordinal of its temperature.
+    private final IHandleIndex[] overflowIndexes;
+    private final IdIndex idIndex;
+    // Candidate last offered to the eviction policy, and the expiry timestamp it had. It is offered again as long as the same order
+    // is the candidate, which is while the policy keeps rejecting the incoming orders on full shelves.
+    private Order evictionCandidate;
+    private long evictionCandidateExpiryInMs;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled whenever the head of the priority index changes, so the expiry thread can recalculate how long it has to wait.
+    private final Condition headChanged = lock.newCondition();
+    private final Queue<IShelfPodObserver> observers = new ConcurrentLinkedQueue<>();
+    private final IEvictionPolicy evictionPolicy;
+    private final IDecayModel decayModel;
+    private final IClock clock;
+    // Null unless the adds are made idempotent by ShelfPodOptions.
+    private final DuplicateOrderFilter duplicateOrderFilter;
+    private final Map<Long, Reservation> reservations = new HashMap<>();
+    private final PriorityQueue<Reservation> reservationExpiries =
+        new PriorityQueue<>(Comparator.comparingLong(Reservation::getExpiryTimestampInMs));
+    private final long reservationGracePeriodInMs;
+    private long lastReservationId;
+    private final PendingOrderQueue pendingOrders;
+    private volatile ExecutorService executorService;
+
+    /**
+     * Initializes ArrayShelfPod with the given list of shelves. The given list should contain one shelf per {@link Temperature}, and an
+     * overflow shelf.
+     *
+     * @param shelves
+     * @throws IllegalArgumentException if a temperature has more than one shelf, or if there is no overflow shelf.
+     */
+    public ArrayShelfPod(List<Shelf> shelves) {
+        this(shelves, ShelfPodOptions.defaults());
+    }
+
+    /**
+     * Initializes ArrayShelfPod with the given list of shelves and options. The given list should contain one shelf per
+     * {@link Temperature}, and an overflow shelf.
+     *
+     * @param shelves
+     * @param shelfPodOptions
+     * @throws IllegalArgumentException if the given pickup strategy is not supported, or if the given shelves are not one per temperature.
+     */
+    public ArrayShelfPod(List<Shelf> shelves, ShelfPodOptions shelfPodOptions) {
+        if (!(shelfPodOptions.getPickupStrategy() instanceof EarliestDeadlinePickupStrategy))
+            throw new IllegalArgumentException(
+                "ArrayShelfPod supports only EarliestDeadlinePickupStrategy, given:" + shelfPodOptions.getPickupStrategy().getClass()
+                    .getSimpleName());
+        this.evictionPolicy = shelfPodOptions.getEvictionPolicy();
+        this.decayModel = shelfPodOptions.getDecayModel();
+        this.clock = shelfPodOptions.getClock();
+        this.duplicateOrderFilter = shelfPodOptions.createDuplicateOrderFilter();
+        this.reservationGracePeriodInMs = shelfPodOptions.getReservationGracePeriodInMs();
+        this.shelfRegistry = new ShelfRegistry(shelves);
+        int temperatures = shelfRegistry.size();
+        int totalCapacity = shelfRegistry.getTotalCapacity();
+        this.occupancy = new int[temperatures];
+        this.reservedSpaces = new int[temperatures];
+        this.pendingOrders = new PendingOrderQueue(this::tryAddOrder, this::addOrder, clock, temperatures);
+        this.orderStore = new OrderStore(totalCapacity);
+        this.priorityIndex = createOrderIndex(totalCapacity, shelfPodOptions);
+        this.idIndex = new IdIndex(totalCapacity);
+        this.moverQueues = new IHandleIndex[temperatures];
+        for (Temperature temperature : shelfRegistry.getRegularShelves()) {
+            moverQueues[temperature.ordinal()] = createOrderIndex(totalCapacity, shelfPodOptions);
+        }
+        this.overflowIndexes = new IHandleIndex[temperatures];
+        for (Temperature temperature : shelfRegistry.getOverflowShelves()) {
+            overflowIndexes[temperature.ordinal()] = createOrderIndex(totalCapacity, shelfPodOptions);
+        }
+    }
+
+    private IHandleIndex createOrderIndex(int capacity, ShelfPodOptions shelfPodOptions) {
+        switch (shelfPodOptions.getOrderIndexType()) {
+            case CalendarQueue:
+                return new CalendarQueue(capacity, orderStore::compareByExpiry, orderStore::getExpiryTimestampInMs,
+                    shelfPodOptions.getCalendarQueueGranularityInMs());
+            default:
+                return new HandleHeap(capacity, orderStore::compareByExpiry);
+        }
+    }
+
+    @Override public List<Shelf> getShelves() {
+        return shelfRegistry.getShelves();
+    }
+
+    /**
+     * Applies the capacities and the decay rate factors of the given shelves. A shrunk shelf is not evicted, it just does not accept
+     * new orders until it is drained below the new capacity. A grown regular shelf takes the overflow orders of its temperature
+     * right away, and a grown overflow shelf takes the orders of the faster decaying overflow shelves.
+     *
+     * @param shelves
+     * @throws IllegalArgumentException if the given shelves do not match the temperatures of the current shelves, or if the sum of
+     *                                  their capacities is more than the capacity allocated by this pod.
+     */
+    @Override public void reconfigure(List<Shelf> shelves) {
+        lock.lock();
+        try {
+            ShelfRegistry updated = new ShelfRegistry(shelves);
+            if (!shelfRegistry.hasSameTemperatures(updated))
+                throw new IllegalArgumentException("Shelves can only be reconfigured, not added or removed, given:" + shelves);
+            if (updated.getTotalCapacity() > orderStore.capacity())
+                throw new IllegalArgumentException(
+                    "Total capacity:" + updated.getTotalCapacity() + " is more than the allocated capacity:" + orderStore.capacity());
+            shelfRegistry = updated;
+            for (Temperature temperature : updated.getRegularShelves()) {
+                moveFromOverflowShelf(temperature);
+            }
+            for (Temperature temperature : updated.getOverflowShelves()) {
+                moveToOverflowShelf(temperature);
+            }
+        } finally {
+            lock.unlock();
+        }
+        pendingOrders.admit();
+        log.info("Reconfigured shelves={}", shelves);
+    }
+
+    private AddResult getAddResult(boolean added, OrderState orderState, int shelfIndex) {
+        return shelfRegistry.getAddResult(added, orderState, shelfIndex);
+    }
+
+    @Override public void startBackgroundActivities() {
+        executorService = ExecutorServicesUtil.createFixedThreadPool("array-shelf-pod-thread-", 1);
+        executorService.submit(new MarkExpiredThread());
+    }
+
+    @Override public void stopBackgroundActivities() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds the given order to the regular shelf of its temperature, if there is no space available then to the overflow shelves.
+     * Running time complexity is O(log N).
+     * <p>
+     * When {@link ShelfPodOptions#getDeduplicationWindowInMs()} is set, an order whose id was already added within the window is not
+     * added again, the result of the first add is returned instead, and the observers are not notified of the duplicate.
+     *
+     * @param order
+     * @return addResult, whether the add was successful or not, orderstate at the end of add operation, the shelf that was attempted for hosting the order.
+     */
+    @Override public AddResult addOrder(Order order) {
+        shelfRegistry.checkRegularShelf(order.getTemperature());
+        return addOrderOnce(order, null);
+    }
+
+    /**
+     * Adds the given order into the space held by the given reservation, see {@link IShelfPod#commit(Reservation, Order)}.
+     * Running time complexity is O(log N).
+     *
+     * @param reservation
+     * @param order
+     * @return
+     */
+    @Override public AddResult commit(Reservation reservation, Order order) {
+        if (order.getTemperature() != reservation.getTemperature())
+            throw new IllegalArgumentException(
+                "Order temperature:" + order.getTemperature() + " does not match the reservation temperature:"
+                + reservation.getTemperature());
+        return addOrderOnce(order, reservation);
+    }
+
+    private AddResult addOrderOnce(Order order, Reservation reservation) {
+        if (duplicateOrderFilter == null)
+            return addNewOrder(order, reservation);
+        AddResult addResult = duplicateOrderFilter.claim(order.getId());
+        if (addResult != null) {
+            log.debug("Ignoring duplicate order={} addResult={}", order, addResult);
+            if (reservation != null) {
+                release(reservation);
+            }
+            return addResult;
+        }
+        try {
+            addResult = addNewOrder(order, reservation);
+            return addResult;
+        } finally {
+            duplicateOrderFilter.complete(order.getId(), addResult);
+        }
+    }
+
+    /**
+     * @param order
+     * @param reservation whose space is taken by the order if it is still held, or null.
+     * @return
+     */
+    private AddResult addNewOrder(Order order, Reservation reservation) {
+        AddResult addResult;
+        lock.lock();
+        try {
+            Temperature shelfType = order.getTemperature();
+            boolean reserved = reservation != null && removeReservation(reservation);
+            if (reserved) {
+                // The space freed by the reservation is taken by the order right away, as no one else can take it under the lock.
+                shelfType = reservation.getShelfType();
+            }
+            if (order.getOrderState() != OrderState.Created) {
+                // Only new orders can be added, an order which was already added to a shelf pod is rejected.
+                addResult = getAddResult(false, order.getOrderState(), shelfType.ordinal());
+            } else {
+                addResult = addOrder(order, shelfType);
+            }
+            if (!addResult.isAdded() && order.getOrderState() == OrderState.Created) {
+                addResult = addToOverflowShelf(order);
+            }
+            if (reserved && !addResult.isAdded()) {
+                // The order did not take the reserved space, like an order which came expired, so an overflow order can take it.
+                fillSpace(shelfType);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (reservation != null && !addResult.isAdded()) {
+            pendingOrders.admit();
+        }
+        // Iterating the observers creates an iterator, so it is skipped when there are none.
+        if (!observers.isEmpty()) {
+            for (IShelfPodObserver observer : observers) {
+                observer.postAddOrder(order, addResult);
+            }
+        }
+        return addResult;
+    }
+
+    private AddResult addOrder(Order order, Temperature shelfType) {
+        long now = clock.currentTimeMillis();
+        long expiryTimestampInMs = getExpiryTimestampInMs(order, shelfType);
+        int shelfIndex = shelfType.ordinal();
+        if (expiryTimestampInMs <= now) {
+            order.setOrderState(OrderState.CameExpired);
+        } else if (occupancy[shelfIndex] < shelfRegistry.getCapacity(shelfIndex)) {
+            int handle = orderStore.store(order, shelfType, expiryTimestampInMs);
+            idIndex.put(order.getId(), handle);
+            occupancy[shelfIndex]++;
+            addToPriorityIndex(handle);
+            if (shelfType.isOverflow()) {
+                addToOverflowIndexes(handle);
+            }
+            order.setOrderState(BaseShelfPod.getStoredOrderStateForShelfType(shelfType));
+            return getAddResult(true, order.getOrderState(), shelfIndex);
+        }
+        return getAddResult(false, order.getOrderState(), shelfIndex);
+    }
+
+    /**
+     * Adds the given order to the slowest decaying overflow shelf which has a space. If all the overflow shelves are full, the space of
+     * the order evicted by the {@link IEvictionPolicy} is taken, otherwise the order is rejected.
+     *
+     * @param order
+     * @return
+     */
+    private AddResult addToOverflowShelf(Order order) {
+        Temperature shelfType = getOverflowShelfWithSpace();
+        if (shelfType == null) {
+            shelfType = evictOverflowOrderFor(order);
+        }
+        if (shelfType != null)
+            return addOrder(order, shelfType);
+        order.setOrderState(OrderState.ExpiredOnNoSpace);
+        List<Temperature> overflowShelves = shelfRegistry.getOverflowShelves();
+        return getAddResult(false, order.getOrderState(), overflowShelves.get(overflowShelves.size() - 1).ordinal());
+    }
+
+    /**
+     * Returns the slowest decaying overflow shelf which has a space, or null if all of them are full. As the value of an order decays
+     * slower on a slower decaying shelf, this is the shelf where an overflow order keeps the most of its value.
+     *
+     * @return
+     */
+    private Temperature getOverflowShelfWithSpace() {
+        List<Temperature> overflowShelves = shelfRegistry.getOverflowShelves();
+        // Indexed loops, as an iterator is an allocation on every add.
+        for (int i = 0; i < overflowShelves.size(); i++) {
+            if (hasSpace(overflowShelves.get(i)))
+                return overflowShelves.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Holds a space on the regular shelf of the given temperature, or on an overflow shelf if the regular shelf is full.
+     * Running time complexity is O(log N).
+     *
+     * @param temperature
+     * @param expectedReadyTimestampInMs
+     * @return
+     */
+    @Override public Reservation reserve(Temperature temperature, long expectedReadyTimestampInMs) {
+        shelfRegistry.checkRegularShelf(temperature);
+        lock.lock();
+        try {
+            Reservation reservation = holdSpace(temperature, expectedReadyTimestampInMs);
+            if (reservation == null) {
+                log.debug("No space to reserve for temperature={}", temperature);
+                return null;
+            }
+            reservationExpiries.add(reservation);
+            if (reservationExpiries.peek() == reservation) {
+                headChanged.signal();
+            }
+            log.debug("Reserved space, reservation={}", reservation);
+            return reservation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Holds a space for an order of the given temperature on its regular shelf, or on the slowest decaying overflow shelf which has a
+     * space. The caller should hold the lock, and should either watch the returned reservation for expiry or commit it.
+     *
+     * @param temperature
+     * @param expectedReadyTimestampInMs
+     * @return the reservation, or null if neither shelf has a space.
+     */
+    private Reservation holdSpace(Temperature temperature, long expectedReadyTimestampInMs) {
+        Temperature shelfType = hasSpace(temperature) ? temperature : getOverflowShelfWithSpace();
+        if (shelfType == null)
+            return null;
+        Reservation reservation = new Reservation(++lastReservationId, temperature, shelfType, expectedReadyTimestampInMs,
+            expectedReadyTimestampInMs + reservationGracePeriodInMs);
+        occupancy[shelfType.ordinal()]++;
+        reservedSpaces[shelfType.ordinal()]++;
+        reservations.put(reservation.getId(), reservation);
+        return reservation;
+    }
+
+    private boolean hasSpace(Temperature shelfType) {
+        return occupancy[shelfType.ordinal()] < shelfRegistry.getCapacity(shelfType);
+    }
+
+    /**
+     * Releases the space held by the given reservation, the space is filled right away like the space of a removed order, see
+     * {@link #fillSpace(Temperature)}. Running time complexity is O(log N).
+     *
+     * @param reservation
+     * @return
+     */
+    @Override public boolean release(Reservation reservation) {
+        boolean released;
+        lock.lock();
+        try {
+            released = releaseReservation(reservation);
+        } finally {
+            lock.unlock();
+        }
+        if (released) {
+            log.debug("Released reservation={}", reservation);
+            pendingOrders.admit();
+        }
+        return released;
+    }
+
+    private boolean releaseReservation(Reservation reservation) {
+        if (!removeReservation(reservation))
+            return false;
+        fillSpace(reservation.getShelfType());
+        return true;
+    }
+
+    /**
+     * Puts the given order into the {@link PendingOrderQueue}, which adds it right away if there is a space for it.
+     * Running time complexity is O(log N).
+     *
+     * @param order
+     * @param maxWaitInMs
+     * @return
+     */
+    @Override public CompletableFuture<AddResult> addOrderAsync(Order order, long maxWaitInMs) {
+        shelfRegistry.checkRegularShelf(order.getTemperature());
+        PendingOrder pendingOrder = pendingOrders.enqueue(order, maxWaitInMs);
+        lock.lock();
+        try {
+            // The deadline of the new order may be the earliest one the expiry thread has to wake up for.
+            headChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+        pendingOrders.admit();
+        return pendingOrder.getFuture();
+    }
+
+    /**
+     * Adds the given order if there is a space for it on the regular shelf of its temperature or on an overflow shelf, the space is
+     * held by a reservation until the order is added, so nothing is changed when there is no space.
+     *
+     * @param order
+     * @return addResult, or null if there is no space for the order.
+     */
+    private AddResult tryAddOrder(Order order) {
+        Reservation reservation;
+        lock.lock();
+        try {
+            reservation = holdSpace(order.getTemperature(), clock.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+        return reservation == null ? null : addOrderOnce(order, reservation);
+    }
+
+    /**
+     * Removes the given reservation if it is held, and frees its space without handing it to anyone. The reservation is left in
+     * {@link #reservationExpiries} until it reaches the head.
+     *
+     * @param reservation
+     * @return true if the reservation was held.
+     */
+    private boolean removeReservation(Reservation reservation) {
+        if (!reservations.remove(reservation.getId(), reservation))
+            return false;
+        occupancy[reservation.getShelfType().ordinal()]--;
+        reservedSpaces[reservation.getShelfType().ordinal()]--;
+        return true;
+    }
+
+    /**
+     * Releases the reservations whose expiry timestamp has passed, and drops the committed or released ones from the head of
+     * {@link #reservationExpiries}.
+     *
+     * @param now
+     * @return the number of reservations reclaimed.
+     */
+    private int expireReservations(long now) {
+        int reclaimed = 0;
+        for (Reservation reservation = reservationExpiries.peek(); reservation != null && (reservation.getExpiryTimestampInMs() <= now
+            || !reservations.containsKey(reservation.getId())); reservation = reservationExpiries.peek()) {
+            reservationExpiries.poll();
+            if (releaseReservation(reservation)) {
+                log.info("Reclaimed expired reservation={}", reservation);
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Offers the soonest expiring overflow order to the {@link IEvictionPolicy}, and evicts it if the policy decides so. The space of
+     * the evicted order is left for the incoming order, it is not filled by the other overflow orders.
+     * Running time complexity is O(log N).
+     *
+     * @param order the incoming order which could not find space on the overflow shelves.
+     * @return the overflow shelf where the incoming order can be added, or null if no order was evicted. An incoming order which has
+     * come expired on the shelf of the candidate does not evict it, the shelf is returned so that the order is rejected as expired.
+     */
+    private Temperature evictOverflowOrderFor(Order order) {
+        int candidateHandle = peekOverflowOrder(0);
+        if (candidateHandle == NONE)
+            return null;
+        Temperature shelfType = orderStore.getShelf(candidateHandle);
+        long now = clock.currentTimeMillis();
+        if (getExpiryTimestampInMs(order, shelfType) <= now)
+            return shelfType;
+        Order candidate = getEvictionCandidate(candidateHandle);
+        if (!evictionPolicy.shouldEvict(order, candidate, decayModel, shelfRegistry.getDecayRateFactor(shelfType), now))
+            return null;
+        evictionCandidate = null;
+        unstoreOrder(candidateHandle);
+        candidate.setOrderState(OrderState.EvictedFromOverflowShelf);
+        notifyObservers(candidate, ShelfOperation.Evict, shelfType);
+        log.debug("Evicted order, order={}", candidate);
+        return shelfType;
+    }
+
+    /**
+     * Returns the candidate order of the given handle for the eviction policy, the one created for the previous eviction attempt if
+     * the handle still stores the same order with the same expiry timestamp, i.e. if the order has not moved since.
+     *
+     * @param handle
+     * @return
+     */
+    private Order getEvictionCandidate(int handle) {
+        Order candidate = evictionCandidate;
+        long expiryTimestampInMs = orderStore.getExpiryTimestampInMs(handle);
+        if (candidate == null || candidate.getId() != orderStore.getId(handle) || evictionCandidateExpiryInMs != expiryTimestampInMs) {
+            candidate = orderStore.toOrder(handle, OrderState.StoredInOverflowShelf);
+            evictionCandidate = candidate;
+            evictionCandidateExpiryInMs = expiryTimestampInMs;
+        }
+        return candidate;
+    }
+
+    /**
+     * Returns the handle of the soonest expiring order on the overflow shelves from the given position of
+     * {@link ShelfRegistry#getOverflowShelves()} onwards, which is the minimum of the heads of their overflow indexes.
+     *
+     * @param fromPosition
+     * @return the handle, or -1 if those overflow shelves are empty.
+     */
+    private int peekOverflowOrder(int fromPosition) {
+        List<Temperature> overflowShelves = shelfRegistry.getOverflowShelves();
+        int candidateHandle = NONE;
+        for (int i = fromPosition; i < overflowShelves.size(); i++) {
+            int handle = overflowIndexes[overflowShelves.get(i).ordinal()].peek();
+            if (handle != NONE && (candidateHandle == NONE || orderStore.compareByExpiry(handle, candidateHandle) < 0)) {
+                candidateHandle = handle;
+            }
+        }
+        return candidateHandle;
+    }
+
+    private long getExpiryTimestampInMs(Order order, Temperature shelfType) {
+        return decayModel.getExpiryTimestampInMs(order.getCreatedTimestamp(), order.getShelfLifeInSecs(),
+            order.getDecayRate() * shelfRegistry.getDecayRateFactor(shelfType));
+    }
+
+    private void addToPriorityIndex(int handle) {
+        priorityIndex.add(handle);
+        if (priorityIndex.peek() == handle) {
+            headChanged.signal();
+        }
+    }
+
+    private void addToOverflowIndexes(int handle) {
+        moverQueues[orderStore.getTemperature(handle).ordinal()].add(handle);
+        overflowIndexes[orderStore.getShelf(handle).ordinal()].add(handle);
+    }
+
+    private void removeFromOverflowIndexes(int handle) {
+        moverQueues[orderStore.getTemperature(handle).ordinal()].remove(handle);
+        overflowIndexes[orderStore.getShelf(handle).ordinal()].remove(handle);
+    }
+
+    /**
+     * Removes the order from the shelf and from all the indexes, releases its handle, and fills the freed space.
+     *
+     * @param handle
+     */
+    private void removeOrder(int handle) {
+        fillSpace(unstoreOrder(handle));
+    }
+
+    /**
+     * Removes the order from the shelf and from all the indexes, and releases its handle. The freed space is left empty.
+     *
+     * @param handle
+     * @return the shelf which stored the order.
+     */
+    private Temperature unstoreOrder(int handle) {
+        Temperature shelfType = orderStore.getShelf(handle);
+        priorityIndex.remove(handle);
+        if (shelfType.isOverflow()) {
+            removeFromOverflowIndexes(handle);
+        }
+        occupancy[shelfType.ordinal()]--;
+        idIndex.remove(orderStore.getId(handle), handle);
+        orderStore.release(handle);
+        return shelfType;
+    }
+
+    /**
+     * Fills the spaces of the given shelf, a regular shelf takes the overflow orders of its temperature, and an overflow shelf takes
+     * the orders of the faster decaying overflow shelves.
+     *
+     * @param shelfType
+     */
+    private void fillSpace(Temperature shelfType) {
+        if (shelfType.isOverflow()) {
+            moveToOverflowShelf(shelfType);
+        } else {
+            moveFromOverflowShelf(shelfType);
+        }
+    }
+
+    /**
+     * Moves the soonest expiring order of the given temperature from the overflow shelves to the regular shelf, if there is space
+     * available on the regular shelf. The remaining shelf value of the order is carried over to the regular shelf, and the space it
+     * freed on its overflow shelf is filled in turn.
+     *
+     * @param shelfType
+     */
+    private void moveFromOverflowShelf(Temperature shelfType) {
+        int shelfIndex = shelfType.ordinal();
+        IHandleIndex moverQueue = moverQueues[shelfIndex];
+        long now = clock.currentTimeMillis();
+        while (occupancy[shelfIndex] < shelfRegistry.getCapacity(shelfIndex) && !moverQueue.isEmpty()) {
+            int handle = moverQueue.peek();
+            long expiryTimestampInMs = orderStore.getExpiryTimestampInMs(handle);
+            if (expiryTimestampInMs <= now) {
+                // The expiry thread did not get a chance yet to remove this order, lets expire it here.
+                expireOrder(handle);
+                continue;
+            }
+            Temperature overflowShelfType = orderStore.getShelf(handle);
+            priorityIndex.remove(handle);
+            removeFromOverflowIndexes(handle);
+            occupancy[overflowShelfType.ordinal()]--;
+            setMovedExpiryTimestampInMs(handle, overflowShelfType, shelfType, now);
+            orderStore.setTimeSpentOnOverflowShelfInMs(handle, now - orderStore.getCreatedTimestamp(handle));
+            orderStore.setShelf(handle, shelfType);
+            occupancy[shelfIndex]++;
+            addToPriorityIndex(handle);
+            notifyObservers(handle, OrderState.StoredInRegularShelf, ShelfOperation.Move);
+            moveToOverflowShelf(overflowShelfType);
+        }
+    }
+
+    /**
+     * Moves the soonest expiring orders of the overflow shelves which decay faster than the given overflow shelf into it, while it has
+     * space available. The remaining shelf value of an order is carried over, and the space it freed is filled the same way, so the
+     * orders cascade towards the slowest decaying overflow shelf. Running time complexity is O(S + log N) per order moved, S being the
+     * number of overflow shelves.
+     *
+     * @param shelfType
+     */
+    private void moveToOverflowShelf(Temperature shelfType) {
+        List<Temperature> overflowShelves = shelfRegistry.getOverflowShelves();
+        double decayRateFactor = shelfRegistry.getDecayRateFactor(shelfType);
+        // Shelves are ordered by their decay rate factors, and an order gains nothing by moving to a shelf which decays as fast.
+        int fromPosition = overflowShelves.indexOf(shelfType) + 1;
+        while (fromPosition < overflowShelves.size()
+            && shelfRegistry.getDecayRateFactor(overflowShelves.get(fromPosition)) <= decayRateFactor)
+            fromPosition++;
+        long now = clock.currentTimeMillis();
+        while (hasSpace(shelfType)) {
+            int handle = peekOverflowOrder(fromPosition);
+            if (handle == NONE)
+                return;
+            if (orderStore.getExpiryTimestampInMs(handle) <= now) {
+                // The expiry thread did not get a chance yet to remove this order, lets expire it here.
+                expireOrder(handle);
+                continue;
+            }
+            Temperature fromShelfType = orderStore.getShelf(handle);
+            // The indexes are keyed by the expiry timestamp, so the order is taken out of them before its expiry timestamp changes.
+            priorityIndex.remove(handle);
+            removeFromOverflowIndexes(handle);
+            occupancy[fromShelfType.ordinal()]--;
+            setMovedExpiryTimestampInMs(handle, fromShelfType, shelfType, now);
+            orderStore.setShelf(handle, shelfType);
+            occupancy[shelfType.ordinal()]++;
+            addToPriorityIndex(handle);
+            addToOverflowIndexes(handle);
+            notifyObservers(handle, OrderState.StoredInOverflowShelf, ShelfOperation.Move);
+            moveToOverflowShelf(fromShelfType);
+        }
+    }
+
+    /**
+     * Carries the remaining shelf value of the order over from the shelf which stored it till now to the given shelf.
+     *
+     * @param handle
+     * @param fromShelfType
+     * @param toShelfType
+     * @param now
+     */
+    private void setMovedExpiryTimestampInMs(int handle, Temperature fromShelfType, Temperature toShelfType, long now) {
+        double decayRate = orderStore.getDecayRate(handle);
+        orderStore.setExpiryTimestampInMs(handle, decayModel.getMovedExpiryTimestampInMs(orderStore.getExpiryTimestampInMs(handle), now,
+            orderStore.getShelfLifeInSecs(handle), decayRate * shelfRegistry.getDecayRateFactor(fromShelfType),
+            decayRate * shelfRegistry.getDecayRateFactor(toShelfType)));
+    }
+
+    /**
+     * Removes the order from the shelf, as it has reached zero shelf value.
+     *
+     * @param handle
+     */
+    private void expireOrder(int handle) {
+        notifyObservers(handle, BaseShelfPod.getExpiredOrderStateForShelf(orderStore.getShelf(handle)), ShelfOperation.Expire);
+        removeOrder(handle);
+    }
+
+    /**
+     * Notifies the observers about an operation on the order stored at the given handle, along with the shelf the handle is on.
+     * Order instance is created only if there are observers.
+     *
+     * @param handle
+     * @param orderState   state of the order at the end of the operation.
+     * @param shelfOperation
+     */
+    private void notifyObservers(int handle, OrderState orderState, ShelfOperation shelfOperation) {
+        if (!observers.isEmpty()) {
+            notifyObservers(orderStore.toOrder(handle, orderState), shelfOperation, orderStore.getShelf(handle));
+        }
+    }
+
+    private void notifyObservers(Order order, ShelfOperation shelfOperation, Temperature shelfType) {
+        for (IShelfPodObserver observer : observers) {
+            observer.postShelfOperation(order, shelfOperation, shelfType);
+        }
+    }
+
+    /**
+     * Returns the soonest expiring order for pickup. Orders which are found expired are removed and marked as expired.
+     * Running time complexity is O(log N).
+     *
+     * @return an order if the order is available on the shelf and is not expired, otherwise null.
+     */
+    @Override public Order pollOrder() {
+        lock.lock();
+        try {
+            int handle = peekUnexpiredOrder();
+            if (handle == NONE)
+                return null;
+            Temperature shelfType = orderStore.getShelf(handle);
+            Order order = orderStore.toOrder(handle, BaseShelfPod.getDeliveredOrderStateForShelf(shelfType));
+            removeOrder(handle);
+            notifyObservers(order, ShelfOperation.Poll, shelfType);
+            return order;
+        } finally {
+            lock.unlock();
+            pendingOrders.admit();
+        }
+    }
+
+    /**
+     * Same as {@link #pollOrder()}, but returns only the id of the polled order, so no {@link Order} is created unless there are
+     * observers. This is for the callers which track the orders by their ids.
+     * Running time complexity is O(log N).
+     *
+     * @return id of the polled order, or -1 if there is no unexpired order on the shelves.
+     */
+    @Override public long pollOrderId() {
+        lock.lock();
+        try {
+            int handle = peekUnexpiredOrder();
+            if (handle == NONE)
+                return NONE;
+            long id = orderStore.getId(handle);
+            notifyObservers(handle, BaseShelfPod.getDeliveredOrderStateForShelf(orderStore.getShelf(handle)), ShelfOperation.Poll);
+            removeOrder(handle);
+            return id;
+        } finally {
+            lock.unlock();
+            pendingOrders.admit();
+        }
+    }
+
+    /**
+     * Returns the handle of the soonest expiring order, after expiring the orders which are found expired.
+     *
+     * @return
+     */
+    private int peekUnexpiredOrder() {
+        long now = clock.currentTimeMillis();
+        int handle = priorityIndex.peek();
+        while (handle != NONE && orderStore.getExpiryTimestampInMs(handle) <= now) {
+            expireOrder(handle);
+            handle = priorityIndex.peek();
+        }
+        return handle;
+    }
+
+    @Override public Order getOrder(long id) {
+        lock.lock();
+        try {
+            int handle = idIndex.get(id);
+            if (handle == NONE)
+                return null;
+            return orderStore.toOrder(handle, BaseShelfPod.getStoredOrderStateForShelfType(orderStore.getShelf(handle)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the order from the shelf and from all the indexes. If it was on a regular shelf, the soonest expiring overflow order of
+     * that temperature is moved into its space right away.
+     *
+     * @param id
+     * @return
+     */
+    @Override public boolean cancelOrder(long id) {
+        lock.lock();
+        try {
+            int handle = idIndex.get(id);
+            if (handle == NONE)
+                return false;
+            notifyObservers(handle, OrderState.Cancelled, ShelfOperation.Cancel);
+            removeOrder(handle);
+            return true;
+        } finally {
+            lock.unlock();
+            pendingOrders.admit();
+        }
+    }
+
+    /**
+     * Expires all the orders whose expiry timestamp has passed as per the clock of this pod, reclaims the expired reservations, and
+     * completes the pending orders whose deadline has passed. The expiry thread does this as the orders expire, this is for the callers
+     * which drive the pod by a virtual clock without starting the background activities.
+     *
+     * @return the number of orders expired.
+     */
+    public int expireOrders() {
+        lock.lock();
+        try {
+            long now = clock.currentTimeMillis();
+            expireReservations(now);
+            int expired = 0;
+            for (int handle = priorityIndex.peek(); handle != NONE && orderStore.getExpiryTimestampInMs(handle) <= now;
+                 handle = priorityIndex.peek()) {
+                expireOrder(handle);
+                expired++;
+            }
+            return expired;
+        } finally {
+            lock.unlock();
+            pendingOrders.admit();
+        }
+    }
+
+    @Override public List<Order> getOrders() {
+        lock.lock();
+        try {
+            List<Integer> handles = new ArrayList<>(priorityIndex.size());
+            for (int i = 0; i < priorityIndex.size(); i++) {
+                handles.add(priorityIndex.get(i));
+            }
+            handles.sort(orderStore::compareByExpiry);
+            List<Order> orders = new ArrayList<>(handles.size());
+            for (int handle : handles) {
+                orders.add(orderStore.toOrder(handle, BaseShelfPod.getStoredOrderStateForShelfType(orderStore.getShelf(handle))));
+            }
+            return orders;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks that the occupancy of each shelf matches the orders of that shelf in the priority index and does not exceed its capacity,
+     * that every stored order has a handle in the {@link OrderStore}, and that the mover queues and the overflow indexes contain
+     * exactly the overflow orders.
+     * The check runs under the lock, so it sees the pod between two operations.
+     *
+     * @return
+     */
+    @Override public List<String> checkInvariants() {
+        lock.lock();
+        try {
+            List<String> violations = new ArrayList<>();
+            int[] storedOrders = new int[shelfRegistry.size()];
+            // Overflow orders by their temperature.
+            int[] overflowOrders = new int[shelfRegistry.size()];
+            for (int i = 0; i < priorityIndex.size(); i++) {
+                int handle = priorityIndex.get(i);
+                Temperature shelfType = orderStore.getShelf(handle);
+                storedOrders[shelfType.ordinal()]++;
+                if (idIndex.get(orderStore.getId(handle)) != handle)
+                    violations.add("orderId:" + orderStore.getId(handle) + " is not in the id index");
+                if (shelfType.isOverflow()) {
+                    overflowOrders[orderStore.getTemperature(handle).ordinal()]++;
+                    if (!moverQueues[orderStore.getTemperature(handle).ordinal()].contains(handle))
+                        violations.add("orderId:" + orderStore.getId(handle) + " is not in the mover queue of its temperature");
+                    if (!overflowIndexes[shelfType.ordinal()].contains(handle))
+                        violations.add("orderId:" + orderStore.getId(handle) + " is not in the overflow index of its shelf");
+                }
+            }
+            if (orderStore.size() != priorityIndex.size())
+                violations.add("orderStore holds orders:" + orderStore.size() + " for indexed orders:" + priorityIndex.size());
+            if (idIndex.size() != priorityIndex.size())
+                violations.add("idIndex has orders:" + idIndex.size() + " for indexed orders:" + priorityIndex.size());
+            int[] heldReservations = new int[shelfRegistry.size()];
+            for (Reservation reservation : reservations.values()) {
+                heldReservations[reservation.getShelfType().ordinal()]++;
+            }
+            for (Shelf shelf : shelfRegistry.getShelves()) {
+                int index = shelf.getTemperature().ordinal();
+                if (occupancy[index] != storedOrders[index] + reservedSpaces[index])
+                    violations.add("shelf:" + shelf.getTemperature() + " has occupancy:" + occupancy[index] + " for stored orders:"
+                        + storedOrders[index] + " and reserved spaces:" + reservedSpaces[index]);
+                if (reservedSpaces[index] != heldReservations[index])
+                    violations.add("shelf:" + shelf.getTemperature() + " has reserved spaces:" + reservedSpaces[index]
+                        + " for reservations:" + heldReservations[index]);
+                if (storedOrders[index] > shelf.getCapacity())
+                    violations.add("shelf:" + shelf.getTemperature() + " stores orders:" + storedOrders[index] + " over capacity:"
+                        + shelf.getCapacity());
+            }
+            for (Temperature temperature : shelfRegistry.getRegularShelves()) {
+                int queued = moverQueues[temperature.ordinal()].size();
+                if (queued != overflowOrders[temperature.ordinal()])
+                    violations.add("mover queue of shelf:" + temperature + " has orders:" + queued + " for overflow orders:"
+                        + overflowOrders[temperature.ordinal()]);
+            }
+            for (Temperature temperature : shelfRegistry.getOverflowShelves()) {
+                int indexed = overflowIndexes[temperature.ordinal()].size();
+                if (indexed != storedOrders[temperature.ordinal()])
+                    violations.add("overflow index of shelf:" + temperature + " has orders:" + indexed + " for stored orders:"
+                        + storedOrders[temperature.ordinal()]);
+            }
+            return violations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override public boolean addObserver(IShelfPodObserver shelfPodObserver) {
+        return observers.add(shelfPodObserver);
+    }
+
+    @Override public boolean removeObserver(IShelfPodObserver shelfPodObserver) {
+        return observers.remove(shelfPodObserver);
+    }
+
+    /**
+     * Waits until the head of the priority index or the head reservation expires, and then removes it from the shelf. The wait is
+     * recalculated whenever either head changes. The pending orders are offered the freed spaces, and are added at their deadline.
+     */
+    private class MarkExpiredThread implements Runnable {
+
+        @Override public void run() {
+            log.info("Launching mark expiring thread.");
+            lock.lock();
+            try {
+                boolean spaceFreed = false;
+                while (true) {
+                    long now = clock.currentTimeMillis();
+                    spaceFreed |= expireReservations(now) > 0;
+                    int handle = priorityIndex.peek();
+                    long nextExpiryTimestampInMs = handle == NONE ? Long.MAX_VALUE : orderStore.getExpiryTimestampInMs(handle);
+                    if (nextExpiryTimestampInMs <= now) {
+                        expireOrder(handle);
+                        spaceFreed = true;
+                        continue;
+                    }
+                    long pendingDeadlineInMs = pendingOrders.getEarliestDeadlineInMs();
+                    if ((spaceFreed && !pendingOrders.isEmpty()) || pendingDeadlineInMs <= now) {
+                        spaceFreed = false;
+                        lock.unlock();
+                        try {
+                            pendingOrders.admit();
+                        } finally {
+                            lock.lock();
+                        }
+                        continue;
+                    }
+                    nextExpiryTimestampInMs = Math.min(nextExpiryTimestampInMs, pendingDeadlineInMs);
+                    Reservation reservation = reservationExpiries.peek();
+                    if (reservation != null) {
+                        nextExpiryTimestampInMs = Math.min(nextExpiryTimestampInMs, reservation.getExpiryTimestampInMs());
+                    }
+                    if (nextExpiryTimestampInMs == Long.MAX_VALUE) {
+                        headChanged.await();
+                    } else {
+                        headChanged.await(nextExpiryTimestampInMs - now, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                //If the thread is interrupted, lets not proceed further this task.
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,24 +1,40 @@
 package com.cloudkitchens.fulfillment.entities.shelves;
 
+import com.cloudkitchens.fulfillment.common.SystemClock;
 import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.jfr.FlightRecorderEvents;
+import com.cloudkitchens.fulfillment.entities.jfr.ShelfOperationEvent;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
 import com.cloudkitchens.fulfillment.entities.orders.comparators.OrderExpiryComparator;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.LockContentionMonitor;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.LockContentionReport;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.SyncPoint;
+import com.cloudkitchens.fulfillment.entities.shelves.dedup.DuplicateOrderFilter;
+import com.cloudkitchens.fulfillment.entities.shelves.pending.PendingOrder;
+import com.cloudkitchens.fulfillment.entities.shelves.pending.PendingOrderQueue;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.IEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.IPickupStrategy;
+import com.google.common.util.concurrent.Striped;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.concurrent.ThreadSafe;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 /**
@@ -34,80 +50,155 @@ import java.util.stream.Collectors;
  * 2. {@link #moveOrder(Order)}, blocking call
  * 3. {@link #removeOrder(Order)}, non blocking call
  * 4. {@link #pollOrder()}, non blocking call
+ * 5. {@link #expireOrder(Order)}, non blocking call
+ * 6. {@link #evictOrder(Order)}, non blocking call
+ * 7. {@link #cancelOrder(long)}, non blocking call
+ * 8. {@link #reserve(Temperature, long)}, non blocking call
  * <p>
  * <p>
- * Internally one queue(priority queue, priority is calculated by order's shelf time) is used as shelf
+ * Internally one sorted index(sort order is defined by the {@link IPickupStrategy}, by default the order's expiry time) is used as shelf
  * and that is shared across multiple shelves. The amount of orders that each shelf can add
  * is controlled by each shelf's capacity. There is a semaphore associated with each shelf.
- * Any addition/removal to the queue is controlled by these semaphores.
+ * Any addition/removal to the index is controlled by these semaphores.
  * <p>
- * Sharing one queue across all shelves helps in reducing kitchen waste. If we have separate queues for each shelf,
+ * Sharing one index across all shelves helps in reducing kitchen waste. If we have separate indexes for each shelf,
  * then pickup wont be shared across multiple shelves, so the order which will expire sooner across multiple shelves
- * wont be delivered first. So this design chose to share one queue to deliver the order
- * which will expire sooner across multiple shelves.
+ * wont be delivered first. So this design chose to share one index, and {@link #pollOrder()} lets the {@link IPickupStrategy}
+ * select the order to deliver from it.
+ * <p>
+ * When both the regular shelf and the overflow shelf are full, the {@link IEvictionPolicy} from {@link ShelfPodOptions} decides whether
+ * the soonest expiring overflow order is evicted to make space for the incoming order. The overflow orders are additionally kept in
+ * an index sorted by expiry timestamp, so the eviction candidate is found in O(log N).
+ * <p>
+ * The shelves are kept in a {@link ShelfRegistry}, and the semaphores in an array, both indexed by the ordinals of the temperatures,
+ * so the comparators of the indexes and the decay rates read arrays instead of hashing the temperatures on every call.
+ * <p>
+ * An order does not record which overflow shelf stores it, so this pod supports only the {@link Temperature#Overflow} shelf, the
+ * overflow tiers are supported by {@link ArrayShelfPod}.
+ * <p>
+ * The capacities and the decay rate factors of the shelves can be changed while the pod is running through {@link #reconfigure(List)}.
+ * An order's expiry timestamp is fixed when it is placed on a shelf, so a new decay rate factor applies to the orders placed after
+ * the change, and the indexes never have to be re-sorted.
+ * <p>
+ * The stored orders are additionally kept in a map by their id, so an order can be looked up and cancelled without scanning the index.
+ * <p>
+ * When {@link ShelfPodOptions#getLockContentionSamplingInterval()} is set, the acquisitions of the shelf semaphores, and of the queues
+ * of the subclasses, are accounted by a {@link LockContentionMonitor}, see {@link #getLockContentionReport()}.
+ * <p>
+ * A {@link Reservation} holds a permit of a shelf semaphore without an order in the index, see {@link #reserve(Temperature, long)}.
+ * The permit is taken by a single compare and set on the semaphore, so a reservation neither takes a lock nor waits in its queue.
+ * <p>
+ * The orders of {@link #addOrderAsync(Order, long)} which found no space wait in a {@link PendingOrderQueue}, which is offered every
+ * space released on the shelves. A pending order is admitted by taking the space like a reservation does.
  */
 
 @Slf4j @ThreadSafe public abstract class BaseShelfPod implements IShelfPod {
 
-    private final List<Shelf> shelves;
-    private final Map<Temperature, Shelf> tempShelfInfoMap;
-    protected final Map<Temperature, Double> decayRateFactors;
+    private static final int MOVE_LOCK_STRIPES = 64;
+    // How long a cancel waits before checking again an order which another thread is taking to an end state.
+    private static final long CANCEL_RETRY_WAIT_IN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    // Shelves are replaced as a whole by reconfigure(), so readers never see a partial configuration.
+    private volatile ShelfRegistry shelfRegistry;
     private final Comparator<Order> orderExpiryComparator;
     /**
-     * Java doesn't have any bounded threadsafe priority queue. Given that the shelf size is finite, we want to have bounded priority queue.
-     * So using semaphores to add max bound to priority queue. Any addition/removal operations to the queue should have corresponding
+     * Java doesn't have any bounded threadsafe sorted set. Given that the shelf size is finite, we want to have bounded sorted set.
+     * So using semaphores to add max bound to the index. Any addition/removal operations to the index should have corresponding
      * acquire/release semaphore operations respectively.
      */
-    private final BlockingQueue<Order> ordersQueue;
-    // A semaphore is associated with each shelf. Any order addition/removal from shelves is controlled through these semaphores.
-    private final Map<Temperature, Semaphore> spaces;
+    private final ConcurrentSkipListSet<Order> ordersIndex;
+    // A semaphore is associated with each shelf, indexed by the ordinal of its temperature. Any order addition/removal from shelves is
+    // controlled through these semaphores.
+    private final ResizableSemaphore[] spaces;
+    // Orders stored in the overflow shelf sorted by their expiry timestamp, the first order is the candidate for eviction.
+    private final ConcurrentSkipListSet<Order> overflowOrdersIndex;
+    // Stored orders by their id. An order is put before it is added to the index, and removed after it has reached an end state.
+    private final ConcurrentHashMap<Long, Order> ordersById = new ConcurrentHashMap<>();
+    // An order is out of the index while it is moved to a regular shelf. The mover holds the lock of the order meanwhile, so that a
+    // cancel of the order can wait for the move instead of spinning.
+    private final Striped<Lock> moveLocks = Striped.lock(MOVE_LOCK_STRIPES);
+    private final IEvictionPolicy evictionPolicy;
+    private final IDecayModel decayModel;
+    private final IPickupStrategy pickupStrategy;
+    private final LockContentionMonitor lockContentionMonitor;
+    // Null unless the adds are made idempotent by ShelfPodOptions.
+    private final DuplicateOrderFilter duplicateOrderFilter;
+    // Held reservations by their id, a reservation is removed by whichever of commit, release and expiry comes first.
+    private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong reservationIds = new AtomicLong();
+    private final long reservationGracePeriodInMs;
+    private final PendingOrderQueue pendingOrders;
 
     /**
-     * Initializes ShelfPod with the given list of shelves. The given list should contain one shelf per {@link Temperature}.
+     * Initializes ShelfPod with the given list of shelves. The given list should contain one shelf per {@link Temperature}, and an
+     * overflow shelf.
      *
      * @param shelves
+     * @throws IllegalArgumentException if a temperature has more than one shelf, or if there is no overflow shelf.
      */
     public BaseShelfPod(List<Shelf> shelves) {
-        this.shelves = ImmutableList.copyOf(shelves);
-        this.tempShelfInfoMap = getTempShelfInfoMap(shelves);
-        this.decayRateFactors = getDecayRateFactors(shelves);
-        this.orderExpiryComparator = new OrderExpiryComparator(decayRateFactors);
-        this.ordersQueue = new PriorityBlockingQueue<>(16, orderExpiryComparator);
-        this.spaces = createSpaces(shelves);
+        this(shelves, ShelfPodOptions.defaults());
     }
 
-    private static Map<Temperature, Shelf> getTempShelfInfoMap(List<Shelf> shelves) {
-        Map<Temperature, Shelf> tempShelfInfoMap = new HashMap<>();
-        for (Shelf shelf : shelves) {
-            tempShelfInfoMap.put(shelf.getTemperature(), shelf);
-        }
-        return ImmutableMap.copyOf(tempShelfInfoMap);
+    /**
+     * Initializes ShelfPod with the given list of shelves and options. The given list should contain one shelf per {@link Temperature},
+     * and an overflow shelf.
+     * <p>
+     * The orders check their expiry against the wall clock, and the background threads wait for real time to pass, so only
+     * {@link SystemClock} is supported.
+     *
+     * @param shelves
+     * @param shelfPodOptions
+     * @throws IllegalArgumentException if the given clock is not supported, if the given shelves are not one per temperature, or if
+     *                                  there is more than one overflow shelf.
+     */
+    public BaseShelfPod(List<Shelf> shelves, ShelfPodOptions shelfPodOptions) {
+        if (!(shelfPodOptions.getClock() instanceof SystemClock))
+            throw new IllegalArgumentException(
+                "ShelfPod supports only SystemClock, given:" + shelfPodOptions.getClock().getClass().getSimpleName());
+        this.shelfRegistry = new ShelfRegistry(shelves);
+        if (shelfRegistry.getOverflowShelves().size() > 1)
+            throw new IllegalArgumentException("ShelfPod supports a single overflow shelf, given:" + shelfRegistry.getOverflowShelves());
+        this.orderExpiryComparator = new OrderExpiryComparator(shelfRegistry);
+        this.pickupStrategy = shelfPodOptions.getPickupStrategy();
+        this.ordersIndex = new ConcurrentSkipListSet<>(pickupStrategy.getIndexComparator(shelfRegistry));
+        this.spaces = createSpaces(shelfRegistry);
+        double overflowDecayRateFactor = shelfRegistry.getDecayRateFactor(Temperature.Overflow);
+        this.overflowOrdersIndex = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong((Order order) -> order.getExpiryTimestampInMs(overflowDecayRateFactor)).thenComparingLong(Order::getId));
+        this.evictionPolicy = shelfPodOptions.getEvictionPolicy();
+        this.decayModel = shelfPodOptions.getDecayModel();
+        this.lockContentionMonitor = shelfPodOptions.getLockContentionSamplingInterval() == 0 ?
+            LockContentionMonitor.DISABLED :
+            new LockContentionMonitor(shelfPodOptions.getLockContentionSamplingInterval());
+        this.duplicateOrderFilter = shelfPodOptions.createDuplicateOrderFilter();
+        this.reservationGracePeriodInMs = shelfPodOptions.getReservationGracePeriodInMs();
+        this.pendingOrders = new PendingOrderQueue(this::tryAddOrder, this::addOrder, shelfPodOptions.getClock(), shelfRegistry.size());
     }
 
-    protected static Map<Temperature, Double> getDecayRateFactors(List<Shelf> shelves) {
-        Map<Temperature, Double> spaces = new HashMap<>();
-        for (Shelf shelf : shelves) {
-            spaces.put(shelf.getTemperature(), shelf.getDecayRateFactor());
+    private static ResizableSemaphore[] createSpaces(ShelfRegistry shelfRegistry) {
+        ResizableSemaphore[] spaces = new ResizableSemaphore[shelfRegistry.size()];
+        for (Shelf shelf : shelfRegistry.getShelves()) {
+            spaces[shelf.getTemperature().ordinal()] = new ResizableSemaphore(shelf.getCapacity());
         }
-        return ImmutableMap.copyOf(spaces);
+        return spaces;
     }
 
-    private static Map<Temperature, Semaphore> createSpaces(List<Shelf> shelves) {
-        Map<Temperature, Semaphore> spaces = new HashMap<>();
-        for (Shelf shelf : shelves) {
-            spaces.put(shelf.getTemperature(), new Semaphore(shelf.getCapacity(), true));
-        }
-        return ImmutableMap.copyOf(spaces);
+    /**
+     * Returns the shelves as of now, this changes when the pod is reconfigured.
+     *
+     * @return
+     */
+    protected ShelfRegistry getShelfRegistry() {
+        return shelfRegistry;
     }
 
     private double getDecayRate(Order order) {
-        return order.getOrderState() == OrderState.StoredInOverflowShelf ?
-            decayRateFactors.get(Temperature.Overflow) :
-            decayRateFactors.get(order.getTemperature());
+        return shelfRegistry.getDecayRateFactor(order);
     }
 
     private double getDecayRate(Temperature shelfType) {
-        return decayRateFactors.get(shelfType);
+        return shelfRegistry.getDecayRateFactor(shelfType);
     }
 
     /**
@@ -133,19 +224,50 @@ import java.util.stream.Collectors;
     }
 
     @Override public List<Shelf> getShelves() {
-        return shelves;
+        return shelfRegistry.getShelves();
+    }
+
+    /**
+     * Applies the capacities and the decay rate factors of the given shelves, the given list should contain one shelf per
+     * {@link Temperature} like the list this pod was created with.
+     * <p>
+     * Growing a shelf releases the new spaces right away, so a mover thread waiting for space can move an overflow order immediately.
+     * Shrinking a shelf below the number of orders it stores does not evict any order, the shelf just does not accept new orders
+     * until the deliveries and expiries have drained it below the new capacity.
+     *
+     * @param shelves
+     * @throws IllegalArgumentException if the given shelves do not match the temperatures of the current shelves.
+     */
+    @Override public synchronized void reconfigure(List<Shelf> shelves) {
+        ShelfRegistry current = shelfRegistry;
+        ShelfRegistry updated = new ShelfRegistry(shelves);
+        if (!current.hasSameTemperatures(updated))
+            throw new IllegalArgumentException("Shelves can only be reconfigured, not added or removed, given:" + shelves);
+        shelfRegistry = updated;
+        for (Shelf shelf : shelves) {
+            int delta = shelf.getCapacity() - current.getCapacity(shelf.getTemperature());
+            ResizableSemaphore shelfSpaces = spaces[shelf.getTemperature().ordinal()];
+            if (delta > 0) {
+                shelfSpaces.release(delta);
+            } else if (delta < 0) {
+                // Permits can go negative, that is how the stored orders beyond the new capacity are drained instead of evicted.
+                shelfSpaces.reducePermits(-delta);
+            }
+        }
+        pendingOrders.admit();
+        log.info("Reconfigured shelves={}", shelves);
     }
 
     protected static OrderState getStoredOrderStateForShelfType(Temperature shelfType) {
-        return shelfType == Temperature.Overflow ? OrderState.StoredInOverflowShelf : OrderState.StoredInRegularShelf;
+        return shelfType.isOverflow() ? OrderState.StoredInOverflowShelf : OrderState.StoredInRegularShelf;
     }
 
     protected static OrderState getExpiredOrderStateForShelf(Temperature shelfType) {
-        return shelfType == Temperature.Overflow ? OrderState.ExpiredInOverflowShelf : OrderState.ExpiredInRegularShelf;
+        return shelfType.isOverflow() ? OrderState.ExpiredInOverflowShelf : OrderState.ExpiredInRegularShelf;
     }
 
     protected static OrderState getDeliveredOrderStateForShelf(Temperature shelfType) {
-        return shelfType == Temperature.Overflow ? OrderState.DeliveredFromOverflowShelf : OrderState.DeliveredFromRegularShelf;
+        return shelfType.isOverflow() ? OrderState.DeliveredFromOverflowShelf : OrderState.DeliveredFromRegularShelf;
     }
 
     /**
@@ -160,40 +282,53 @@ import java.util.stream.Collectors;
      * @param order
      * @param prevState
      * @param storeInOverflowShelf
+     * @param spaceReserved        whether a space of the shelf is already held for the order by a reservation.
+     * @param event                flight recorder event of the operation, which gets the time spent waiting for a space, or null.
      * @return
      */
-    private AddResult addOrder(Order order, OrderState prevState, boolean storeInOverflowShelf) {
+    private AddResult addOrder(Order order, OrderState prevState, boolean storeInOverflowShelf, boolean spaceReserved,
+        ShelfOperationEvent event) {
         Temperature shelfType = storeInOverflowShelf ? Temperature.Overflow : order.getTemperature();
-        Semaphore shelfSpaces = spaces.get(shelfType);
+        Semaphore shelfSpaces = spaces[shelfType.ordinal()];
 
         boolean added = false;
-        boolean spaceAcquired = false;
+        boolean spaceAcquired = spaceReserved;
         try {
-            if (prevState == OrderState.Created && order.hasExpired(getDecayRate(shelfType))) {
+            if (prevState == OrderState.Created && order.hasExpired(decayModel, getDecayRate(shelfType))) {
                 order.setOrderState(OrderState.CameExpired);
+                if (spaceReserved) {
+                    releaseSpace(shelfType);
+                }
             } else {
-                if (prevState == OrderState.StoredInOverflowShelf) {
+                if (spaceReserved) {
+                    // The space was acquired when the reservation was made.
+                } else if (prevState == OrderState.StoredInOverflowShelf) {
                     // If prevState is in Overflow shelf, then this is move request. So lets wait indefinitely until we get a space on the regular shelf.
-                    shelfSpaces.acquire();
+                    long waitStartInNanos = event == null ? 0 : System.nanoTime();
+                    acquireSpace(shelfSpaces, shelfType);
                     spaceAcquired = true;
+                    if (event != null) {
+                        event.spaceWaitTime += System.nanoTime() - waitStartInNanos;
+                    }
                 } else {
                     // tryAcquire() method does not guarantee fairness, but tryacquire(timeout, timeunit) guarantees fairness.
                     // So lets get acquire the space 0 seconds as the timeout
-                    spaceAcquired = shelfSpaces.tryAcquire(0, TimeUnit.SECONDS);
+                    spaceAcquired = tryAcquireSpace(shelfSpaces, shelfType);
+                    if (!spaceAcquired && storeInOverflowShelf) {
+                        // The space of the evicted order is handed to this order, so no other thread can take it in between.
+                        spaceAcquired = evictOverflowOrderFor(order);
+                    }
                 }
-                if (spaceAcquired) {
-                    boolean removedInOverflow = (prevState == OrderState.StoredInOverflowShelf) ? removeOrder(order) : true;
-                    if (removedInOverflow && order.compareAndSet(prevState, getStoredOrderStateForShelfType(shelfType))) {
-                        if (prevState == OrderState.StoredInOverflowShelf) {
-                            // If an order stayed in overflow shelf, then we need to record it as in the overflow shelf
-                            // orders decay faster, we need to account that for expiry time calculation in regular shelf.
-                            order.setTimeSpentOnOverflowShelfInMs(System.currentTimeMillis() - order.getCreatedTimestamp());
-                        }
-                        ordersQueue.add(order);
-                        added = true;
-                    } else {
-                        shelfSpaces.release();
+                if (spaceAcquired && prevState == OrderState.StoredInOverflowShelf) {
+                    Lock moveLock = moveLocks.get(order.getId());
+                    moveLock.lock();
+                    try {
+                        added = storeOrder(order, prevState, shelfType);
+                    } finally {
+                        moveLock.unlock();
                     }
+                } else if (spaceAcquired) {
+                    added = storeOrder(order, prevState, shelfType);
                 } else {
                     // If there are no spaces available in Overflow shelf, then lets mark it as expired.
                     if (storeInOverflowShelf) {
@@ -206,29 +341,154 @@ import java.util.stream.Collectors;
             log.error("Interrupted while adding order to the queue, orderId={}", order.getId());
             if (spaceAcquired) {
                 // If an exception happens before adding an Order to the queue, then lets make sure
-                // we release the space back to the queue.
-                shelfSpaces.release();
+                // we release the space back to the queue, and offer it to the pending orders.
+                releaseSpace(shelfType);
             }
         }
-        return new AddResult(added, order.getOrderState(), tempShelfInfoMap.get(shelfType));
+        return shelfRegistry.getAddResult(added, order.getOrderState(), shelfType.ordinal());
+    }
+
+    /**
+     * Stores the order on the shelf whose space is already acquired for it. The space is released if the order is not stored, which
+     * is when its state has changed meanwhile, or when it is taken from the overflow shelf by another thread before it is moved.
+     *
+     * @param order
+     * @param prevState
+     * @param shelfType
+     * @return true if the order is stored.
+     */
+    private boolean storeOrder(Order order, OrderState prevState, Temperature shelfType) {
+        boolean removedInOverflow = (prevState == OrderState.StoredInOverflowShelf) ? removeOrder(order) : true;
+        if (!removedInOverflow || !order.compareAndSet(prevState, getStoredOrderStateForShelfType(shelfType))) {
+            releaseSpace(shelfType);
+            return false;
+        }
+        if (prevState == OrderState.StoredInOverflowShelf) {
+            // If an order stayed in overflow shelf, then we need to record it as in the overflow shelf
+            // orders decay faster, we need to account that for expiry time calculation in regular shelf.
+            order.setTimeSpentOnOverflowShelfInMs(System.currentTimeMillis() - order.getCreatedTimestamp());
+            order.moveToShelf(decayModel, getDecayRate(Temperature.Overflow), getDecayRate(shelfType));
+        } else {
+            order.placeOnShelf(decayModel, getDecayRate(shelfType));
+        }
+        if (shelfType == Temperature.Overflow) {
+            overflowOrdersIndex.add(order);
+        }
+        if (prevState == OrderState.Created) {
+            ordersById.put(order.getId(), order);
+        }
+        ordersIndex.add(order);
+        return true;
+    }
+
+    /**
+     * Waits until a space is available on the shelf. The acquisition is contended if the shelf has no space at the moment.
+     *
+     * @param shelfSpaces
+     * @param shelfType
+     * @throws InterruptedException
+     */
+    private void acquireSpace(Semaphore shelfSpaces, Temperature shelfType) throws InterruptedException {
+        long token = lockContentionMonitor.enter(SyncPoint.ShelfSpaces, shelfType,
+            lockContentionMonitor.isEnabled() && shelfSpaces.availablePermits() <= 0);
+        try {
+            shelfSpaces.acquire();
+        } finally {
+            lockContentionMonitor.exit(SyncPoint.ShelfSpaces, shelfType, token);
+        }
+    }
+
+    /**
+     * Acquires a space on the shelf if one is available right away. The acquisition is contended if another thread is waiting for a
+     * space, as the fair semaphore gives the space to that thread. An attempt on a full shelf counts as an acquisition as well.
+     *
+     * @param shelfSpaces
+     * @param shelfType
+     * @return
+     * @throws InterruptedException
+     */
+    private boolean tryAcquireSpace(Semaphore shelfSpaces, Temperature shelfType) throws InterruptedException {
+        long token = lockContentionMonitor.enter(SyncPoint.ShelfSpaces, shelfType,
+            lockContentionMonitor.isEnabled() && shelfSpaces.hasQueuedThreads());
+        try {
+            return shelfSpaces.tryAcquire(0, TimeUnit.SECONDS);
+        } finally {
+            lockContentionMonitor.exit(SyncPoint.ShelfSpaces, shelfType, token);
+        }
+    }
+
+    /**
+     * Adds the given order through {@link #addNewOrder(Order, Reservation)}. When {@link ShelfPodOptions#getDeduplicationWindowInMs()}
+     * is set, an order whose id was already added within the window is not added again, the result of the first add is returned
+     * instead in O(1). The given duplicate order is left as it is, and the observers are not notified of it, so it gets no courier.
+     *
+     * @param order
+     * @return addResult, whether the add was successful or not, orderstate at the end of add operation, the shelf that was attempted for hosting the order.
+     */
+    @Override public final AddResult addOrder(Order order) {
+        shelfRegistry.checkRegularShelf(order.getTemperature());
+        return addOrderOnce(order, null);
+    }
+
+    @Override public final AddResult commit(Reservation reservation, Order order) {
+        if (order.getTemperature() != reservation.getTemperature())
+            throw new IllegalArgumentException(
+                "Order temperature:" + order.getTemperature() + " does not match the reservation temperature:"
+                + reservation.getTemperature());
+        // Whoever removes the reservation owns its space, so a commit racing with the expiry of the reservation adds the order anew.
+        return addOrderOnce(order, reservations.remove(reservation.getId(), reservation) ? reservation : null);
+    }
+
+    /**
+     * @param order
+     * @param reservation held reservation whose space is taken by the order, or null.
+     * @return
+     */
+    private AddResult addOrderOnce(Order order, Reservation reservation) {
+        if (duplicateOrderFilter == null)
+            return addNewOrder(order, reservation);
+        AddResult addResult = duplicateOrderFilter.claim(order.getId());
+        if (addResult != null) {
+            log.debug("Ignoring duplicate order={} addResult={}", order, addResult);
+            if (reservation != null) {
+                releaseSpace(reservation.getShelfType());
+            }
+            return addResult;
+        }
+        try {
+            addResult = addNewOrder(order, reservation);
+            return addResult;
+        } finally {
+            duplicateOrderFilter.complete(order.getId(), addResult);
+        }
     }
 
     /**
      * Adds the given order to any non overflow shelf that is appropriate for the given Order's Temperature.
      * If there is no available space in the non overflow shelf, then add attempt is tried on the overflow shelf,
-     * and returns the result of the addition.
+     * and returns the result of the addition. An order with a reservation is added into the space held by the reservation instead.
      * <p>
      * Running time complexity is O(log N) as its priority queue.
      *
      * @param order
+     * @param reservation held reservation whose space is taken by the order, or null.
      * @return addResult, whether the add was successful or not, orderstate at the end of add operation, the shelf that was attempted for hosting the order.
      */
-    @Override public AddResult addOrder(Order order) {
-        AddResult addResult = addOrder(order, OrderState.Created, false);
-        if (!addResult.isAdded()) {
-            addResult = addOrder(order, OrderState.Created, true);
+    protected AddResult addNewOrder(Order order, Reservation reservation) {
+        ShelfOperationEvent event = FlightRecorderEvents.beginShelfOperation();
+        AddResult addResult;
+        if (reservation != null) {
+            addResult = addOrder(order, OrderState.Created, reservation.getShelfType() == Temperature.Overflow, true, event);
+        } else {
+            addResult = addOrder(order, OrderState.Created, false, false, event);
+            if (!addResult.isAdded()) {
+                addResult = addOrder(order, OrderState.Created, true, false, event);
+            }
         }
-        log.info("Adding order={} addResult={} - done.", order, addResult);
+        if (event != null) {
+            commit(event, ShelfOperation.Add, order, addResult.getShelf().getTemperature());
+        }
+        log.debug("Adding order={} addResult={} - done.", order, addResult);
         return addResult;
     }
 
@@ -247,11 +507,137 @@ import java.util.stream.Collectors;
      * @return true if the order is successfully added into the shelf, otherwise false.
      */
     protected AddResult moveOrder(Order order) {
-        AddResult moveResult = addOrder(order, OrderState.StoredInOverflowShelf, false);
-        log.info("Moving order to regularShelf order={} moveResult={} - done.", order, moveResult);
+        ShelfOperationEvent event = FlightRecorderEvents.beginShelfOperation();
+        AddResult moveResult = addOrder(order, OrderState.StoredInOverflowShelf, false, false, event);
+        if (event != null) {
+            commit(event, ShelfOperation.Move, order, order.getTemperature());
+        }
+        log.debug("Moving order to regularShelf order={} moveResult={} - done.", order, moveResult);
         return moveResult;
     }
 
+    /**
+     * Holds a space for an order which is still being cooked. The space is taken by a compare and set on the semaphore of the shelf,
+     * which does not wait for its lock. A thread already waiting for a space on the shelf, like a mover thread, is not barged, the
+     * overflow shelf is tried instead.
+     *
+     * @param temperature
+     * @param expectedReadyTimestampInMs
+     * @return
+     */
+    @Override public Reservation reserve(Temperature temperature, long expectedReadyTimestampInMs) {
+        shelfRegistry.checkRegularShelf(temperature);
+        Temperature shelfType = reserveSpaceFor(temperature);
+        if (shelfType == null) {
+            log.debug("No space to reserve for temperature={}", temperature);
+            return null;
+        }
+        Reservation reservation = new Reservation(reservationIds.incrementAndGet(), temperature, shelfType, expectedReadyTimestampInMs,
+            expectedReadyTimestampInMs + reservationGracePeriodInMs);
+        reservations.put(reservation.getId(), reservation);
+        postReserve(reservation);
+        log.debug("Reserved space, reservation={}", reservation);
+        return reservation;
+    }
+
+    /**
+     * Takes a space for an order of the given temperature on its regular shelf, or on the overflow shelf.
+     *
+     * @param temperature
+     * @return the shelf where the space is taken, or null if neither shelf has a space.
+     */
+    private Temperature reserveSpaceFor(Temperature temperature) {
+        return reserveSpace(temperature) ? temperature : reserveSpace(Temperature.Overflow) ? Temperature.Overflow : null;
+    }
+
+    private boolean reserveSpace(Temperature shelfType) {
+        Semaphore shelfSpaces = spaces[shelfType.ordinal()];
+        long token = lockContentionMonitor.enter(SyncPoint.ShelfSpaces, shelfType,
+            lockContentionMonitor.isEnabled() && shelfSpaces.hasQueuedThreads());
+        try {
+            // The untimed tryAcquire() barges the fair semaphore, so lets not take a space which a waiting thread is entitled to.
+            return !shelfSpaces.hasQueuedThreads() && shelfSpaces.tryAcquire();
+        } finally {
+            lockContentionMonitor.exit(SyncPoint.ShelfSpaces, shelfType, token);
+        }
+    }
+
+    /**
+     * Called once a reservation is held, so that a subclass can watch it for expiry.
+     *
+     * @param reservation
+     */
+    protected void postReserve(Reservation reservation) {
+    }
+
+    @Override public boolean release(Reservation reservation) {
+        if (!reservations.remove(reservation.getId(), reservation))
+            return false;
+        releaseSpace(reservation.getShelfType());
+        log.debug("Released reservation={}", reservation);
+        return true;
+    }
+
+    /**
+     * Puts the given order into the {@link PendingOrderQueue}, which adds it right away if there is a space for it.
+     *
+     * @param order
+     * @param maxWaitInMs
+     * @return
+     */
+    @Override public CompletableFuture<AddResult> addOrderAsync(Order order, long maxWaitInMs) {
+        shelfRegistry.checkRegularShelf(order.getTemperature());
+        PendingOrder pendingOrder = pendingOrders.enqueue(order, maxWaitInMs);
+        postEnqueue(pendingOrder);
+        pendingOrders.admit();
+        return pendingOrder.getFuture();
+    }
+
+    /**
+     * Called once an order is waiting for a space, so that a subclass can wake up at the deadline of the order.
+     *
+     * @param pendingOrder
+     */
+    protected void postEnqueue(PendingOrder pendingOrder) {
+    }
+
+    /**
+     * Admits the pending orders which fit on the shelves now, and adds the ones whose deadline has passed.
+     */
+    protected void admitPendingOrders() {
+        pendingOrders.admit();
+    }
+
+    /**
+     * Adds the given order if there is a space for it on the regular shelf of its temperature or on the overflow shelf, the space is
+     * taken like a reservation, so nothing is changed when there is no space.
+     *
+     * @param order
+     * @return addResult, or null if there is no space for the order.
+     */
+    private AddResult tryAddOrder(Order order) {
+        Temperature shelfType = reserveSpaceFor(order.getTemperature());
+        if (shelfType == null)
+            return null;
+        long now = System.currentTimeMillis();
+        // A reservation of this pod would have been in the map of the reservations, this one only carries the shelf.
+        return addOrderOnce(order, new Reservation(0, order.getTemperature(), shelfType, now, now));
+    }
+
+    /**
+     * Releases the given reservation if it is still held, as it has passed its expiry timestamp without a commit.
+     *
+     * @param reservation
+     * @return true if the reservation was held and its space is reclaimed now.
+     */
+    protected boolean expireReservation(Reservation reservation) {
+        boolean released = release(reservation);
+        if (released) {
+            log.info("Reclaimed expired reservation={}", reservation);
+        }
+        return released;
+    }
+
     /**
      * Removes given order from the shelf. If removed successfully, then releases the corresponding allocated space.
      *
@@ -261,16 +647,76 @@ import java.util.stream.Collectors;
     protected boolean removeOrder(Order order) {
         boolean removed = removeOrderInternal(order);
         if (removed) {
-            log.info("Removed order, and order={}", order);
+            log.debug("Removed order, and order={}", order);
         }
         return removed;
     }
 
     private boolean removeOrderInternal(Order order) {
-        boolean removed = ordersQueue.remove(order);
+        boolean removed = ordersIndex.remove(order);
         if (removed) {
-            Temperature shelfType = getShelf(order);
-            spaces.get(shelfType).release();
+            releaseSpace(order);
+        }
+        return removed;
+    }
+
+    /**
+     * Releases the space held by an order which was just taken out of {@link #ordersIndex}.
+     *
+     * @param order
+     * @return the shelf which was storing the order.
+     */
+    private Temperature releaseSpace(Order order) {
+        Temperature shelfType = getShelf(order);
+        if (shelfType == Temperature.Overflow) {
+            overflowOrdersIndex.remove(order);
+        }
+        releaseSpace(shelfType);
+        return shelfType;
+    }
+
+    /**
+     * Releases a space of the given shelf, and offers it to the pending orders.
+     *
+     * @param shelfType
+     */
+    private void releaseSpace(Temperature shelfType) {
+        spaces[shelfType.ordinal()].release();
+        pendingOrders.admit();
+    }
+
+    /**
+     * Offers the soonest expiring overflow order to the {@link IEvictionPolicy}, and evicts it if the policy decides so.
+     * Running time complexity of finding the candidate is O(log N).
+     *
+     * @param order the incoming order which could not find space on the overflow shelf.
+     * @return true if an order was evicted from the overflow shelf, its space is then held for the incoming order.
+     */
+    private boolean evictOverflowOrderFor(Order order) {
+        Iterator<Order> candidates = overflowOrdersIndex.iterator();
+        if (!candidates.hasNext())
+            return false;
+        Order candidate = candidates.next();
+        if (!evictionPolicy.shouldEvict(order, candidate, decayModel, getDecayRate(Temperature.Overflow), System.currentTimeMillis()))
+            return false;
+        return evictOrder(candidate);
+    }
+
+    /**
+     * Removes given order from the overflow shelf to make space for another order. If removed successfully, then marks the order as
+     * evicted. The space of the order is not released, the caller takes it over for the order the eviction was made for, and should
+     * release it if that order is not added after all.
+     *
+     * @param order
+     * @return
+     */
+    protected boolean evictOrder(Order order) {
+        boolean removed = ordersIndex.remove(order);
+        if (removed) {
+            overflowOrdersIndex.remove(order);
+            order.setOrderState(OrderState.EvictedFromOverflowShelf);
+            ordersById.remove(order.getId(), order);
+            log.debug("Evicted order, order={}", order);
         }
         return removed;
     }
@@ -283,52 +729,229 @@ import java.util.stream.Collectors;
      * @return
      */
     protected boolean expireOrder(Order order) {
+        ShelfOperationEvent event = FlightRecorderEvents.beginShelfOperation();
         boolean removed = removeOrderInternal(order);
         if (removed) {
-            order.setOrderState(getExpiredOrderStateForShelf(getShelf(order)));
-            log.info("Expired order, order={}", order);
+            Temperature shelfType = getShelf(order);
+            order.setOrderState(getExpiredOrderStateForShelf(shelfType));
+            ordersById.remove(order.getId(), order);
+            if (event != null) {
+                commit(event, ShelfOperation.Expire, order, shelfType);
+            }
+            log.debug("Expired order, order={}", order);
         }
         return removed;
     }
 
     /**
-     * This function returns an order for a pickup service to deliver it. An order can expire while on the shelf,
-     * so this function makes sure the order is valid before returning it to the caller.
+     * Removes given order from the shelf as it is cancelled. If removed successfully, then releases the corresponding semaphore, so a
+     * mover thread waiting for space can move an overflow order right away, and marks the order as cancelled.
+     * <p>
+     * An order being moved to a regular shelf is out of the index till the move is done, the cancel waits on the lock held by the
+     * mover for that. An order which another thread is taking to an end state is checked again after a short wait.
+     *
+     * @param order
+     * @return
+     */
+    protected boolean cancelOrder(Order order) {
+        while (!order.hasReachedEndState()) {
+            if (removeOrderInternal(order)) {
+                order.setOrderState(OrderState.Cancelled);
+                ordersById.remove(order.getId(), order);
+                log.debug("Cancelled order, order={}", order);
+                return true;
+            }
+            Lock moveLock = moveLocks.get(order.getId());
+            moveLock.lock();
+            moveLock.unlock();
+            if (!order.hasReachedEndState() && !ordersIndex.contains(order)) {
+                // Not being moved, so another thread is taking the order to an end state, lets check again once that thread is done.
+                LockSupport.parkNanos(CANCEL_RETRY_WAIT_IN_NANOS);
+            }
+        }
+        return false;
+    }
+
+    @Override public boolean cancelOrder(long id) {
+        Order order = ordersById.get(id);
+        return order != null && cancelOrder(order);
+    }
+
+    @Override public Order getOrder(long id) {
+        Order order = ordersById.get(id);
+        if (order == null)
+            return null;
+        Order copy = order.getDeepCopy();
+        return copy.isCurrentlyInAnyShelf() ? copy : null;
+    }
+
+    /**
+     * This function returns an order for a pickup service to deliver it, the order is selected by the {@link IPickupStrategy}.
+     * An order can expire while on the shelf, so this function makes sure the order is valid before returning it to the caller.
+     * If the selected order has expired, then it is expired through {@link #expireOrder(Order)} and another order is selected.
      * <p>
      * <p>
-     * Running time complexity is O(1)
+     * Running time complexity is O(log N)
      *
      * @return an order if the order is available on the shelf and is not expired, otherwise null.
      */
     @Override public Order pollOrder() {
+        ShelfOperationEvent event = FlightRecorderEvents.beginShelfOperation();
+        long now = System.currentTimeMillis();
         while (true) {
-            Order order = ordersQueue.poll();
-            log.info("Returning an order={}", order);
-            if (order == null)
+            Order order = pickupStrategy.selectOrder(ordersIndex, now);
+            if (order == null) {
+                if (event != null) {
+                    commit(event, ShelfOperation.Poll, null, null);
+                }
                 return null;
-            Temperature shelfType = getShelf(order);
-            spaces.get(shelfType).release();
-            if (order.hasExpired(getDecayRate(order))) {
-                order.setOrderState(getExpiredOrderStateForShelf(shelfType));
+            }
+            if (order.hasExpired(decayModel, getDecayRate(order))) {
+                expireOrder(order);
                 continue;
             }
+            if (!ordersIndex.remove(order)) {
+                // Another thread has taken the order meanwhile, lets select again.
+                continue;
+            }
+            Temperature shelfType = releaseSpace(order);
             order.setOrderState(getDeliveredOrderStateForShelf(shelfType));
+            ordersById.remove(order.getId(), order);
+            if (event != null) {
+                commit(event, ShelfOperation.Poll, order, shelfType);
+            }
+            log.debug("Returning an order={}", order);
             return order;
         }
     }
 
+    /**
+     * The stored orders are the instances which were added, so polling the order does not create one.
+     *
+     * @return
+     */
+    @Override public long pollOrderId() {
+        Order order = pollOrder();
+        return order == null ? -1 : order.getId();
+    }
+
+    protected LockContentionMonitor getLockContentionMonitor() {
+        return lockContentionMonitor;
+    }
+
+    /**
+     * Returns the contention accounted on the synchronization points of this pod since it was created, which is empty unless
+     * {@link ShelfPodOptions#getLockContentionSamplingInterval()} is set.
+     *
+     * @return
+     */
+    public LockContentionReport getLockContentionReport() {
+        return lockContentionMonitor.getReport();
+    }
+
+    /**
+     * Fills and commits the given flight recorder event of an operation.
+     *
+     * @param event
+     * @param shelfOperation
+     * @param order          the order of the operation, or null if a poll found no order.
+     * @param shelfType      the shelf which stored the order at the end of the operation, or which was tried.
+     */
+    private void commit(ShelfOperationEvent event, ShelfOperation shelfOperation, Order order, Temperature shelfType) {
+        if (!event.shouldCommit())
+            return;
+        event.operation = shelfOperation.name();
+        if (order != null) {
+            event.orderId = order.getId();
+            event.temperature = order.getTemperature().name();
+            event.orderState = order.getOrderState().name();
+        }
+        if (shelfType != null) {
+            event.shelf = shelfType.name();
+            event.availableSpaces = spaces[shelfType.ordinal()].availablePermits();
+        }
+        event.storedOrders = ordersById.size();
+        event.commit();
+    }
+
     /**
      * This function guarantees the orders are immediately visible after any add/remove operation is executed.
      *
      * @return
      */
     @Override public List<Order> getOrders() {
-        List<Order> orders = new ArrayList<>(ordersQueue);
-        // Since the queue provides weak iterator, we may have got orders which were already delivered, or expired.
+        List<Order> orders = new ArrayList<>(ordersIndex);
+        // Since the index provides weak iterator, we may have got orders which were already delivered, or expired.
         // So we make a copy and filter only the orders that are currently in the shelf.
         orders =
             orders.stream().map(order -> order.getDeepCopy()).filter(order -> order.isCurrentlyInAnyShelf()).collect(Collectors.toList());
         Collections.sort(orders, orderExpiryComparator);
         return orders;
     }
+
+    /**
+     * Checks that each shelf stores no more orders than its capacity, that the spaces held on each shelf's semaphore match the orders
+     * of that shelf in {@link #ordersIndex}, and that {@link #overflowOrdersIndex} contains exactly the overflow orders.
+     * <p>
+     * A shelf which was shrunk by {@link #reconfigure(List)} is reported as over capacity until it is drained.
+     *
+     * @return
+     */
+    @Override public List<String> checkInvariants() {
+        List<String> violations = new ArrayList<>();
+        ShelfRegistry registry = shelfRegistry;
+        int[] storedOrders = new int[registry.size()];
+        Set<Order> overflowOrders = new HashSet<>();
+        for (Order order : ordersIndex) {
+            if (ordersById.get(order.getId()) != order)
+                violations.add("orderId:" + order.getId() + " is not in the map of orders by id");
+            // The state is read once, so a concurrent state change is reported as a mismatch instead of failing this check.
+            OrderState orderState = order.getOrderState();
+            if (orderState != OrderState.StoredInRegularShelf && orderState != OrderState.StoredInOverflowShelf) {
+                violations.add("orderId:" + order.getId() + " is in the index with orderState:" + orderState);
+                continue;
+            }
+            Temperature shelfType = orderState == OrderState.StoredInOverflowShelf ? Temperature.Overflow : order.getTemperature();
+            storedOrders[shelfType.ordinal()]++;
+            if (shelfType == Temperature.Overflow) {
+                overflowOrders.add(order);
+            }
+        }
+        int[] reservedSpaces = new int[registry.size()];
+        for (Reservation reservation : reservations.values()) {
+            reservedSpaces[reservation.getShelfType().ordinal()]++;
+        }
+        int indexedOrders = 0;
+        for (Shelf shelf : registry.getShelves()) {
+            int index = shelf.getTemperature().ordinal();
+            int stored = storedOrders[index];
+            indexedOrders += stored;
+            // The spaces held by the reservations are not for any stored order.
+            int heldSpaces = shelf.getCapacity() - spaces[index].availablePermits() - reservedSpaces[index];
+            if (stored > shelf.getCapacity())
+                violations.add("shelf:" + shelf.getTemperature() + " stores orders:" + stored + " over capacity:" + shelf.getCapacity());
+            if (heldSpaces != stored)
+                violations.add("shelf:" + shelf.getTemperature() + " holds spaces:" + heldSpaces + " for stored orders:" + stored);
+        }
+        if (ordersById.size() != indexedOrders)
+            violations.add("map of orders by id has orders:" + ordersById.size() + " for stored orders:" + indexedOrders);
+        if (!overflowOrders.equals(new HashSet<>(overflowOrdersIndex)))
+            violations.add("overflowOrdersIndex has orders:" + overflowOrdersIndex.size() + " for overflow orders:" + overflowOrders.size());
+        return violations;
+    }
+
+
+    /**
+     * A fair semaphore whose number of permits can be reduced, {@link Semaphore#reducePermits(int)} is protected.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        private ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
 }
@@ -1,9 +1,11 @@
 package com.cloudkitchens.fulfillment.entities.shelves;
 
+import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Defines the contract for the IShelfPod, which manages group of shelves.
@@ -21,6 +23,27 @@ public interface IShelfPod {
      */
     List<Shelf> getShelves();
 
+    /**
+     * Applies the capacities and the decay rate factors of the given shelves to the running pod, the given list should contain one
+     * shelf per {@link com.cloudkitchens.fulfillment.entities.Temperature} like the list the pod was created with. The stored orders
+     * are kept, a shelf which is shrunk below the number of orders it stores is drained by the deliveries and expiries.
+     *
+     * @param shelves
+     * @throws IllegalArgumentException if the given shelves can't be applied to this pod.
+     */
+    void reconfigure(List<Shelf> shelves);
+
+    /**
+     * Starts the background threads which maintain the shelves, like moving orders between shelves and expiring orders.
+     * Background threads are started separately from construction to avoid partial visibility of the instance to them.
+     */
+    void startBackgroundActivities();
+
+    /**
+     * Stops the background threads which were started by {@link #startBackgroundActivities()}.
+     */
+    void stopBackgroundActivities();
+
     /**
      * This adds the order into the shelf.
      *
@@ -29,6 +52,56 @@ public interface IShelfPod {
      */
     AddResult addOrder(Order order);
 
+    /**
+     * Adds the order like {@link #addOrder(Order)}, but if neither the regular shelf of its temperature nor the overflow shelf has a
+     * space, the order waits for one instead of being rejected. The waiting orders are admitted as the spaces are released, the order
+     * closest to its deadline first, and an order which is still waiting at its deadline is added by {@link #addOrder(Order)}, which
+     * rejects it like before. No thread waits for the order, the deadlines are kept by the expiry thread of the pod.
+     * <p>
+     * The future completes in the thread which released the space, or in the expiry thread. Cancelling the future is best effort, an
+     * order admitted meanwhile stays on the shelf.
+     *
+     * @param order
+     * @param maxWaitInMs how long the order can wait for a space, 0 is the same as {@link #addOrder(Order)}.
+     * @return the result of the add, once the order is added or rejected.
+     * @throws IllegalArgumentException if the wait is negative.
+     */
+    CompletableFuture<AddResult> addOrderAsync(Order order, long maxWaitInMs);
+
+    /**
+     * Holds a space for an order of the given temperature which is still being cooked, on the regular shelf of the temperature, or on
+     * the overflow shelf if the regular shelf is full. The space counts against the capacity of the shelf until the reservation is
+     * committed, released, or expires, which is {@link ShelfPodOptions#getReservationGracePeriodInMs()} past the expected ready time.
+     * An expired reservation is reclaimed by the expiry thread of the pod. No order is evicted to make space for a reservation.
+     *
+     * @param temperature                temperature of the order being cooked.
+     * @param expectedReadyTimestampInMs when the order is expected to be ready, as per the clock of the pod.
+     * @return the reservation, or null if neither shelf has a space.
+     * @throws IllegalArgumentException if the given temperature is not of a regular shelf.
+     */
+    Reservation reserve(Temperature temperature, long expectedReadyTimestampInMs);
+
+    /**
+     * Adds the given order into the space held by the given reservation, and the reservation is done. If the reservation is no longer
+     * held, like an expired one, the order is added like {@link #addOrder(Order)}. Deduplication of the adds applies to the commits as
+     * well, a duplicate order releases the space of the reservation.
+     *
+     * @param reservation
+     * @param order
+     * @return addResult, like {@link #addOrder(Order)}.
+     * @throws IllegalArgumentException if the order is not of the temperature of the reservation.
+     */
+    AddResult commit(Reservation reservation, Order order);
+
+    /**
+     * Releases the space held by the given reservation, like when the order being cooked is cancelled. A released space on a regular
+     * shelf can be taken by an overflow order right away.
+     *
+     * @param reservation
+     * @return true if the reservation was held and is released now, false if it was already committed, released or expired.
+     */
+    boolean release(Reservation reservation);
+
     /**
      * This removes the order from the shelf for delivery.
      *
@@ -36,6 +109,14 @@ public interface IShelfPod {
      */
     Order pollOrder();
 
+    /**
+     * Same as {@link #pollOrder()}, but returns only the id of the polled order, for the callers which do not need the order itself.
+     * A pod which keeps its orders in arrays does not have to create the {@link Order} for this.
+     *
+     * @return id of the polled order, or -1 if there is no unexpired order on the shelves.
+     */
+    long pollOrderId();
+
     /**
      * Returns the list of orders which are currently stored in the shelf.
      * <p>
@@ -45,6 +126,36 @@ public interface IShelfPod {
      */
     List<Order> getOrders();
 
+    /**
+     * Returns the order with the given id if it is currently stored on any of the shelves, otherwise null.
+     * Running time complexity is O(1).
+     *
+     * @param id
+     * @return a copy of the stored order, or null.
+     */
+    Order getOrder(long id);
+
+    /**
+     * Cancels the order with the given id. The order is removed from the shelves, and its space is released right away, so an
+     * overflow order can be moved into it. Observers are notified with {@link ShelfOperation#Cancel}.
+     * Running time complexity is O(log N).
+     *
+     * @param id
+     * @return true if the order was stored and is cancelled now, false if it is not stored, like an already delivered order.
+     */
+    boolean cancelOrder(long id);
+
+    /**
+     * Checks the internal bookkeeping of the pod against the orders it stores, like the spaces held on each shelf and the queues of
+     * the background threads, and returns a description of each mismatch found.
+     * <p>
+     * An operation which is in progress in another thread can cause a transient mismatch, so the result is meaningful only when
+     * the callers of the pod are paused and the background threads had a moment to catch up. A mismatch which persists then is a bug.
+     *
+     * @return the violations found, empty if the pod is consistent.
+     */
+    List<String> checkInvariants();
+
     /**
      * Adds an observer for which this instance will send notifications about the shelf events.
      *
@@ -0,0 +1,50 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.google.common.base.MoreObjects;
+import lombok.Getter;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A space held on a shelf for an order which is still being cooked, returned by {@link IShelfPod#reserve(Temperature, long)}.
+ * <p>
+ * The space is held until the order is committed into it by {@link IShelfPod#commit}, the reservation is released
+ * by {@link IShelfPod#release(Reservation)}, or the reservation expires, which is the expected ready time plus the grace period of
+ * {@link ShelfPodOptions#getReservationGracePeriodInMs()}. An expired reservation is reclaimed by the expiry thread of the pod, like
+ * an expired order, so a kitchen which never comes back does not leak the space.
+ * <p>
+ * A reservation is a {@link Delayed} as per the wall clock, so that {@link ShelfPod} watches it in the same delay queue as its orders.
+ */
+@Getter @Immutable public class Reservation implements Delayed {
+    private final long id;
+    // Temperature of the order being cooked.
+    private final Temperature temperature;
+    // Shelf holding the space, the regular shelf of the temperature, or the overflow shelf if the regular shelf was full.
+    private final Temperature shelfType;
+    private final long expectedReadyTimestampInMs;
+    private final long expiryTimestampInMs;
+
+    Reservation(long id, Temperature temperature, Temperature shelfType, long expectedReadyTimestampInMs, long expiryTimestampInMs) {
+        this.id = id;
+        this.temperature = temperature;
+        this.shelfType = shelfType;
+        this.expectedReadyTimestampInMs = expectedReadyTimestampInMs;
+        this.expiryTimestampInMs = expiryTimestampInMs;
+    }
+
+    @Override public long getDelay(TimeUnit unit) {
+        return unit.convert(expiryTimestampInMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override public int compareTo(Delayed that) {
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), that.getDelay(TimeUnit.MILLISECONDS));
+    }
+
+    @Override public String toString() {
+        return MoreObjects.toStringHelper(Reservation.class).add("id", id).add("temperature", temperature).add("shelfType", shelfType)
+            .add("expectedReadyTimestampInMs", expectedReadyTimestampInMs).add("expiryTimestampInMs", expiryTimestampInMs).toString();
+    }
+}
@@ -11,19 +11,19 @@ import java.util.Objects;
  */
 @ThreadSafe public class Shelf {
 
-    private final String id;
+    private final long id;
     private final double decayRateFactor;
     private final int capacity;
     private final Temperature temperature;
 
-    public Shelf(String id, double decayRateFactor, int capacity, Temperature temperature) {
+    public Shelf(long id, double decayRateFactor, int capacity, Temperature temperature) {
         this.id = id;
         this.decayRateFactor = decayRateFactor;
         this.capacity = capacity;
         this.temperature = temperature;
     }
 
-    public String getId() {
+    public long getId() {
         return id;
     }
 
@@ -45,7 +45,7 @@ import java.util.Objects;
         if (!(other instanceof Shelf))
             return false;
         Shelf that = (Shelf) other;
-        return Objects.equals(id, that.id) && Objects.equals(capacity, that.capacity) && Objects.equals(temperature, that.temperature);
+        return id == that.id && capacity == that.capacity && Objects.equals(temperature, that.temperature);
     }
 
 
@@ -1,5 +1,5 @@
 package com.cloudkitchens.fulfillment.entities.shelves;
 
 public enum ShelfOperation {
-    Add, Move, Remove, Poll, Expire
+    Add, Move, Remove, Poll, Expire, Evict, Cancel
 }
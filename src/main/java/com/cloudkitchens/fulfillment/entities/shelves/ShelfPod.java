@@ -2,25 +2,32 @@ package com.cloudkitchens.fulfillment.entities.shelves;
 
 import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
 import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.jfr.ExpiryEvent;
+import com.cloudkitchens.fulfillment.entities.jfr.FlightRecorderEvents;
+import com.cloudkitchens.fulfillment.entities.jfr.OverflowMoveEvent;
 import com.cloudkitchens.fulfillment.entities.orders.DelayedOrder;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.orders.OrderState;
 import com.cloudkitchens.fulfillment.entities.orders.comparators.OrderExpiryComparator;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.LockContentionMonitor;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.SyncPoint;
 import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
-import com.google.common.collect.ImmutableMap;
+import com.cloudkitchens.fulfillment.entities.shelves.pending.PendingOrder;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class extends {@link BaseShelfPod} and adds two additional critical functions to IShelfPod.
@@ -44,12 +51,13 @@ import java.util.concurrent.PriorityBlockingQueue;
 @Slf4j public class ShelfPod extends BaseShelfPod {
 
     // Whenever a regular order is stored in overflow shelf, we need to keep track of them, so that they can be moved back to regular shelf
-    // when there is space availability in regular shelf. The following map maintains separate queue for each regular shelf which will just
-    // keep track of regular orders that are stored in overflow shelf.
-    private final Map<Temperature, BlockingQueue<Order>> watchQueuesForMovableOrders;
+    // when there is space availability in regular shelf. The following array maintains separate queue for each regular shelf, indexed by
+    // the ordinal of its temperature, which will just keep track of regular orders that are stored in overflow shelf.
+    private final BlockingQueue<Order>[] watchQueuesForMovableOrders;
     // This is a delay queue which maintains all the orders which are not delivered, so a thread can wait on this delay queue, and expire
-    // the orders when the delay queue returns an order due to the order reached zero shelf time.
-    private final BlockingQueue<DelayedOrder> watchQueueForExpirableOrders;
+    // the orders when the delay queue returns an order due to the order reached zero shelf time. The held reservations, and the
+    // deadlines of the orders waiting for a space, are watched in the same queue.
+    private final BlockingQueue<Delayed> watchQueueForExpirableOrders;
     // This stores all the changes that are happening on all the shelves. This is read by a separate thread and updates #watchQueueForExpirableOrders and #watchQueuesForMovableOrders
     private final BlockingQueue<OrderAndShelfOperation> updatesQueue;
 
@@ -60,10 +68,17 @@ import java.util.concurrent.PriorityBlockingQueue;
     private final Queue<IShelfPodObserver> observers;
 
     private volatile ExecutorService executorService;
+    // Indexed by the ordinal of the temperature like the mover queues.
+    private volatile MoverThread[] moverThreads;
 
     public ShelfPod(List<Shelf> shelves) {
-        super(shelves);
-        this.watchQueuesForMovableOrders = createWatchQueuesForMovableOrders(new OrderExpiryComparator(getDecayRateFactors(shelves)));
+        this(shelves, ShelfPodOptions.defaults());
+    }
+
+    public ShelfPod(List<Shelf> shelves, ShelfPodOptions shelfPodOptions) {
+        super(shelves, shelfPodOptions);
+        this.watchQueuesForMovableOrders = createWatchQueuesForMovableOrders(new OrderExpiryComparator(getShelfRegistry()));
+        this.moverThreads = new MoverThread[getShelfRegistry().size()];
         this.watchQueueForExpirableOrders = new DelayQueue<>();
         this.updatesQueue = new LinkedBlockingQueue<>();
         this.observers = new ConcurrentLinkedQueue<>();
@@ -73,28 +88,51 @@ import java.util.concurrent.PriorityBlockingQueue;
      * Starting background threads separately(not part of constructor initialization) to avoid partial visibility of the objects to threads
      * which may cause race conditions.
      */
-    public void startBackgroundActivities() {
-        executorService = ExecutorServicesUtil.createFixedThreadPool("shelf-pod-thread-", 10, 30);
-        for (Temperature temperature : Temperature.getRegularShelves()) {
-            MoverThread moverThread = new MoverThread(watchQueuesForMovableOrders.get(temperature), temperature);
+    @Override public void startBackgroundActivities() {
+        executorService = ExecutorServicesUtil.createFixedThreadPool("shelf-pod-thread-", 10);
+        MoverThread[] moverThreads = new MoverThread[watchQueuesForMovableOrders.length];
+        for (Temperature temperature : getShelfRegistry().getRegularShelves()) {
+            MoverThread moverThread = new MoverThread(watchQueuesForMovableOrders[temperature.ordinal()], temperature);
+            moverThreads[temperature.ordinal()] = moverThread;
             executorService.submit(moverThread);
         }
+        this.moverThreads = moverThreads;
         executorService.submit(new MarkExpiredThread());
         executorService.submit(new ShelfUpdatesReaderThread());
     }
 
-    public void stopBackgroundActivities() {
+    @Override public void stopBackgroundActivities() {
         if (executorService != null) {
             executorService.shutdownNow();
         }
+        if (getLockContentionMonitor().isEnabled()) {
+            log.info("Lock contention report={}", getLockContentionReport());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private BlockingQueue<Order>[] createWatchQueuesForMovableOrders(Comparator<Order> orderExpiryComparator) {
+        BlockingQueue<Order>[] regularShelvesQueues = new BlockingQueue[getShelfRegistry().size()];
+        for (Temperature temperature : getShelfRegistry().getRegularShelves()) {
+            regularShelvesQueues[temperature.ordinal()] = new PriorityBlockingQueue<>(16, orderExpiryComparator);
+        }
+        return regularShelvesQueues;
     }
 
-    private Map<Temperature, BlockingQueue<Order>> createWatchQueuesForMovableOrders(Comparator<Order> orderExpiryComparator) {
-        Map<Temperature, BlockingQueue<Order>> regularShelvesQueues = new HashMap<>();
-        for (Temperature temperature : Temperature.getRegularShelves()) {
-            regularShelvesQueues.put(temperature, new PriorityBlockingQueue<>(16, orderExpiryComparator));
+    /**
+     * Records the given operation into the local queue for further processing by other threads.
+     *
+     * @param order
+     * @param shelfOperation
+     */
+    private void publishUpdate(Order order, ShelfOperation shelfOperation) {
+        LockContentionMonitor lockContentionMonitor = getLockContentionMonitor();
+        long token = lockContentionMonitor.enter(SyncPoint.UpdatesQueue, order.getTemperature());
+        try {
+            updatesQueue.add(new OrderAndShelfOperation(order, shelfOperation));
+        } finally {
+            lockContentionMonitor.exit(SyncPoint.UpdatesQueue, order.getTemperature(), token);
         }
-        return ImmutableMap.copyOf(regularShelvesQueues);
     }
 
     /**
@@ -103,15 +141,45 @@ import java.util.concurrent.PriorityBlockingQueue;
      * @param order
      * @return
      */
-    @Override public AddResult addOrder(Order order) {
-        AddResult addResult = super.addOrder(order);
+    @Override protected AddResult addNewOrder(Order order, Reservation reservation) {
+        AddResult addResult = super.addNewOrder(order, reservation);
         if (addResult.isAdded()) {
-            updatesQueue.add(new OrderAndShelfOperation(order, ShelfOperation.Add));
+            publishUpdate(order, ShelfOperation.Add);
         }
         notifyObserversAddition(order, addResult);
         return addResult;
     }
 
+    /**
+     * Watches the given reservation for expiry along with the orders. A committed or released reservation is left in the delay
+     * queue like a cancelled order, and it is skipped by {@link MarkExpiredThread} as it is no longer held.
+     *
+     * @param reservation
+     */
+    @Override protected void postReserve(Reservation reservation) {
+        watchForExpiry(reservation, reservation.getTemperature());
+    }
+
+    /**
+     * Watches the deadline of the given pending order, so the order is added at its deadline even if no space is released until then.
+     * An admitted order is left in the delay queue, and its deadline only triggers another admission round.
+     *
+     * @param pendingOrder
+     */
+    @Override protected void postEnqueue(PendingOrder pendingOrder) {
+        watchForExpiry(pendingOrder, pendingOrder.getOrder().getTemperature());
+    }
+
+    private void watchForExpiry(Delayed delayed, Temperature temperature) {
+        LockContentionMonitor lockContentionMonitor = getLockContentionMonitor();
+        long token = lockContentionMonitor.enter(SyncPoint.ExpiryQueue, temperature);
+        try {
+            watchQueueForExpirableOrders.add(delayed);
+        } finally {
+            lockContentionMonitor.exit(SyncPoint.ExpiryQueue, temperature, token);
+        }
+    }
+
     /**
      * Just overrides base class's function, and records the add event into local queue for further processing by other threads.
      *
@@ -121,7 +189,8 @@ import java.util.concurrent.PriorityBlockingQueue;
     @Override protected AddResult moveOrder(Order order) {
         AddResult addResult = super.moveOrder(order);
         if (addResult.isAdded()) {
-            updatesQueue.add(new OrderAndShelfOperation(order, ShelfOperation.Move));
+            publishUpdate(order, ShelfOperation.Move);
+            notifyObservers(order, ShelfOperation.Move);
         }
         return addResult;
     }
@@ -135,7 +204,8 @@ import java.util.concurrent.PriorityBlockingQueue;
     @Override protected boolean removeOrder(Order order) {
         boolean removed = super.removeOrder(order);
         if (removed) {
-            updatesQueue.add(new OrderAndShelfOperation(order, ShelfOperation.Remove));
+            publishUpdate(order, ShelfOperation.Remove);
+            notifyObservers(order, ShelfOperation.Remove);
         }
         return removed;
     }
@@ -149,11 +219,42 @@ import java.util.concurrent.PriorityBlockingQueue;
     @Override protected boolean expireOrder(Order order) {
         boolean expired = super.expireOrder(order);
         if (expired) {
-            updatesQueue.add(new OrderAndShelfOperation(order, ShelfOperation.Expire));
+            publishUpdate(order, ShelfOperation.Expire);
+            notifyObservers(order, ShelfOperation.Expire);
         }
         return expired;
     }
 
+    /**
+     * Just overrides base class's function, and records the evict event into local queue for further processing by other threads.
+     *
+     * @param order
+     * @return
+     */
+    @Override protected boolean evictOrder(Order order) {
+        boolean evicted = super.evictOrder(order);
+        if (evicted) {
+            publishUpdate(order, ShelfOperation.Evict);
+            notifyObservers(order, ShelfOperation.Evict);
+        }
+        return evicted;
+    }
+
+    /**
+     * Just overrides base class's function, and records the cancel event into local queue for further processing by other threads.
+     *
+     * @param order
+     * @return
+     */
+    @Override protected boolean cancelOrder(Order order) {
+        boolean cancelled = super.cancelOrder(order);
+        if (cancelled) {
+            publishUpdate(order, ShelfOperation.Cancel);
+            notifyObservers(order, ShelfOperation.Cancel);
+        }
+        return cancelled;
+    }
+
     /**
      * Just overrides base class's function, and records the poll event into local queue for further processing by other threads.
      *
@@ -162,12 +263,45 @@ import java.util.concurrent.PriorityBlockingQueue;
     @Override public Order pollOrder() {
         Order order = super.pollOrder();
         if (order != null) {
-            updatesQueue.add(new OrderAndShelfOperation(order, ShelfOperation.Poll));
+            publishUpdate(order, ShelfOperation.Poll);
+            notifyObservers(order, ShelfOperation.Poll);
         }
         return order;
     }
 
 
+    /**
+     * Additionally checks that the background threads have not lost track of any stored order, i.e. every stored order is watched
+     * for expiry, and every overflow order is either in the mover queue of its temperature or is being moved by the mover thread.
+     *
+     * @return
+     */
+    @Override public List<String> checkInvariants() {
+        List<String> violations = super.checkInvariants();
+        if (!updatesQueue.isEmpty()) {
+            // The queues of the background threads are not up to date until the pending updates are read.
+            violations.add("updatesQueue has pending updates:" + updatesQueue.size());
+            return violations;
+        }
+        Set<Order> expirableOrders = new HashSet<>();
+        for (Delayed delayed : watchQueueForExpirableOrders) {
+            if (delayed instanceof DelayedOrder) {
+                expirableOrders.add(((DelayedOrder) delayed).getOrder());
+            }
+        }
+        for (Order order : getOrders()) {
+            if (!expirableOrders.contains(order))
+                violations.add("orderId:" + order.getId() + " is not watched for expiry");
+            if (order.getOrderState() == OrderState.StoredInOverflowShelf && !watchQueuesForMovableOrders[order.getTemperature().ordinal()]
+                .contains(order)) {
+                MoverThread moverThread = moverThreads[order.getTemperature().ordinal()];
+                if (moverThread == null || !order.equals(moverThread.movingOrder))
+                    violations.add("orderId:" + order.getId() + " is not watched for moving to shelf:" + order.getTemperature());
+            }
+        }
+        return violations;
+    }
+
     @Override public boolean addObserver(IShelfPodObserver shelfPodObserver) {
         return observers.add(shelfPodObserver);
     }
@@ -182,6 +316,37 @@ import java.util.concurrent.PriorityBlockingQueue;
         }
     }
 
+    private void notifyObservers(Order order, ShelfOperation shelfOperation) {
+        for (IShelfPodObserver observer : observers) {
+            observer.postShelfOperation(order, shelfOperation);
+        }
+    }
+
+    /**
+     * Takes the head of the given queue for a background thread. When the contention is accounted, the queue is polled first through
+     * the {@link LockContentionMonitor}, and the thread blocks in the take only if the queue is empty.
+     *
+     * @param queue
+     * @param syncPoint
+     * @param temperature temperature of the queue, null if it is shared by all the temperatures.
+     * @param <T>
+     * @return
+     * @throws InterruptedException
+     */
+    private <T> T take(BlockingQueue<T> queue, SyncPoint syncPoint, Temperature temperature) throws InterruptedException {
+        LockContentionMonitor lockContentionMonitor = getLockContentionMonitor();
+        if (!lockContentionMonitor.isEnabled())
+            return queue.take();
+        T element;
+        long token = lockContentionMonitor.enter(syncPoint, temperature);
+        try {
+            element = queue.poll();
+        } finally {
+            lockContentionMonitor.exit(syncPoint, temperature, token);
+        }
+        return element != null ? element : queue.take();
+    }
+
     /**
      * This thread reads all the operations that happened on the shelf from a queue, and feeds that information into {@link MoverThread}'s queue and
      * {@link MarkExpiredThread}'s queue.
@@ -191,7 +356,7 @@ import java.util.concurrent.PriorityBlockingQueue;
         @Override public void run() {
             while (true) {
                 try {
-                    OrderAndShelfOperation orderAndShelfOperation = updatesQueue.take();
+                    OrderAndShelfOperation orderAndShelfOperation = take(updatesQueue, SyncPoint.UpdatesQueue, null);
                     updateMoverThreadQueue(orderAndShelfOperation);
                     updateExpireThreadQueue(orderAndShelfOperation);
                 } catch (InterruptedException e) {
@@ -208,21 +373,41 @@ import java.util.concurrent.PriorityBlockingQueue;
          * @param orderAndShelfOperation
          */
         private void updateExpireThreadQueue(OrderAndShelfOperation orderAndShelfOperation) {
-            DelayedOrder delayedOrder = new DelayedOrder(orderAndShelfOperation.order, decayRateFactors);
+            DelayedOrder delayedOrder = new DelayedOrder(orderAndShelfOperation.order, getShelfRegistry());
 
             switch (orderAndShelfOperation.shelfOperation) {
                 case Add:
                 case Move:
-                    watchQueueForExpirableOrders.add(delayedOrder);
+                    updateExpireThreadQueue(delayedOrder, true);
                     break;
                 case Remove:
                 case Poll:
-                    watchQueueForExpirableOrders.remove(delayedOrder);
+                case Evict:
+                    updateExpireThreadQueue(delayedOrder, false);
                     break;
                 case Expire:
                     // If the order is already expired, then we are not interested in the order anymore for watching.
                     // no operation on this
                     break;
+                case Cancel:
+                    // Removing from the delay queue is O(N), so a cancelled order is left in it, and it is skipped by MarkExpiredThread
+                    // as it has reached an end state. This keeps cancellation O(log N) end to end.
+                    break;
+            }
+        }
+
+        private void updateExpireThreadQueue(DelayedOrder delayedOrder, boolean add) {
+            LockContentionMonitor lockContentionMonitor = getLockContentionMonitor();
+            Temperature temperature = delayedOrder.getOrder().getTemperature();
+            long token = lockContentionMonitor.enter(SyncPoint.ExpiryQueue, temperature);
+            try {
+                if (add) {
+                    watchQueueForExpirableOrders.add(delayedOrder);
+                } else {
+                    watchQueueForExpirableOrders.remove(delayedOrder);
+                }
+            } finally {
+                lockContentionMonitor.exit(SyncPoint.ExpiryQueue, temperature, token);
             }
         }
 
@@ -239,7 +424,7 @@ import java.util.concurrent.PriorityBlockingQueue;
             switch (orderAndShelfOperation.shelfOperation) {
                 case Add:
                     if (order.getOrderState() == OrderState.StoredInOverflowShelf) {
-                        watchQueuesForMovableOrders.get(order.getTemperature()).add(order);
+                        updateMoverThreadQueue(order, true);
                     }
                     break;
                 case Move:
@@ -250,9 +435,31 @@ import java.util.concurrent.PriorityBlockingQueue;
                 case Poll:
                     if (order.getOrderState() == OrderState.ExpiredInOverflowShelf
                         || order.getOrderState() == OrderState.DeliveredFromOverflowShelf) {
-                        watchQueuesForMovableOrders.get(order.getTemperature()).remove(order);
+                        updateMoverThreadQueue(order, false);
                     }
                     break;
+                case Evict:
+                    // Only overflow orders are evicted.
+                    updateMoverThreadQueue(order, false);
+                    break;
+                case Cancel:
+                    // Like the delay queue, a cancelled order is left in the mover queue, and it is skipped by MoverThread.
+                    break;
+            }
+        }
+
+        private void updateMoverThreadQueue(Order order, boolean add) {
+            LockContentionMonitor lockContentionMonitor = getLockContentionMonitor();
+            BlockingQueue<Order> moverQueue = watchQueuesForMovableOrders[order.getTemperature().ordinal()];
+            long token = lockContentionMonitor.enter(SyncPoint.MoverQueue, order.getTemperature());
+            try {
+                if (add) {
+                    moverQueue.add(order);
+                } else {
+                    moverQueue.remove(order);
+                }
+            } finally {
+                lockContentionMonitor.exit(SyncPoint.MoverQueue, order.getTemperature(), token);
             }
         }
     }
@@ -266,6 +473,8 @@ import java.util.concurrent.PriorityBlockingQueue;
 
         private final BlockingQueue<Order> orders;
         private final Temperature movingTo;
+        // The order taken from the queue which is being moved, moveOrder() may wait for a long time until a space is available.
+        private volatile Order movingOrder;
 
         public MoverThread(BlockingQueue<Order> orders, Temperature movingTo) {
             this.orders = orders;
@@ -278,13 +487,26 @@ import java.util.concurrent.PriorityBlockingQueue;
                 try {
                     //Both take() and moveOrder(order) are blocking calls. So this thread will be suspended if there are no orders to take
                     // or no space available on the regular shelf to move the order. So we will save the system resources using this approach.
-                    Order order = orders.take();
+                    Order order = take(orders, SyncPoint.MoverQueue, movingTo);
+                    movingOrder = order;
+                    OverflowMoveEvent event = FlightRecorderEvents.beginOverflowMove();
+                    boolean moved = false;
                     if (!order.hasReachedEndState()) {
                         AddResult moveResult = moveOrder(order);
-                        if (moveResult.isAdded()) {
-                            log.info("Moved order to the regular shelf, order={}", order);
+                        moved = moveResult.isAdded();
+                        if (moved) {
+                            log.debug("Moved order to the regular shelf, order={}", order);
                         }
                     }
+                    movingOrder = null;
+                    if (event != null && event.shouldCommit()) {
+                        event.orderId = order.getId();
+                        event.temperature = order.getTemperature().name();
+                        event.orderState = order.getOrderState().name();
+                        event.moved = moved;
+                        event.moverQueueSize = orders.size();
+                        event.commit();
+                    }
                 } catch (InterruptedException e) {
                     //If the thread is interrupted, lets not proceed further this task.
                     return;
@@ -305,14 +527,34 @@ import java.util.concurrent.PriorityBlockingQueue;
             log.info("Launching mark expiring thread.");
             while (true) {
                 try {
-                    DelayedOrder delayedOrder = watchQueueForExpirableOrders.take();
+                    Delayed delayed = take(watchQueueForExpirableOrders, SyncPoint.ExpiryQueue, null);
+                    if (delayed instanceof Reservation) {
+                        expireReservation((Reservation) delayed);
+                        continue;
+                    }
+                    if (delayed instanceof PendingOrder) {
+                        admitPendingOrders();
+                        continue;
+                    }
+                    DelayedOrder delayedOrder = (DelayedOrder) delayed;
                     Order order = delayedOrder.getOrder();
+                    ExpiryEvent event = FlightRecorderEvents.beginExpiry();
+                    boolean expired = false;
                     if (!order.hasReachedEndState()) {
-                        boolean expired = expireOrder(order);
+                        expired = expireOrder(order);
                         if (expired) {
-                            log.info("Expired order from shelf, order={}", order);
+                            log.debug("Expired order from shelf, order={}", order);
                         }
                     }
+                    if (event != null && event.shouldCommit()) {
+                        event.orderId = order.getId();
+                        event.temperature = order.getTemperature().name();
+                        event.orderState = order.getOrderState().name();
+                        event.expired = expired;
+                        event.lateness = -delayedOrder.getDelay(TimeUnit.MILLISECONDS);
+                        event.expiryQueueSize = watchQueueForExpirableOrders.size();
+                        event.commit();
+                    }
                 } catch (InterruptedException e) {
                     //If the thread is interrupted, lets not proceed further this task.
                     return;
@@ -0,0 +1,56 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.common.IClock;
+import com.cloudkitchens.fulfillment.common.SystemClock;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.LinearDecayModel;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.OrderIndexType;
+import com.cloudkitchens.fulfillment.entities.shelves.dedup.DuplicateOrderFilter;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.IEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.NoEvictionPolicy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.EarliestDeadlinePickupStrategy;
+import com.cloudkitchens.fulfillment.entities.shelves.strategies.IPickupStrategy;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Pluggable behaviours of a shelf pod. Any option which is not set falls back to the default behaviour.
+ */
+@Getter @Builder public class ShelfPodOptions {
+
+    // Decides whether an order on a full overflow shelf is evicted for an incoming order.
+    @Builder.Default private final IEvictionPolicy evictionPolicy = new NoEvictionPolicy();
+    // Decides which order is picked up by a courier.
+    @Builder.Default private final IPickupStrategy pickupStrategy = new EarliestDeadlinePickupStrategy();
+    // Decides when the orders expire, simulations pass a VirtualClock to run faster than the wall clock.
+    @Builder.Default private final IClock clock = new SystemClock();
+    // Decides how the shelf values of the orders decay, the expiry timestamps are calculated by it once per placement and move.
+    @Builder.Default private final IDecayModel decayModel = new LinearDecayModel();
+    // One in these many lock acquisitions is timed by the LockContentionMonitor of the heap engine, 0 disables the monitor.
+    @Builder.Default private final int lockContentionSamplingInterval = 0;
+    // How long the order ids are remembered to make the adds idempotent, at least the maximum shelf life of the orders. 0 disables it.
+    @Builder.Default private final long deduplicationWindowInMs = 0;
+    // Expected number of orders added in a deduplication window, sizes the bloom filters of the order ids. 0 disables the filters.
+    @Builder.Default private final int deduplicationPrefilterCapacity = 0;
+    // How long past its expected ready time a shelf reservation holds its space before it is reclaimed.
+    @Builder.Default private final long reservationGracePeriodInMs = 30_000;
+    // Index of the stored orders by expiry timestamp in ArrayShelfPod, a calendar queue suits the pods of hundreds of thousands of orders.
+    @Builder.Default private final OrderIndexType orderIndexType = OrderIndexType.Heap;
+    // Minimum bucket width of the calendar queues, the bucket width adapts to the spread of the expiry timestamps above this.
+    @Builder.Default private final long calendarQueueGranularityInMs = 1;
+
+    /**
+     * Creates the filter of the duplicate adds, or returns null if the deduplication is disabled.
+     *
+     * @return
+     */
+    public DuplicateOrderFilter createDuplicateOrderFilter() {
+        return deduplicationWindowInMs == 0 ?
+            null :
+            new DuplicateOrderFilter(deduplicationWindowInMs, deduplicationPrefilterCapacity, clock);
+    }
+
+    public static ShelfPodOptions defaults() {
+        return ShelfPodOptions.builder().build();
+    }
+}
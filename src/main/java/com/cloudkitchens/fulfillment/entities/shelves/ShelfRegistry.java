@@ -0,0 +1,206 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The shelves of a pod in arrays indexed by the {@link Temperature#ordinal()} of their temperature, built when the pod is created
+ * and rebuilt when it is reconfigured. The lookups of the comparators and the decay rates are array reads, instead of map lookups
+ * which hash the temperature on every call.
+ * <p>
+ * The arrays cover the temperatures defined when the registry is built. A pod stores the orders of a temperature only if it has a
+ * shelf of that temperature, see {@link #checkRegularShelf(Temperature)}.
+ * <p>
+ * Besides the {@link Temperature#Overflow} shelf, there can be more overflow tiers, the shelves of the temperatures defined by
+ * {@link Temperature#defineOverflow(String)}. The tiers are ordered by their decay rate factors, the slowest decaying first, so the
+ * first tier which has a space is where an overflow order keeps the most of its value.
+ */
+@Immutable public final class ShelfRegistry {
+
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+
+    private final List<Shelf> shelves;
+    private final Shelf[] shelvesByTemperature;
+    private final double[] decayRateFactors;
+    private final int[] capacities;
+    // Temperatures of the regular shelves, in the order of their ordinals.
+    private final List<Temperature> regularShelves;
+    // Temperatures of the overflow shelves, the slowest decaying first.
+    private final List<Temperature> overflowShelves;
+    private final int totalCapacity;
+    // Flyweight add results indexed by outcome(0 for rejected, 1 for added), shelf temperature and order state.
+    private final AddResult[][][] addResults;
+
+    /**
+     * @param shelves one shelf per temperature, including an overflow shelf.
+     * @throws IllegalArgumentException if a temperature has more than one shelf, or if there is no overflow shelf.
+     */
+    public ShelfRegistry(List<Shelf> shelves) {
+        int temperatures = Temperature.count();
+        this.shelves = ImmutableList.copyOf(shelves);
+        this.shelvesByTemperature = new Shelf[temperatures];
+        this.decayRateFactors = new double[temperatures];
+        this.capacities = new int[temperatures];
+        int totalCapacity = 0;
+        for (Shelf shelf : shelves) {
+            int index = shelf.getTemperature().ordinal();
+            if (shelvesByTemperature[index] != null)
+                throw new IllegalArgumentException("More than one shelf of temperature:" + shelf.getTemperature() + ", given:" + shelves);
+            shelvesByTemperature[index] = shelf;
+            decayRateFactors[index] = shelf.getDecayRateFactor();
+            capacities[index] = shelf.getCapacity();
+            totalCapacity += shelf.getCapacity();
+        }
+        if (shelvesByTemperature[Temperature.Overflow.ordinal()] == null)
+            throw new IllegalArgumentException("No overflow shelf, given:" + shelves);
+        ImmutableList.Builder<Temperature> regularShelves = ImmutableList.builder();
+        List<Temperature> overflowShelves = new ArrayList<>();
+        for (Shelf shelf : shelvesByTemperature) {
+            if (shelf == null)
+                continue;
+            if (shelf.getTemperature().isOverflow())
+                overflowShelves.add(shelf.getTemperature());
+            else
+                regularShelves.add(shelf.getTemperature());
+        }
+        overflowShelves.sort(Comparator.comparingDouble((Temperature temperature) -> decayRateFactors[temperature.ordinal()])
+            .thenComparingInt(Temperature::ordinal));
+        this.regularShelves = regularShelves.build();
+        this.overflowShelves = ImmutableList.copyOf(overflowShelves);
+        this.totalCapacity = totalCapacity;
+        this.addResults = new AddResult[2][temperatures][ORDER_STATES.length];
+        for (int added = 0; added < addResults.length; added++) {
+            for (Shelf shelf : shelves) {
+                AddResult[] shelfAddResults = addResults[added][shelf.getTemperature().ordinal()];
+                for (OrderState orderState : ORDER_STATES) {
+                    shelfAddResults[orderState.ordinal()] = new AddResult(added == 1, orderState, shelf);
+                }
+            }
+        }
+    }
+
+    public List<Shelf> getShelves() {
+        return shelves;
+    }
+
+    public List<Temperature> getRegularShelves() {
+        return regularShelves;
+    }
+
+    /**
+     * Returns the temperatures of the overflow shelves, ordered by their decay rate factors, the slowest decaying first.
+     *
+     * @return
+     */
+    public List<Temperature> getOverflowShelves() {
+        return overflowShelves;
+    }
+
+    /**
+     * Returns the length of the arrays, the ordinals of the temperatures covered are below it.
+     *
+     * @return
+     */
+    public int size() {
+        return shelvesByTemperature.length;
+    }
+
+    public int getTotalCapacity() {
+        return totalCapacity;
+    }
+
+    public boolean hasShelf(Temperature temperature) {
+        return temperature.ordinal() < shelvesByTemperature.length && shelvesByTemperature[temperature.ordinal()] != null;
+    }
+
+    /**
+     * Checks that the orders of the given temperature can be stored, i.e. that there is a regular shelf of the temperature.
+     *
+     * @param temperature
+     * @throws IllegalArgumentException if there is no regular shelf of the given temperature.
+     */
+    public void checkRegularShelf(Temperature temperature) {
+        if (temperature.isOverflow() || !hasShelf(temperature))
+            throw new IllegalArgumentException("No regular shelf of temperature:" + temperature + ", regular shelves:" + regularShelves);
+    }
+
+    public Shelf getShelf(Temperature temperature) {
+        return shelvesByTemperature[temperature.ordinal()];
+    }
+
+    public Shelf getShelf(int index) {
+        return shelvesByTemperature[index];
+    }
+
+    public double getDecayRateFactor(Temperature temperature) {
+        return decayRateFactors[temperature.ordinal()];
+    }
+
+    public double getDecayRateFactor(int index) {
+        return decayRateFactors[index];
+    }
+
+    /**
+     * Returns the decay rate factor of the shelf where the given order is stored, the {@link Temperature#Overflow} shelf for an overflow
+     * order and the regular shelf of its temperature otherwise. An order does not record its overflow tier, so this is for the pods
+     * which have a single overflow shelf.
+     *
+     * @param order
+     * @return
+     */
+    public double getDecayRateFactor(Order order) {
+        return order.getOrderState() == OrderState.StoredInOverflowShelf ?
+            decayRateFactors[Temperature.Overflow.ordinal()] :
+            decayRateFactors[order.getTemperature().ordinal()];
+    }
+
+    /**
+     * Returns the {@link AddResult} of an add on the shelf of the given temperature, which is shared by all the adds of the same
+     * outcome and order state, so an add does not allocate one. The result refers to the shelf as of this registry.
+     *
+     * @param added
+     * @param orderState state of the order at the end of the add.
+     * @param index      ordinal of the temperature of the shelf.
+     * @return
+     */
+    public AddResult getAddResult(boolean added, OrderState orderState, int index) {
+        return addResults[added ? 1 : 0][index][orderState.ordinal()];
+    }
+
+    public int getCapacity(Temperature temperature) {
+        return capacities[temperature.ordinal()];
+    }
+
+    public int getCapacity(int index) {
+        return capacities[index];
+    }
+
+    /**
+     * Returns whether the given registry has the shelves of the same temperatures as this one, which is what a reconfiguration
+     * of a pod can't change.
+     *
+     * @param that
+     * @return
+     */
+    public boolean hasSameTemperatures(ShelfRegistry that) {
+        if (shelves.size() != that.shelves.size())
+            return false;
+        for (Shelf shelf : that.shelves) {
+            if (!hasShelf(shelf.getTemperature()))
+                return false;
+        }
+        return true;
+    }
+
+    @Override public String toString() {
+        return MoreObjects.toStringHelper(ShelfRegistry.class).add("shelves", shelves).toString();
+    }
+}
@@ -0,0 +1,259 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * Calendar queue of int handles(R. Brown, 1988), an {@link IHandleIndex} whose add, remove and poll are amortized O(1) for the keys
+ * which are spread over a bounded horizon, like the expiry timestamps of the orders which are within the maximum shelf life.
+ * <p>
+ * The keys are cut into days of the bucket width, and a handle is kept in the bucket of its day modulo the number of buckets, like
+ * the days of a year in a desk calendar. Each bucket is a doubly linked list of handles sorted by the comparator, so a handle is
+ * removed from the middle in O(1), and a handle is inserted by walking from the tail of its bucket, which is O(1) for the keys which
+ * mostly arrive in increasing order, like the expiry timestamps. The smallest handle is the head of the first bucket, walking from
+ * the day of the last smallest handle, whose head falls on the day walked. If no bucket has one within a year, the heads of all the
+ * buckets are searched directly.
+ * <p>
+ * The number of buckets follows the number of handles, it is doubled when there are more than two handles per bucket and halved when
+ * there are less than a half. The bucket width is recalculated on each resize as three times the average gap between the keys, but
+ * not below the given granularity, so a bucket holds a few handles and the year covers all the keys without any tuning. A resize
+ * reinserts all the handles, which is amortized over the adds and removes that led to it. The width is recalculated as well after a
+ * direct search, which means the keys have spread beyond the year.
+ * <p>
+ * Like {@link HandleHeap}, all the arrays are allocated once for the given capacity, so no objects are allocated afterwards. The
+ * comparator should order the handles by their keys first, it only decides the order of the handles with the same key.
+ */
+@NotThreadSafe public class CalendarQueue implements IHandleIndex {
+
+    private static final int ABSENT = -1;
+    private static final int MIN_BUCKETS = 16;
+
+    private final HandleHeap.HandleComparator comparator;
+    private final HandleKey keys;
+    private final long granularity;
+    // Neighbours of each handle in its bucket.
+    private final int[] previous;
+    private final int[] next;
+    // Handles in no particular order, and the position of each handle in it, used for iterating and reinserting the handles.
+    private final int[] handles;
+    private final int[] positions;
+    private final int[] heads;
+    private final int[] tails;
+    private int size;
+    // Number of buckets in use minus one, the number of buckets is a power of two.
+    private int bucketMask;
+    private long width;
+    // No handle is on a day before this day, the walk for the smallest handle starts from here.
+    private long currentDay = Long.MAX_VALUE;
+
+    /**
+     * Creates a calendar queue which can hold handles in the range [0, capacity).
+     *
+     * @param capacity
+     * @param comparator  orders the handles by their keys first.
+     * @param keys        gives the key of a handle, like its expiry timestamp.
+     * @param granularity minimum bucket width, the keys closer than this share a bucket.
+     * @throws IllegalArgumentException if the granularity is not positive.
+     */
+    public CalendarQueue(int capacity, HandleHeap.HandleComparator comparator, HandleKey keys, long granularity) {
+        if (granularity < 1)
+            throw new IllegalArgumentException("Granularity should be positive, given:" + granularity);
+        this.comparator = comparator;
+        this.keys = keys;
+        this.granularity = granularity;
+        this.previous = new int[capacity];
+        this.next = new int[capacity];
+        this.handles = new int[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, ABSENT);
+        // Buckets are doubled until there are less than two handles per bucket.
+        int maxBuckets = Math.max(MIN_BUCKETS, Integer.highestOneBit(Math.max(1, capacity / 2 - 1)) << 1);
+        this.heads = new int[maxBuckets];
+        this.tails = new int[maxBuckets];
+        this.bucketMask = MIN_BUCKETS - 1;
+        this.width = granularity;
+        Arrays.fill(heads, ABSENT);
+        Arrays.fill(tails, ABSENT);
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override public boolean contains(int handle) {
+        return positions[handle] != ABSENT;
+    }
+
+    @Override public int get(int index) {
+        return handles[index];
+    }
+
+    public int getBuckets() {
+        return bucketMask + 1;
+    }
+
+    public long getWidth() {
+        return width;
+    }
+
+    /**
+     * Adds the given handle into the queue, running time complexity is amortized O(1).
+     *
+     * @param handle
+     * @throws IllegalStateException if the handle is already present in the queue.
+     */
+    @Override public void add(int handle) {
+        if (contains(handle))
+            throw new IllegalStateException("Given handle:" + handle + " is already present in the queue.");
+        positions[handle] = size;
+        handles[size++] = handle;
+        insert(handle);
+        if (size > 2 * getBuckets() && getBuckets() < heads.length)
+            resize(2 * getBuckets());
+    }
+
+    /**
+     * Returns the smallest handle without removing it, or -1 if the queue is empty. Running time complexity is amortized O(1).
+     *
+     * @return
+     */
+    @Override public int peek() {
+        if (size == 0)
+            return ABSENT;
+        int buckets = getBuckets();
+        for (int i = 0; i < buckets; i++) {
+            long day = currentDay + i;
+            int head = heads[(int) (day & bucketMask)];
+            // Any handle of an earlier day in this bucket would be before the current day.
+            if (head != ABSENT && dayOf(head) == day) {
+                currentDay = day;
+                return head;
+            }
+        }
+        int smallest = ABSENT;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int head = heads[bucket];
+            if (head != ABSENT && (smallest == ABSENT || comparator.compare(head, smallest) < 0))
+                smallest = head;
+        }
+        // The keys have spread beyond the year, the width is recalculated for them.
+        resize(buckets);
+        return smallest;
+    }
+
+    /**
+     * Removes and returns the smallest handle, or -1 if the queue is empty. Running time complexity is amortized O(1).
+     *
+     * @return
+     */
+    @Override public int poll() {
+        int handle = peek();
+        if (handle != ABSENT)
+            remove(handle);
+        return handle;
+    }
+
+    /**
+     * Removes the given handle from the queue. Running time complexity is amortized O(1).
+     *
+     * @param handle
+     * @return true if the handle was present in the queue, otherwise false.
+     */
+    @Override public boolean remove(int handle) {
+        int position = positions[handle];
+        if (position == ABSENT)
+            return false;
+        unlink(handle);
+        positions[handle] = ABSENT;
+        size--;
+        if (position != size) {
+            int last = handles[size];
+            handles[position] = last;
+            positions[last] = position;
+        }
+        if (size == 0)
+            currentDay = Long.MAX_VALUE;
+        else if (2 * size < getBuckets() && getBuckets() > MIN_BUCKETS)
+            resize(getBuckets() / 2);
+        return true;
+    }
+
+    @Override public void clear() {
+        for (int i = 0; i < size; i++)
+            positions[handles[i]] = ABSENT;
+        size = 0;
+        resize(MIN_BUCKETS);
+    }
+
+    private long dayOf(int handle) {
+        return Math.floorDiv(keys.key(handle), width);
+    }
+
+    private void insert(int handle) {
+        long day = dayOf(handle);
+        int bucket = (int) (day & bucketMask);
+        int before = tails[bucket];
+        while (before != ABSENT && comparator.compare(before, handle) > 0)
+            before = previous[before];
+        int after = before == ABSENT ? heads[bucket] : next[before];
+        previous[handle] = before;
+        next[handle] = after;
+        if (before == ABSENT)
+            heads[bucket] = handle;
+        else
+            next[before] = handle;
+        if (after == ABSENT)
+            tails[bucket] = handle;
+        else
+            previous[after] = handle;
+        if (day < currentDay)
+            currentDay = day;
+    }
+
+    private void unlink(int handle) {
+        int bucket = (int) (dayOf(handle) & bucketMask);
+        int before = previous[handle];
+        int after = next[handle];
+        if (before == ABSENT)
+            heads[bucket] = after;
+        else
+            next[before] = after;
+        if (after == ABSENT)
+            tails[bucket] = before;
+        else
+            previous[after] = before;
+    }
+
+    private void resize(int buckets) {
+        long smallestKey = Long.MAX_VALUE;
+        long largestKey = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long key = keys.key(handles[i]);
+            smallestKey = Math.min(smallestKey, key);
+            largestKey = Math.max(largestKey, key);
+        }
+        width = granularity;
+        if (size > 1) {
+            long span = largestKey - smallestKey;
+            long gap = (span < 0 ? Long.MAX_VALUE : span) / (size - 1);
+            width = Math.max(granularity, gap > Long.MAX_VALUE / 3 ? Long.MAX_VALUE : 3 * gap);
+        }
+        bucketMask = buckets - 1;
+        Arrays.fill(heads, 0, buckets, ABSENT);
+        Arrays.fill(tails, 0, buckets, ABSENT);
+        currentDay = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++)
+            insert(handles[i]);
+    }
+
+    /**
+     * Gives the key of a handle, on primitives to avoid boxing.
+     */
+    public interface HandleKey {
+        long key(int handle);
+    }
+}
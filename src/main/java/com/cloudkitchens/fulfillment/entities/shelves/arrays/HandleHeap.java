@@ -0,0 +1,171 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * Binary min heap of int handles, with the position of each handle tracked in an array indexed by the handle.
+ * <p>
+ * Handles are small dense integers(like the ones given by {@link OrderStore}), so the heap and the positions are plain int arrays
+ * which are allocated once. This allows add, poll and removal of an arbitrary handle in O(log n) without allocating
+ * any objects, unlike {@link java.util.PriorityQueue} whose removal is O(n).
+ * <p>
+ * The ordering of handles is provided by {@link HandleComparator}, which usually compares values stored in other arrays.
+ * The values that decide the ordering of a handle should not change while the handle is in the heap.
+ */
+@NotThreadSafe public class HandleHeap implements IHandleIndex {
+
+    private static final int ABSENT = -1;
+
+    private final int[] heap;
+    private final int[] positions;
+    private final HandleComparator comparator;
+    private int size;
+
+    /**
+     * Creates a heap which can hold handles in the range [0, capacity).
+     *
+     * @param capacity
+     * @param comparator
+     */
+    public HandleHeap(int capacity, HandleComparator comparator) {
+        this.heap = new int[capacity];
+        this.positions = new int[capacity];
+        this.comparator = comparator;
+        Arrays.fill(positions, ABSENT);
+    }
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override public boolean contains(int handle) {
+        return positions[handle] != ABSENT;
+    }
+
+    /**
+     * Returns the handle at the given index of the underlying array. Useful for iterating all the handles, the handles are
+     * not returned in any particular order.
+     *
+     * @param index
+     * @return
+     */
+    @Override public int get(int index) {
+        return heap[index];
+    }
+
+    /**
+     * Adds the given handle into the heap, running time complexity is O(log n).
+     *
+     * @param handle
+     * @throws IllegalStateException if the handle is already present in the heap.
+     */
+    @Override public void add(int handle) {
+        if (contains(handle))
+            throw new IllegalStateException("Given handle:" + handle + " is already present in the heap.");
+        heap[size] = handle;
+        positions[handle] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Returns the smallest handle without removing it, or -1 if the heap is empty.
+     *
+     * @return
+     */
+    @Override public int peek() {
+        return size == 0 ? ABSENT : heap[0];
+    }
+
+    /**
+     * Removes and returns the smallest handle, or -1 if the heap is empty. Running time complexity is O(log n).
+     *
+     * @return
+     */
+    @Override public int poll() {
+        if (size == 0)
+            return ABSENT;
+        int handle = heap[0];
+        removeAt(0);
+        return handle;
+    }
+
+    /**
+     * Removes the given handle from the heap. Running time complexity is O(log n).
+     *
+     * @param handle
+     * @return true if the handle was present in the heap, otherwise false.
+     */
+    @Override public boolean remove(int handle) {
+        int position = positions[handle];
+        if (position == ABSENT)
+            return false;
+        removeAt(position);
+        return true;
+    }
+
+    @Override public void clear() {
+        for (int i = 0; i < size; i++)
+            positions[heap[i]] = ABSENT;
+        size = 0;
+    }
+
+    private void removeAt(int position) {
+        int removed = heap[position];
+        positions[removed] = ABSENT;
+        size--;
+        if (position == size)
+            return;
+        int last = heap[size];
+        heap[position] = last;
+        positions[last] = position;
+        siftDown(position);
+        if (heap[position] == last)
+            siftUp(position);
+    }
+
+    private void siftUp(int position) {
+        int handle = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentHandle = heap[parent];
+            if (comparator.compare(handle, parentHandle) >= 0)
+                break;
+            heap[position] = parentHandle;
+            positions[parentHandle] = position;
+            position = parent;
+        }
+        heap[position] = handle;
+        positions[handle] = position;
+    }
+
+    private void siftDown(int position) {
+        int handle = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && comparator.compare(heap[right], heap[child]) < 0)
+                child = right;
+            int childHandle = heap[child];
+            if (comparator.compare(handle, childHandle) <= 0)
+                break;
+            heap[position] = childHandle;
+            positions[childHandle] = position;
+            position = child;
+        }
+        heap[position] = handle;
+        positions[handle] = position;
+    }
+
+    /**
+     * Compares two handles, follows the same contract as {@link java.util.Comparator} but on primitive ints to avoid boxing.
+     */
+    public interface HandleComparator {
+        int compare(int first, int second);
+    }
+}
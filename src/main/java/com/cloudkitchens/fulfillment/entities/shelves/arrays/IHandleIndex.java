@@ -0,0 +1,56 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+/**
+ * An index of int handles in the range [0, capacity), like the handles given by {@link OrderStore}, which returns the smallest handle
+ * as per a {@link HandleHeap.HandleComparator}. The values that decide the ordering of a handle should not change while the handle is
+ * in the index.
+ */
+public interface IHandleIndex {
+
+    int size();
+
+    boolean isEmpty();
+
+    boolean contains(int handle);
+
+    /**
+     * Returns the handle at the given index in [0, size), useful for iterating all the handles. The handles are not returned in any
+     * particular order, and the index of a handle changes as the other handles are added and removed.
+     *
+     * @param index
+     * @return
+     */
+    int get(int index);
+
+    /**
+     * Adds the given handle into the index.
+     *
+     * @param handle
+     * @throws IllegalStateException if the handle is already present in the index.
+     */
+    void add(int handle);
+
+    /**
+     * Returns the smallest handle without removing it, or -1 if the index is empty.
+     *
+     * @return
+     */
+    int peek();
+
+    /**
+     * Removes and returns the smallest handle, or -1 if the index is empty.
+     *
+     * @return
+     */
+    int poll();
+
+    /**
+     * Removes the given handle from the index.
+     *
+     * @param handle
+     * @return true if the handle was present in the index, otherwise false.
+     */
+    boolean remove(int handle);
+
+    void clear();
+}
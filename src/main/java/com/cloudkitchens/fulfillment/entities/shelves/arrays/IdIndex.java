@@ -0,0 +1,116 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * Hash index from order id to handle, for finding a stored order by its id in O(1).
+ * <p>
+ * The ids and the handles are kept in two parallel primitive arrays with open addressing and linear probing, which are allocated once
+ * with at least twice the number of handles, so the table is never more than half full and it never has to grow. Removal shifts the
+ * following entries of the probe sequence back instead of leaving tombstones, so lookups do not slow down as orders come and go.
+ * Unlike a {@link java.util.HashMap}, no objects are created for the entries or for boxing the ids.
+ */
+@NotThreadSafe public class IdIndex {
+
+    private static final int ABSENT = -1;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final long[] ids;
+    private final int[] handles;
+    private final int mask;
+    private int size;
+
+    /**
+     * Creates an index which can hold up to the given number of ids.
+     *
+     * @param capacity
+     */
+    public IdIndex(int capacity) {
+        // Smallest power of two which is at least twice the capacity.
+        int tableSize = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+        this.ids = new long[tableSize];
+        this.handles = new int[tableSize];
+        this.mask = tableSize - 1;
+        Arrays.fill(handles, ABSENT);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the handle of the given id, or -1 if the id is not present.
+     *
+     * @param id
+     * @return
+     */
+    public int get(long id) {
+        for (int slot = slotOf(id); handles[slot] != ABSENT; slot = (slot + 1) & mask) {
+            if (ids[slot] == id)
+                return handles[slot];
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Maps the given id to the given handle, replacing the handle the id was mapped to.
+     *
+     * @param id
+     * @param handle
+     */
+    public void put(long id, int handle) {
+        int slot = slotOf(id);
+        while (handles[slot] != ABSENT && ids[slot] != id)
+            slot = (slot + 1) & mask;
+        if (handles[slot] == ABSENT)
+            size++;
+        ids[slot] = id;
+        handles[slot] = handle;
+    }
+
+    /**
+     * Removes the given id only if it is mapped to the given handle, so removing an order does not remove another order which was
+     * stored with the same id later.
+     *
+     * @param id
+     * @param handle
+     * @return true if the id was removed.
+     */
+    public boolean remove(long id, int handle) {
+        for (int slot = slotOf(id); handles[slot] != ABSENT; slot = (slot + 1) & mask) {
+            if (ids[slot] == id) {
+                if (handles[slot] != handle)
+                    return false;
+                removeAt(slot);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Empties the given slot, and moves back the entries following it whose probe sequence passes through the slot, so every entry
+     * stays reachable from its home slot without crossing an empty slot.
+     *
+     * @param slot
+     */
+    private void removeAt(int slot) {
+        int gap = slot;
+        for (int next = (gap + 1) & mask; handles[next] != ABSENT; next = (next + 1) & mask) {
+            int home = slotOf(ids[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                ids[gap] = ids[next];
+                handles[gap] = handles[next];
+                gap = next;
+            }
+        }
+        handles[gap] = ABSENT;
+        size--;
+    }
+
+    private int slotOf(long id) {
+        long hash = id * GOLDEN_GAMMA;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,11 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+/**
+ * Implementations of the {@link IHandleIndex} which orders the stored orders by expiry timestamp in an array based shelf pod.
+ */
+public enum OrderIndexType {
+    // HandleHeap, O(log n) add, remove and poll.
+    Heap,
+    // CalendarQueue, amortized O(1) add, remove and poll, for the pods holding hundreds of thousands of orders.
+    CalendarQueue
+}
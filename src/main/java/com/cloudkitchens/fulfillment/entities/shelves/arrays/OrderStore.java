@@ -0,0 +1,154 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Stores the attributes of orders in parallel primitive arrays(struct of arrays), an order is addressed by an int handle
+ * which is the index into these arrays.
+ * <p>
+ * All the arrays are allocated once with the given capacity, and handles are recycled through a free list. So storing an order
+ * does not create any objects, and the garbage collector sees a fixed number of primitive arrays which it does not have to
+ * trace, irrespective of how many orders are stored.
+ * <p>
+ * {@link Order} instances are created only through {@link #toOrder(int, OrderState)}, when an order has to be handed out.
+ */
+@NotThreadSafe public class OrderStore {
+
+    private final long[] ids;
+    private final int[] nameIds;
+    private final byte[] temperatures;
+    private final int[] shelfLivesInSecs;
+    private final double[] decayRates;
+    private final long[] createdTimestampsInMs;
+    private final long[] timeSpentOnOverflowShelfInMs;
+    private final long[] expiryTimestampsInMs;
+    // Temperature of the shelf which currently stores the order.
+    private final byte[] shelves;
+    private final int[] freeHandles;
+    private int freeCount;
+
+    public OrderStore(int capacity) {
+        this.ids = new long[capacity];
+        this.nameIds = new int[capacity];
+        this.temperatures = new byte[capacity];
+        this.shelfLivesInSecs = new int[capacity];
+        this.decayRates = new double[capacity];
+        this.createdTimestampsInMs = new long[capacity];
+        this.timeSpentOnOverflowShelfInMs = new long[capacity];
+        this.expiryTimestampsInMs = new long[capacity];
+        this.shelves = new byte[capacity];
+        this.freeHandles = new int[capacity];
+        for (int i = 0; i < capacity; i++)
+            freeHandles[i] = capacity - 1 - i;
+        this.freeCount = capacity;
+    }
+
+    public int capacity() {
+        return ids.length;
+    }
+
+    public int size() {
+        return ids.length - freeCount;
+    }
+
+    /**
+     * Copies the attributes of the given order into the store.
+     *
+     * @param order
+     * @param shelf               temperature of the shelf which stores the order.
+     * @param expiryTimestampInMs
+     * @return handle of the stored order, or -1 if the store is full.
+     */
+    public int store(Order order, Temperature shelf, long expiryTimestampInMs) {
+        if (freeCount == 0)
+            return -1;
+        int handle = freeHandles[--freeCount];
+        ids[handle] = order.getId();
+        nameIds[handle] = order.getNameId();
+        temperatures[handle] = (byte) order.getTemperature().ordinal();
+        shelfLivesInSecs[handle] = order.getShelfLifeInSecs();
+        decayRates[handle] = order.getDecayRate();
+        createdTimestampsInMs[handle] = order.getCreatedTimestamp();
+        timeSpentOnOverflowShelfInMs[handle] = order.getTimeSpentOnOverflowShelfInMs();
+        expiryTimestampsInMs[handle] = expiryTimestampInMs;
+        shelves[handle] = (byte) shelf.ordinal();
+        return handle;
+    }
+
+    /**
+     * Releases the handle, after this the handle can be given to another order.
+     *
+     * @param handle
+     */
+    public void release(int handle) {
+        freeHandles[freeCount++] = handle;
+    }
+
+    /**
+     * Creates an {@link Order} with the stored attributes and the given orderState.
+     *
+     * @param handle
+     * @param orderState
+     * @return
+     */
+    public Order toOrder(int handle, OrderState orderState) {
+        return new Order(ids[handle], nameIds[handle], getTemperature(handle), shelfLivesInSecs[handle], decayRates[handle],
+            createdTimestampsInMs[handle], orderState, timeSpentOnOverflowShelfInMs[handle], expiryTimestampsInMs[handle]);
+    }
+
+    public long getId(int handle) {
+        return ids[handle];
+    }
+
+    public Temperature getTemperature(int handle) {
+        return Temperature.forOrdinal(temperatures[handle]);
+    }
+
+    public int getShelfLifeInSecs(int handle) {
+        return shelfLivesInSecs[handle];
+    }
+
+    public double getDecayRate(int handle) {
+        return decayRates[handle];
+    }
+
+    public long getCreatedTimestamp(int handle) {
+        return createdTimestampsInMs[handle];
+    }
+
+    public long getExpiryTimestampInMs(int handle) {
+        return expiryTimestampsInMs[handle];
+    }
+
+    public void setExpiryTimestampInMs(int handle, long expiryTimestampInMs) {
+        expiryTimestampsInMs[handle] = expiryTimestampInMs;
+    }
+
+    public void setTimeSpentOnOverflowShelfInMs(int handle, long timeSpentOnOverflowShelfInMs) {
+        this.timeSpentOnOverflowShelfInMs[handle] = timeSpentOnOverflowShelfInMs;
+    }
+
+    public Temperature getShelf(int handle) {
+        return Temperature.forOrdinal(shelves[handle]);
+    }
+
+    public void setShelf(int handle, Temperature shelf) {
+        shelves[handle] = (byte) shelf.ordinal();
+    }
+
+    /**
+     * Compares two stored orders by their expiry timestamps, and by ids in case of a tie.
+     *
+     * @param first
+     * @param second
+     * @return
+     */
+    public int compareByExpiry(int first, int second) {
+        int result = Long.compare(expiryTimestampsInMs[first], expiryTimestampsInMs[second]);
+        return result == 0 ? Long.compare(ids[first], ids[second]) : result;
+    }
+}
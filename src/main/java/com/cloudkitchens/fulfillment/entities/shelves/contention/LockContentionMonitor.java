@@ -0,0 +1,152 @@
+package com.cloudkitchens.fulfillment.entities.shelves.contention;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounts the contention on the synchronization points of a shelf pod, per {@link SyncPoint} and per {@link Temperature}.
+ * <p>
+ * The JDK queues do not expose their locks, so each operation on a synchronization point is wrapped by {@link #enter(SyncPoint,
+ * Temperature)} and {@link #exit(SyncPoint, Temperature, long)}. The monitor counts the threads inside each lock, and an acquisition
+ * which finds another thread inside is accounted as contended. A caller which knows better, like one finding no space on a shelf
+ * semaphore, passes the lock as busy. A background thread polls its queue through the monitor, and only when the queue is empty it
+ * blocks in a take which is not accounted, as it waits for an element rather than for the lock. The order polled from a queue shared
+ * by all the temperatures is not known before the poll, so those polls are accounted without a temperature.
+ * <p>
+ * The lock is acquired and released inside a single call on the queue or the semaphore, so the moment the lock is acquired is not
+ * observable, and the time between the enter and the exit can't be split into the wait for the lock and the hold of it. The monitor
+ * reports that time as the time in the synchronization point, and separately the part of it spent in the contended acquisitions.
+ * <p>
+ * Acquisitions are always counted. Their time is measured only for one in samplingInterval acquisitions, chosen at random, and
+ * the measured time is scaled up by the sampling interval in the report, which bounds the overhead of reading the clock. A monitor
+ * created with the sampling interval 0 is disabled, and costs one branch per operation.
+ */
+@ThreadSafe public class LockContentionMonitor {
+
+    public static final LockContentionMonitor DISABLED = new LockContentionMonitor(0);
+
+    private static final long NOT_SAMPLED = 0;
+
+    private final int samplingInterval;
+    private final long originInNanos = System.nanoTime();
+    // Indexed by the sync point and the temperature, the last index is for the acquisitions without a temperature.
+    // Number of temperatures defined when the monitor was created, the counters without a temperature are at this index.
+    private final int temperatures;
+    private final Counters[][] counters;
+    // Threads inside each lock, indexed like the counters. A shared lock is tracked at the index of the first temperature.
+    private final AtomicInteger[][] threadsInside;
+
+    /**
+     * @param samplingInterval one in these many acquisitions is timed, 0 disables the monitor.
+     * @throws IllegalArgumentException if the sampling interval is negative.
+     */
+    public LockContentionMonitor(int samplingInterval) {
+        if (samplingInterval < 0)
+            throw new IllegalArgumentException("Sampling interval can't be negative, given:" + samplingInterval);
+        this.samplingInterval = samplingInterval;
+        this.temperatures = Temperature.count();
+        this.counters = new Counters[SyncPoint.values().length][temperatures + 1];
+        this.threadsInside = new AtomicInteger[SyncPoint.values().length][temperatures + 1];
+        for (int i = 0; i < counters.length; i++) {
+            for (int j = 0; j < counters[i].length; j++) {
+                counters[i][j] = new Counters();
+                threadsInside[i][j] = new AtomicInteger();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return samplingInterval > 0;
+    }
+
+    public long enter(SyncPoint syncPoint, Temperature temperature) {
+        return enter(syncPoint, temperature, false);
+    }
+
+    /**
+     * Accounts an acquisition of the given synchronization point, which has to be followed by
+     * {@link #exit(SyncPoint, Temperature, long)} once the lock is released, whether or not the operation succeeded.
+     *
+     * @param syncPoint
+     * @param temperature temperature of the lock, or of the order going through a shared lock, null if the order is not known.
+     * @param busy        whether the caller already knows that it has to wait.
+     * @return a token to be passed to the exit.
+     */
+    public long enter(SyncPoint syncPoint, Temperature temperature, boolean busy) {
+        if (samplingInterval == 0)
+            return NOT_SAMPLED;
+        boolean contended = getThreadsInside(syncPoint, temperature).getAndIncrement() > 0 || busy;
+        Counters lockCounters = counters[syncPoint.ordinal()][getIndex(temperature)];
+        lockCounters.acquisitions.increment();
+        if (contended) {
+            lockCounters.contendedAcquisitions.increment();
+        }
+        if (samplingInterval > 1 && ThreadLocalRandom.current().nextInt(samplingInterval) != 0)
+            return NOT_SAMPLED;
+        // The lowest bit carries whether the acquisition was contended, the rest is the time since the origin, which is positive.
+        return ((System.nanoTime() - originInNanos + 1) << 1) | (contended ? 1 : 0);
+    }
+
+    /**
+     * @param syncPoint
+     * @param temperature
+     * @param token       returned by the enter of this acquisition.
+     */
+    public void exit(SyncPoint syncPoint, Temperature temperature, long token) {
+        if (samplingInterval == 0)
+            return;
+        getThreadsInside(syncPoint, temperature).decrementAndGet();
+        if (token == NOT_SAMPLED)
+            return;
+        long elapsedInNanos = System.nanoTime() - originInNanos + 1 - (token >>> 1);
+        Counters lockCounters = counters[syncPoint.ordinal()][getIndex(temperature)];
+        lockCounters.timeInNanos.add(elapsedInNanos);
+        if ((token & 1) == 1) {
+            lockCounters.contendedTimeInNanos.add(elapsedInNanos);
+        }
+    }
+
+    private AtomicInteger getThreadsInside(SyncPoint syncPoint, Temperature temperature) {
+        return threadsInside[syncPoint.ordinal()][syncPoint.isShared() ? 0 : getIndex(temperature)];
+    }
+
+    private int getIndex(Temperature temperature) {
+        return temperature == null ? temperatures : temperature.ordinal();
+    }
+
+    /**
+     * Returns the contention accounted so far. The counters keep running, the report is not a consistent snapshot of all of them.
+     *
+     * @return
+     */
+    public LockContentionReport getReport() {
+        List<LockStats> stats = new ArrayList<>();
+        for (SyncPoint syncPoint : SyncPoint.values()) {
+            for (int index = 0; index <= temperatures; index++) {
+                Temperature temperature = index == temperatures ? null : Temperature.forOrdinal(index);
+                Counters lockCounters = counters[syncPoint.ordinal()][index];
+                long acquisitions = lockCounters.acquisitions.sum();
+                if (acquisitions == 0)
+                    continue;
+                stats.add(LockStats.builder().syncPoint(syncPoint).temperature(temperature).acquisitions(acquisitions)
+                    .contendedAcquisitions(lockCounters.contendedAcquisitions.sum())
+                    .timeInNanos(lockCounters.timeInNanos.sum() * samplingInterval)
+                    .contendedTimeInNanos(lockCounters.contendedTimeInNanos.sum() * samplingInterval).build());
+            }
+        }
+        return new LockContentionReport(stats);
+    }
+
+    private static final class Counters {
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder contendedAcquisitions = new LongAdder();
+        private final LongAdder timeInNanos = new LongAdder();
+        private final LongAdder contendedTimeInNanos = new LongAdder();
+    }
+}
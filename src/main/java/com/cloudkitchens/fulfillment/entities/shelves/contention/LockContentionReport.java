@@ -0,0 +1,86 @@
+package com.cloudkitchens.fulfillment.entities.shelves.contention;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Snapshot of the contention accounted by a {@link LockContentionMonitor}, one {@link LockStats} per synchronization point and
+ * temperature which had any acquisition.
+ */
+@ThreadSafe public class LockContentionReport {
+
+    private final List<LockStats> stats;
+
+    LockContentionReport(List<LockStats> stats) {
+        this.stats = ImmutableList.copyOf(stats);
+    }
+
+    public List<LockStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the stats of the given synchronization point and temperature, all zeros if there was no acquisition.
+     *
+     * @param syncPoint
+     * @param temperature
+     * @return
+     */
+    public LockStats getStats(SyncPoint syncPoint, Temperature temperature) {
+        for (LockStats lockStats : stats) {
+            if (lockStats.getSyncPoint() == syncPoint && lockStats.getTemperature() == temperature)
+                return lockStats;
+        }
+        return LockStats.builder().syncPoint(syncPoint).temperature(temperature).build();
+    }
+
+    /**
+     * Returns the stats of the given synchronization point summed over all the temperatures.
+     *
+     * @param syncPoint
+     * @return
+     */
+    public LockStats getTotal(SyncPoint syncPoint) {
+        long acquisitions = 0, contendedAcquisitions = 0, timeInNanos = 0, contendedTimeInNanos = 0;
+        for (LockStats lockStats : stats) {
+            if (lockStats.getSyncPoint() == syncPoint) {
+                acquisitions += lockStats.getAcquisitions();
+                contendedAcquisitions += lockStats.getContendedAcquisitions();
+                timeInNanos += lockStats.getTimeInNanos();
+                contendedTimeInNanos += lockStats.getContendedTimeInNanos();
+            }
+        }
+        return LockStats.builder().syncPoint(syncPoint).acquisitions(acquisitions).contendedAcquisitions(contendedAcquisitions)
+            .timeInNanos(timeInNanos).contendedTimeInNanos(contendedTimeInNanos).build();
+    }
+
+    /**
+     * Returns the synchronization point whose threads spent the longest in contended acquisitions in total, or null if nothing was
+     * accounted.
+     *
+     * @return
+     */
+    public SyncPoint getMostContended() {
+        SyncPoint mostContended = null;
+        long maxContendedTimeInNanos = -1;
+        for (SyncPoint syncPoint : SyncPoint.values()) {
+            LockStats total = getTotal(syncPoint);
+            if (total.getAcquisitions() > 0 && total.getContendedTimeInNanos() > maxContendedTimeInNanos) {
+                mostContended = syncPoint;
+                maxContendedTimeInNanos = total.getContendedTimeInNanos();
+            }
+        }
+        return mostContended;
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder("LockContentionReport{mostContended=").append(getMostContended());
+        stats.stream().sorted(Comparator.comparingLong(LockStats::getContendedTimeInNanos).reversed())
+            .forEach(lockStats -> builder.append(", ").append(lockStats));
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.cloudkitchens.fulfillment.entities.shelves.contention;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.google.common.base.MoreObjects;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Contention accounted on a {@link SyncPoint} for one {@link Temperature}, as of the time the {@link LockContentionReport} was taken.
+ * The counts are exact, the times are estimated from the sampled acquisitions.
+ */
+@Getter @Builder public class LockStats {
+    private final SyncPoint syncPoint;
+    // Null for the polls from a queue shared by all the temperatures, and for the totals of all the temperatures.
+    private final Temperature temperature;
+    private final long acquisitions;
+    // Acquisitions which found another thread holding or waiting for the same lock.
+    private final long contendedAcquisitions;
+    // Time spent in the synchronization point, waiting for the lock and holding it, which can't be told apart.
+    private final long timeInNanos;
+    // Part of the time in the synchronization point spent in the contended acquisitions.
+    private final long contendedTimeInNanos;
+
+    public double getContentionRatio() {
+        return acquisitions == 0 ? 0 : (double) contendedAcquisitions / acquisitions;
+    }
+
+    @Override public String toString() {
+        return MoreObjects.toStringHelper(LockStats.class).add("syncPoint", syncPoint).add("temperature", temperature)
+            .add("acquisitions", acquisitions).add("contendedAcquisitions", contendedAcquisitions).add("timeInNanos", timeInNanos)
+            .add("contendedTimeInNanos", contendedTimeInNanos).toString();
+    }
+}
@@ -0,0 +1,33 @@
+package com.cloudkitchens.fulfillment.entities.shelves.contention;
+
+/**
+ * The synchronization points of {@link com.cloudkitchens.fulfillment.entities.shelves.ShelfPod} which are accounted by
+ * {@link LockContentionMonitor}.
+ */
+public enum SyncPoint {
+
+    // Fair semaphore of each shelf, acquired for every order placed on the shelf.
+    ShelfSpaces(false),
+    // Queue of the shelf updates read by the updates reader thread, shared by all the temperatures.
+    UpdatesQueue(true),
+    // Priority queue of the overflow orders of each regular shelf, watched by the mover thread of that shelf.
+    MoverQueue(false),
+    // Delay queue of the stored orders watched by the expiry thread, shared by all the temperatures.
+    ExpiryQueue(true);
+
+    private final boolean shared;
+
+    SyncPoint(boolean shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Returns true if one lock is shared by all the temperatures, then the stats are accounted per temperature of the orders going
+     * through it, while the contention is detected on the lock as a whole. Otherwise there is one lock per temperature.
+     *
+     * @return
+     */
+    public boolean isShared() {
+        return shared;
+    }
+}
@@ -0,0 +1,156 @@
+package com.cloudkitchens.fulfillment.entities.shelves.dedup;
+
+import com.cloudkitchens.fulfillment.common.IClock;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the result of adding each order id for a retention window, so an add which is retried by a client, with the same order
+ * id, gets the result of the first add instead of taking a second space on the shelves and a second courier.
+ * <p>
+ * The ids are kept in two generations, each a concurrent map from the id to the result of its first add. New ids go into the current
+ * generation, and once it is older than the retention window, it becomes the previous generation and the previous one is dropped
+ * whole. So an id is remembered for at least the retention window and at most twice of it, and the memory is bounded by the number
+ * of orders added in two windows without any per entry cleanup. The lookups are O(1).
+ * <p>
+ * Optionally each generation has a bloom filter of its ids, so the lookup in the previous generation is skipped for an id which was
+ * never seen, which is what almost every add is. The filter takes a few bits per id, and a false positive only costs that lookup.
+ */
+@ThreadSafe public class DuplicateOrderFilter {
+
+    private static final double PREFILTER_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final long retentionInMs;
+    private final int prefilterCapacity;
+    private final IClock clock;
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param retentionInMs     how long an id is remembered at least, this should not be less than the maximum shelf life of the orders.
+     * @param prefilterCapacity expected number of orders added in a retention window, 0 to not use the bloom filters.
+     * @param clock
+     * @throws IllegalArgumentException if the retention window is not positive, or the prefilter capacity is negative.
+     */
+    public DuplicateOrderFilter(long retentionInMs, int prefilterCapacity, IClock clock) {
+        if (retentionInMs <= 0 || prefilterCapacity < 0)
+            throw new IllegalArgumentException(
+                "Retention should be positive and prefilter capacity can't be negative, given retentionInMs:" + retentionInMs
+                    + " prefilterCapacity:" + prefilterCapacity);
+        this.retentionInMs = retentionInMs;
+        this.prefilterCapacity = prefilterCapacity;
+        this.clock = clock;
+        this.current = new Generation(clock.currentTimeMillis());
+        this.previous = new Generation(clock.currentTimeMillis());
+    }
+
+    /**
+     * Claims the given order id for the caller. If the id is new, the caller has to add the order and then pass the result to
+     * {@link #complete(long, AddResult)}. Otherwise the result of the first add is returned, and if the first add is still in
+     * progress, this waits for it, which is short as adding an order does not block.
+     *
+     * @param orderId
+     * @return null if the id is claimed by the caller, otherwise the result of the first add of this id.
+     */
+    public AddResult claim(long orderId) {
+        while (true) {
+            rotateIfExpired();
+            Generation previous = this.previous;
+            Claim claim = previous.mightContain(orderId) ? previous.claims.get(orderId) : null;
+            if (claim == null) {
+                Generation current = this.current;
+                // The id goes into the bloom filter first, so it is never missed once this generation becomes the previous one.
+                current.put(orderId);
+                claim = current.claims.putIfAbsent(orderId, new Claim());
+                if (claim == null)
+                    return null;
+            }
+            AddResult addResult = claim.await();
+            if (addResult != null)
+                return addResult;
+            // The first add failed and released the id, lets claim it again.
+        }
+    }
+
+    /**
+     * Records the result of the add of a claimed order id, and releases the callers waiting for it.
+     *
+     * @param orderId
+     * @param addResult result of the add, or null if the add failed, then the id is released so that a retry can add the order.
+     */
+    public void complete(long orderId, AddResult addResult) {
+        for (Generation generation : new Generation[] {current, previous}) {
+            Claim claim = generation.claims.get(orderId);
+            if (claim != null && claim.addResult == null && !claim.released) {
+                if (addResult == null) {
+                    generation.claims.remove(orderId, claim);
+                    claim.released = true;
+                } else {
+                    claim.addResult = addResult;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of order ids remembered at the moment.
+     *
+     * @return
+     */
+    public int size() {
+        return current.claims.size() + previous.claims.size();
+    }
+
+    private void rotateIfExpired() {
+        long now = clock.currentTimeMillis();
+        if (now - current.createdTimestampInMs < retentionInMs)
+            return;
+        synchronized (this) {
+            if (now - current.createdTimestampInMs >= retentionInMs) {
+                previous = current;
+                current = new Generation(now);
+            }
+        }
+    }
+
+    private final class Generation {
+        private final long createdTimestampInMs;
+        private final ConcurrentHashMap<Long, Claim> claims = new ConcurrentHashMap<>();
+        private final BloomFilter<Long> prefilter;
+
+        private Generation(long createdTimestampInMs) {
+            this.createdTimestampInMs = createdTimestampInMs;
+            this.prefilter = prefilterCapacity == 0 ?
+                null :
+                BloomFilter.create(Funnels.longFunnel(), prefilterCapacity, PREFILTER_FALSE_POSITIVE_PROBABILITY);
+        }
+
+        private boolean mightContain(long orderId) {
+            return prefilter == null || prefilter.mightContain(orderId);
+        }
+
+        private void put(long orderId) {
+            if (prefilter != null) {
+                prefilter.put(orderId);
+            }
+        }
+    }
+
+    private static final class Claim {
+        private volatile AddResult addResult;
+        private volatile boolean released;
+
+        private AddResult await() {
+            AddResult result;
+            while ((result = addResult) == null && !released) {
+                Thread.yield();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+
+/**
+ * Receives every order once, when it reaches its end state, like delivered, expired, evicted or cancelled. After the sink returns,
+ * nothing in the fulfillment service refers to the order any more, so a sink which keeps orders decides how much memory they take.
+ * <p>
+ * The sink is called on the thread which ended the order, so it should not block, the same as {@link IShelfPodObserver}.
+ */
+@FunctionalInterface public interface IOutcomeSink {
+
+    /**
+     * @param order the order in its end state.
+     */
+    void accept(Order order);
+}
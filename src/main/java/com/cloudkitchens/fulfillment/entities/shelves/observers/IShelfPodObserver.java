@@ -1,13 +1,15 @@
 package com.cloudkitchens.fulfillment.entities.shelves.observers;
 
+import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
 
 /**
  * An observer that listens to {@link com.cloudkitchens.fulfillment.entities.shelves.IShelfPod} events.
  * <p>
- * Currently we are interested only in addOrder event to the shelf in order to dispatch taxi for order delivery.
- * Later more events on the Shelf can be observed for analytics, and improve the efficiency of Shelf based on it.
+ * The addOrder event is used to dispatch taxi for order delivery. The rest of the events on the Shelf can be observed for
+ * analytics, and improve the efficiency of Shelf based on it.
  * <p>
  * The implementers of this observer should make sure they are not blocking the incoming notifications from the shelf.
  * Any heavy duty work should be offloaded from the thread which sends notification.
@@ -21,4 +23,27 @@ public interface IShelfPodObserver {
      * @param addResult
      */
     void postAddOrder(Order order, AddResult addResult);
+
+    /**
+     * This function is called after an order is moved, removed, polled, expired or evicted on the ShelfPod. Additions are notified
+     * through {@link #postAddOrder(Order, AddResult)} only. The given order reflects the state at the end of the operation.
+     *
+     * @param order
+     * @param shelfOperation
+     */
+    default void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+    }
+
+    /**
+     * Same as {@link #postShelfOperation(Order, ShelfOperation)}, along with the shelf which stores the order at the end of the
+     * operation, or which stored it till the operation if the order has left the shelves. An order does not record its overflow tier,
+     * so a pod with more than one overflow shelf tells it only through this. By default, this calls the method without the shelf.
+     *
+     * @param order
+     * @param shelfOperation
+     * @param shelfType      temperature of the shelf.
+     */
+    default void postShelfOperation(Order order, ShelfOperation shelfOperation, Temperature shelfType) {
+        postShelfOperation(order, shelfOperation);
+    }
 }
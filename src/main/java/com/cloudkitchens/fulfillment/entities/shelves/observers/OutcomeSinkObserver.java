@@ -0,0 +1,40 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Hands the orders which reach their end state on a {@link com.cloudkitchens.fulfillment.entities.shelves.IShelfPod} to an
+ * {@link IOutcomeSink}. The orders rejected by an add are handed over from the add notification, and the rest from the shelf
+ * operation which ended them. Nothing is kept per order, so this observer takes the same memory however long the pod runs.
+ */
+@ThreadSafe public class OutcomeSinkObserver implements IShelfPodObserver {
+
+    private final IOutcomeSink outcomeSink;
+
+    public OutcomeSinkObserver(IOutcomeSink outcomeSink) {
+        this.outcomeSink = outcomeSink;
+    }
+
+    @Override public void postAddOrder(Order order, AddResult addResult) {
+        if (!addResult.isAdded() && order.hasReachedEndState()) {
+            outcomeSink.accept(order);
+        }
+    }
+
+    @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+        switch (shelfOperation) {
+            case Poll:
+            case Expire:
+            case Evict:
+            case Cancel:
+                outcomeSink.accept(order);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size histogram of non negative long values, so it can record any number of values in constant memory.
+ * <p>
+ * Values below {@link #SUB_BUCKETS} get a bucket each. Above that, every power of two range is split into {@link #SUB_BUCKETS} equal
+ * buckets, so a value is reported with an error of at most 1/{@link #SUB_BUCKETS} of itself. 960 buckets cover the whole long range.
+ * <p>
+ * Recording is lock free. Percentiles are calculated from a non atomic view of the buckets, which is good enough for reporting.
+ */
+@ThreadSafe public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getLowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Records the given value, negative values are recorded as zero.
+     *
+     * @param value
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(getBucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the lowest value of the bucket which contains the given percentile.
+     *
+     * @param percentile between 0 and 100.
+     * @return
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return getLowestValue(i);
+        }
+        return getMax();
+    }
+}
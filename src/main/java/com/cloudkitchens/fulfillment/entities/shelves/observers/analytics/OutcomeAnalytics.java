@@ -0,0 +1,165 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import com.cloudkitchens.fulfillment.common.IClock;
+import com.cloudkitchens.fulfillment.common.SystemClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.LinearDecayModel;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates what happened to the orders of a shelf pod, as the orders reach their end states. Nothing is kept per order, so the
+ * memory used does not depend on the number of orders or on how long the pod runs.
+ * <p>
+ * The following are aggregated,
+ * <p>
+ * 1. Number of orders per temperature and end state.
+ * 2. Waste rate, i.e. the fraction of the orders which were not delivered, over the last minute and the last 15 minutes.
+ * 3. Distributions of the time spent on the shelves and on the overflow shelf by the orders which were stored, and of the normalized
+ * value of the orders at pickup. The value at pickup is as per the decay rate factor of the shelf which stored the order, which for
+ * an overflow order is its overflow tier, see {@link IShelfPodObserver#postShelfOperation(Order, ShelfOperation, Temperature)}.
+ * <p>
+ * Use {@link #getReport()} for a snapshot, and {@link OutcomeReporter} for writing the snapshots periodically.
+ */
+@ThreadSafe public class OutcomeAnalytics implements IShelfPodObserver {
+
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+
+    private final ShelfRegistry shelfRegistry;
+    private final IClock clock;
+    private final IDecayModel decayModel;
+    private final AtomicLongArray endStateCounts;
+    private final RollingWindowCounter lastMinute = new RollingWindowCounter(TimeUnit.MINUTES.toMillis(1), 60);
+    private final RollingWindowCounter last15Minutes = new RollingWindowCounter(TimeUnit.MINUTES.toMillis(15), 90);
+    private final Histogram timeOnShelfInMs = new Histogram();
+    private final Histogram timeOnOverflowShelfInMs = new Histogram();
+    private final Histogram normalizedValueAtPickupInPerMille = new Histogram();
+
+    public OutcomeAnalytics(List<Shelf> shelves) {
+        this(shelves, new SystemClock());
+    }
+
+    /**
+     * @param shelves
+     * @param clock   the clock of the shelf pod being observed.
+     */
+    public OutcomeAnalytics(List<Shelf> shelves, IClock clock) {
+        this(shelves, clock, new LinearDecayModel());
+    }
+
+    /**
+     * @param shelves
+     * @param clock      the clock of the shelf pod being observed.
+     * @param decayModel the decay model of the shelf pod being observed, the values at pickup are calculated as per this.
+     */
+    public OutcomeAnalytics(List<Shelf> shelves, IClock clock, IDecayModel decayModel) {
+        this.clock = clock;
+        this.decayModel = decayModel;
+        this.shelfRegistry = new ShelfRegistry(shelves);
+        this.endStateCounts = new AtomicLongArray(shelfRegistry.size() * ORDER_STATES.length);
+    }
+
+    @Override public void postAddOrder(Order order, AddResult addResult) {
+        // Only CameExpired and ExpiredOnNoSpace are end states at the end of an add.
+        if (!addResult.isAdded() && order.hasReachedEndState()) {
+            recordEndState(order, addResult.getShelf().getTemperature(), clock.currentTimeMillis());
+        }
+    }
+
+    /**
+     * For the pods which do not tell the shelf, the shelf is told by the state of the order, which works for a single overflow shelf.
+     *
+     * @param order
+     * @param shelfOperation
+     */
+    @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+        postShelfOperation(order, shelfOperation, isOnOverflowShelf(order.getOrderState()) ? Temperature.Overflow : order.getTemperature());
+    }
+
+    @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation, Temperature shelfType) {
+        switch (shelfOperation) {
+            case Poll:
+            case Expire:
+            case Evict:
+            case Cancel:
+                recordEndState(order, shelfType, clock.currentTimeMillis());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param order
+     * @param shelfType the shelf which stored the order till it reached the end state, the overflow tier for an overflow order.
+     * @param nowInMs
+     */
+    private void recordEndState(Order order, Temperature shelfType, long nowInMs) {
+        OrderState orderState = order.getOrderState();
+        endStateCounts.incrementAndGet(order.getTemperature().ordinal() * ORDER_STATES.length + orderState.ordinal());
+        // A cancelled order is counted, but it is left out of the waste rate and the distributions, the pod did not waste it.
+        if (orderState == OrderState.Cancelled)
+            return;
+        boolean isDelivered = orderState == OrderState.DeliveredFromRegularShelf || orderState == OrderState.DeliveredFromOverflowShelf;
+        lastMinute.record(nowInMs, !isDelivered);
+        last15Minutes.record(nowInMs, !isDelivered);
+        if (orderState == OrderState.CameExpired || orderState == OrderState.ExpiredOnNoSpace)
+            return;
+
+        long timeOnShelf = nowInMs - order.getCreatedTimestamp();
+        timeOnShelfInMs.record(timeOnShelf);
+        timeOnOverflowShelfInMs.record(isOnOverflowShelf(orderState) ? timeOnShelf : order.getTimeSpentOnOverflowShelfInMs());
+        if (isDelivered) {
+            normalizedValueAtPickupInPerMille
+                .record(Math.round(order.getNormalizedValue(decayModel, shelfRegistry.getDecayRateFactor(shelfType), nowInMs) * 1000));
+        }
+    }
+
+    private static boolean isOnOverflowShelf(OrderState orderState) {
+        return orderState == OrderState.StoredInOverflowShelf || orderState == OrderState.DeliveredFromOverflowShelf
+            || orderState == OrderState.ExpiredInOverflowShelf || orderState == OrderState.EvictedFromOverflowShelf;
+    }
+
+    /**
+     * Returns a snapshot of the aggregates. The aggregates are not read atomically, so a snapshot taken while orders are still
+     * reaching their end states may be off by the few orders being recorded at that moment.
+     *
+     * @return
+     */
+    public OutcomeReport getReport() {
+        long nowInMs = clock.currentTimeMillis();
+        Map<Temperature, Map<OrderState, Long>> counts = new LinkedHashMap<>();
+        for (Temperature temperature : shelfRegistry.getRegularShelves()) {
+            Map<OrderState, Long> countsOfTemperature = new EnumMap<>(OrderState.class);
+            for (OrderState orderState : ORDER_STATES) {
+                if (isEndState(orderState))
+                    countsOfTemperature
+                        .put(orderState, endStateCounts.get(temperature.ordinal() * ORDER_STATES.length + orderState.ordinal()));
+            }
+            counts.put(temperature, countsOfTemperature);
+        }
+        return OutcomeReport.builder().timestampInMs(nowInMs).endStateCounts(counts).wasteRateLastMinute(lastMinute.getWasteRate(nowInMs))
+            .wasteRateLast15Minutes(last15Minutes.getWasteRate(nowInMs)).timeOnShelfInMs(OutcomeReport.Distribution.of(timeOnShelfInMs))
+            .timeOnOverflowShelfInMs(OutcomeReport.Distribution.of(timeOnOverflowShelfInMs))
+            .normalizedValueAtPickupInPerMille(OutcomeReport.Distribution.of(normalizedValueAtPickupInPerMille)).build();
+    }
+
+    private static boolean isEndState(OrderState orderState) {
+        return orderState != OrderState.Created && orderState != OrderState.StoredInRegularShelf
+            && orderState != OrderState.StoredInOverflowShelf;
+    }
+}
@@ -0,0 +1,38 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * A snapshot of {@link OutcomeAnalytics}, serialized as a JSON line or a CSV row by {@link OutcomeReporter}.
+ */
+@Getter @Builder public class OutcomeReport {
+
+    private final long timestampInMs;
+    // Number of orders which reached each end state, per temperature of the order.
+    private final Map<Temperature, Map<OrderState, Long>> endStateCounts;
+    private final double wasteRateLastMinute;
+    private final double wasteRateLast15Minutes;
+    private final Distribution timeOnShelfInMs;
+    private final Distribution timeOnOverflowShelfInMs;
+    // Normalized value at pickup, in per mille of the shelf life.
+    private final Distribution normalizedValueAtPickupInPerMille;
+
+    @Getter @Builder public static class Distribution {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long max;
+
+        static Distribution of(Histogram histogram) {
+            return Distribution.builder().count(histogram.getCount()).mean(histogram.getMean()).p50(histogram.getPercentile(50))
+                .p90(histogram.getPercentile(90)).p99(histogram.getPercentile(99)).max(histogram.getMax()).build();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link OutcomeReport}s of an {@link OutcomeAnalytics} periodically, and once more when stopped. Each report is appended as
+ * a row to outcomes.csv and as a line to outcomes.jsonl in the report directory, so the files can be followed while the daemons run.
+ */
+@Slf4j public class OutcomeReporter {
+
+    static final String CSV_FILE_NAME = "outcomes.csv";
+    static final String JSON_FILE_NAME = "outcomes.jsonl";
+
+    private final OutcomeAnalytics outcomeAnalytics;
+    private final File directory;
+    private final long intervalInSecs;
+    private final Gson gson = new Gson();
+    private volatile ScheduledExecutorService scheduledExecutorService;
+
+    /**
+     * @param outcomeAnalytics
+     * @param directory        where the report files are written, created if it does not exist.
+     * @param intervalInSecs   how often a report is written.
+     */
+    public OutcomeReporter(OutcomeAnalytics outcomeAnalytics, File directory, long intervalInSecs) {
+        this.outcomeAnalytics = outcomeAnalytics;
+        this.directory = directory;
+        this.intervalInSecs = intervalInSecs;
+    }
+
+    public void startBackgroundActivities() {
+        scheduledExecutorService =
+            ExecutorServicesUtil.createScheduledThreadPool("outcome-reporter-", 1, ExecutorServicesUtil.WAIT_TIME_TO_SHUTDOWN_MS);
+        scheduledExecutorService.scheduleAtFixedRate(this::writeReport, intervalInSecs, intervalInSecs, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic reports, and writes the final report.
+     *
+     * @throws InterruptedException
+     */
+    public void stopBackgroundActivities() throws InterruptedException {
+        if (scheduledExecutorService != null) {
+            scheduledExecutorService.shutdown();
+            scheduledExecutorService.awaitTermination(ExecutorServicesUtil.WAIT_TIME_TO_SHUTDOWN_MS, TimeUnit.MILLISECONDS);
+        }
+        writeReport();
+    }
+
+    /**
+     * Appends the current report to the report files.
+     */
+    synchronized void writeReport() {
+        OutcomeReport report = outcomeAnalytics.getReport();
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IOException("Could not create report directory:" + directory);
+            File csvFile = new File(directory, CSV_FILE_NAME);
+            boolean writeHeader = !csvFile.exists();
+            try (Writer writer = new FileWriter(csvFile, true)) {
+                if (writeHeader)
+                    writer.write(toCsvHeader(report) + System.lineSeparator());
+                writer.write(toCsvRow(report) + System.lineSeparator());
+            }
+            try (Writer writer = new FileWriter(new File(directory, JSON_FILE_NAME), true)) {
+                writer.write(gson.toJson(report) + System.lineSeparator());
+            }
+        } catch (IOException e) {
+            log.error("Could not write outcome report to directory={}", directory, e);
+        }
+    }
+
+    static String toCsvHeader(OutcomeReport report) {
+        StringBuilder header = new StringBuilder("timestampInMs");
+        for (Map.Entry<Temperature, Map<OrderState, Long>> countsOfTemperature : report.getEndStateCounts().entrySet()) {
+            for (OrderState orderState : countsOfTemperature.getValue().keySet())
+                header.append(',').append(countsOfTemperature.getKey()).append('.').append(orderState);
+        }
+        header.append(",wasteRateLastMinute,wasteRateLast15Minutes");
+        for (String name : getDistributions(report).keySet()) {
+            for (String column : new String[] {"count", "mean", "p50", "p90", "p99", "max"})
+                header.append(',').append(name).append('.').append(column);
+        }
+        return header.toString();
+    }
+
+    static String toCsvRow(OutcomeReport report) {
+        StringBuilder row = new StringBuilder().append(report.getTimestampInMs());
+        for (Map<OrderState, Long> countsOfTemperature : report.getEndStateCounts().values()) {
+            for (long count : countsOfTemperature.values())
+                row.append(',').append(count);
+        }
+        row.append(',').append(report.getWasteRateLastMinute()).append(',').append(report.getWasteRateLast15Minutes());
+        for (OutcomeReport.Distribution distribution : getDistributions(report).values()) {
+            row.append(',').append(distribution.getCount()).append(',').append(distribution.getMean()).append(',')
+                .append(distribution.getP50()).append(',').append(distribution.getP90()).append(',').append(distribution.getP99())
+                .append(',').append(distribution.getMax());
+        }
+        return row.toString();
+    }
+
+    private static Map<String, OutcomeReport.Distribution> getDistributions(OutcomeReport report) {
+        return ImmutableMap.of("timeOnShelfInMs", report.getTimeOnShelfInMs(),
+            "timeOnOverflowShelfInMs", report.getTimeOnOverflowShelfInMs(),
+            "normalizedValueAtPickupInPerMille", report.getNormalizedValueAtPickupInPerMille());
+    }
+}
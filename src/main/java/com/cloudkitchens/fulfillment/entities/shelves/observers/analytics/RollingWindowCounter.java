@@ -0,0 +1,66 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Counts delivered and wasted orders over a sliding time window, in constant memory.
+ * <p>
+ * The window is split into a fixed number of buckets. A bucket is reused once its time slot falls out of the window, so the counts
+ * are accurate to one bucket's width. The operations are cheap and short, so they are guarded by the object's monitor.
+ */
+@ThreadSafe public class RollingWindowCounter {
+
+    private final long bucketWidthInMs;
+    private final long[] bucketSlots;
+    private final long[] delivered;
+    private final long[] wasted;
+
+    /**
+     * @param windowInMs length of the window.
+     * @param buckets    number of buckets the window is split into.
+     */
+    public RollingWindowCounter(long windowInMs, int buckets) {
+        this.bucketWidthInMs = Math.max(1, windowInMs / buckets);
+        this.bucketSlots = new long[buckets];
+        this.delivered = new long[buckets];
+        this.wasted = new long[buckets];
+    }
+
+    public synchronized void record(long timestampInMs, boolean isWasted) {
+        int bucket = getBucket(timestampInMs);
+        if (isWasted)
+            wasted[bucket]++;
+        else
+            delivered[bucket]++;
+    }
+
+    /**
+     * Returns wasted orders as a fraction of all the orders which reached an end state in the window ending at the given timestamp.
+     *
+     * @param timestampInMs
+     * @return a value between 0 and 1, 0 if no order reached an end state in the window.
+     */
+    public synchronized double getWasteRate(long timestampInMs) {
+        long slot = timestampInMs / bucketWidthInMs;
+        long deliveredInWindow = 0, wastedInWindow = 0;
+        for (int i = 0; i < bucketSlots.length; i++) {
+            if (slot - bucketSlots[i] < bucketSlots.length) {
+                deliveredInWindow += delivered[i];
+                wastedInWindow += wasted[i];
+            }
+        }
+        long total = deliveredInWindow + wastedInWindow;
+        return total == 0 ? 0 : (double) wastedInWindow / total;
+    }
+
+    private int getBucket(long timestampInMs) {
+        long slot = timestampInMs / bucketWidthInMs;
+        int bucket = (int) (slot % bucketSlots.length);
+        if (bucketSlots[bucket] != slot) {
+            bucketSlots[bucket] = slot;
+            delivered[bucket] = 0;
+            wasted[bucket] = 0;
+        }
+        return bucket;
+    }
+}
@@ -0,0 +1,140 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Writes {@link ShelfEvent}s into binary files under a directory, starting a new file when the current one reaches the maximum size,
+ * and deleting the oldest files beyond the maximum number of files.
+ * <p>
+ * Files are named shelf-events.&lt;index&gt;.bin, with the index increasing by one for every new file. Each file starts with
+ * {@link #MAGIC}, followed by records. A record starts with its kind,
+ * <p>
+ * 1. {@link #NAME_RECORD}, nameId(int), name(UTF), written before the first event of an order name in the file.
+ * 2. {@link #TEMPERATURE_RECORD}, ordinal(byte), name(UTF), overflow(boolean), written before the first event of a temperature
+ * in the file.
+ * 3. {@link #EVENT_RECORD}, timestampInMs(long), orderId(long), shelfOperation(byte), orderState(byte), temperature(byte),
+ * nameId(int), shelfLifeInSecs(int), decayRate(double).
+ * <p>
+ * As the names and the temperatures are repeated in every file, each file can be read on its own, even after the older files are
+ * deleted. The temperatures are defined at runtime, so their ordinals are only meaningful along with the temperature records, a
+ * reader in another process maps them to its own temperatures by name.
+ */
+@NotThreadSafe public class RollingEventFileWriter implements Closeable {
+
+    static final int MAGIC = 0x43535345; // CSSE
+    static final byte NAME_RECORD = 1;
+    static final byte EVENT_RECORD = 2;
+    static final byte TEMPERATURE_RECORD = 3;
+    static final String FILE_PREFIX = "shelf-events.";
+    static final String FILE_SUFFIX = ".bin";
+
+    private final File directory;
+    private final long maxFileSizeInBytes;
+    private final int maxFiles;
+    private final BitSet namesWrittenToFile = new BitSet();
+    private final BitSet temperaturesWrittenToFile = new BitSet();
+    private DataOutputStream out;
+    private int fileIndex;
+
+    /**
+     * @param directory          where the event log files are written, created if it does not exist.
+     * @param maxFileSizeInBytes a new file is started when the current file reaches this size.
+     * @param maxFiles           maximum number of files kept in the directory.
+     * @throws IOException
+     */
+    public RollingEventFileWriter(File directory, long maxFileSizeInBytes, int maxFiles) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create event log directory:" + directory);
+        this.directory = directory;
+        this.maxFileSizeInBytes = maxFileSizeInBytes;
+        this.maxFiles = maxFiles;
+        List<File> existingFiles = listEventLogFiles(directory);
+        this.fileIndex = existingFiles.isEmpty() ? 0 : getFileIndex(existingFiles.get(existingFiles.size() - 1)) + 1;
+        openNextFile();
+    }
+
+    /**
+     * Returns the event log files in the given directory, the oldest file first.
+     *
+     * @param directory
+     * @return
+     */
+    static List<File> listEventLogFiles(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        List<File> result = new ArrayList<>();
+        if (files != null) {
+            for (File file : files)
+                result.add(file);
+        }
+        result.sort((first, second) -> Integer.compare(getFileIndex(first), getFileIndex(second)));
+        return result;
+    }
+
+    private static int getFileIndex(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    public void write(ShelfEvent event) throws IOException {
+        if (out.size() >= maxFileSizeInBytes) {
+            out.close();
+            openNextFile();
+        }
+        int nameId = event.getNameId();
+        if (!namesWrittenToFile.get(nameId)) {
+            out.writeByte(NAME_RECORD);
+            out.writeInt(nameId);
+            out.writeUTF(OrderNameDictionary.lookup(nameId));
+            namesWrittenToFile.set(nameId);
+        }
+        Temperature temperature = event.getTemperature();
+        if (!temperaturesWrittenToFile.get(temperature.ordinal())) {
+            out.writeByte(TEMPERATURE_RECORD);
+            out.writeByte(temperature.ordinal());
+            out.writeUTF(temperature.name());
+            out.writeBoolean(temperature.isOverflow());
+            temperaturesWrittenToFile.set(temperature.ordinal());
+        }
+        out.writeByte(EVENT_RECORD);
+        out.writeLong(event.getTimestampInMs());
+        out.writeLong(event.getOrderId());
+        out.writeByte(event.getShelfOperation().ordinal());
+        out.writeByte(event.getOrderState().ordinal());
+        out.writeByte(temperature.ordinal());
+        out.writeInt(nameId);
+        out.writeInt(event.getShelfLifeInSecs());
+        out.writeDouble(event.getDecayRate());
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override public void close() throws IOException {
+        out.close();
+    }
+
+    private void openNextFile() throws IOException {
+        File file = new File(directory, FILE_PREFIX + fileIndex++ + FILE_SUFFIX);
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        namesWrittenToFile.clear();
+        temperaturesWrittenToFile.clear();
+        List<File> files = listEventLogFiles(directory);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            files.get(i).delete();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import lombok.Getter;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A mutable carrier of one event read from {@link ShelfEventRingBuffer} or from an event log file. Carriers are reused by the readers,
+ * so that reading the events does not create garbage.
+ */
+@Getter @NotThreadSafe public class ShelfEvent {
+
+    private static final ShelfOperation[] SHELF_OPERATIONS = ShelfOperation.values();
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+
+    private long timestampInMs;
+    private ShelfOperation shelfOperation;
+    private long orderId;
+    private int nameId;
+    private Temperature temperature;
+    private int shelfLifeInSecs;
+    private double decayRate;
+    // State of the order at the end of the operation.
+    private OrderState orderState;
+
+    void set(long timestampInMs, int shelfOperation, long orderId, int nameId, Temperature temperature, int shelfLifeInSecs,
+        double decayRate, int orderState) {
+        this.timestampInMs = timestampInMs;
+        this.shelfOperation = SHELF_OPERATIONS[shelfOperation];
+        this.orderId = orderId;
+        this.nameId = nameId;
+        this.temperature = temperature;
+        this.shelfLifeInSecs = shelfLifeInSecs;
+        this.decayRate = decayRate;
+        this.orderState = ORDER_STATES[orderState];
+    }
+
+    /**
+     * Creates an order with the attributes of this event.
+     *
+     * @param nameId id of the order name in the local {@link com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary}.
+     * @return
+     */
+    Order toOrder(int nameId) {
+        return new Order(orderId, nameId, temperature, shelfLifeInSecs, decayRate, 0, orderState, 0, 0);
+    }
+}
@@ -0,0 +1,115 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every operation on a shelf pod into a binary event log, instead of formatting log lines on the threads which operate on
+ * the shelves.
+ * <p>
+ * The observer callbacks only copy the event into a {@link ShelfEventRingBuffer}, which takes a CAS and a few array writes. A background
+ * writer thread drains the ring buffer into {@link RollingEventFileWriter}. When the ring buffer is full the events are dropped rather
+ * than blocking the shelf operations, and the number of dropped events is logged when the log is stopped.
+ * <p>
+ * The files can be converted back into the orderInfo log lines using {@link ShelfEventLogReader}.
+ */
+@Slf4j @ThreadSafe public class ShelfEventLog implements IShelfPodObserver {
+
+    public static final int DEFAULT_RING_BUFFER_CAPACITY = 1 << 16;
+    public static final long DEFAULT_MAX_FILE_SIZE_IN_BYTES = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILES = 10;
+    private static final long IDLE_WAIT_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ShelfEventRingBuffer ringBuffer;
+    private final RollingEventFileWriter fileWriter;
+    private volatile boolean stopped;
+    private volatile ExecutorService executorService;
+
+    public ShelfEventLog(File directory) throws IOException {
+        this(directory, DEFAULT_RING_BUFFER_CAPACITY, DEFAULT_MAX_FILE_SIZE_IN_BYTES, DEFAULT_MAX_FILES);
+    }
+
+    public ShelfEventLog(File directory, int ringBufferCapacity, long maxFileSizeInBytes, int maxFiles) throws IOException {
+        this.ringBuffer = new ShelfEventRingBuffer(ringBufferCapacity);
+        this.fileWriter = new RollingEventFileWriter(directory, maxFileSizeInBytes, maxFiles);
+    }
+
+    public void startBackgroundActivities() {
+        executorService =
+            ExecutorServicesUtil.createFixedThreadPool("shelf-event-log-writer-", 1, ExecutorServicesUtil.WAIT_TIME_TO_SHUTDOWN_MS);
+        executorService.submit(new WriterThread());
+    }
+
+    /**
+     * Stops accepting the events, and waits until the writer thread writes all the events which were already recorded.
+     *
+     * @throws InterruptedException
+     */
+    public void stopBackgroundActivities() throws InterruptedException {
+        stopped = true;
+        if (executorService != null) {
+            executorService.shutdown();
+            executorService.awaitTermination(ExecutorServicesUtil.WAIT_TIME_TO_SHUTDOWN_MS, TimeUnit.MILLISECONDS);
+        }
+        log.info("Stopped shelf event log, droppedEvents={}", ringBuffer.getDroppedCount());
+    }
+
+    @Override public void postAddOrder(Order order, AddResult addResult) {
+        record(ShelfOperation.Add, order);
+    }
+
+    @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+        record(shelfOperation, order);
+    }
+
+    private void record(ShelfOperation shelfOperation, Order order) {
+        if (!stopped) {
+            ringBuffer.offer(System.currentTimeMillis(), shelfOperation, order);
+        }
+    }
+
+    /**
+     * Drains the ring buffer into the files. When the ring buffer is empty, the written events are flushed, and the thread waits for
+     * a millisecond before checking again.
+     */
+    private class WriterThread implements Runnable {
+
+        @Override public void run() {
+            log.info("Launching shelf event log writer thread.");
+            ShelfEvent event = new ShelfEvent();
+            try {
+                while (true) {
+                    // Read before polling, so the events recorded just before the stop are never left behind in the ring buffer.
+                    boolean stopping = stopped;
+                    if (ringBuffer.poll(event)) {
+                        fileWriter.write(event);
+                        continue;
+                    }
+                    fileWriter.flush();
+                    if (stopping)
+                        break;
+                    LockSupport.parkNanos(IDLE_WAIT_IN_NANOS);
+                }
+            } catch (IOException e) {
+                log.error("Could not write to the shelf event log, no more events are written.", e);
+            } finally {
+                try {
+                    fileWriter.close();
+                } catch (IOException e) {
+                    log.error("Could not close the shelf event log.", e);
+                }
+            }
+        }
+    }
+}
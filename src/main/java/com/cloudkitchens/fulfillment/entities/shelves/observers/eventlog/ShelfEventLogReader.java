@@ -0,0 +1,108 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads the files written by {@link ShelfEventLog}, and logs the final state of every order in the same orderInfo format the
+ * fulfillment daemons logs at the end of its run.
+ * <p>
+ * Example: -DeventLogDirectory=/tmp/css-events
+ */
+@Slf4j public class ShelfEventLogReader {
+
+    public static void main(String[] args) throws IOException {
+        if (!System.getProperties().containsKey("eventLogDirectory")) {
+            log.error("eventLogDirectory is not passed as an argument for JVM properties. Quitting the reader.");
+            System.exit(-1);
+        }
+        for (Order order : readOrders(new File(System.getProperty("eventLogDirectory")))) {
+            log.info("orderInfo={}", order);
+        }
+    }
+
+    /**
+     * Returns the orders found in the event log, in the order they were first seen, with the state of their last event.
+     *
+     * @param directory
+     * @return
+     * @throws IOException
+     */
+    public static List<Order> readOrders(File directory) throws IOException {
+        Map<Long, Order> orders = new LinkedHashMap<>();
+        Map<Integer, Integer> localNameIds = new HashMap<>();
+        readEvents(directory, localNameIds, event -> orders.put(event.getOrderId(), event.toOrder(localNameIds.get(event.getNameId()))));
+        return new ArrayList<>(orders.values());
+    }
+
+    /**
+     * Reads all the events in the given directory, the oldest first. The given carrier is reused for every event.
+     * <p>
+     * The temperatures of the files are defined locally by their names, as the reader does not run in the process which wrote them,
+     * and their ordinals in the files are mapped to the local ones.
+     *
+     * @param directory
+     * @param localNameIds maps the name ids of the files to the name ids of the local {@link OrderNameDictionary}.
+     * @param consumer
+     * @throws IOException
+     */
+    private static void readEvents(File directory, Map<Integer, Integer> localNameIds, Consumer<ShelfEvent> consumer)
+        throws IOException {
+        ShelfEvent event = new ShelfEvent();
+        for (File file : RollingEventFileWriter.listEventLogFiles(directory)) {
+            // The files can be written by different runs, which may have defined the temperatures in a different order.
+            Temperature[] localTemperatures = new Temperature[Temperature.MAX_TEMPERATURES];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != RollingEventFileWriter.MAGIC)
+                    throw new IOException("Not a shelf event log file:" + file);
+                while (true) {
+                    int kind = in.read();
+                    if (kind == -1)
+                        break;
+                    if (kind == RollingEventFileWriter.NAME_RECORD) {
+                        int nameId = in.readInt();
+                        localNameIds.put(nameId, OrderNameDictionary.intern(in.readUTF()));
+                    } else if (kind == RollingEventFileWriter.TEMPERATURE_RECORD) {
+                        int ordinal = in.readUnsignedByte();
+                        String name = in.readUTF();
+                        localTemperatures[ordinal] = in.readBoolean() ? Temperature.defineOverflow(name) : Temperature.define(name);
+                    } else if (kind == RollingEventFileWriter.EVENT_RECORD) {
+                        long timestampInMs = in.readLong();
+                        long orderId = in.readLong();
+                        int shelfOperation = in.readByte();
+                        int orderState = in.readByte();
+                        int temperature = in.readUnsignedByte();
+                        int nameId = in.readInt();
+                        int shelfLifeInSecs = in.readInt();
+                        double decayRate = in.readDouble();
+                        Temperature localTemperature = localTemperatures[temperature];
+                        if (localTemperature == null)
+                            throw new IOException("No temperature record for ordinal:" + temperature + " in file:" + file);
+                        event.set(timestampInMs, shelfOperation, orderId, nameId, localTemperature, shelfLifeInSecs, decayRate, orderState);
+                        consumer.accept(event);
+                    } else {
+                        throw new IOException("Unknown record kind:" + kind + " in file:" + file);
+                    }
+                }
+            } catch (EOFException e) {
+                // The last record of a file can be partially written, if the process was killed while writing it.
+                log.warn("Truncated record at the end of file={}", file);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded lock-free ring buffer of fixed size event records, written by many threads and read by a single thread.
+ * <p>
+ * The records are stored in a preallocated long array, so writing an event does not allocate. A writer claims the next sequence by
+ * CAS, writes the record into the slot of that sequence, and publishes the slot by storing the sequence into the slot's entry of
+ * {@link #published}. The reader consumes the slots strictly in the sequence order, and only after a slot is published.
+ * <p>
+ * Writers never wait for the reader. If the buffer is full, then the event is dropped and counted in {@link #getDroppedCount()}.
+ */
+@ThreadSafe public class ShelfEventRingBuffer {
+
+    private static final int RECORD_SIZE = 5;
+    private static final int TIMESTAMP = 0, ORDER_ID = 1, NAME_ID_AND_SHELF_LIFE = 2, OPERATION_STATE_AND_TEMPERATURE = 3, DECAY_RATE = 4;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] records;
+    // published[i] is (sequence + 1) of the last record published in slot i, 0 if the slot was never written.
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    // Written only by the reader.
+    private volatile long consumed;
+
+    /**
+     * @param capacity number of records the buffer can hold, rounded up to the next power of two.
+     */
+    public ShelfEventRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity should be between 1 and 2^30, given:" + capacity);
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.records = new long[this.capacity * RECORD_SIZE];
+        this.published = new AtomicLongArray(this.capacity);
+    }
+
+    /**
+     * Writes an event about the given order. Never blocks.
+     *
+     * @param timestampInMs
+     * @param shelfOperation
+     * @param order
+     * @return false if the buffer was full and the event was dropped.
+     */
+    public boolean offer(long timestampInMs, ShelfOperation shelfOperation, Order order) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) (sequence & mask);
+        int offset = slot * RECORD_SIZE;
+        records[offset + TIMESTAMP] = timestampInMs;
+        records[offset + ORDER_ID] = order.getId();
+        records[offset + NAME_ID_AND_SHELF_LIFE] = (long) order.getNameId() << 32 | order.getShelfLifeInSecs();
+        records[offset + OPERATION_STATE_AND_TEMPERATURE] =
+            shelfOperation.ordinal() << 16 | order.getOrderState().ordinal() << 8 | order.getTemperature().ordinal();
+        records[offset + DECAY_RATE] = Double.doubleToRawLongBits(order.getDecayRate());
+        // Release store, the record written above is visible to the reader once it sees the sequence.
+        published.lazySet(slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Reads the next event into the given carrier. Only one thread should call this function.
+     *
+     * @param event
+     * @return false if there is no published event to read.
+     */
+    public boolean poll(ShelfEvent event) {
+        long sequence = consumed;
+        int slot = (int) (sequence & mask);
+        if (published.get(slot) != sequence + 1)
+            return false;
+        int offset = slot * RECORD_SIZE;
+        long nameIdAndShelfLife = records[offset + NAME_ID_AND_SHELF_LIFE];
+        int operationStateAndTemperature = (int) records[offset + OPERATION_STATE_AND_TEMPERATURE];
+        event.set(records[offset + TIMESTAMP], operationStateAndTemperature >>> 16, records[offset + ORDER_ID],
+            (int) (nameIdAndShelfLife >>> 32), Temperature.forOrdinal(operationStateAndTemperature & 0xFF), (int) nameIdAndShelfLife,
+            Double.longBitsToDouble(records[offset + DECAY_RATE]), (operationStateAndTemperature >>> 8) & 0xFF);
+        // Frees the slot for the writers.
+        consumed = sequence + 1;
+        return true;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+}
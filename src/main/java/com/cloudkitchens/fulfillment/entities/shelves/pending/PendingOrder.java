@@ -0,0 +1,37 @@
+package com.cloudkitchens.fulfillment.entities.shelves.pending;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import lombok.Getter;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An order waiting in a {@link PendingOrderQueue} for a space on the shelves, until its deadline.
+ * <p>
+ * A pending order is a {@link Delayed} as per the wall clock, so that a shelf pod can wake up its expiry thread at the deadline.
+ */
+@Getter @ThreadSafe public class PendingOrder implements Delayed {
+    private final Order order;
+    private final long deadlineTimestampInMs;
+    // Breaks the ties between the orders with the same deadline, the earlier enqueued order is admitted first.
+    private final long sequence;
+    private final CompletableFuture<AddResult> future = new CompletableFuture<>();
+
+    PendingOrder(Order order, long deadlineTimestampInMs, long sequence) {
+        this.order = order;
+        this.deadlineTimestampInMs = deadlineTimestampInMs;
+        this.sequence = sequence;
+    }
+
+    @Override public long getDelay(TimeUnit unit) {
+        return unit.convert(deadlineTimestampInMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override public int compareTo(Delayed that) {
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), that.getDelay(TimeUnit.MILLISECONDS));
+    }
+}
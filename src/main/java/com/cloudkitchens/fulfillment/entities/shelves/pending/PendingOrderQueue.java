@@ -0,0 +1,165 @@
+package com.cloudkitchens.fulfillment.entities.shelves.pending;
+
+import com.cloudkitchens.fulfillment.common.IClock;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Holds the orders which found no space on the shelves, and admits them as the spaces are released, until their deadline.
+ * <p>
+ * The orders are kept in one set per temperature, ordered by their deadline. An order can go to the regular shelf of its temperature
+ * or to the overflow shelf, so when the head order of a temperature does not fit, none of the orders of that temperature fits, and
+ * they are not tried. Each admission round tries the heads in the order of their deadlines, which makes it O(log N) per admitted
+ * order, and the spaces released are handed to the orders closest to their deadline first.
+ * <p>
+ * There is no thread per pending order. {@link #admit()} is called by the shelf pod whenever it releases a space, and by its expiry
+ * thread at the deadlines. Only one thread admits at a time, a call which arrives meanwhile makes that thread do another round, so
+ * no release is missed and the callers never wait for each other. An order whose deadline has passed is added by the plain add of
+ * the pod, which rejects it as before if there is still no space.
+ */
+@Slf4j @ThreadSafe public class PendingOrderQueue {
+
+    // Adds an order if there is a space for it, otherwise returns null and leaves the order as it is.
+    private final Function<Order, AddResult> tryAdd;
+    // Adds an order like IShelfPod#addOrder, for the orders which are out of time.
+    private final Function<Order, AddResult> add;
+    private final IClock clock;
+    // Pending orders indexed by temperature, ordered by their deadline.
+    private final ConcurrentSkipListSet<PendingOrder>[] pendingOrders;
+    // Temperatures whose head order did not fit in the current round, used only by the admitting thread.
+    private final boolean[] blockedTemperatures;
+    private final AtomicInteger size = new AtomicInteger();
+    // Number of admit requests since the admitting thread started its round, the thread which raises it from zero admits.
+    private final AtomicInteger admitRequests = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param tryAdd
+     * @param add
+     * @param clock
+     * @param temperatures number of temperatures whose orders can be enqueued, the ordinals of their temperatures are below it.
+     */
+    @SuppressWarnings("unchecked")
+    public PendingOrderQueue(Function<Order, AddResult> tryAdd, Function<Order, AddResult> add, IClock clock, int temperatures) {
+        this.tryAdd = tryAdd;
+        this.add = add;
+        this.clock = clock;
+        this.pendingOrders = new ConcurrentSkipListSet[temperatures];
+        this.blockedTemperatures = new boolean[temperatures];
+        Comparator<PendingOrder> comparator =
+            Comparator.comparingLong(PendingOrder::getDeadlineTimestampInMs).thenComparingLong(PendingOrder::getSequence);
+        for (int i = 0; i < pendingOrders.length; i++) {
+            pendingOrders[i] = new ConcurrentSkipListSet<>(comparator);
+        }
+    }
+
+    /**
+     * Puts the given order into the queue, the caller should call {@link #admit()} afterwards.
+     *
+     * @param order
+     * @param maxWaitInMs how long the order can wait for a space.
+     * @return the pending order, whose future completes with the result of the add.
+     * @throws IllegalArgumentException if the wait is negative.
+     */
+    public PendingOrder enqueue(Order order, long maxWaitInMs) {
+        if (maxWaitInMs < 0)
+            throw new IllegalArgumentException("Wait can't be negative, given:" + maxWaitInMs);
+        PendingOrder pendingOrder = new PendingOrder(order, clock.currentTimeMillis() + maxWaitInMs, sequence.incrementAndGet());
+        size.incrementAndGet();
+        pendingOrders[order.getTemperature().ordinal()].add(pendingOrder);
+        return pendingOrder;
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the earliest deadline of the pending orders, or {@link Long#MAX_VALUE} if there are none.
+     *
+     * @return
+     */
+    public long getEarliestDeadlineInMs() {
+        long earliestDeadlineInMs = Long.MAX_VALUE;
+        for (ConcurrentSkipListSet<PendingOrder> orders : pendingOrders) {
+            // The admitting thread may empty the set meanwhile, which the iterator tolerates unlike first().
+            Iterator<PendingOrder> head = orders.iterator();
+            if (head.hasNext()) {
+                earliestDeadlineInMs = Math.min(earliestDeadlineInMs, head.next().getDeadlineTimestampInMs());
+            }
+        }
+        return earliestDeadlineInMs;
+    }
+
+    /**
+     * Admits the pending orders which fit on the shelves now, and adds the ones whose deadline has passed. This returns right away
+     * if another thread is admitting, that thread does another round for this call.
+     */
+    public void admit() {
+        if (isEmpty() || admitRequests.getAndIncrement() != 0)
+            return;
+        do {
+            admitRound();
+        } while (admitRequests.decrementAndGet() != 0);
+    }
+
+    private void admitRound() {
+        long now = clock.currentTimeMillis();
+        Arrays.fill(blockedTemperatures, false);
+        while (true) {
+            PendingOrder next = null;
+            for (int i = 0; i < pendingOrders.length; i++) {
+                // Only the admitting thread removes the orders, so the set is not emptied between the check and first().
+                if (blockedTemperatures[i] || pendingOrders[i].isEmpty())
+                    continue;
+                PendingOrder head = pendingOrders[i].first();
+                if (next == null || head.getDeadlineTimestampInMs() < next.getDeadlineTimestampInMs()) {
+                    next = head;
+                }
+            }
+            if (next == null)
+                return;
+            if (next.getFuture().isDone()) {
+                // Cancelled by the caller.
+                remove(next);
+                continue;
+            }
+            boolean outOfTime = next.getDeadlineTimestampInMs() <= now;
+            AddResult addResult;
+            try {
+                addResult = outOfTime ? add.apply(next.getOrder()) : tryAdd.apply(next.getOrder());
+            } catch (RuntimeException e) {
+                log.error("Failed to add pending order={}", next.getOrder(), e);
+                remove(next);
+                next.getFuture().completeExceptionally(e);
+                continue;
+            }
+            if (addResult == null) {
+                blockedTemperatures[next.getOrder().getTemperature().ordinal()] = true;
+                continue;
+            }
+            remove(next);
+            log.debug("Completed pending order={} addResult={} outOfTime={}", next.getOrder(), addResult, outOfTime);
+            next.getFuture().complete(addResult);
+        }
+    }
+
+    private void remove(PendingOrder pendingOrder) {
+        pendingOrders[pendingOrder.getOrder().getTemperature().ordinal()].remove(pendingOrder);
+        size.decrementAndGet();
+    }
+}
@@ -0,0 +1,28 @@
+package com.cloudkitchens.fulfillment.entities.shelves.policies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+
+/**
+ * Decides what happens to an incoming order when its regular shelf and the overflow shelf are both full.
+ * <p>
+ * The shelf pod keeps the overflow orders indexed by their expiry timestamp, and offers the soonest expiring overflow order
+ * as the candidate for eviction. The policy either evicts the candidate to make space for the incoming order, or rejects the incoming
+ * order, in which case it is marked as {@link com.cloudkitchens.fulfillment.entities.orders.OrderState#ExpiredOnNoSpace}.
+ * <p>
+ * Implementations are called from the thread which is adding the order, so they should be thread-safe and cheap.
+ */
+public interface IEvictionPolicy {
+
+    /**
+     * Decides whether the candidate should be evicted from the overflow shelf to make space for the incoming order.
+     *
+     * @param incoming                the order which could not be stored for lack of space.
+     * @param candidate               the soonest expiring order on the overflow shelf.
+     * @param decayModel              decay model of the shelf pod, the values of the orders decay as per this.
+     * @param overflowDecayRateFactor decayRateFactor of the overflow shelf.
+     * @param nowInMs                 current time as per the clock of the shelf pod.
+     * @return true if the candidate should be evicted, false if the incoming order should be rejected.
+     */
+    boolean shouldEvict(Order incoming, Order candidate, IDecayModel decayModel, double overflowDecayRateFactor, long nowInMs);
+}
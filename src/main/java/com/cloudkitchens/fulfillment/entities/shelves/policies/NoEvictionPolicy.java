@@ -0,0 +1,15 @@
+package com.cloudkitchens.fulfillment.entities.shelves.policies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+
+/**
+ * Never evicts, an incoming order is rejected when the overflow shelf is full. This is the default policy.
+ */
+public class NoEvictionPolicy implements IEvictionPolicy {
+
+    @Override public boolean shouldEvict(Order incoming, Order candidate, IDecayModel decayModel, double overflowDecayRateFactor,
+        long nowInMs) {
+        return false;
+    }
+}
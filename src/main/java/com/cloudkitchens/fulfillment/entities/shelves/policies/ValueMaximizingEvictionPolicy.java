@@ -0,0 +1,20 @@
+package com.cloudkitchens.fulfillment.entities.shelves.policies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+
+/**
+ * Keeps the more valuable order on a full overflow shelf. The normalized value({@link Order#getNormalizedValue(IDecayModel, double, long)})
+ * of the incoming order on the overflow shelf is compared against the candidate's, and the candidate is evicted if its value is lower.
+ * <p>
+ * The candidate is the overflow order which is closest to expiry, which is usually about to be wasted anyway, so evicting it in favor
+ * of a fresh order reduces the number of wasted orders.
+ */
+public class ValueMaximizingEvictionPolicy implements IEvictionPolicy {
+
+    @Override public boolean shouldEvict(Order incoming, Order candidate, IDecayModel decayModel, double overflowDecayRateFactor,
+        long nowInMs) {
+        return incoming.getNormalizedValue(decayModel, overflowDecayRateFactor, nowInMs) > candidate
+            .getNormalizedValue(decayModel, overflowDecayRateFactor, nowInMs);
+    }
+}
@@ -0,0 +1,47 @@
+package com.cloudkitchens.fulfillment.entities.shelves.strategies;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.comparators.OrderExpiryComparator;
+import com.cloudkitchens.fulfillment.entities.pickup.CourierArrivals;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
+import com.google.common.collect.Iterables;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+
+/**
+ * Picks up orders taking the arrival times of the already dispatched couriers into account.
+ * <p>
+ * The orders which will still be fresh when the next courier arrives can wait for that courier, so they are skipped. Among the orders
+ * which will expire before the next courier arrives, the one expiring last is picked up, as it has the most remaining shelf value,
+ * and the rest of them are lost anyway. If every order can wait for the next courier, or no other courier is known, then the order
+ * expiring soonest is picked up.
+ * <p>
+ * The index is sorted by expiry timestamp, so the order is selected with a single O(log N) lookup.
+ */
+public class DeadlineAwarePickupStrategy implements IPickupStrategy {
+
+    private final CourierArrivals courierArrivals;
+
+    public DeadlineAwarePickupStrategy(CourierArrivals courierArrivals) {
+        this.courierArrivals = courierArrivals;
+    }
+
+    @Override public Comparator<Order> getIndexComparator(ShelfRegistry shelfRegistry) {
+        return new OrderExpiryComparator(shelfRegistry);
+    }
+
+    @Override public Order selectOrder(NavigableSet<Order> orders, long nowInMs) {
+        long nextArrivalInMs = courierArrivals.getNextArrivalAfter(nowInMs);
+        if (nextArrivalInMs != CourierArrivals.NONE) {
+            // Sorts before any order expiring at the next arrival, as ids of orders are positive.
+            Order probe = new Order(Long.MIN_VALUE, 0, Temperature.Overflow, 0, 0, 0, OrderState.Created, 0, nextArrivalInMs);
+            Order order = orders.lower(probe);
+            if (order != null)
+                return order;
+        }
+        return Iterables.getFirst(orders, null);
+    }
+}
@@ -0,0 +1,17 @@
+package com.cloudkitchens.fulfillment.entities.shelves.strategies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.comparators.OrderExpiryComparator;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
+
+import java.util.Comparator;
+
+/**
+ * Picks up the order which will expire soonest across all the shelves. This is the default strategy.
+ */
+public class EarliestDeadlinePickupStrategy implements IPickupStrategy {
+
+    @Override public Comparator<Order> getIndexComparator(ShelfRegistry shelfRegistry) {
+        return new OrderExpiryComparator(shelfRegistry);
+    }
+}
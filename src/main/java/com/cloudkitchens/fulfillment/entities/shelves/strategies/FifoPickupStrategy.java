@@ -0,0 +1,19 @@
+package com.cloudkitchens.fulfillment.entities.shelves.strategies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
+
+import java.util.Comparator;
+
+/**
+ * Picks up the orders in the order in which they were created.
+ */
+public class FifoPickupStrategy implements IPickupStrategy {
+
+    private static final Comparator<Order> CREATED_TIMESTAMP_COMPARATOR =
+        Comparator.comparingLong(Order::getCreatedTimestamp).thenComparingLong(Order::getId);
+
+    @Override public Comparator<Order> getIndexComparator(ShelfRegistry shelfRegistry) {
+        return CREATED_TIMESTAMP_COMPARATOR;
+    }
+}
@@ -0,0 +1,21 @@
+package com.cloudkitchens.fulfillment.entities.shelves.strategies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.comparators.OrderExpiryComparator;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
+
+import java.util.Comparator;
+
+/**
+ * Picks up the order with the highest remaining shelf value, i.e. the order which will expire last.
+ * <p>
+ * The remaining shelf value of orders decaying at different rates can cross each other over time, so it can't be used as the key of
+ * a sorted index. The expiry timestamp is fixed while the order stays on a shelf, and the order expiring last is the one with the most
+ * remaining time on the shelf, so the index is sorted by expiry timestamp in the descending order.
+ */
+public class HighestValuePickupStrategy implements IPickupStrategy {
+
+    @Override public Comparator<Order> getIndexComparator(ShelfRegistry shelfRegistry) {
+        return new OrderExpiryComparator(shelfRegistry).reversed();
+    }
+}
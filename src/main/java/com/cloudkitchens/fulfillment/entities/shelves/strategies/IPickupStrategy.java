@@ -0,0 +1,41 @@
+package com.cloudkitchens.fulfillment.entities.shelves.strategies;
+
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfRegistry;
+import com.google.common.collect.Iterables;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+
+/**
+ * Decides which order is handed to a courier by {@link com.cloudkitchens.fulfillment.entities.shelves.IShelfPod#pollOrder()}.
+ * <p>
+ * The shelf pod keeps all the stored orders in a sorted index, and the strategy defines the sort order of that index through
+ * {@link #getIndexComparator(ShelfRegistry)}. The comparator should only depend on the attributes which do not change while an order stays
+ * on the same shelf(like expiry timestamp, created timestamp and id), otherwise the index gets corrupted. On a pickup, the shelf
+ * pod asks the strategy to select an order from the index using {@link #selectOrder(NavigableSet, long)}, which should take no more
+ * than O(log N).
+ * <p>
+ * Implementations are called concurrently by the pickup threads, so they should be thread-safe.
+ */
+public interface IPickupStrategy {
+
+    /**
+     * Returns the comparator by which the shelf pod sorts its orders index.
+     *
+     * @param shelfRegistry decayRateFactor of each shelf.
+     * @return
+     */
+    Comparator<Order> getIndexComparator(ShelfRegistry shelfRegistry);
+
+    /**
+     * Selects the order to be picked up from the given index. By default the first order of the index is selected.
+     *
+     * @param orders  the orders index, sorted by {@link #getIndexComparator(ShelfRegistry)}.
+     * @param nowInMs current timestamp.
+     * @return the selected order, or null if the index is empty.
+     */
+    default Order selectOrder(NavigableSet<Order> orders, long nowInMs) {
+        return Iterables.getFirst(orders, null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.cloudkitchens.fulfillment.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeOrderedIdGeneratorTest {
+
+    @Test public void testIdsAreIncreasingWithinThread() {
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+        long start = System.currentTimeMillis();
+        long prev = idGenerator.nextId();
+        // Generating more than the per millisecond sequence allows, so the generator has to borrow future milliseconds.
+        for (int i = 0; i < 100000; i++) {
+            long curr = idGenerator.nextId();
+            assertTrue(curr > prev, "Ids are expected to increase within a thread.");
+            prev = curr;
+        }
+        assertTrue(TimeOrderedIdGenerator.getTimestampInMs(prev) >= start);
+    }
+
+    @Test public void testIdsAreUniqueAcrossThreads() throws Exception {
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        int threads = 8, idsPerThread = 50000;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit((Callable<Void>) () -> {
+                    for (int j = 0; j < idsPerThread; j++)
+                        ids.add(idGenerator.nextId());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(threads * idsPerThread, ids.size());
+    }
+
+    @Test public void testSlotsOfTerminatedThreadsAreReused() throws Exception {
+        TimeOrderedIdGenerator idGenerator = new TimeOrderedIdGenerator();
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Set<Integer> slotsOfTerminatedThreads = ConcurrentHashMap.newKeySet();
+        long liveThreadId = idGenerator.nextId();
+        ids.add(liveThreadId);
+        // More threads than the slots come and go one after another, while this thread keeps holding its slot.
+        int threads = 1100, idsPerThread = 100;
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < idsPerThread; j++) {
+                    long id = idGenerator.nextId();
+                    ids.add(id);
+                    slotsOfTerminatedThreads.add(TimeOrderedIdGenerator.getSlot(id));
+                }
+            });
+            thread.start();
+            thread.join();
+            ids.add(idGenerator.nextId());
+        }
+        assertEquals(threads * idsPerThread + threads + 1, ids.size());
+        assertFalse(slotsOfTerminatedThreads.contains(TimeOrderedIdGenerator.getSlot(liveThreadId)),
+            "The slot of a live thread is not handed to another thread.");
+    }
+}
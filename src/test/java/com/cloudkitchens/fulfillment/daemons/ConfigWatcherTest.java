@@ -0,0 +1,44 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ConfigWatcherTest {
+
+    @TempDir File directory;
+
+    @Test public void testChangedConfigIsApplied() throws IOException, InterruptedException {
+        String defaultConfig = Resources.toString(Resources.getResource("daemons_config.json"), StandardCharsets.UTF_8);
+        Path configFile = new File(directory, "daemons_config.json").toPath();
+        Files.write(configFile, defaultConfig.getBytes(StandardCharsets.UTF_8));
+        BlockingQueue<Config> appliedConfigs = new LinkedBlockingQueue<>();
+        ConfigWatcher configWatcher = new ConfigWatcher(configFile, appliedConfigs::add);
+        configWatcher.startBackgroundActivities();
+        try {
+            // A config which can't be read is skipped.
+            Files.write(configFile, "{".getBytes(StandardCharsets.UTF_8));
+            assertNull(appliedConfigs.poll(1, TimeUnit.SECONDS));
+
+            Files.write(configFile, defaultConfig.replace("3.25", "5.5").getBytes(StandardCharsets.UTF_8));
+            Config config = appliedConfigs.poll(10, TimeUnit.SECONDS);
+            assertNotNull(config, "Changed config is expected to be applied.");
+            assertEquals(5.5, config.getPoissonMeanPerSecond());
+        } finally {
+            configWatcher.stopBackgroundActivities();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.pickup.Dispatcher;
+import com.cloudkitchens.fulfillment.entities.shelves.ArrayShelfPod;
+import org.junit.jupiter.api.Test;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DrainMonitorTest {
+
+    @Test public void testDrainEndsWithTheLastPickup() throws InterruptedException {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(2, 2, 1));
+        DrainMonitor drainMonitor = new DrainMonitor();
+        shelfPod.addObserver(drainMonitor);
+        // The couriers arrive after a second, once all the orders are added.
+        Dispatcher dispatcher = new Dispatcher(shelfPod, 1, 1);
+        dispatcher.startBackgroundActivities();
+        try {
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            shelfPod.addOrder(createOrder(Temperature.Cold, 300));
+            shelfPod.addOrder(createOrder(Temperature.Frozen, 0)); // came expired, it is never live.
+            assertEquals(2, drainMonitor.getLiveOrders());
+
+            long startInMs = System.currentTimeMillis();
+            assertTrue(drainMonitor.awaitDrained(dispatcher::getOutstandingPickups, 30000));
+            assertTrue(System.currentTimeMillis() - startInMs < 10000, "Drain is expected to end with the last pickup, not the timeout.");
+            assertEquals(0, drainMonitor.getLiveOrders());
+        } finally {
+            dispatcher.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testDrainEndsWithoutOutstandingPickups() throws InterruptedException {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(2, 2, 1));
+        DrainMonitor drainMonitor = new DrainMonitor();
+        shelfPod.addObserver(drainMonitor);
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+
+        long startInMs = System.currentTimeMillis();
+        assertFalse(drainMonitor.awaitDrained(() -> 0, 30000), "The order can't be picked up without a courier.");
+        assertTrue(System.currentTimeMillis() - startInMs < 10000);
+        assertFalse(drainMonitor.awaitDrained(() -> 1, 100), "The drain is expected to give up at the timeout.");
+        assertEquals(1, drainMonitor.getLiveOrders());
+    }
+}
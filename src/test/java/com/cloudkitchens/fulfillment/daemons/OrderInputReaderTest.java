@@ -0,0 +1,54 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderInputReaderTest {
+
+    @TempDir File directory;
+
+    private File writeOrdersFile(String json) throws IOException {
+        File ordersFile = new File(directory, "orders.json");
+        Files.write(ordersFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        return ordersFile;
+    }
+
+    @Test public void testOrdersAreStreamed() throws IOException {
+        File ordersFile = writeOrdersFile(
+            "[{\"name\":\"Banana Split\",\"temp\":\"frozen\",\"shelfLife\":20,\"decayRate\":0.63},"
+                + "{\"name\":\"McFlury\",\"temp\":\"frozen\",\"shelfLife\":375,\"decayRate\":0.4}]");
+        try (OrderInputReader reader = new OrderInputReader(ordersFile, false)) {
+            OrderInput first = reader.next();
+            assertEquals("Banana Split", first.getName());
+            assertEquals("frozen", first.getTemp());
+            assertEquals(20, first.getShelfLife());
+            assertEquals(0.63, first.getDecayRate());
+            assertEquals("McFlury", reader.next().getName());
+            assertFalse(reader.hasNext());
+            assertEquals(1, reader.getPasses());
+        }
+    }
+
+    @Test public void testCyclicReaderReplaysOrders() throws IOException {
+        File ordersFile = writeOrdersFile("[{\"name\":\"a\",\"temp\":\"hot\"},{\"name\":\"b\",\"temp\":\"cold\"}]");
+        try (OrderInputReader reader = new OrderInputReader(ordersFile, true)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(reader.hasNext());
+                assertEquals(i % 2 == 0 ? "a" : "b", reader.next().getName());
+            }
+            assertEquals(500, reader.getPasses());
+        }
+        try (OrderInputReader reader = new OrderInputReader(writeOrdersFile("[]"), true)) {
+            assertFalse(reader.hasNext(), "A file without orders is not reopened forever.");
+        }
+    }
+}
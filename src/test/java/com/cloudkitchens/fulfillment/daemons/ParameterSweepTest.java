@@ -0,0 +1,63 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.google.common.io.Resources;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParameterSweepTest {
+
+    private static SweepSpace readSweepSpace(String search) throws IOException {
+        String json = Resources.toString(Resources.getResource("sweep_space.json"), StandardCharsets.UTF_8);
+        return new Gson().fromJson(json.replace("\"grid\"", "\"" + search + "\""), SweepSpace.class);
+    }
+
+    static List<OrderInput> generateOrderInputs(int count) {
+        String[] temperatures = {"hot", "cold", "frozen"};
+        List<String> orders = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            orders.add("{\"name\": \"Item" + i + "\", \"temp\": \"" + temperatures[i % 3] + "\", \"shelfLife\": " + (10 + i % 50)
+                + ", \"decayRate\": 0.5}");
+        }
+        return new Gson().fromJson("[" + String.join(",", orders) + "]", new TypeToken<List<OrderInput>>() {
+        }.getType());
+    }
+
+    @Test public void testCreateConfigs() throws IOException {
+        // 3 poisson means * 3 max delays * 2 policies * 2^3 regular capacities * 3 overflow capacities * 2 overflow decay rate factors.
+        List<Config> configs = ParameterSweep.createConfigs(readSweepSpace("grid"));
+        assertEquals(3 * 3 * 2 * 8 * 3 * 2, configs.size());
+        assertEquals(4, configs.get(0).getShelfInputs().size());
+
+        assertEquals(1000, ParameterSweep.createConfigs(readSweepSpace("random")).size());
+        assertThrows(IllegalArgumentException.class, () -> ParameterSweep.createConfigs(readSweepSpace("unknown")));
+    }
+
+    @Test public void testRunIsRepeatable() throws IOException, InterruptedException, ExecutionException {
+        List<Config> configs = ParameterSweep.createConfigs(readSweepSpace("grid")).subList(0, 50);
+        List<OrderInput> orderInputs = generateOrderInputs(300);
+        List<SimulationResult> results = ParameterSweep.run(configs, orderInputs, 7, 4);
+        List<SimulationResult> repeated = ParameterSweep.run(configs, orderInputs, 7, 2);
+        assertEquals(configs.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            SimulationResult result = results.get(i);
+            assertEquals(configs.get(i), result.getConfig());
+            assertEquals(orderInputs.size(), result.getOrders());
+            assertEquals(result.getOrders(), result.getDelivered() + result.getWasted(), "Every order is either delivered or wasted.");
+            assertEquals(result.getDelivered(), repeated.get(i).getDelivered());
+            assertEquals(result.getWasted(), repeated.get(i).getWasted());
+            assertEquals(result.getOverflowMoves(), repeated.get(i).getOverflowMoves());
+        }
+        assertTrue(results.stream().anyMatch(result -> result.getDelivered() > 0));
+    }
+}
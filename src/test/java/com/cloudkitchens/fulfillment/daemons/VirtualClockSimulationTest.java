@@ -0,0 +1,45 @@
+package com.cloudkitchens.fulfillment.daemons;
+
+import com.cloudkitchens.fulfillment.common.RandomStreams;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.analytics.OutcomeAnalytics;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class VirtualClockSimulationTest {
+
+    private static Config createConfig() {
+        List<ShelfInput> shelfInputs = ImmutableList
+            .of(new ShelfInput("hot", 1, 5), new ShelfInput("cold", 1, 5), new ShelfInput("frozen", 1, 5),
+                new ShelfInput("overflow", 2, 5));
+        return Config.builder().poissonMeanPerSecond(3.25).minDelayForPickupInSecs(2).maxDelayForPickupInSecs(10)
+            .overflowEvictionPolicy("none").shelfInputs(shelfInputs).build();
+    }
+
+    private static String runAndReport(long seed) {
+        VirtualClockSimulation simulation = new VirtualClockSimulation(createConfig(), ParameterSweepTest.generateOrderInputs(300), seed);
+        OutcomeAnalytics outcomeAnalytics = new OutcomeAnalytics(simulation.getShelves(), simulation.getClock());
+        simulation.addObserver(outcomeAnalytics);
+        simulation.run();
+        return new Gson().toJson(outcomeAnalytics.getReport());
+    }
+
+    @Test public void testSameSeedGivesIdenticalReport() {
+        String report = runAndReport(42);
+        assertEquals(report, runAndReport(42));
+        assertNotEquals(report, runAndReport(43));
+    }
+
+    @Test public void testRandomStreamsAreIndependent() {
+        RandomStreams randomStreams = new RandomStreams(42);
+        assertEquals(randomStreams.seedFor(VirtualClockSimulation.DISPATCHER_STREAM),
+            new RandomStreams(42).seedFor(VirtualClockSimulation.DISPATCHER_STREAM));
+        assertNotEquals(randomStreams.seedFor(VirtualClockSimulation.DISPATCHER_STREAM),
+            randomStreams.seedFor(VirtualClockSimulation.ORDER_ARRIVALS_STREAM));
+    }
+}
@@ -0,0 +1,50 @@
+package com.cloudkitchens.fulfillment.entities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TemperatureTest {
+
+    @Test public void testBuiltInTemperatures() {
+        assertEquals(0, Temperature.Hot.ordinal());
+        assertEquals(3, Temperature.Overflow.ordinal());
+        assertSame(Temperature.Cold, Temperature.valueOf("cold"));
+        assertSame(Temperature.Frozen, Temperature.define("FROZEN"), "Names are matched ignoring the case.");
+        assertFalse(Temperature.getRegularShelves().contains(Temperature.Overflow));
+    }
+
+    @Test public void testDefineGivesDenseOrdinals() {
+        Temperature ambient = Temperature.define("Ambient");
+        assertSame(ambient, Temperature.define("ambient"), "A temperature is defined once per name.");
+        assertSame(ambient, Temperature.forOrdinal(ambient.ordinal()));
+        assertTrue(ambient.ordinal() < Temperature.count());
+        assertEquals("Ambient", ambient.toString());
+        assertTrue(Temperature.getRegularShelves().contains(ambient));
+
+        for (int ordinal = 0; ordinal < Temperature.count(); ordinal++)
+            assertEquals(ordinal, Temperature.values()[ordinal].ordinal());
+    }
+
+    @Test public void testDefineOverflow() {
+        Temperature chilledOverflow = Temperature.defineOverflow("Chilled-Overflow");
+        assertTrue(chilledOverflow.isOverflow());
+        assertTrue(Temperature.Overflow.isOverflow());
+        assertFalse(Temperature.Hot.isOverflow());
+        assertSame(chilledOverflow, Temperature.define("chilled-overflow"));
+        assertFalse(Temperature.getRegularShelves().contains(chilledOverflow));
+        assertThrows(IllegalArgumentException.class, () -> Temperature.defineOverflow("Hot"),
+            "A regular temperature can't be an overflow temperature.");
+    }
+
+    @Test public void testUnknownTemperature() {
+        assertNull(Temperature.forName("Lukewarm"));
+        assertThrows(IllegalArgumentException.class, () -> Temperature.valueOf("Lukewarm"));
+        assertThrows(IllegalArgumentException.class, () -> Temperature.define(" "));
+    }
+}
@@ -0,0 +1,100 @@
+package com.cloudkitchens.fulfillment.entities.jfr;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.pickup.Dispatcher;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPod;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FlightRecorderEventsTest {
+
+    @TempDir File directory;
+
+    private static List<RecordedEvent> getEvents(List<RecordedEvent> events, Class<?> eventClass) {
+        String name = eventClass.getAnnotation(jdk.jfr.Name.class).value();
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).collect(Collectors.toList());
+    }
+
+    @Test public void testNothingIsAllocatedWithoutRecording() {
+        assertNull(FlightRecorderEvents.beginShelfOperation());
+        assertNull(FlightRecorderEvents.beginPickup());
+    }
+
+    @Test public void testEventsAreRecorded() throws IOException, InterruptedException {
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1));
+        Dispatcher dispatcher = new Dispatcher(shelfPod, 60, 60);
+        Path recordingFile = new File(directory, "recording.jfr").toPath();
+        Order regularOrder = createOrder(Temperature.Hot, 100);
+        Order expiringOrder;
+        try (Recording recording = new Recording()) {
+            for (Class<?> eventClass : new Class<?>[] {ShelfOperationEvent.class, OverflowMoveEvent.class, ExpiryEvent.class,
+                PickupEvent.class}) {
+                recording.enable(eventClass.getAnnotation(jdk.jfr.Name.class).value()).withoutThreshold();
+            }
+            recording.start();
+            shelfPod.startBackgroundActivities();
+            dispatcher.startBackgroundActivities();
+            try {
+                shelfPod.addOrder(regularOrder);
+                shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // overflow shelf
+                // The overflow order is moved into the space of the polled order.
+                assertEquals(regularOrder, shelfPod.pollOrder());
+                // Created right before adding, as starting the recording can take longer than its shelf life.
+                expiringOrder = createOrder(Temperature.Cold, 1);
+                shelfPod.addOrder(expiringOrder);
+                for (int i = 0; i < 300 && !expiringOrder.hasReachedEndState(); i++)
+                    Thread.sleep(10);
+                assertEquals(OrderState.ExpiredInRegularShelf, expiringOrder.getOrderState());
+
+                // The courier of this order arrives right away.
+                dispatcher.setDelaysForPickup(0, 0);
+                shelfPod.addOrder(createOrder(Temperature.Frozen, 300));
+                for (int i = 0; i < 300 && shelfPod.getOrders().size() > 1; i++)
+                    Thread.sleep(10);
+            } finally {
+                dispatcher.stopBackgroundActivities();
+                shelfPod.stopBackgroundActivities();
+            }
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        List<RecordedEvent> shelfOperations = getEvents(events, ShelfOperationEvent.class);
+        assertEquals(4, shelfOperations.stream().filter(event -> "Add".equals(event.getString("operation"))).count());
+        RecordedEvent poll = shelfOperations.stream()
+            .filter(event -> "Poll".equals(event.getString("operation")) && event.getLong("orderId") == regularOrder.getId()).findFirst()
+            .orElseThrow(AssertionError::new);
+        assertEquals("DeliveredFromRegularShelf", poll.getString("orderState"));
+        assertEquals("Hot", poll.getString("shelf"));
+        assertTrue(shelfOperations.stream().anyMatch(event -> "Move".equals(event.getString("operation"))));
+        assertTrue(shelfOperations.stream().anyMatch(event -> "Expire".equals(event.getString("operation"))));
+
+        List<RecordedEvent> moves = getEvents(events, OverflowMoveEvent.class);
+        assertEquals(1, moves.size());
+        assertTrue(moves.get(0).getBoolean("moved"));
+        assertEquals("StoredInRegularShelf", moves.get(0).getString("orderState"));
+        List<RecordedEvent> expiries = getEvents(events, ExpiryEvent.class);
+        assertTrue(expiries.stream().anyMatch(event -> event.getLong("orderId") == expiringOrder.getId() && event.getBoolean("expired")));
+        List<RecordedEvent> pickups = getEvents(events, PickupEvent.class);
+        assertEquals(1, pickups.size());
+        assertTrue(pickups.get(0).getString("orderState").startsWith("Delivered"));
+    }
+}
@@ -1,16 +1,16 @@
 package com.cloudkitchens.fulfillment.entities.orders;
 
+import com.cloudkitchens.fulfillment.common.IIdGenerator;
+import com.cloudkitchens.fulfillment.common.TimeOrderedIdGenerator;
 import com.cloudkitchens.fulfillment.entities.Temperature;
-import com.cloudkitchens.fulfillment.entities.orders.Order;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-import java.util.UUID;
-
 public class OrderTest {
+    private static final IIdGenerator ID_GENERATOR = new TimeOrderedIdGenerator();
 
     @Test public void testOrderAttributes() {
-        Order order = new Order(UUID.randomUUID().toString(), "test", Temperature.Hot, 300, .45);
+        Order order = new Order(ID_GENERATOR.nextId(), "test", Temperature.Hot, 300, .45);
         Assertions.assertEquals("test", order.getName());
         Assertions.assertEquals(Temperature.Hot, order.getTemperature());
         Assertions.assertEquals(300, order.getShelfLifeInSecs());
@@ -18,16 +18,46 @@ public class OrderTest {
     }
 
     @Test public void testOrderShelfLifeValues() throws InterruptedException {
-        Order order = new Order(UUID.randomUUID().toString(), "test", Temperature.Hot, 300, 1);
+        Order order = new Order(ID_GENERATOR.nextId(), "test", Temperature.Hot, 300, 1);
         Thread.sleep(1000);
         long shelfLifeValueInMs = order.getCurrShelfValueInMs(1);
         Assertions.assertTrue(shelfLifeValueInMs > 290000l);
     }
 
     @Test public void testNormalizedValueInMs() throws InterruptedException {
-        Order order = new Order(UUID.randomUUID().toString(), "test", Temperature.Hot, 300, 1);
+        Order order = new Order(ID_GENERATOR.nextId(), "test", Temperature.Hot, 300, 1);
         Thread.sleep(1000);
         double normalizedValue = order.getNormalizedValue(1);
         Assertions.assertTrue(normalizedValue > .98);
     }
+
+    @Test public void testOrderStates() {
+        Order order = new Order(ID_GENERATOR.nextId(), "test", Temperature.Cold, 300, 1);
+        Assertions.assertEquals(OrderState.Created, order.getOrderState());
+        Assertions.assertFalse(order.hasReachedEndState());
+        Assertions.assertFalse(order.isCurrentlyInAnyShelf());
+
+        Assertions.assertTrue(order.compareAndSet(OrderState.Created, OrderState.StoredInOverflowShelf));
+        Assertions.assertFalse(order.compareAndSet(OrderState.Created, OrderState.StoredInRegularShelf));
+        Assertions.assertTrue(order.isCurrentlyInAnyShelf());
+
+        order.setOrderState(OrderState.DeliveredFromOverflowShelf);
+        Assertions.assertTrue(order.hasReachedEndState());
+        Assertions.assertFalse(order.isCurrentlyInAnyShelf());
+    }
+
+    @Test public void testDeepCopyAndNameInterning() {
+        Order order = new Order(ID_GENERATOR.nextId(), "Cheese Pizza", Temperature.Hot, 120, .5);
+        Order other = new Order(ID_GENERATOR.nextId(), new String("Cheese Pizza"), Temperature.Hot, 120, .5);
+        Assertions.assertEquals(order.getNameId(), other.getNameId());
+        Assertions.assertNotEquals(order, other);
+
+        Order copy = order.getDeepCopy();
+        Assertions.assertEquals(order, copy);
+        Assertions.assertEquals(order.hashCode(), copy.hashCode());
+        Assertions.assertEquals(order.getCreatedTimestamp(), copy.getCreatedTimestamp());
+        Assertions.assertEquals("Cheese Pizza", copy.getName());
+        Assertions.assertEquals(Temperature.Hot, copy.getTemperature());
+        Assertions.assertEquals(120, copy.getShelfLifeInSecs());
+    }
 }
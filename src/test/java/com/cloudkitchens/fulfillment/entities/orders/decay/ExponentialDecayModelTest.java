@@ -0,0 +1,35 @@
+package com.cloudkitchens.fulfillment.entities.orders.decay;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExponentialDecayModelTest {
+
+    private final IDecayModel decayModel = new ExponentialDecayModel();
+
+    @Test public void testTimeToZeroAndItsInverse() {
+        long shelfLifeInMs = 100_000;
+        // k = 1 / shelfLife, so a fresh order lasts shelfLife * ln(2).
+        assertEquals(shelfLifeInMs * Math.log(2), decayModel.getTimeToZeroInMs(shelfLifeInMs, shelfLifeInMs, 1), 1e-6);
+        assertTrue(decayModel.getTimeToZeroInMs(shelfLifeInMs, shelfLifeInMs, 1) > new LinearDecayModel()
+            .getTimeToZeroInMs(shelfLifeInMs, shelfLifeInMs, 1), "Decay slows down as the value drops.");
+        for (double valueInMs : new double[] {0, 1, 5000, 50_000, 100_000}) {
+            double timeToZeroInMs = decayModel.getTimeToZeroInMs(valueInMs, shelfLifeInMs, 0.45);
+            assertEquals(valueInMs, decayModel.getShelfValueInMs(timeToZeroInMs, shelfLifeInMs, 0.45), 1e-6);
+        }
+        assertTrue(decayModel.getShelfValueInMs(-10, shelfLifeInMs, 0.45) < 0);
+        assertEquals(5000, decayModel.getTimeToZeroInMs(5000, shelfLifeInMs, 0), "Without a decay rate only the age counts.");
+    }
+
+    @Test public void testMoveCarriesValueOver() {
+        long createdTimestampInMs = 1_000_000;
+        long expiryTimestampInMs = decayModel.getExpiryTimestampInMs(createdTimestampInMs, 100, 2);
+        long nowInMs = createdTimestampInMs + 10_000;
+        long movedExpiryTimestampInMs = decayModel.getMovedExpiryTimestampInMs(expiryTimestampInMs, nowInMs, 100, 2, 1);
+        assertTrue(movedExpiryTimestampInMs > expiryTimestampInMs, "Order lasts longer on a shelf which decays slower.");
+        assertEquals(expiryTimestampInMs, decayModel.getMovedExpiryTimestampInMs(expiryTimestampInMs, nowInMs, 100, 2, 2), 1);
+        assertEquals(nowInMs, decayModel.getMovedExpiryTimestampInMs(nowInMs - 1, nowInMs, 100, 2, 1), "Expired order stays expired.");
+    }
+}
@@ -0,0 +1,38 @@
+package com.cloudkitchens.fulfillment.entities.orders.decay;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PiecewiseDecayModelTest {
+
+    @Test public void testSingleBandIsLinear() {
+        IDecayModel piecewise = new PiecewiseDecayModel(new double[] {0}, new double[] {1});
+        IDecayModel linear = new LinearDecayModel();
+        for (double valueInMs : new double[] {-100, 0, 1, 5000, 300_000}) {
+            assertEquals(linear.getTimeToZeroInMs(valueInMs, 300_000, 0.45), piecewise.getTimeToZeroInMs(valueInMs, 300_000, 0.45), 1e-6);
+            assertEquals(linear.getShelfValueInMs(valueInMs, 300_000, 0.45), piecewise.getShelfValueInMs(valueInMs, 300_000, 0.45), 1e-6);
+        }
+        assertEquals(linear.getExpiryTimestampInMs(1000, 300, 0.45), piecewise.getExpiryTimestampInMs(1000, 300, 0.45));
+    }
+
+    @Test public void testBands() {
+        // Fresh orders lose 1ms of value per ms, below half of the value they lose 3ms per ms.
+        IDecayModel decayModel = new PiecewiseDecayModel(new double[] {0, 0.5}, new double[] {2, 0});
+        long shelfLifeInMs = 10_000;
+        assertEquals(5000 / 3.0 + 5000, decayModel.getTimeToZeroInMs(shelfLifeInMs, shelfLifeInMs, 1), 1e-6);
+        assertEquals(3000 / 3.0, decayModel.getTimeToZeroInMs(3000, shelfLifeInMs, 1), 1e-6);
+        assertEquals(3000, decayModel.getShelfValueInMs(1000, shelfLifeInMs, 1), 1e-6);
+        assertEquals(7000, decayModel.getShelfValueInMs(5000 / 3.0 + 2000, shelfLifeInMs, 1), 1e-6);
+        assertEquals(-300, decayModel.getShelfValueInMs(-100, shelfLifeInMs, 1), 1e-6, "Past the expiry the lowest band applies.");
+    }
+
+    @Test public void testInvalidBands() {
+        assertThrows(IllegalArgumentException.class, () -> new PiecewiseDecayModel(new double[] {}, new double[] {}));
+        assertThrows(IllegalArgumentException.class, () -> new PiecewiseDecayModel(new double[] {0, 0.5}, new double[] {1}));
+        assertThrows(IllegalArgumentException.class, () -> new PiecewiseDecayModel(new double[] {0.1}, new double[] {1}));
+        assertThrows(IllegalArgumentException.class, () -> new PiecewiseDecayModel(new double[] {0, 0.5, 0.5}, new double[] {1, 1, 1}));
+        assertThrows(IllegalArgumentException.class, () -> new PiecewiseDecayModel(new double[] {0}, new double[] {-1}));
+    }
+}
@@ -3,8 +3,11 @@ package com.cloudkitchens.fulfillment.entities.pickup;
 import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.ArrayShelfPod;
 import com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest;
 import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
 import com.cloudkitchens.fulfillment.entities.shelves.ShelfPod;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -12,13 +15,16 @@ import org.junit.jupiter.api.Test;
 import java.util.List;
 
 import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class DispatcherTest {
 
     @Test public void testDispatcherAndPickup() throws InterruptedException {
         List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1);
         ShelfPod shelfPod = new ShelfPod(shelves);
-        Dispatcher dispatcher = new Dispatcher(shelfPod, 0, 2);
+        // The courier arrives within a second, well before the assertion.
+        Dispatcher dispatcher = new Dispatcher(shelfPod, 0, 1);
         dispatcher.startBackgroundActivities();
         try {
             Order expected = BaseShelfPodTest.createOrder(Temperature.Hot, 300);
@@ -29,4 +35,80 @@ public class DispatcherTest {
             dispatcher.stopBackgroundActivities();
         }
     }
+
+    @Test public void testPickupIsCancelledWithItsOrder() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(2, 2, 1));
+        Dispatcher dispatcher = new Dispatcher(shelfPod, 60, 60);
+        dispatcher.startBackgroundActivities();
+        try {
+            Order first = BaseShelfPodTest.createOrder(Temperature.Hot, 300);
+            shelfPod.addOrder(first);
+            shelfPod.addOrder(BaseShelfPodTest.createOrder(Temperature.Hot, 300));
+            assertEquals(2, dispatcher.getOutstandingPickups());
+
+            shelfPod.cancelOrder(first.getId());
+            assertEquals(1, dispatcher.getOutstandingPickups());
+            assertEquals(1, dispatcher.getCancelledPickups());
+        } finally {
+            dispatcher.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testOrderLeavingTheShelvesBeforeItsDispatch() {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(2, 2, 1);
+        ArrayShelfPod shelfPod = new ArrayShelfPod(shelves);
+        Dispatcher dispatcher = new Dispatcher(shelfPod, 60, 60);
+        dispatcher.startBackgroundActivities();
+        try {
+            Order stored = BaseShelfPodTest.createOrder(Temperature.Hot, 300);
+            shelfPod.addOrder(stored);
+            AddResult added = new AddResult(true, OrderState.StoredInRegularShelf, shelves.get(0));
+
+            // The order is on the shelves before its add is notified, so another thread can evict it before the notification.
+            Order evicted = BaseShelfPodTest.createOrder(Temperature.Hot, 300);
+            dispatcher.postShelfOperation(evicted, ShelfOperation.Evict);
+            dispatcher.postAddOrder(evicted, added);
+            assertEquals(1, dispatcher.getOutstandingPickups(), "Only the courier of the evicted order is expected to be called back.");
+            assertEquals(1, dispatcher.getCancelledPickups());
+            assertEquals(1, dispatcher.getTrackedOrders());
+
+            // The order picked up by the courier of another order needs a courier for that order.
+            Order polled = BaseShelfPodTest.createOrder(Temperature.Hot, 300);
+            dispatcher.postShelfOperation(polled, ShelfOperation.Poll);
+            dispatcher.postAddOrder(polled, added);
+            assertEquals(2, dispatcher.getOutstandingPickups());
+            assertEquals(1, dispatcher.getTrackedOrders(), "No pickup is expected to be tracked for the polled order.");
+
+            shelfPod.cancelOrder(stored.getId());
+            assertEquals(1, dispatcher.getOutstandingPickups());
+            assertEquals(0, dispatcher.getTrackedOrders());
+        } finally {
+            dispatcher.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testLastPickupIsCancelledWhenTheCourierOfTheOrderArrived() throws InterruptedException {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(2, 2, 1));
+        Dispatcher dispatcher = new Dispatcher(shelfPod, 60, 60);
+        dispatcher.startBackgroundActivities();
+        try {
+            Order first = BaseShelfPodTest.createOrder(Temperature.Hot, 300);
+            shelfPod.addOrder(first);
+            // The courier of the second order arrives right away, and picks up the first order as it expires sooner.
+            dispatcher.setDelaysForPickup(0, 0);
+            Order second = BaseShelfPodTest.createOrder(Temperature.Hot, 1000);
+            shelfPod.addOrder(second);
+            for (int i = 0; i < 100 && dispatcher.getOutstandingPickups() > 1; i++)
+                Thread.sleep(10);
+            assertNull(shelfPod.getOrder(first.getId()), "The first order is expected to be picked up.");
+
+            // The courier of the first order would find the shelves empty.
+            shelfPod.cancelOrder(second.getId());
+            assertEquals(0, dispatcher.getOutstandingPickups());
+            assertEquals(1, dispatcher.getCancelledPickups());
+            assertEquals(0, dispatcher.getEmptyPickups());
+        } finally {
+            dispatcher.stopBackgroundActivities();
+        }
+    }
 }
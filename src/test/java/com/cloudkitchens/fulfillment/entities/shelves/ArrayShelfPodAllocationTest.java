@@ -0,0 +1,167 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.common.VirtualClock;
+import com.cloudkitchens.fulfillment.daemons.FulfillmentDaemons;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.OrderIndexType;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.ValueMaximizingEvictionPolicy;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the bytes allocated by the current thread on the hot paths of {@link ArrayShelfPod}, and fails if a path allocates once
+ * the pod is warmed up. The pods are created for the default engine of the daemons, so the checks fail if the default becomes an engine
+ * which allocates. The orders are created before the measurement, as creating an order is not part of the pod's work.
+ */
+public class ArrayShelfPodAllocationTest {
+
+    private static final int WARM_UP_ROUNDS = 20_000;
+    private static final int ROUNDS = 20_000;
+    private static final long STEP_IN_MS = 2000;
+    private static final int NAME_ID = OrderNameDictionary.intern("AllocationTestItem");
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    private final VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+    private long nextId;
+
+    @BeforeAll public static void enableAllocationMeasurement() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private ArrayShelfPod createShelfPod(int capacity) {
+        return createShelfPod(capacity, OrderIndexType.Heap);
+    }
+
+    private ArrayShelfPod createShelfPod(int capacity, OrderIndexType orderIndexType) {
+        return createShelfPod(capacity, ShelfPodOptions.builder().clock(clock).orderIndexType(orderIndexType).build());
+    }
+
+    private static ArrayShelfPod createShelfPod(int capacity, ShelfPodOptions shelfPodOptions) {
+        IShelfPod shelfPod = FulfillmentDaemons.createShelfPod(FulfillmentDaemons.DEFAULT_SHELF_POD_ENGINE,
+            generateRegularShelfInfosAndOverflowShelfInfo(capacity, 2, 1), shelfPodOptions);
+        assertTrue(shelfPod instanceof ArrayShelfPod, "Unexpected default engine:" + shelfPod.getClass());
+        return (ArrayShelfPod) shelfPod;
+    }
+
+    private Order[] createOrders(int count, Temperature temperature, int shelfLifeInSecs, long createdTimestampInMs, long stepInMs) {
+        Order[] orders = new Order[count];
+        for (int i = 0; i < count; i++) {
+            orders[i] = new Order(nextId++, NAME_ID, temperature, shelfLifeInSecs, .45, createdTimestampInMs + i * stepInMs,
+                OrderState.Created, 0, 0);
+        }
+        return orders;
+    }
+
+    private static long measureAllocatedBytes(Runnable hotPath) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        hotPath.run();
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        // Calling the bean allocates a little as well, which is measured the same way and taken out.
+        long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - after;
+        return Math.max(0, after - before - overhead);
+    }
+
+    private static void addAndPoll(ArrayShelfPod shelfPod, Order[] orders) {
+        for (Order order : orders) {
+            shelfPod.addOrder(order);
+            // Rejected as the order is already on a shelf.
+            shelfPod.addOrder(order);
+            shelfPod.pollOrderId();
+        }
+    }
+
+    @Test public void testAddAndPollDoNotAllocate() {
+        ArrayShelfPod shelfPod = createShelfPod(1);
+        addAndPoll(shelfPod, createOrders(WARM_UP_ROUNDS, Temperature.Hot, 300, clock.currentTimeMillis(), 0));
+        Order[] orders = createOrders(ROUNDS, Temperature.Hot, 300, clock.currentTimeMillis(), 0);
+
+        assertEquals(0, measureAllocatedBytes(() -> addAndPoll(shelfPod, orders)));
+        assertEquals(OrderState.StoredInRegularShelf, orders[ROUNDS - 1].getOrderState());
+        assertEquals(-1, shelfPod.pollOrderId());
+    }
+
+    @Test public void testCalendarQueueAddAndPollDoNotAllocate() {
+        ArrayShelfPod shelfPod = createShelfPod(1, OrderIndexType.CalendarQueue);
+        addAndPoll(shelfPod, createOrders(WARM_UP_ROUNDS, Temperature.Hot, 300, clock.currentTimeMillis(), 0));
+        Order[] orders = createOrders(ROUNDS, Temperature.Hot, 300, clock.currentTimeMillis(), 0);
+
+        assertEquals(0, measureAllocatedBytes(() -> addAndPoll(shelfPod, orders)));
+        assertEquals(-1, shelfPod.pollOrderId());
+    }
+
+    private static void moveFromOverflowShelf(ArrayShelfPod shelfPod, Order[] regularOrders, Order[] overflowOrders) {
+        for (int i = 0; i < regularOrders.length; i++) {
+            shelfPod.addOrder(regularOrders[i]);
+            shelfPod.addOrder(overflowOrders[i]);
+            // Polls the regular order, which expires sooner, and moves the overflow order into its space.
+            shelfPod.pollOrderId();
+            shelfPod.pollOrderId();
+        }
+    }
+
+    @Test public void testMoveDoesNotAllocate() {
+        ArrayShelfPod shelfPod = createShelfPod(1);
+        long now = clock.currentTimeMillis();
+        moveFromOverflowShelf(shelfPod, createOrders(WARM_UP_ROUNDS, Temperature.Cold, 100, now, 0),
+            createOrders(WARM_UP_ROUNDS, Temperature.Cold, 300, now, 0));
+        Order[] regularOrders = createOrders(ROUNDS, Temperature.Cold, 100, now, 0);
+        Order[] overflowOrders = createOrders(ROUNDS, Temperature.Cold, 300, now, 0);
+
+        assertEquals(0, measureAllocatedBytes(() -> moveFromOverflowShelf(shelfPod, regularOrders, overflowOrders)));
+        assertEquals(OrderState.StoredInOverflowShelf, overflowOrders[ROUNDS - 1].getOrderState());
+        assertEquals(-1, shelfPod.pollOrderId());
+    }
+
+    private static void addRejected(ArrayShelfPod shelfPod, Order[] orders) {
+        for (Order order : orders) {
+            shelfPod.addOrder(order);
+        }
+    }
+
+    @Test public void testRejectionByEvictionPolicyDoesNotAllocate() {
+        ArrayShelfPod shelfPod =
+            createShelfPod(1, ShelfPodOptions.builder().clock(clock).evictionPolicy(new ValueMaximizingEvictionPolicy()).build());
+        long now = clock.currentTimeMillis();
+        // Fresh orders fill the hot shelf and the overflow shelf, the aged orders are less valuable than the candidate.
+        addRejected(shelfPod, createOrders(2, Temperature.Hot, 300, now, 0));
+        addRejected(shelfPod, createOrders(WARM_UP_ROUNDS, Temperature.Hot, 300, now - 100_000, 0));
+        Order[] orders = createOrders(ROUNDS, Temperature.Hot, 300, now - 100_000, 0);
+
+        assertEquals(0, measureAllocatedBytes(() -> addRejected(shelfPod, orders)));
+        assertEquals(OrderState.ExpiredOnNoSpace, orders[ROUNDS - 1].getOrderState());
+        assertEquals(2, shelfPod.getOrders().size());
+    }
+
+    private void expire(ArrayShelfPod shelfPod, Order[] orders) {
+        for (Order order : orders) {
+            clock.advanceTo(order.getCreatedTimestamp());
+            shelfPod.addOrder(order);
+            clock.advanceTo(order.getCreatedTimestamp() + STEP_IN_MS);
+            shelfPod.expireOrders();
+        }
+    }
+
+    @Test public void testExpireDoesNotAllocate() {
+        ArrayShelfPod shelfPod = createShelfPod(1);
+        expire(shelfPod, createOrders(WARM_UP_ROUNDS, Temperature.Frozen, 1, clock.currentTimeMillis(), STEP_IN_MS));
+        Order[] orders = createOrders(ROUNDS, Temperature.Frozen, 1, clock.currentTimeMillis(), STEP_IN_MS);
+
+        assertEquals(0, measureAllocatedBytes(() -> expire(shelfPod, orders)));
+        assertEquals(-1, shelfPod.pollOrderId());
+    }
+}
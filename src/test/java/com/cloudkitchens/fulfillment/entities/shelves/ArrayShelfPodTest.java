@@ -0,0 +1,380 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.common.VirtualClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.decay.ExponentialDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.PiecewiseDecayModel;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.ValueMaximizingEvictionPolicy;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createAgedOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.resizeShelf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArrayShelfPodTest {
+
+    @Test public void testAddOrder() {
+        for (Temperature temperature : Temperature.getRegularShelves()) {
+            ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+
+            Order expected = createOrder(temperature, 300);
+            AddResult addResult = shelfPod.addOrder(expected);
+            assertTrue(addResult.isAdded());
+            assertEquals(OrderState.StoredInRegularShelf, expected.getOrderState());
+            assertEquals(temperature, addResult.getShelf().getTemperature());
+            assertFalse(shelfPod.addOrder(expected).isAdded(), "Same order can't be added twice.");
+
+            Order overflowOrder = createOrder(temperature, 300);
+            addResult = shelfPod.addOrder(overflowOrder);
+            assertTrue(addResult.isAdded());
+            assertEquals(OrderState.StoredInOverflowShelf, overflowOrder.getOrderState());
+            assertEquals(Temperature.Overflow, addResult.getShelf().getTemperature());
+
+            Order noSpaceOrder = createOrder(temperature, 300);
+            assertFalse(shelfPod.addOrder(noSpaceOrder).isAdded());
+            assertEquals(OrderState.ExpiredOnNoSpace, noSpaceOrder.getOrderState());
+
+            Order expiredOrder = createOrder(temperature, 0);
+            assertFalse(shelfPod.addOrder(expiredOrder).isAdded());
+            assertEquals(OrderState.CameExpired, expiredOrder.getOrderState());
+        }
+    }
+
+    @Test public void testPollOrderMovesOverflowOrders() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        Order regularOrder = createOrder(Temperature.Hot, 100);
+        Order overflowOrder = createOrder(Temperature.Hot, 300);
+        shelfPod.addOrder(regularOrder);
+        shelfPod.addOrder(overflowOrder);
+
+        Order actual = shelfPod.pollOrder();
+        assertEquals(regularOrder, actual);
+        assertEquals(OrderState.DeliveredFromRegularShelf, actual.getOrderState());
+
+        // Polling the regular order frees the space on the hot shelf, so the overflow order is moved immediately.
+        List<Order> orders = shelfPod.getOrders();
+        assertEquals(ImmutableList.of(overflowOrder), orders);
+        assertEquals(OrderState.StoredInRegularShelf, orders.get(0).getOrderState());
+
+        actual = shelfPod.pollOrder();
+        assertEquals(overflowOrder, actual);
+        assertEquals(OrderState.DeliveredFromRegularShelf, actual.getOrderState());
+        assertTrue(actual.getTimeSpentOnOverflowShelfInMs() >= 0);
+        assertNull(shelfPod.pollOrder());
+    }
+
+    @Test public void testCancelOrderMovesOverflowOrders() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        Order regularOrder = createOrder(Temperature.Cold, 100);
+        Order overflowOrder = createOrder(Temperature.Cold, 300);
+        shelfPod.addOrder(regularOrder);
+        shelfPod.addOrder(overflowOrder);
+        assertEquals(OrderState.StoredInOverflowShelf, shelfPod.getOrder(overflowOrder.getId()).getOrderState());
+
+        assertTrue(shelfPod.cancelOrder(regularOrder.getId()));
+        assertNull(shelfPod.getOrder(regularOrder.getId()));
+        assertFalse(shelfPod.cancelOrder(regularOrder.getId()));
+        // Cancelling the regular order frees the space on the cold shelf, so the overflow order is moved immediately.
+        assertEquals(OrderState.StoredInRegularShelf, shelfPod.getOrder(overflowOrder.getId()).getOrderState());
+        assertTrue(shelfPod.checkInvariants().isEmpty());
+
+        assertTrue(shelfPod.cancelOrder(overflowOrder.getId()));
+        assertNull(shelfPod.pollOrder());
+        assertTrue(shelfPod.checkInvariants().isEmpty());
+    }
+
+    @Test public void testGetOrdersSortedByExpiry() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(2));
+        Order third = createOrder(Temperature.Frozen, 300);
+        Order first = createOrder(Temperature.Hot, 100);
+        Order second = createOrder(Temperature.Cold, 200);
+        for (Order order : ImmutableList.of(third, first, second))
+            shelfPod.addOrder(order);
+        assertEquals(ImmutableList.of(first, second, third), shelfPod.getOrders());
+        assertEquals(ImmutableList.of(first, second, third),
+            ImmutableList.of(shelfPod.pollOrder(), shelfPod.pollOrder(), shelfPod.pollOrder()));
+    }
+
+    @Test public void testOverflowEviction() {
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().evictionPolicy(new ValueMaximizingEvictionPolicy()).build();
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1), shelfPodOptions);
+        Order regularOrder = createOrder(Temperature.Hot, 300);
+        Order candidate = createAgedOrder(Temperature.Hot, 30, 10000);
+        shelfPod.addOrder(regularOrder);
+        shelfPod.addOrder(candidate);
+
+        Order rejected = createAgedOrder(Temperature.Hot, 30, 12000);
+        assertFalse(shelfPod.addOrder(rejected).isAdded(), "Less valuable order is not expected to evict.");
+        assertEquals(OrderState.ExpiredOnNoSpace, rejected.getOrderState());
+
+        Order expected = createOrder(Temperature.Hot, 300);
+        AddResult addResult = shelfPod.addOrder(expected);
+        assertTrue(addResult.isAdded(), "More valuable order is expected to evict the candidate.");
+        assertEquals(OrderState.StoredInOverflowShelf, addResult.getOrderState());
+        assertEquals(ImmutableList.of(expected, regularOrder), shelfPod.getOrders());
+    }
+
+    @Test public void testReconfigure() {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1);
+        ArrayShelfPod shelfPod = new ArrayShelfPod(shelves);
+        Order regularOrder = createOrder(Temperature.Hot, 100);
+        Order overflowOrder = createOrder(Temperature.Hot, 300);
+        shelfPod.addOrder(regularOrder);
+        shelfPod.addOrder(overflowOrder);
+
+        // Growing the hot shelf moves the overflow order right away, the space is taken from the frozen shelf.
+        List<Shelf> reconfigured = resizeShelf(resizeShelf(shelves, Temperature.Hot, 2), Temperature.Frozen, 0);
+        shelfPod.reconfigure(reconfigured);
+        assertEquals(reconfigured, shelfPod.getShelves());
+        assertEquals(OrderState.StoredInRegularShelf, shelfPod.getOrders().get(1).getOrderState());
+
+        // Shrinking the shelf keeps the stored orders, the shelf only stops accepting new orders until it is drained.
+        shelfPod.reconfigure(resizeShelf(reconfigured, Temperature.Hot, 1));
+        assertEquals(ImmutableList.of(regularOrder, overflowOrder), shelfPod.getOrders());
+        assertEquals(OrderState.StoredInOverflowShelf, shelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+        assertEquals(regularOrder, shelfPod.pollOrder());
+        assertEquals(1, shelfPod.getOrders().stream().filter(order -> order.getOrderState() == OrderState.StoredInOverflowShelf).count(),
+            "Hot shelf is at its new capacity, so the overflow order is not expected to move.");
+
+        assertThrows(IllegalArgumentException.class, () -> shelfPod.reconfigure(resizeShelf(shelves, Temperature.Hot, 2)),
+            "Total capacity can't grow beyond the allocated capacity.");
+    }
+
+    @Test public void testExpireOrdersOnVirtualClock() {
+        VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+        ArrayShelfPod shelfPod =
+            new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1), ShelfPodOptions.builder().clock(clock).build());
+        Order expiringOrder = createOrder(Temperature.Hot, 10);
+        Order order = createOrder(Temperature.Cold, 300);
+        shelfPod.addOrder(expiringOrder);
+        shelfPod.addOrder(order);
+
+        assertEquals(0, shelfPod.expireOrders());
+        // Hot order loses 1.45ms of value per ms, so it expires within 7 seconds.
+        clock.advanceTo(clock.currentTimeMillis() + 7000);
+        assertEquals(1, shelfPod.expireOrders());
+        assertEquals(ImmutableList.of(order), shelfPod.getOrders());
+    }
+
+    private static Order createOrderAt(long id, Temperature temperature, int shelfLifeInSecs, double decayRate, long createdTimestampInMs) {
+        return new Order(id, OrderNameDictionary.intern(temperature.name() + "Item"), temperature, shelfLifeInSecs, decayRate,
+            createdTimestampInMs, OrderState.Created, 0, 0);
+    }
+
+    @Test public void testDecayModelDecidesExpiry() {
+        VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1),
+            ShelfPodOptions.builder().clock(clock).decayModel(new ExponentialDecayModel()).build());
+        Order order = createOrderAt(1, Temperature.Hot, 10, .45, clock.currentTimeMillis());
+        shelfPod.addOrder(order);
+
+        // The linear decay would expire the order within 7 seconds, the exponential one takes ln(1.45) / .45 of the shelf life.
+        long expiryTimestampInMs = shelfPod.getOrder(1).getExpiryTimestampInMs(1);
+        assertEquals(order.getCreatedTimestamp() + 10_000 * Math.log(1.45) / .45, expiryTimestampInMs, 1);
+        clock.advanceTo(expiryTimestampInMs - 1);
+        assertEquals(0, shelfPod.expireOrders());
+        assertEquals(0.0, shelfPod.getOrder(1).getNormalizedValue(new ExponentialDecayModel(), 1, expiryTimestampInMs), 1e-9);
+        clock.advanceTo(expiryTimestampInMs);
+        assertEquals(1, shelfPod.expireOrders());
+    }
+
+    @Test public void testRuntimeDefinedShelfType() {
+        Temperature ambient = Temperature.define("Ambient");
+        ArrayShelfPod shelfPod =
+            new ArrayShelfPod(ImmutableList.of(new Shelf(1, 1, 1, ambient), new Shelf(2, 2, 1, Temperature.Overflow)));
+        Order regularOrder = createOrder(ambient, 100);
+        Order overflowOrder = createOrder(ambient, 300);
+        assertEquals(ambient, shelfPod.addOrder(regularOrder).getShelf().getTemperature());
+        assertEquals(Temperature.Overflow, shelfPod.addOrder(overflowOrder).getShelf().getTemperature());
+
+        assertEquals(regularOrder.getId(), shelfPod.pollOrder().getId());
+        assertEquals(OrderState.StoredInRegularShelf, shelfPod.getOrder(overflowOrder.getId()).getOrderState(),
+            "The overflow order is moved to the shelf of its type.");
+        assertTrue(shelfPod.checkInvariants().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> shelfPod.addOrder(createOrder(Temperature.Hot, 300)),
+            "The pod has no shelf for the hot orders.");
+        assertThrows(IllegalArgumentException.class, () -> shelfPod.reserve(Temperature.Hot, 0));
+    }
+
+    @Test public void testOverflowTiers() {
+        VirtualClock clock = new VirtualClock(1_000_000);
+        Temperature chilledOverflow = Temperature.defineOverflow("Chilled-Overflow");
+        ArrayShelfPod shelfPod = new ArrayShelfPod(ImmutableList.of(new Shelf(1, 1, 1, Temperature.Hot),
+            new Shelf(2, 4, 2, Temperature.Overflow), new Shelf(3, 2, 1, chilledOverflow)), ShelfPodOptions.builder().clock(clock).build());
+        long now = clock.currentTimeMillis();
+        // An order loses 1 + decayRateFactor ms of value per ms, so the orders on the overflow shelf expire at a fifth of their shelf life.
+        Order regularOrder = createOrderAt(1, Temperature.Hot, 100, 1, now);
+        Order chilledOrder = createOrderAt(2, Temperature.Hot, 300, 1, now);
+        Order overflowOrder = createOrderAt(3, Temperature.Hot, 200, 1, now);
+        Order lastOrder = createOrderAt(4, Temperature.Hot, 400, 1, now);
+        assertEquals(Temperature.Hot, shelfPod.addOrder(regularOrder).getShelf().getTemperature());
+        assertEquals(chilledOverflow, shelfPod.addOrder(chilledOrder).getShelf().getTemperature(),
+            "The slowest decaying overflow shelf is tried first.");
+        assertEquals(Temperature.Overflow, shelfPod.addOrder(overflowOrder).getShelf().getTemperature());
+        assertEquals(Temperature.Overflow, shelfPod.addOrder(lastOrder).getShelf().getTemperature());
+        assertEquals(now + 40_000, shelfPod.getOrder(3).getExpiryTimestampInMs(1));
+
+        // The soonest expiring order of the overflow shelf moves into the space freed on the chilled overflow shelf, 200 seconds of
+        // value at 3ms per ms.
+        assertTrue(shelfPod.cancelOrder(chilledOrder.getId()));
+        assertEquals(now + 66_666, shelfPod.getOrder(3).getExpiryTimestampInMs(1), 1);
+        assertEquals(now + 80_000, shelfPod.getOrder(4).getExpiryTimestampInMs(1));
+        assertTrue(shelfPod.checkInvariants().isEmpty());
+
+        // The moved order moves on to the hot shelf, and the last order cascades into the chilled overflow shelf in turn.
+        assertEquals(regularOrder, shelfPod.pollOrder());
+        assertEquals(OrderState.StoredInRegularShelf, shelfPod.getOrder(3).getOrderState());
+        assertEquals(OrderState.StoredInOverflowShelf, shelfPod.getOrder(4).getOrderState());
+        assertEquals(now + 133_333, shelfPod.getOrder(4).getExpiryTimestampInMs(1), 1);
+        assertTrue(shelfPod.checkInvariants().isEmpty());
+    }
+
+    @Test public void testDecayModelCarriesValueOverOnMove() {
+        VirtualClock clock = new VirtualClock(1_000_000);
+        // Below half of the value an order decays like the linear decay, above it the decay rate does not count.
+        PiecewiseDecayModel decayModel = new PiecewiseDecayModel(new double[] {0, 0.5}, new double[] {1, 0});
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1, 3, 1),
+            ShelfPodOptions.builder().clock(clock).decayModel(decayModel).build());
+        Order regularOrder = createOrderAt(1, Temperature.Cold, 30, 1, clock.currentTimeMillis());
+        Order overflowOrder = createOrderAt(2, Temperature.Cold, 100, 1, clock.currentTimeMillis());
+        shelfPod.addOrder(regularOrder);
+        assertEquals(Temperature.Overflow, shelfPod.addOrder(overflowOrder).getShelf().getTemperature());
+
+        // The overflow order loses 1ms per ms while its value is above the half, so it has 90 seconds of value left at the move.
+        clock.advanceTo(clock.currentTimeMillis() + 10_000);
+        assertEquals(regularOrder, shelfPod.pollOrder());
+        Order movedOrder = shelfPod.getOrder(2);
+        assertEquals(OrderState.StoredInRegularShelf, movedOrder.getOrderState());
+        // 40 seconds of value above the half at 1ms per ms, then 50 seconds at 2ms per ms.
+        assertEquals(clock.currentTimeMillis() + 40_000 + 25_000, movedOrder.getExpiryTimestampInMs(1));
+        assertEquals(90_000, movedOrder.getCurrShelfValueInMs(decayModel, 1, clock.currentTimeMillis()));
+    }
+
+    @Test public void testExpireThread() throws InterruptedException {
+        // Setting overflow shelf decay rate factor to 10, so the orders will expire sooner, and this test can run quicker.
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1, 10, 1));
+        shelfPod.startBackgroundActivities();
+        try {
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            shelfPod.addOrder(createOrder(Temperature.Hot, 1, .45));
+            assertEquals(2, shelfPod.getOrders().size());
+
+            Thread.sleep(500);
+            List<Order> orders = shelfPod.getOrders();
+            assertEquals(1, orders.size());
+            assertEquals(300, orders.get(0).getShelfLifeInSecs());
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testDuplicateAddIsIgnored() {
+        ShelfPodOptions shelfPodOptions =
+            ShelfPodOptions.builder().deduplicationWindowInMs(60_000).deduplicationPrefilterCapacity(100).build();
+        BaseShelfPodTest.assertDuplicateAddIsIgnored(new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1), shelfPodOptions));
+    }
+
+    @Test public void testReservationHoldsSpace() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        BaseShelfPodTest.assertReservationHoldsSpace(shelfPod);
+        assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+    }
+
+    @Test public void testReleasedReservationMovesOverflowOrder() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        Reservation reservation = shelfPod.reserve(Temperature.Hot, System.currentTimeMillis() + 60_000);
+        Order order = createOrder(Temperature.Hot, 300);
+        shelfPod.addOrder(order);
+
+        assertTrue(shelfPod.release(reservation));
+        assertEquals(OrderState.StoredInRegularShelf, shelfPod.getOrder(order.getId()).getOrderState());
+        assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+    }
+
+    @Test public void testExpireReservationsOnVirtualClock() {
+        VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1),
+            ShelfPodOptions.builder().clock(clock).reservationGracePeriodInMs(1000).build());
+        Reservation expiringReservation = shelfPod.reserve(Temperature.Hot, clock.currentTimeMillis() + 1000);
+        Reservation committedReservation = shelfPod.reserve(Temperature.Cold, clock.currentTimeMillis() + 1000);
+        shelfPod.commit(committedReservation, createOrder(Temperature.Cold, 300));
+
+        clock.advanceTo(clock.currentTimeMillis() + 1999);
+        shelfPod.expireOrders();
+        assertEquals(Temperature.Overflow, shelfPod.reserve(Temperature.Hot, clock.currentTimeMillis()).getShelfType(),
+            "Reservation is held until its grace period is over.");
+
+        clock.advanceTo(clock.currentTimeMillis() + 1);
+        shelfPod.expireOrders();
+        assertFalse(shelfPod.release(expiringReservation), "Expired reservation should have been reclaimed.");
+        assertEquals(Temperature.Hot, shelfPod.reserve(Temperature.Hot, clock.currentTimeMillis()).getShelfType());
+        assertEquals(1, shelfPod.getOrders().size(), "Expiry of a committed reservation should not touch its order.");
+        assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+    }
+
+    @Test public void testExpireThreadReclaimsReservation() throws InterruptedException {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1),
+            ShelfPodOptions.builder().reservationGracePeriodInMs(100).build());
+        shelfPod.startBackgroundActivities();
+        try {
+            Reservation reservation = shelfPod.reserve(Temperature.Hot, System.currentTimeMillis());
+            Thread.sleep(500);
+            assertFalse(shelfPod.release(reservation), "Expired reservation should have been reclaimed.");
+            assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testPendingOrderIsAdmittedOnRelease() throws ExecutionException, InterruptedException {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        BaseShelfPodTest.assertPendingOrderIsAdmittedOnRelease(shelfPod);
+        assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+    }
+
+    @Test public void testPendingOrderDeadlineOnVirtualClock() throws ExecutionException, InterruptedException {
+        VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+        ArrayShelfPod shelfPod =
+            new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1), ShelfPodOptions.builder().clock(clock).build());
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+        CompletableFuture<AddResult> future = shelfPod.addOrderAsync(createOrder(Temperature.Hot, 300), 1000);
+
+        clock.advanceTo(clock.currentTimeMillis() + 999);
+        shelfPod.expireOrders();
+        assertFalse(future.isDone());
+        clock.advanceTo(clock.currentTimeMillis() + 1);
+        shelfPod.expireOrders();
+        assertEquals(OrderState.ExpiredOnNoSpace, future.get().getOrderState());
+    }
+
+    @Test public void testExpireThreadRejectsPendingOrderAtDeadline() throws Exception {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        shelfPod.startBackgroundActivities();
+        try {
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            CompletableFuture<AddResult> future = shelfPod.addOrderAsync(createOrder(Temperature.Hot, 300), 200);
+
+            assertEquals(OrderState.ExpiredOnNoSpace, future.get(2, TimeUnit.SECONDS).getOrderState());
+            assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+}
@@ -1,24 +1,34 @@
 package com.cloudkitchens.fulfillment.entities.shelves;
 
+import com.cloudkitchens.fulfillment.common.IIdGenerator;
+import com.cloudkitchens.fulfillment.common.TimeOrderedIdGenerator;
 import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderNameDictionary;
 import com.cloudkitchens.fulfillment.entities.orders.OrderState;
 import com.cloudkitchens.fulfillment.entities.orders.comparators.OrderExpiryComparator;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.ValueMaximizingEvictionPolicy;
 import com.google.common.collect.ImmutableList;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class BaseShelfPodTest {
+    private static final IIdGenerator ID_GENERATOR = new TimeOrderedIdGenerator();
     protected static final double DEF_DECAY_RATE_OF_ORDER = .45;
     protected static final int SHELF_CAPACITY = 2;
     protected static final int OVERFLOW_SHELF_DECAY_RATE_FACTOR = 2;
@@ -32,7 +42,10 @@ public class BaseShelfPodTest {
         int regularShelfDecayRateFactor) {
         List<Shelf> shelves = new ArrayList<>();
         for (Temperature temperature : Temperature.values()) {
-            shelves.add(new Shelf(UUID.randomUUID().toString(),
+            // The overflow tiers defined by the other tests are left out, as the heap engine supports a single overflow shelf.
+            if (temperature.isOverflow() && temperature != Temperature.Overflow)
+                continue;
+            shelves.add(new Shelf(ID_GENERATOR.nextId(),
                 temperature == Temperature.Overflow ? overflowShelfDecayRateFactor : regularShelfDecayRateFactor, capacity, temperature));
         }
         return shelves;
@@ -42,7 +55,10 @@ public class BaseShelfPodTest {
         int overflowShelfDecayRateFactor, int regularShelfDecayRateFactor) {
         List<Shelf> shelves = new ArrayList<>();
         for (Temperature temperature : Temperature.values()) {
-            shelves.add(new Shelf(UUID.randomUUID().toString(),
+            // The overflow tiers defined by the other tests are left out, as the heap engine supports a single overflow shelf.
+            if (temperature.isOverflow() && temperature != Temperature.Overflow)
+                continue;
+            shelves.add(new Shelf(ID_GENERATOR.nextId(),
                 temperature == Temperature.Overflow ? overflowShelfDecayRateFactor : regularShelfDecayRateFactor,
                 temperature == Temperature.Overflow ? overflowCapacity : capacity, temperature));
         }
@@ -53,7 +69,7 @@ public class BaseShelfPodTest {
         List<Order> result = new ArrayList<>();
         for (Temperature temperature : temperatureList) {
             for (int i = 0; i < capacity; i++) {
-                result.add(new Order(UUID.randomUUID().toString(), "Item", temperature, shelfLifeInSecs, .45));
+                result.add(new Order(ID_GENERATOR.nextId(), "Item", temperature, shelfLifeInSecs, .45));
                 shelfLifeInSecs--;
             }
         }
@@ -81,7 +97,98 @@ public class BaseShelfPodTest {
 
     protected static Order createOrder(Temperature temperature, int shelfLifeInSecs, double decayRate) {
         String name = temperature.name() + "Item";
-        return new Order(UUID.randomUUID().toString(), name, temperature, shelfLifeInSecs, decayRate);
+        return new Order(ID_GENERATOR.nextId(), name, temperature, shelfLifeInSecs, decayRate);
+    }
+
+    /**
+     * Creates an order which was created the given time ago, so it has already lost part of its shelf value.
+     */
+    protected static Order createAgedOrder(Temperature temperature, int shelfLifeInSecs, long ageInMs) {
+        int nameId = OrderNameDictionary.intern(temperature.name() + "Item");
+        return new Order(ID_GENERATOR.nextId(), nameId, temperature, shelfLifeInSecs, DEF_DECAY_RATE_OF_ORDER,
+            System.currentTimeMillis() - ageInMs, OrderState.Created, 0, 0);
+    }
+
+    /**
+     * Checks that a retried add of an order, a new instance with the same id, gets the result of the first add without taking another
+     * space or notifying the observers. The given pod should be created with a deduplication window and a regular shelf of capacity 1.
+     */
+    static void assertDuplicateAddIsIgnored(IShelfPod shelfPod) {
+        AtomicInteger adds = new AtomicInteger();
+        shelfPod.addObserver(new IShelfPodObserver() {
+            @Override public void postAddOrder(Order order, AddResult addResult) {
+                adds.incrementAndGet();
+            }
+        });
+        Order order = createOrder(Temperature.Hot, 300);
+        Order retriedOrder = order.getDeepCopy();
+
+        AddResult addResult = shelfPod.addOrder(order);
+        assertTrue(addResult.isAdded());
+        assertSame(addResult, shelfPod.addOrder(retriedOrder));
+        assertSame(addResult, shelfPod.addOrder(order));
+        assertEquals(OrderState.Created, retriedOrder.getOrderState(), "The duplicate is not added.");
+        assertEquals(1, shelfPod.getOrders().size());
+        assertEquals(1, adds.get(), "Observers like the dispatcher should not see the duplicates.");
+
+        Order anotherOrder = createOrder(Temperature.Hot, 300);
+        assertEquals(OrderState.StoredInOverflowShelf, shelfPod.addOrder(anotherOrder).getOrderState());
+    }
+
+    /**
+     * Checks that a reservation holds a space until it is committed or released. The given pod should be created with the shelves of
+     * capacity 1, and its background activities should not be started.
+     */
+    static void assertReservationHoldsSpace(IShelfPod shelfPod) {
+        long expectedReadyTimestampInMs = System.currentTimeMillis() + 60_000;
+        Reservation reservation = shelfPod.reserve(Temperature.Hot, expectedReadyTimestampInMs);
+        assertEquals(Temperature.Hot, reservation.getShelfType());
+        Order overflowOrder = createOrder(Temperature.Hot, 300);
+        assertEquals(OrderState.StoredInOverflowShelf, shelfPod.addOrder(overflowOrder).getOrderState(),
+            "The reserved space is not available to the other orders.");
+        assertNull(shelfPod.reserve(Temperature.Hot, expectedReadyTimestampInMs), "Both the hot and the overflow shelves are full.");
+
+        Order order = createOrder(Temperature.Hot, 300);
+        AddResult addResult = shelfPod.commit(reservation, order);
+        assertTrue(addResult.isAdded());
+        assertEquals(OrderState.StoredInRegularShelf, addResult.getOrderState());
+        assertEquals(2, shelfPod.getOrders().size());
+        assertFalse(shelfPod.release(reservation), "A committed reservation is no longer held.");
+        assertEquals(OrderState.ExpiredOnNoSpace, shelfPod.commit(reservation, createOrder(Temperature.Hot, 300)).getOrderState(),
+            "A commit of a reservation which is not held is a plain add.");
+
+        Reservation coldReservation = shelfPod.reserve(Temperature.Cold, expectedReadyTimestampInMs);
+        assertEquals(Temperature.Cold, coldReservation.getShelfType());
+        assertThrows(IllegalArgumentException.class, () -> shelfPod.commit(coldReservation, createOrder(Temperature.Hot, 300)));
+        assertTrue(shelfPod.release(coldReservation));
+        assertFalse(shelfPod.release(coldReservation));
+        assertEquals(OrderState.StoredInRegularShelf, shelfPod.addOrder(createOrder(Temperature.Cold, 300)).getOrderState(),
+            "A released space is available to the other orders.");
+
+        assertThrows(IllegalArgumentException.class, () -> shelfPod.reserve(Temperature.Overflow, expectedReadyTimestampInMs));
+    }
+
+    /**
+     * Checks that an order which finds both of its shelves full waits for a space, and takes the space released by a pickup. The given
+     * pod should be created with the shelves of capacity 1, and its background activities should not be started.
+     */
+    static void assertPendingOrderIsAdmittedOnRelease(IShelfPod shelfPod) throws ExecutionException, InterruptedException {
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+        Order pendingOrder = createOrder(Temperature.Hot, 300);
+        CompletableFuture<AddResult> future = shelfPod.addOrderAsync(pendingOrder, 60_000);
+        assertFalse(future.isDone(), "Both the hot and the overflow shelves are full.");
+        assertEquals(OrderState.Created, pendingOrder.getOrderState());
+
+        assertNotNull(shelfPod.pollOrder());
+        assertTrue(future.isDone(), "The space released by the pickup is taken by the pending order.");
+        assertTrue(future.get().isAdded());
+        assertEquals(2, shelfPod.getOrders().size());
+
+        CompletableFuture<AddResult> noWaitFuture = shelfPod.addOrderAsync(createOrder(Temperature.Hot, 300), 0);
+        assertEquals(OrderState.ExpiredOnNoSpace, noWaitFuture.get().getOrderState(), "An order without wait is rejected like before.");
+        CompletableFuture<AddResult> coldFuture = shelfPod.addOrderAsync(createOrder(Temperature.Cold, 300), 60_000);
+        assertEquals(OrderState.StoredInRegularShelf, coldFuture.get().getOrderState(), "An order with a space is added right away.");
     }
 
     @Test public void testShelfAddOrder() {
@@ -121,6 +228,94 @@ public class BaseShelfPodTest {
         }
     }
 
+    @Test public void testOverflowEviction() {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1);
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().evictionPolicy(new ValueMaximizingEvictionPolicy()).build();
+        ShelfPod baseShelfPod = new ShelfPod(shelves, shelfPodOptions);
+        baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)); // adds to regular shelf
+        Order candidate = createAgedOrder(Temperature.Hot, 30, 10000);
+        baseShelfPod.addOrder(candidate); // adds to overflow shelf
+
+        // Less valuable order than the candidate is rejected.
+        Order rejected = createAgedOrder(Temperature.Cold, 30, 12000);
+        baseShelfPod.addOrder(createOrder(Temperature.Cold, 300)); // adds to regular shelf
+        AddResult addResult = baseShelfPod.addOrder(rejected);
+        assertFalse(addResult.isAdded(), "Less valuable order is not expected to evict.");
+        assertEquals(OrderState.ExpiredOnNoSpace, rejected.getOrderState());
+        assertEquals(OrderState.StoredInOverflowShelf, candidate.getOrderState());
+
+        // More valuable order evicts the candidate.
+        Order expected = createOrder(Temperature.Cold, 300);
+        addResult = baseShelfPod.addOrder(expected);
+        assertTrue(addResult.isAdded(), "More valuable order is expected to evict the candidate.");
+        assertEquals(OrderState.StoredInOverflowShelf, expected.getOrderState());
+        assertEquals(OrderState.EvictedFromOverflowShelf, candidate.getOrderState());
+        assertFalse(baseShelfPod.getOrders().contains(candidate), "Evicted order is not expected on the shelves.");
+        assertEquals(3, baseShelfPod.getOrders().size());
+    }
+
+    @Test public void testEvictedSpaceIsHandedToIncomingOrder() {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1);
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().evictionPolicy(new ValueMaximizingEvictionPolicy()).build();
+        ShelfPod baseShelfPod = new ShelfPod(shelves, shelfPodOptions);
+        for (Temperature temperature : Temperature.getRegularShelves())
+            baseShelfPod.addOrder(createOrder(temperature, 300));
+        Order candidate = createAgedOrder(Temperature.Hot, 30, 10000);
+        baseShelfPod.addOrder(candidate);
+        // A pending order is offered every space released on the shelves, it should not be offered the space of the evicted order.
+        CompletableFuture<AddResult> pendingOrder = baseShelfPod.addOrderAsync(createOrder(Temperature.Frozen, 300), 60000);
+        assertFalse(pendingOrder.isDone());
+
+        Order expected = createOrder(Temperature.Cold, 300);
+        assertTrue(baseShelfPod.addOrder(expected).isAdded(), "More valuable order is expected to take the space of the candidate.");
+        assertEquals(OrderState.EvictedFromOverflowShelf, candidate.getOrderState());
+        assertFalse(pendingOrder.isDone());
+        // The space taken over by the incoming order is released once that order leaves the shelves.
+        assertTrue(baseShelfPod.cancelOrder(expected.getId()));
+        assertTrue(pendingOrder.isDone());
+        assertTrue(pendingOrder.join().isAdded());
+    }
+
+    /**
+     * Returns a copy of the given shelves where the shelf of the given temperature has the given capacity.
+     */
+    protected static List<Shelf> resizeShelf(List<Shelf> shelves, Temperature temperature, int capacity) {
+        List<Shelf> result = new ArrayList<>();
+        for (Shelf shelf : shelves) {
+            result.add(shelf.getTemperature() != temperature ? shelf :
+                new Shelf(shelf.getId(), shelf.getDecayRateFactor(), capacity, temperature));
+        }
+        return result;
+    }
+
+    @Test public void testReconfigure() {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(2);
+        ShelfPod baseShelfPod = new ShelfPod(shelves);
+        Order first = createOrder(Temperature.Hot, 100);
+        Order second = createOrder(Temperature.Hot, 200);
+        baseShelfPod.addOrder(first);
+        baseShelfPod.addOrder(second);
+
+        // Shrinking the shelf keeps the stored orders, the shelf only stops accepting new orders until it is drained.
+        List<Shelf> shrunk = resizeShelf(shelves, Temperature.Hot, 1);
+        baseShelfPod.reconfigure(shrunk);
+        assertEquals(shrunk, baseShelfPod.getShelves());
+        assertEquals(ImmutableList.of(first, second), baseShelfPod.getOrders());
+        assertEquals(OrderState.StoredInOverflowShelf, baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+        assertEquals(first, baseShelfPod.pollOrder());
+        assertEquals(OrderState.StoredInOverflowShelf, baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+        assertEquals(second, baseShelfPod.pollOrder());
+        assertEquals(OrderState.StoredInRegularShelf, baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+        assertEquals(OrderState.ExpiredOnNoSpace, baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+
+        // Growing the shelf makes the space available right away.
+        baseShelfPod.reconfigure(resizeShelf(shelves, Temperature.Hot, 3));
+        assertEquals(OrderState.StoredInRegularShelf, baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+        assertEquals(OrderState.StoredInRegularShelf, baseShelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+
+        assertThrows(IllegalArgumentException.class, () -> baseShelfPod.reconfigure(shelves.subList(0, 2)));
+    }
+
     @Test public void testGetShelves() {
         List<Shelf> expected = generateRegularShelfInfosAndOverflowShelfInfo(1);
         ShelfPod baseShelfPod = new ShelfPod(expected);
@@ -181,6 +376,32 @@ public class BaseShelfPodTest {
         }
     }
 
+    @Test public void testGetAndCancelOrder() {
+        for (Temperature temperature : Temperature.getRegularShelves()) {
+            List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1);
+            ShelfPod baseShelfPod = new ShelfPod(shelves);
+
+            Order expected = createOrder(temperature, 300);
+            assertNull(baseShelfPod.getOrder(expected.getId()));
+            assertFalse(baseShelfPod.cancelOrder(expected.getId()));
+            baseShelfPod.addOrder(expected);
+            Order actual = baseShelfPod.getOrder(expected.getId());
+            assertEquals(expected, actual);
+            assertEquals(OrderState.StoredInRegularShelf, actual.getOrderState());
+
+            assertTrue(baseShelfPod.cancelOrder(expected.getId()));
+            assertEquals(OrderState.Cancelled, expected.getOrderState());
+            assertNull(baseShelfPod.getOrder(expected.getId()));
+            assertFalse(baseShelfPod.cancelOrder(expected.getId()));
+            assertNull(baseShelfPod.pollOrder());
+
+            // The space of the cancelled order is released right away.
+            Order next = createOrder(temperature, 300);
+            baseShelfPod.addOrder(next);
+            assertEquals(OrderState.StoredInRegularShelf, next.getOrderState());
+        }
+    }
+
     @Test public void testShelfPollOrder() {
         for (Temperature temperature : Temperature.getRegularShelves()) {
             List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1);
@@ -217,7 +438,7 @@ public class BaseShelfPodTest {
             generateOrders(ImmutableList.of(Temperature.Hot, Temperature.Cold, Temperature.Frozen, Temperature.Frozen), SHELF_CAPACITY);
 
         List<Order> expected = new ArrayList<>(generated);
-        Collections.sort(expected, new OrderExpiryComparator(BaseShelfPod.getDecayRateFactors(shelves)));
+        Collections.sort(expected, new OrderExpiryComparator(new ShelfRegistry(shelves)));
 
         for (Order order : generated)
             baseShelfPod.addOrder(order);
@@ -248,7 +469,7 @@ public class BaseShelfPodTest {
         for (Order order : expected)
             baseShelfPod.addOrder(order);
         actual = baseShelfPod.getOrders();
-        Collections.sort(expected, new OrderExpiryComparator(BaseShelfPod.getDecayRateFactors(shelves)));
+        Collections.sort(expected, new OrderExpiryComparator(new ShelfRegistry(shelves)));
         assertEquals(expected, actual);
     }
 }
@@ -0,0 +1,295 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.common.ExecutorServicesUtil;
+import com.cloudkitchens.fulfillment.common.RandomStreams;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Runs producer and picker threads against an {@link IShelfPod} along with the pod's own mover and expiry threads, and checks the
+ * invariants of the pod while it is under load. Pickers also cancel recently created orders now and then.
+ * <p>
+ * Every order is tracked from its creation until the pod notifies its end state(rejected, delivered, expired, evicted or cancelled), so an order
+ * which reaches an end state twice is reported right away. Only the orders without an end state are kept, so the memory used by the
+ * harness is bounded by the capacity of the pod, and a soak can run for hours.
+ * <p>
+ * At every checkpoint the producers and the pickers are paused, and once the background threads of the pod have settled, the pod's
+ * {@link IShelfPod#checkInvariants()} has to be clean, and the orders stored by the pod have to be exactly the orders without an end
+ * state. A check is retried for a while before it is reported, as the background threads may be in the middle of an operation.
+ * <p>
+ * Each thread draws its orders and pauses from its own stream of {@link RandomStreams}, so the seed of a failing run reproduces the
+ * same operations on each thread. The interleaving of the threads can't be reproduced, so a failing seed is a starting point to run
+ * the soak again, not an exact replay.
+ */
+@Slf4j public class ShelfPodSoakHarness {
+
+    private static final int MAX_SETTLE_ATTEMPTS = 50;
+    private static final long SETTLE_WAIT_IN_MS = 20;
+    private static final int MAX_SHELF_LIFE_IN_SECS = 3;
+    private static final int MAX_PRODUCER_PAUSE_IN_NANOS = 200_000;
+    private static final int MAX_PICKER_PAUSE_IN_NANOS = 400_000;
+    // One in this many pickups is a cancellation of one of the recently created orders instead.
+    private static final int CANCEL_EVERY = 4;
+    private static final int RECENT_ORDERS = 100;
+    private static final String ORDER_NAME = "SoakItem";
+
+    private final IShelfPod shelfPod;
+    // Temperatures of the regular shelves of the pod, the orders are spread over them.
+    private final List<Temperature> temperatures;
+    private final RandomStreams randomStreams;
+    private final int producers;
+    private final int pickers;
+    private final long checkpointIntervalInMs;
+    // Producers and pickers hold the read lock for each operation, a checkpoint holds the write lock to pause them.
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    // Ids of the orders which are created and have not reached an end state yet.
+    private final Set<Long> liveOrders = ConcurrentHashMap.newKeySet();
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextOrderId = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * @param shelfPod               a pod which is not started yet, the harness starts and stops its background activities.
+     * @param seed                   seeds the orders and the pauses of each thread.
+     * @param producers              number of threads adding orders.
+     * @param pickers                number of threads polling orders.
+     * @param checkpointIntervalInMs time between two checkpoints.
+     */
+    public ShelfPodSoakHarness(IShelfPod shelfPod, long seed, int producers, int pickers, long checkpointIntervalInMs) {
+        this.shelfPod = shelfPod;
+        this.temperatures = new ShelfRegistry(shelfPod.getShelves()).getRegularShelves();
+        this.randomStreams = new RandomStreams(seed);
+        this.producers = producers;
+        this.pickers = pickers;
+        this.checkpointIntervalInMs = checkpointIntervalInMs;
+    }
+
+    /**
+     * Runs the soak for the given duration, then stops the producers and the pickers, delivers the remaining orders and checks that
+     * every order has reached exactly one end state. The soak stops at the first checkpoint which finds a violation.
+     *
+     * @param durationInMs
+     * @return
+     * @throws InterruptedException
+     */
+    public SoakResult run(long durationInMs) throws InterruptedException {
+        log.info("Running soak with seed={} producers={} pickers={} durationInMs={}", randomStreams.getMasterSeed(), producers, pickers,
+            durationInMs);
+        shelfPod.addObserver(new EndStateObserver());
+        shelfPod.startBackgroundActivities();
+        ExecutorService executorService = ExecutorServicesUtil.createFixedThreadPool("soak-thread-", producers + pickers, 30);
+        int checkpoints = 0;
+        try {
+            for (int i = 0; i < producers; i++) {
+                executorService.submit(new Producer(randomStreams.newRandom("producer-" + i)));
+            }
+            for (int i = 0; i < pickers; i++) {
+                executorService.submit(new Picker(randomStreams.newRandom("picker-" + i)));
+            }
+            long endTimeInMs = System.currentTimeMillis() + durationInMs;
+            while (violations.isEmpty() && System.currentTimeMillis() < endTimeInMs) {
+                Thread.sleep(Math.min(checkpointIntervalInMs, Math.max(1, endTimeInMs - System.currentTimeMillis())));
+                checkpointLock.writeLock().lock();
+                try {
+                    violations.addAll(awaitSettled());
+                    checkpoints++;
+                } finally {
+                    checkpointLock.writeLock().unlock();
+                }
+            }
+            stopped = true;
+            executorService.shutdown();
+            executorService.awaitTermination(30, TimeUnit.SECONDS);
+            if (violations.isEmpty()) {
+                // Delivers the remaining orders. An order which is being moved is out of the pod for a moment, so it is delivered by a
+                // later attempt.
+                for (int attempt = 0; attempt < MAX_SETTLE_ATTEMPTS && !liveOrders.isEmpty(); attempt++) {
+                    BaseShelfPodTest.pollAllOrders(shelfPod);
+                    Thread.sleep(SETTLE_WAIT_IN_MS);
+                }
+                violations.addAll(awaitSettled());
+                if (!liveOrders.isEmpty())
+                    violations.add("orders:" + liveOrders.size() + " never reached an end state");
+            }
+        } finally {
+            stopped = true;
+            executorService.shutdownNow();
+            shelfPod.stopBackgroundActivities();
+        }
+        SoakResult soakResult = SoakResult.builder().seed(randomStreams.getMasterSeed()).orders(nextOrderId.get())
+            .delivered(delivered.get()).wasted(wasted.get()).cancelled(cancelled.get())
+            .checkpoints(checkpoints).violations(ImmutableList.copyOf(violations)).build();
+        log.info("Soak completed with seed={} orders={} delivered={} wasted={} cancelled={} checkpoints={} violations={}",
+            soakResult.getSeed(), soakResult.getOrders(), soakResult.getDelivered(), soakResult.getWasted(), soakResult.getCancelled(),
+            checkpoints, soakResult.getViolations());
+        return soakResult;
+    }
+
+    /**
+     * Checks the invariants until they hold or the attempts run out, the callers of the pod have to be paused.
+     *
+     * @return the violations of the last attempt, empty if the invariants hold.
+     * @throws InterruptedException
+     */
+    private List<String> awaitSettled() throws InterruptedException {
+        List<String> found = new ArrayList<>();
+        for (int attempt = 0; attempt < MAX_SETTLE_ATTEMPTS; attempt++) {
+            found = new ArrayList<>(shelfPod.checkInvariants());
+            Set<Long> storedOrders = shelfPod.getOrders().stream().map(Order::getId).collect(Collectors.toSet());
+            if (!storedOrders.equals(liveOrders)) {
+                found.add("orders stored but already in an end state:" + Sets.difference(storedOrders, liveOrders)
+                    + ", orders not stored and without an end state:" + Sets.difference(liveOrders, storedOrders));
+            }
+            if (found.isEmpty())
+                return found;
+            Thread.sleep(SETTLE_WAIT_IN_MS);
+        }
+        return found;
+    }
+
+    private Order createOrder(Random random) {
+        Temperature temperature = temperatures.get(random.nextInt(temperatures.size()));
+        // Orders with zero shelf life come expired.
+        int shelfLifeInSecs = random.nextInt(MAX_SHELF_LIFE_IN_SECS + 1);
+        return new Order(nextOrderId.incrementAndGet(), ORDER_NAME, temperature, shelfLifeInSecs, random.nextDouble());
+    }
+
+    private void endState(Order order, ShelfOperation shelfOperation, boolean expectedOrderState) {
+        if (!liveOrders.remove(order.getId())) {
+            violations.add("orderId:" + order.getId() + " reached another end state by " + shelfOperation + " as " + order.getOrderState());
+        } else if (!expectedOrderState) {
+            violations.add("orderId:" + order.getId() + " reached an end state by " + shelfOperation + " as " + order.getOrderState());
+        }
+    }
+
+    /**
+     * Tracks the end state of each order, an add which did not store the order is also an end state.
+     */
+    private class EndStateObserver implements IShelfPodObserver {
+
+        @Override public void postAddOrder(Order order, AddResult addResult) {
+            if (!addResult.isAdded()) {
+                wasted.incrementAndGet();
+                endState(order, ShelfOperation.Add,
+                    order.getOrderState() == OrderState.ExpiredOnNoSpace || order.getOrderState() == OrderState.CameExpired);
+            }
+        }
+
+        @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+            OrderState orderState = order.getOrderState();
+            switch (shelfOperation) {
+                case Poll:
+                    delivered.incrementAndGet();
+                    endState(order, shelfOperation,
+                        orderState == OrderState.DeliveredFromRegularShelf || orderState == OrderState.DeliveredFromOverflowShelf);
+                    break;
+                case Expire:
+                    wasted.incrementAndGet();
+                    endState(order, shelfOperation,
+                        orderState == OrderState.ExpiredInRegularShelf || orderState == OrderState.ExpiredInOverflowShelf);
+                    break;
+                case Evict:
+                    wasted.incrementAndGet();
+                    endState(order, shelfOperation, orderState == OrderState.EvictedFromOverflowShelf);
+                    break;
+                case Cancel:
+                    cancelled.incrementAndGet();
+                    endState(order, shelfOperation, orderState == OrderState.Cancelled);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Adds orders until the soak is stopped.
+     */
+    private class Producer implements Runnable {
+        private final Random random;
+
+        private Producer(Random random) {
+            this.random = random;
+        }
+
+        @Override public void run() {
+            while (!stopped) {
+                checkpointLock.readLock().lock();
+                try {
+                    Order order = createOrder(random);
+                    liveOrders.add(order.getId());
+                    shelfPod.addOrder(order);
+                } catch (RuntimeException e) {
+                    violations.add("addOrder threw " + e);
+                } finally {
+                    checkpointLock.readLock().unlock();
+                }
+                LockSupport.parkNanos(random.nextInt(MAX_PRODUCER_PAUSE_IN_NANOS));
+            }
+        }
+    }
+
+    /**
+     * Polls orders until the soak is stopped.
+     */
+    private class Picker implements Runnable {
+        private final Random random;
+
+        private Picker(Random random) {
+            this.random = random;
+        }
+
+        @Override public void run() {
+            while (!stopped) {
+                checkpointLock.readLock().lock();
+                try {
+                    if (random.nextInt(CANCEL_EVERY) == 0) {
+                        shelfPod.cancelOrder(nextOrderId.get() - random.nextInt(RECENT_ORDERS));
+                    } else {
+                        shelfPod.pollOrder();
+                    }
+                } catch (RuntimeException e) {
+                    violations.add("pollOrder or cancelOrder threw " + e);
+                } finally {
+                    checkpointLock.readLock().unlock();
+                }
+                LockSupport.parkNanos(random.nextInt(MAX_PICKER_PAUSE_IN_NANOS));
+            }
+        }
+    }
+
+    @Getter @Builder public static class SoakResult {
+        private final long seed;
+        private final long orders;
+        private final long delivered;
+        private final long wasted;
+        private final long cancelled;
+        private final int checkpoints;
+        private final List<String> violations;
+    }
+}
@@ -0,0 +1,58 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.entities.shelves.arrays.OrderIndexType;
+import com.cloudkitchens.fulfillment.entities.shelves.policies.ValueMaximizingEvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Soaks each engine for a few seconds as part of the build. A long soak is run with the same tests, for example
+ * <p>
+ * mvn test -Dtest=ShelfPodSoakTest -Dsoak.durationInSecs=14400 -Dsoak.producers=32 -Dsoak.pickers=32
+ * <p>
+ * and a failing run is repeated with -Dsoak.seed=seed reported by the failure.
+ */
+public class ShelfPodSoakTest {
+
+    private static final long DURATION_IN_MS = TimeUnit.SECONDS.toMillis(Long.getLong("soak.durationInSecs", 3));
+    private static final int PRODUCERS = Integer.getInteger("soak.producers", 4);
+    private static final int PICKERS = Integer.getInteger("soak.pickers", 4);
+    private static final long CHECKPOINT_INTERVAL_IN_MS = Long.getLong("soak.checkpointIntervalInMs", 500);
+
+    // Small shelves keep the pod full, so the overflow, move and eviction paths are taken all the time.
+    private static List<Shelf> createShelves() {
+        return generateRegularShelfInfosAndOverflowShelfInfo(10, 15, 2, 1);
+    }
+
+    private static ShelfPodOptions createOptions() {
+        return ShelfPodOptions.builder().evictionPolicy(new ValueMaximizingEvictionPolicy()).build();
+    }
+
+    private static void soak(IShelfPod shelfPod) throws InterruptedException {
+        long seed = Long.getLong("soak.seed", System.nanoTime());
+        ShelfPodSoakHarness.SoakResult soakResult =
+            new ShelfPodSoakHarness(shelfPod, seed, PRODUCERS, PICKERS, CHECKPOINT_INTERVAL_IN_MS).run(DURATION_IN_MS);
+        assertTrue(soakResult.getViolations().isEmpty(),
+            "Invariants are violated, rerun with -Dsoak.seed=" + soakResult.getSeed() + ", violations:" + soakResult.getViolations());
+        assertTrue(soakResult.getOrders() > 0 && soakResult.getDelivered() > 0 && soakResult.getWasted() > 0
+            && soakResult.getCancelled() > 0, "Soak is expected to deliver, waste and cancel orders, seed:" + soakResult.getSeed());
+    }
+
+    @Test public void testShelfPod() throws InterruptedException {
+        soak(new ShelfPod(createShelves(), createOptions()));
+    }
+
+    @Test public void testArrayShelfPod() throws InterruptedException {
+        soak(new ArrayShelfPod(createShelves(), createOptions()));
+    }
+
+    @Test public void testArrayShelfPodOnCalendarQueues() throws InterruptedException {
+        soak(new ArrayShelfPod(createShelves(), ShelfPodOptions.builder().evictionPolicy(new ValueMaximizingEvictionPolicy())
+            .orderIndexType(OrderIndexType.CalendarQueue).build()));
+    }
+}
@@ -3,21 +3,32 @@ package com.cloudkitchens.fulfillment.entities.shelves;
 import com.cloudkitchens.fulfillment.entities.Temperature;
 import com.cloudkitchens.fulfillment.entities.orders.Order;
 import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.orders.decay.ExponentialDecayModel;
+import com.cloudkitchens.fulfillment.entities.orders.decay.IDecayModel;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.LockContentionReport;
+import com.cloudkitchens.fulfillment.entities.shelves.contention.SyncPoint;
 import com.cloudkitchens.fulfillment.entities.shelves.observers.IShelfPodObserver;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
 import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateOrders;
 import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ShelfPodTest {
@@ -54,6 +65,97 @@ public class ShelfPodTest {
         }
     }
 
+    // Tests whether the mover thread of a shelf type defined at runtime moves its orders from the overflow shelf.
+    @Test public void testMoverThreadOfRuntimeDefinedShelfType() throws InterruptedException {
+        Temperature chilledDrinks = Temperature.define("Chilled-Drinks");
+        ShelfPod shelfPod = new ShelfPod(ImmutableList.of(new Shelf(1, 1, 1, chilledDrinks), new Shelf(2, 2, 1, Temperature.Overflow)));
+        shelfPod.startBackgroundActivities();
+        try {
+            Order regularOrder = createOrder(chilledDrinks, 100);
+            Order overflowOrder = createOrder(chilledDrinks, 300);
+            assertEquals(chilledDrinks, shelfPod.addOrder(regularOrder).getShelf().getTemperature());
+            assertEquals(Temperature.Overflow, shelfPod.addOrder(overflowOrder).getShelf().getTemperature());
+            assertEquals(regularOrder, shelfPod.pollOrder());
+
+            Thread.sleep(100);
+
+            assertEquals(OrderState.DeliveredFromRegularShelf, shelfPod.pollOrder().getOrderState(),
+                "Order was not moved from overflow shelf to the shelf of its type.");
+            assertThrows(IllegalArgumentException.class, () -> shelfPod.addOrder(createOrder(Temperature.Hot, 300)));
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testMultipleOverflowShelvesAreRejected() {
+        Temperature chilledOverflow = Temperature.defineOverflow("Chilled-Overflow");
+        assertThrows(IllegalArgumentException.class, () -> new ShelfPod(ImmutableList.of(new Shelf(1, 1, 1, Temperature.Hot),
+            new Shelf(2, 2, 1, Temperature.Overflow), new Shelf(3, 1.5, 1, chilledOverflow))));
+    }
+
+    @Test public void testCancelWaitsForMove() throws InterruptedException {
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        Order regularOrder = createOrder(Temperature.Frozen, 300);
+        Order overflowOrder = createOrder(Temperature.Frozen, 300);
+        CountDownLatch moveStarted = new CountDownLatch(1);
+        CountDownLatch moveResumed = new CountDownLatch(1);
+        // The observers of the removal from the overflow shelf are called while the order is out of the index for the move.
+        shelfPod.addObserver(new IShelfPodObserver() {
+            @Override public void postAddOrder(Order order, AddResult addResult) {
+            }
+
+            @Override public void postShelfOperation(Order order, ShelfOperation shelfOperation) {
+                if (order == overflowOrder && shelfOperation == ShelfOperation.Remove) {
+                    moveStarted.countDown();
+                    Uninterruptibles.awaitUninterruptibly(moveResumed);
+                }
+            }
+        });
+        shelfPod.startBackgroundActivities();
+        try {
+            shelfPod.addOrder(regularOrder);
+            shelfPod.addOrder(overflowOrder);
+            shelfPod.cancelOrder(regularOrder.getId());
+            assertTrue(moveStarted.await(10, TimeUnit.SECONDS));
+
+            Thread canceller = new Thread(() -> shelfPod.cancelOrder(overflowOrder.getId()));
+            canceller.start();
+            for (int i = 0; i < 100 && canceller.getState() != Thread.State.WAITING; i++)
+                Thread.sleep(10);
+            assertEquals(Thread.State.WAITING, canceller.getState(), "Cancel is expected to wait for the move, not to spin.");
+            moveResumed.countDown();
+            canceller.join(10000);
+            assertEquals(OrderState.Cancelled, overflowOrder.getOrderState());
+            assertTrue(shelfPod.getOrders().isEmpty());
+        } finally {
+            moveResumed.countDown();
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    // Tests whether the space released by a cancelled order is used by the mover thread right away.
+    @Test public void testMoverThreadAfterCancel() throws InterruptedException {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1);
+        ShelfPod shelfPod = new ShelfPod(shelves);
+        shelfPod.startBackgroundActivities();
+        try {
+            Order regularOrder = createOrder(Temperature.Frozen, 300);
+            Order overflowOrder = createOrder(Temperature.Frozen, 300);
+            shelfPod.addOrder(regularOrder);
+            shelfPod.addOrder(overflowOrder);
+            assertEquals(OrderState.StoredInOverflowShelf, overflowOrder.getOrderState());
+
+            assertTrue(shelfPod.cancelOrder(regularOrder.getId()));
+            //lets give some time for mover thread to move items.
+            Thread.sleep(100);
+            assertEquals(OrderState.StoredInRegularShelf, shelfPod.getOrder(overflowOrder.getId()).getOrderState(),
+                "Order was not moved from overflow shelf to the space of the cancelled order.");
+            assertTrue(shelfPod.checkInvariants().isEmpty());
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
     // Lets test mover thread with multiple shelves.
     @Test public void testMoverThreadWithMultipleShelves() throws InterruptedException {
         List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(5, 15, 2, 1);
@@ -163,4 +265,97 @@ public class ShelfPodTest {
         shelfPod.addOrder(expectedOrder);
         assertEquals(1, orders.size());
     }
+
+    // Tests whether the acquisitions of the shelf semaphores and the queues are accounted when the contention monitor is enabled.
+    @Test public void testLockContentionReport() throws InterruptedException {
+        assertTrue(new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1)).getLockContentionReport().getStats().isEmpty());
+
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().lockContentionSamplingInterval(1).build();
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1), shelfPodOptions);
+        shelfPod.startBackgroundActivities();
+        try {
+            shelfPod.addOrder(createOrder(Temperature.Hot, 100));
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            // Lets give some time for the updates reader thread to put the overflow order into the mover queue.
+            Thread.sleep(100);
+            assertNotNull(shelfPod.pollOrder());
+            Thread.sleep(100);
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+
+        LockContentionReport report = shelfPod.getLockContentionReport();
+        // Two tries on the hot shelf, and one by the mover thread.
+        assertEquals(3, report.getStats(SyncPoint.ShelfSpaces, Temperature.Hot).getAcquisitions());
+        assertEquals(1, report.getStats(SyncPoint.ShelfSpaces, Temperature.Overflow).getAcquisitions());
+        // Add, add, poll, and the remove from the overflow shelf and the add to the regular shelf of the move.
+        assertEquals(5, report.getStats(SyncPoint.UpdatesQueue, Temperature.Hot).getAcquisitions());
+        assertTrue(report.getTotal(SyncPoint.MoverQueue).getAcquisitions() > 0);
+        assertTrue(report.getTotal(SyncPoint.ExpiryQueue).getAcquisitions() > 0);
+        assertNotNull(report.getMostContended());
+    }
+
+    @Test public void testDuplicateAddIsIgnored() {
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().deduplicationWindowInMs(60_000).build();
+        BaseShelfPodTest.assertDuplicateAddIsIgnored(new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1), shelfPodOptions));
+    }
+
+    @Test public void testReservationHoldsSpace() {
+        BaseShelfPodTest.assertReservationHoldsSpace(new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1)));
+    }
+
+    // Tests whether the mark expired thread reclaims the space of a reservation which is not committed in time.
+    @Test public void testExpireThreadReclaimsReservation() throws InterruptedException {
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1),
+            ShelfPodOptions.builder().reservationGracePeriodInMs(100).build());
+        shelfPod.startBackgroundActivities();
+        try {
+            Reservation expiringReservation = shelfPod.reserve(Temperature.Hot, System.currentTimeMillis());
+            Reservation committedReservation = shelfPod.reserve(Temperature.Cold, System.currentTimeMillis());
+            shelfPod.commit(committedReservation, createOrder(Temperature.Cold, 300));
+
+            Thread.sleep(500);
+            assertFalse(shelfPod.release(expiringReservation), "Expired reservation should have been reclaimed.");
+            assertEquals(OrderState.StoredInRegularShelf, shelfPod.addOrder(createOrder(Temperature.Hot, 300)).getOrderState());
+            assertEquals(2, shelfPod.getOrders().size(), "Expiry of a committed reservation should not touch its order.");
+            Thread.sleep(100);
+            assertEquals(ImmutableList.of(), shelfPod.checkInvariants());
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testPendingOrderIsAdmittedOnRelease() throws ExecutionException, InterruptedException {
+        BaseShelfPodTest.assertPendingOrderIsAdmittedOnRelease(new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1)));
+    }
+
+    // Tests whether the mark expired thread rejects a pending order at its deadline when no space is released.
+    @Test public void testExpireThreadRejectsPendingOrderAtDeadline() throws Exception {
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1));
+        shelfPod.startBackgroundActivities();
+        try {
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            shelfPod.addOrder(createOrder(Temperature.Hot, 300));
+            CompletableFuture<AddResult> future = shelfPod.addOrderAsync(createOrder(Temperature.Hot, 300), 200);
+
+            AddResult addResult = future.get(2, TimeUnit.SECONDS);
+            assertEquals(OrderState.ExpiredOnNoSpace, addResult.getOrderState());
+            assertEquals(2, shelfPod.getOrders().size());
+        } finally {
+            shelfPod.stopBackgroundActivities();
+        }
+    }
+
+    @Test public void testDecayModelDecidesExpiry() {
+        IDecayModel decayModel = new ExponentialDecayModel();
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1),
+            ShelfPodOptions.builder().decayModel(decayModel).build());
+        Order order = createOrder(Temperature.Frozen, 100);
+        assertTrue(shelfPod.addOrder(order).isAdded());
+
+        long expiryTimestampInMs = shelfPod.getOrder(order.getId()).getExpiryTimestampInMs(1);
+        assertEquals(decayModel.getExpiryTimestampInMs(order.getCreatedTimestamp(), 100, order.getDecayRate()), expiryTimestampInMs);
+        assertTrue(expiryTimestampInMs > order.getCreatedTimestamp() + 100_000 / (1 + order.getDecayRate()),
+            "Exponential decay lasts longer than the linear decay.");
+    }
 }
@@ -0,0 +1,76 @@
+package com.cloudkitchens.fulfillment.entities.shelves;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShelfRegistryTest {
+
+    private static final Temperature AMBIENT = Temperature.define("Ambient");
+
+    private static List<Shelf> createShelves(int ambientCapacity) {
+        return ImmutableList.of(new Shelf(1, 1, 5, Temperature.Hot), new Shelf(2, .5, ambientCapacity, AMBIENT),
+            new Shelf(3, 2, 10, Temperature.Overflow));
+    }
+
+    @Test public void testShelvesAreIndexedByOrdinal() {
+        ShelfRegistry shelfRegistry = new ShelfRegistry(createShelves(4));
+        assertEquals(ImmutableList.of(Temperature.Hot, AMBIENT), shelfRegistry.getRegularShelves());
+        assertEquals(19, shelfRegistry.getTotalCapacity());
+        assertEquals(4, shelfRegistry.getCapacity(AMBIENT));
+        assertEquals(.5, shelfRegistry.getDecayRateFactor(AMBIENT.ordinal()));
+        assertEquals(3, shelfRegistry.getShelf(Temperature.Overflow).getId());
+        assertTrue(shelfRegistry.hasShelf(AMBIENT));
+        assertFalse(shelfRegistry.hasShelf(Temperature.Cold));
+        assertNull(shelfRegistry.getShelf(Temperature.Cold));
+
+        Order order = new Order(1, "Item", AMBIENT, 300, .5);
+        assertEquals(.5, shelfRegistry.getDecayRateFactor(order));
+        order.setOrderState(OrderState.StoredInOverflowShelf);
+        assertEquals(2, shelfRegistry.getDecayRateFactor(order), "An overflow order decays as per the overflow shelf.");
+    }
+
+    @Test public void testOverflowShelvesAreOrderedByDecayRate() {
+        Temperature chilledOverflow = Temperature.defineOverflow("Chilled-Overflow");
+        ShelfRegistry shelfRegistry = new ShelfRegistry(ImmutableList.of(new Shelf(1, 1, 5, Temperature.Hot),
+            new Shelf(2, 2, 10, Temperature.Overflow), new Shelf(3, 1.5, 4, chilledOverflow)));
+        assertEquals(ImmutableList.of(chilledOverflow, Temperature.Overflow), shelfRegistry.getOverflowShelves());
+        assertEquals(ImmutableList.of(Temperature.Hot), shelfRegistry.getRegularShelves());
+        assertEquals(19, shelfRegistry.getTotalCapacity());
+        assertThrows(IllegalArgumentException.class, () -> shelfRegistry.checkRegularShelf(chilledOverflow));
+        assertThrows(IllegalArgumentException.class, () -> new ShelfRegistry(
+            ImmutableList.of(new Shelf(1, 1, 5, Temperature.Hot), new Shelf(3, 1.5, 4, chilledOverflow))),
+            "The overflow shelf is required along with the other tiers.");
+    }
+
+    @Test public void testCheckRegularShelf() {
+        ShelfRegistry shelfRegistry = new ShelfRegistry(createShelves(4));
+        shelfRegistry.checkRegularShelf(AMBIENT);
+        assertThrows(IllegalArgumentException.class, () -> shelfRegistry.checkRegularShelf(Temperature.Cold));
+        assertThrows(IllegalArgumentException.class, () -> shelfRegistry.checkRegularShelf(Temperature.Overflow));
+    }
+
+    @Test public void testInvalidShelves() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new ShelfRegistry(ImmutableList.of(new Shelf(1, 1, 5, Temperature.Hot), new Shelf(2, 1, 5, Temperature.Hot),
+                new Shelf(3, 2, 10, Temperature.Overflow))));
+        assertThrows(IllegalArgumentException.class, () -> new ShelfRegistry(ImmutableList.of(new Shelf(1, 1, 5, Temperature.Hot))));
+    }
+
+    @Test public void testHasSameTemperatures() {
+        ShelfRegistry shelfRegistry = new ShelfRegistry(createShelves(4));
+        assertTrue(shelfRegistry.hasSameTemperatures(new ShelfRegistry(createShelves(8))));
+        assertFalse(shelfRegistry.hasSameTemperatures(new ShelfRegistry(
+            ImmutableList.of(new Shelf(1, 1, 5, Temperature.Hot), new Shelf(3, 2, 10, Temperature.Overflow)))));
+    }
+}
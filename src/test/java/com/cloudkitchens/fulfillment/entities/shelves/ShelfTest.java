@@ -1,17 +1,19 @@
 package com.cloudkitchens.fulfillment.entities.shelves;
 
+import com.cloudkitchens.fulfillment.common.IIdGenerator;
+import com.cloudkitchens.fulfillment.common.TimeOrderedIdGenerator;
 import com.cloudkitchens.fulfillment.entities.Temperature;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.UUID;
 
 public class ShelfTest {
+    private static final IIdGenerator ID_GENERATOR = new TimeOrderedIdGenerator();
 
     @Test public void testEqualsAndHashCode() {
-        String id = UUID.randomUUID().toString();
+        long id = ID_GENERATOR.nextId();
         Shelf expected = new Shelf(id, 1, 1, Temperature.Hot);
         Assertions.assertFalse(expected.equals(null));
 
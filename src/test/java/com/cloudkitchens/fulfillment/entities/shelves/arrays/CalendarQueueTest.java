@@ -0,0 +1,117 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CalendarQueueTest {
+
+    private static HandleHeap.HandleComparator byKey(long[] keys) {
+        return (first, second) -> {
+            int result = Long.compare(keys[first], keys[second]);
+            return result == 0 ? Integer.compare(first, second) : result;
+        };
+    }
+
+    private static CalendarQueue createQueue(long[] keys) {
+        return new CalendarQueue(keys.length, byKey(keys), handle -> keys[handle], 1);
+    }
+
+    @Test public void testAddPollAndRemove() {
+        int capacity = 1000;
+        long[] keys = new long[capacity];
+        Random random = new Random(7);
+        for (int i = 0; i < capacity; i++) {
+            // Every 50th key is far beyond the others, to make the queue search past its year.
+            keys[i] = i % 50 == 0 ? 1_000_000_000L + i : random.nextInt(100);
+        }
+        CalendarQueue queue = createQueue(keys);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            queue.add(i);
+            expected.add(i);
+        }
+        assertThrows(IllegalStateException.class, () -> queue.add(0));
+        assertTrue(queue.getBuckets() > 16, "Buckets grow with the handles.");
+
+        // Remove every third handle from the middle of the queue.
+        for (int i = 0; i < capacity; i += 3) {
+            assertTrue(queue.remove(i));
+            assertFalse(queue.contains(i));
+            assertFalse(queue.remove(i));
+            expected.remove(Integer.valueOf(i));
+        }
+        expected.sort(byKey(keys)::compare);
+
+        List<Integer> actual = new ArrayList<>();
+        while (!queue.isEmpty())
+            actual.add(queue.poll());
+        assertEquals(expected, actual);
+        assertEquals(-1, queue.poll());
+        assertEquals(-1, queue.peek());
+    }
+
+    @Test public void testMatchesHandleHeap() {
+        int capacity = 5000;
+        long[] keys = new long[capacity];
+        Random random = new Random(11);
+        CalendarQueue queue = createQueue(keys);
+        HandleHeap heap = new HandleHeap(capacity, byKey(keys));
+        long now = 0;
+        long largestWidth = 0;
+        for (int step = 0; step < 200_000; step++) {
+            // Fills up and drains the queues in turns, so the buckets are grown and shrunk, while the horizon of the keys changes.
+            boolean filling = (step / 20_000) % 2 == 0;
+            long horizon = step < 100_000 ? 1000 : 1_000_000;
+            int operation = random.nextInt(10);
+            int handle = random.nextInt(capacity);
+            if (operation < (filling ? 6 : 3)) {
+                if (!heap.contains(handle)) {
+                    keys[handle] = now + random.nextInt((int) horizon);
+                    heap.add(handle);
+                    queue.add(handle);
+                }
+            } else if (operation < 8) {
+                int polled = heap.poll();
+                assertEquals(polled, queue.poll());
+                if (polled != -1)
+                    now = keys[polled];
+            } else {
+                assertEquals(heap.remove(handle), queue.remove(handle));
+            }
+            assertEquals(heap.size(), queue.size());
+            assertEquals(heap.peek(), queue.peek());
+            largestWidth = Math.max(largestWidth, queue.getWidth());
+        }
+        assertTrue(largestWidth > 1, "Bucket width adapts to the spread of the keys.");
+        for (int i = 0; i < queue.size(); i++)
+            assertTrue(heap.contains(queue.get(i)));
+    }
+
+    @Test public void testHandlesCanBeReused() {
+        long[] keys = {5, 5, 3};
+        CalendarQueue queue = createQueue(keys);
+        queue.add(2);
+        queue.add(0);
+        assertEquals(2, queue.poll());
+        queue.add(2);
+        queue.add(1);
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.poll());
+        assertEquals(0, queue.poll(), "Ties are ordered by the comparator.");
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.contains(1));
+        queue.add(1);
+        assertEquals(1, queue.peek());
+        assertThrows(IllegalArgumentException.class, () -> new CalendarQueue(1, Integer::compare, handle -> handle, 0));
+    }
+}
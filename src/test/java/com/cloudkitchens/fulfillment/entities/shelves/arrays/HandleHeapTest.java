@@ -0,0 +1,67 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HandleHeapTest {
+
+    @Test public void testAddPollAndRemove() {
+        int capacity = 1000;
+        long[] keys = new long[capacity];
+        Random random = new Random(7);
+        for (int i = 0; i < capacity; i++)
+            keys[i] = random.nextInt(100);
+        HandleHeap heap = new HandleHeap(capacity, (first, second) -> {
+            int result = Long.compare(keys[first], keys[second]);
+            return result == 0 ? Integer.compare(first, second) : result;
+        });
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            heap.add(i);
+            expected.add(i);
+        }
+        assertThrows(IllegalStateException.class, () -> heap.add(0));
+
+        // Remove every third handle from the middle of the heap.
+        for (int i = 0; i < capacity; i += 3) {
+            assertTrue(heap.remove(i));
+            assertFalse(heap.contains(i));
+            assertFalse(heap.remove(i));
+            expected.remove(Integer.valueOf(i));
+        }
+        expected.sort((first, second) -> {
+            int result = Long.compare(keys[first], keys[second]);
+            return result == 0 ? Integer.compare(first, second) : result;
+        });
+
+        List<Integer> actual = new ArrayList<>();
+        while (!heap.isEmpty())
+            actual.add(heap.poll());
+        assertEquals(expected, actual);
+        assertEquals(-1, heap.poll());
+        assertEquals(-1, heap.peek());
+    }
+
+    @Test public void testHandlesCanBeReused() {
+        HandleHeap heap = new HandleHeap(3, Integer::compare);
+        heap.add(2);
+        heap.add(0);
+        assertEquals(0, heap.poll());
+        heap.add(0);
+        heap.add(1);
+        assertEquals(3, heap.size());
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        heap.add(1);
+        assertEquals(1, heap.peek());
+    }
+}
@@ -0,0 +1,49 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IdIndexTest {
+
+    @Test public void testPutGetAndRemove() {
+        int capacity = 1000;
+        IdIndex idIndex = new IdIndex(capacity);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+        // Ids from a small range collide often, so the removals have to shift the probe sequences back.
+        for (int i = 0; i < 100_000; i++) {
+            long id = random.nextInt(2 * capacity);
+            if (expected.size() < capacity && random.nextBoolean()) {
+                int handle = random.nextInt(capacity);
+                idIndex.put(id, handle);
+                expected.put(id, handle);
+            } else if (expected.containsKey(id)) {
+                int handle = expected.remove(id);
+                assertFalse(idIndex.remove(id, handle + 1), "An id mapped to another handle should not be removed.");
+                assertTrue(idIndex.remove(id, handle));
+            } else {
+                assertFalse(idIndex.remove(id, 0));
+            }
+            assertEquals(expected.size(), idIndex.size());
+        }
+        for (long id = 0; id < 2 * capacity; id++) {
+            assertEquals(expected.getOrDefault(id, -1).intValue(), idIndex.get(id));
+        }
+    }
+
+    @Test public void testPutReplacesHandle() {
+        IdIndex idIndex = new IdIndex(1);
+        assertEquals(-1, idIndex.get(Long.MAX_VALUE));
+        idIndex.put(Long.MAX_VALUE, 0);
+        idIndex.put(Long.MAX_VALUE, 1);
+        assertEquals(1, idIndex.size());
+        assertEquals(1, idIndex.get(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,81 @@
+package com.cloudkitchens.fulfillment.entities.shelves.arrays;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmarks the {@link OrderIndexType}s with the hold model of the priority queue literature, an index holding a fixed number of
+ * orders whose head is delivered and replaced by a new order expiring within the horizon, with some orders cancelled from the middle.
+ * The build runs a short benchmark which only checks that both indexes deliver the same orders, a larger one is run by, for example
+ * <p>
+ * mvn test -Dtest=OrderIndexBenchmarkTest -Dbenchmark.orders=1000000 -Dbenchmark.operations=20000000
+ * <p>
+ * and the nanoseconds per operation of each index are logged.
+ */
+@Slf4j public class OrderIndexBenchmarkTest {
+
+    private static final int ORDERS = Integer.getInteger("benchmark.orders", 100_000);
+    private static final int OPERATIONS = Integer.getInteger("benchmark.operations", 1_000_000);
+    // Maximum shelf life of the orders.
+    private static final int HORIZON_IN_MS = Integer.getInteger("benchmark.horizonInMs", 600_000);
+    // One in these many operations cancels an order instead of delivering the head.
+    private static final int CANCEL_INTERVAL = 10;
+
+    private static long hold(Function<long[], IHandleIndex> indexFactory, String name) {
+        long[] expiryTimestamps = new long[ORDERS];
+        IHandleIndex index = indexFactory.apply(expiryTimestamps);
+        Random random = new Random(13);
+        for (int handle = 0; handle < ORDERS; handle++) {
+            expiryTimestamps[handle] = random.nextInt(HORIZON_IN_MS);
+            index.add(handle);
+        }
+        long checksum = 0;
+        long startTimeInNs = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int handle;
+            if (i % CANCEL_INTERVAL == 0) {
+                // All the handles are held by the orders, so any of them can be cancelled.
+                handle = random.nextInt(ORDERS);
+                index.remove(handle);
+            } else {
+                handle = index.poll();
+            }
+            checksum = 31 * checksum + handle;
+            // The handle is reused by a new order, expiring within the horizon from the delivered one.
+            expiryTimestamps[handle] = expiryTimestamps[index.peek()] + random.nextInt(HORIZON_IN_MS);
+            index.add(handle);
+        }
+        long elapsedInNs = System.nanoTime() - startTimeInNs;
+        log.info("Benchmarked index={} orders={} operations={} nsPerOperation={}", name, ORDERS, OPERATIONS,
+            (double) elapsedInNs / OPERATIONS);
+        return checksum;
+    }
+
+    private static IHandleIndex createHeap(long[] expiryTimestamps) {
+        return new HandleHeap(expiryTimestamps.length, (first, second) -> {
+            int result = Long.compare(expiryTimestamps[first], expiryTimestamps[second]);
+            return result == 0 ? Integer.compare(first, second) : result;
+        });
+    }
+
+    private static IHandleIndex createCalendarQueue(long[] expiryTimestamps) {
+        return new CalendarQueue(expiryTimestamps.length, (first, second) -> {
+            int result = Long.compare(expiryTimestamps[first], expiryTimestamps[second]);
+            return result == 0 ? Integer.compare(first, second) : result;
+        }, handle -> expiryTimestamps[handle], 1);
+    }
+
+    @Test public void testHoldModel() {
+        // The first rounds warm up the JIT.
+        hold(OrderIndexBenchmarkTest::createHeap, "heapWarmUp");
+        hold(OrderIndexBenchmarkTest::createCalendarQueue, "calendarQueueWarmUp");
+        long heapChecksum = hold(OrderIndexBenchmarkTest::createHeap, OrderIndexType.Heap.name());
+        long calendarQueueChecksum = hold(OrderIndexBenchmarkTest::createCalendarQueue, OrderIndexType.CalendarQueue.name());
+        assertEquals(heapChecksum, calendarQueueChecksum, "Both indexes should deliver the orders in the same order.");
+    }
+}
@@ -0,0 +1,83 @@
+package com.cloudkitchens.fulfillment.entities.shelves.contention;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LockContentionMonitorTest {
+
+    @Test public void testUncontendedAcquisitions() {
+        LockContentionMonitor monitor = new LockContentionMonitor(1);
+        for (int i = 0; i < 3; i++) {
+            long token = monitor.enter(SyncPoint.MoverQueue, Temperature.Hot);
+            monitor.exit(SyncPoint.MoverQueue, Temperature.Hot, token);
+        }
+
+        LockStats lockStats = monitor.getReport().getStats(SyncPoint.MoverQueue, Temperature.Hot);
+        assertEquals(3, lockStats.getAcquisitions());
+        assertEquals(0, lockStats.getContendedAcquisitions());
+        assertEquals(0, lockStats.getContendedTimeInNanos());
+        assertTrue(lockStats.getTimeInNanos() >= 0);
+    }
+
+    @Test public void testContendedAcquisitions() throws InterruptedException {
+        LockContentionMonitor monitor = new LockContentionMonitor(1);
+        // The mover queues are separate locks, so an acquisition on the cold queue is not contended by the one on the hot queue.
+        long hotToken = monitor.enter(SyncPoint.MoverQueue, Temperature.Hot);
+        long coldToken = monitor.enter(SyncPoint.MoverQueue, Temperature.Cold);
+        // The updates queue is shared by all the temperatures.
+        long updatesHotToken = monitor.enter(SyncPoint.UpdatesQueue, Temperature.Hot);
+        long updatesColdToken = monitor.enter(SyncPoint.UpdatesQueue, Temperature.Cold);
+        Thread.sleep(2);
+        monitor.exit(SyncPoint.UpdatesQueue, Temperature.Cold, updatesColdToken);
+        monitor.exit(SyncPoint.UpdatesQueue, Temperature.Hot, updatesHotToken);
+        monitor.exit(SyncPoint.MoverQueue, Temperature.Cold, coldToken);
+        monitor.exit(SyncPoint.MoverQueue, Temperature.Hot, hotToken);
+        // The caller knows that the shelf has no space.
+        long spacesToken = monitor.enter(SyncPoint.ShelfSpaces, Temperature.Frozen, true);
+        monitor.exit(SyncPoint.ShelfSpaces, Temperature.Frozen, spacesToken);
+
+        LockContentionReport report = monitor.getReport();
+        assertEquals(0, report.getStats(SyncPoint.MoverQueue, Temperature.Cold).getContendedAcquisitions());
+        assertEquals(0, report.getStats(SyncPoint.UpdatesQueue, Temperature.Hot).getContendedAcquisitions());
+        LockStats updatesCold = report.getStats(SyncPoint.UpdatesQueue, Temperature.Cold);
+        assertEquals(1, updatesCold.getContendedAcquisitions());
+        assertTrue(updatesCold.getContendedTimeInNanos() >= 2_000_000);
+        // The time of every acquisition is in the time in the synchronization point, the contended ones are also counted apart.
+        LockStats updatesHot = report.getStats(SyncPoint.UpdatesQueue, Temperature.Hot);
+        assertTrue(updatesHot.getTimeInNanos() >= 2_000_000);
+        assertEquals(0, updatesHot.getContendedTimeInNanos());
+        assertEquals(updatesCold.getContendedTimeInNanos(), updatesCold.getTimeInNanos());
+        assertEquals(1, report.getStats(SyncPoint.ShelfSpaces, Temperature.Frozen).getContendedAcquisitions());
+        assertEquals(2, report.getTotal(SyncPoint.UpdatesQueue).getAcquisitions());
+        assertEquals(0.5, report.getTotal(SyncPoint.UpdatesQueue).getContentionRatio());
+        assertEquals(SyncPoint.UpdatesQueue, report.getMostContended());
+    }
+
+    @Test public void testSampling() {
+        LockContentionMonitor monitor = new LockContentionMonitor(1000);
+        for (int i = 0; i < 10_000; i++) {
+            long token = monitor.enter(SyncPoint.ExpiryQueue, null);
+            monitor.exit(SyncPoint.ExpiryQueue, null, token);
+        }
+
+        LockStats lockStats = monitor.getReport().getStats(SyncPoint.ExpiryQueue, null);
+        assertEquals(10_000, lockStats.getAcquisitions(), "Acquisitions are counted whether or not they are sampled.");
+        assertEquals(0, lockStats.getTimeInNanos() % 1000, "Sampled time is scaled by the sampling interval.");
+    }
+
+    @Test public void testDisabledMonitor() {
+        assertFalse(LockContentionMonitor.DISABLED.isEnabled());
+        long token = LockContentionMonitor.DISABLED.enter(SyncPoint.ShelfSpaces, Temperature.Hot, true);
+        LockContentionMonitor.DISABLED.exit(SyncPoint.ShelfSpaces, Temperature.Hot, token);
+
+        assertTrue(LockContentionMonitor.DISABLED.getReport().getStats().isEmpty());
+        assertNull(LockContentionMonitor.DISABLED.getReport().getMostContended());
+        assertThrows(IllegalArgumentException.class, () -> new LockContentionMonitor(-1));
+    }
+}
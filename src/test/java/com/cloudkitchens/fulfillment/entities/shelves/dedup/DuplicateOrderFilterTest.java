@@ -0,0 +1,100 @@
+package com.cloudkitchens.fulfillment.entities.shelves.dedup;
+
+import com.cloudkitchens.fulfillment.common.VirtualClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DuplicateOrderFilterTest {
+
+    private static final AddResult ADD_RESULT = new AddResult(true, OrderState.StoredInRegularShelf, new Shelf(1, 1, 1, Temperature.Hot));
+
+    @Test public void testDuplicateGetsTheFirstResult() {
+        for (int prefilterCapacity : new int[] {0, 100}) {
+            DuplicateOrderFilter filter = new DuplicateOrderFilter(1000, prefilterCapacity, new VirtualClock(0));
+            assertNull(filter.claim(1));
+            filter.complete(1, ADD_RESULT);
+
+            assertSame(ADD_RESULT, filter.claim(1));
+            assertNull(filter.claim(2), "Another id is not a duplicate.");
+            assertEquals(2, filter.size());
+        }
+    }
+
+    @Test public void testFailedAddReleasesTheId() {
+        DuplicateOrderFilter filter = new DuplicateOrderFilter(1000, 0, new VirtualClock(0));
+        assertNull(filter.claim(1));
+        filter.complete(1, null);
+
+        assertNull(filter.claim(1), "A retry of a failed add should add the order.");
+    }
+
+    @Test public void testIdsAreForgottenAfterTwoWindows() {
+        VirtualClock clock = new VirtualClock(0);
+        DuplicateOrderFilter filter = new DuplicateOrderFilter(1000, 100, clock);
+        assertNull(filter.claim(1));
+        filter.complete(1, ADD_RESULT);
+
+        clock.advanceTo(1500);
+        assertSame(ADD_RESULT, filter.claim(1), "An id is remembered for at least one window.");
+        assertEquals(1, filter.size());
+
+        // The generation which took over at 1500 is retired at 2500, and the generation of the id is dropped.
+        clock.advanceTo(2500);
+        assertNull(filter.claim(1), "An id is forgotten after two windows.");
+        assertEquals(1, filter.size(), "Only the claim of the last add is left.");
+    }
+
+    @Test public void testConcurrentDuplicates() throws InterruptedException {
+        DuplicateOrderFilter filter = new DuplicateOrderFilter(1000, 100, new VirtualClock(0));
+        AtomicInteger claimed = new AtomicInteger();
+        List<AddResult> duplicateResults = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                AddResult addResult = filter.claim(1);
+                if (addResult == null) {
+                    claimed.incrementAndGet();
+                    filter.complete(1, ADD_RESULT);
+                } else {
+                    synchronized (duplicateResults) {
+                        duplicateResults.add(addResult);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, claimed.get());
+        assertEquals(7, duplicateResults.size());
+        duplicateResults.forEach(addResult -> assertSame(ADD_RESULT, addResult));
+    }
+
+    @Test public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateOrderFilter(0, 0, new VirtualClock(0)));
+        assertThrows(IllegalArgumentException.class, () -> new DuplicateOrderFilter(1000, -1, new VirtualClock(0)));
+    }
+}
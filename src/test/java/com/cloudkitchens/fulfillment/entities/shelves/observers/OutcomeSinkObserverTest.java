@@ -0,0 +1,37 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.ArrayShelfPod;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OutcomeSinkObserverTest {
+
+    @Test public void testEveryEndStateIsHandedOverOnce() {
+        ArrayShelfPod shelfPod = new ArrayShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1));
+        List<OrderState> outcomes = new ArrayList<>();
+        shelfPod.addObserver(new OutcomeSinkObserver(order -> outcomes.add(order.getOrderState())));
+
+        Order regular = createOrder(Temperature.Hot, 300);
+        shelfPod.addOrder(regular);
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // overflow shelf
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // no space
+        shelfPod.addOrder(createOrder(Temperature.Cold, 0)); // came expired
+        assertEquals(ImmutableList.of(OrderState.ExpiredOnNoSpace, OrderState.CameExpired), outcomes);
+
+        // The overflow order is moved into the space of the cancelled order, the move is not an outcome.
+        shelfPod.cancelOrder(regular.getId());
+        shelfPod.pollOrder();
+        assertEquals(ImmutableList.of(OrderState.ExpiredOnNoSpace, OrderState.CameExpired, OrderState.Cancelled,
+            OrderState.DeliveredFromRegularShelf), outcomes);
+    }
+}
@@ -0,0 +1,37 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramTest {
+
+    @Test public void testBuckets() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Histogram.getBucket(value);
+            long lowest = Histogram.getLowestValue(bucket);
+            assertTrue(lowest <= value, "Bucket should start at or below the value " + value);
+            assertTrue(value - lowest <= value / 16, "Bucket should be within 1/16th of the value " + value);
+            assertEquals(bucket, Histogram.getBucket(lowest));
+        }
+        assertEquals(Histogram.getBucket(Long.MAX_VALUE - 1), Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+        histogram.record(-5);
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(5050 / 101.0, histogram.getMean(), 0.0001);
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(88, histogram.getPercentile(90));
+        assertEquals(100, histogram.getPercentile(100));
+    }
+}
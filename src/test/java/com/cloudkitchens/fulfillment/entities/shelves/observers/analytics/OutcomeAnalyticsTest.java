@@ -0,0 +1,103 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.analytics;
+
+import com.cloudkitchens.fulfillment.common.VirtualClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.ArrayShelfPod;
+import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPod;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPodOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutcomeAnalyticsTest {
+
+    @TempDir File directory;
+
+    @Test public void testEndStates() {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1);
+        ShelfPod shelfPod = new ShelfPod(shelves);
+        OutcomeAnalytics outcomeAnalytics = new OutcomeAnalytics(shelves);
+        shelfPod.addObserver(outcomeAnalytics);
+
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // regular shelf
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // overflow shelf
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // no space
+        shelfPod.addOrder(createOrder(Temperature.Cold, 0)); // came expired
+        shelfPod.pollOrder();
+
+        OutcomeReport report = outcomeAnalytics.getReport();
+        assertEquals(1, (long) report.getEndStateCounts().get(Temperature.Hot).get(OrderState.DeliveredFromOverflowShelf));
+        assertEquals(0, (long) report.getEndStateCounts().get(Temperature.Hot).get(OrderState.DeliveredFromRegularShelf));
+        assertEquals(1, (long) report.getEndStateCounts().get(Temperature.Hot).get(OrderState.ExpiredOnNoSpace));
+        assertEquals(1, (long) report.getEndStateCounts().get(Temperature.Cold).get(OrderState.CameExpired));
+        assertEquals(2 / 3.0, report.getWasteRateLastMinute(), 0.0001);
+        assertEquals(2 / 3.0, report.getWasteRateLast15Minutes(), 0.0001);
+        assertEquals(1, report.getTimeOnShelfInMs().getCount());
+        assertEquals(1, report.getTimeOnOverflowShelfInMs().getCount());
+        assertEquals(1, report.getNormalizedValueAtPickupInPerMille().getCount());
+        assertTrue(report.getNormalizedValueAtPickupInPerMille().getMax() > 900, "Fresh order is expected to have almost full value.");
+    }
+
+    @Test public void testValueAtPickupIsAsPerOverflowTier() {
+        VirtualClock clock = new VirtualClock(System.currentTimeMillis());
+        Temperature chilledOverflow = Temperature.defineOverflow("Chilled-Overflow");
+        List<Shelf> shelves = new ArrayList<>(generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1));
+        shelves.add(new Shelf(100, 8, 1, chilledOverflow));
+        ArrayShelfPod shelfPod = new ArrayShelfPod(shelves, ShelfPodOptions.builder().clock(clock).build());
+        OutcomeAnalytics outcomeAnalytics = new OutcomeAnalytics(shelves, clock);
+        shelfPod.addObserver(outcomeAnalytics);
+
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // regular shelf
+        shelfPod.addOrder(createOrder(Temperature.Hot, 300)); // overflow shelf
+        Order chilled = createOrder(Temperature.Hot, 300);
+        shelfPod.addOrder(chilled); // chilled overflow shelf, which decays the fastest, so its order is polled first
+        clock.advanceTo(clock.currentTimeMillis() + 20000);
+        assertEquals(chilled.getId(), shelfPod.pollOrderId());
+
+        // (300 - 20 - .45 * 8 * 20) / 300 on the chilled overflow shelf, it would be .873 on the overflow shelf.
+        OutcomeReport report = outcomeAnalytics.getReport();
+        assertEquals(1, report.getNormalizedValueAtPickupInPerMille().getCount());
+        assertEquals(693, report.getNormalizedValueAtPickupInPerMille().getMax(), 10);
+    }
+
+    @Test public void testRollingWindow() {
+        RollingWindowCounter counter = new RollingWindowCounter(10000, 10);
+        counter.record(1000, true);
+        counter.record(5000, false);
+        assertEquals(0.5, counter.getWasteRate(5000));
+        // The first bucket falls out of the window.
+        assertEquals(0, counter.getWasteRate(11000));
+        counter.record(11000, true);
+        assertEquals(0.5, counter.getWasteRate(11000));
+        assertEquals(0, counter.getWasteRate(100000));
+    }
+
+    @Test public void testReporter() throws IOException, InterruptedException {
+        List<Shelf> shelves = generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1);
+        OutcomeAnalytics outcomeAnalytics = new OutcomeAnalytics(shelves);
+        OutcomeReporter outcomeReporter = new OutcomeReporter(outcomeAnalytics, directory, 3600);
+        outcomeReporter.writeReport();
+        outcomeReporter.stopBackgroundActivities();
+
+        List<String> csv = Files.readAllLines(new File(directory, OutcomeReporter.CSV_FILE_NAME).toPath());
+        assertEquals(3, csv.size(), "Header and two reports are expected.");
+        assertEquals(csv.get(0).split(",").length, csv.get(1).split(",").length);
+        assertTrue(csv.get(0).contains("Hot.DeliveredFromRegularShelf"));
+        List<String> json = Files.readAllLines(new File(directory, OutcomeReporter.JSON_FILE_NAME).toPath());
+        assertEquals(2, json.size());
+        assertTrue(json.get(1).contains("\"wasteRateLastMinute\""));
+    }
+}
@@ -0,0 +1,108 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPod;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ShelfEventLogTest {
+
+    @TempDir File directory;
+
+    @Test public void testOrderInfoIsReproduced() throws IOException, InterruptedException {
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(1, 2, 1));
+        ShelfEventLog shelfEventLog = new ShelfEventLog(directory);
+        shelfEventLog.startBackgroundActivities();
+        shelfPod.addObserver(shelfEventLog);
+
+        Order delivered = createOrder(Temperature.Hot, 100);
+        Order stored = createOrder(Temperature.Hot, 300);
+        Order noSpace = createOrder(Temperature.Hot, 300);
+        Order cameExpired = createOrder(Temperature.Cold, 0);
+        for (Order order : ImmutableList.of(delivered, stored, noSpace, cameExpired))
+            shelfPod.addOrder(order);
+        shelfPod.pollOrder();
+        shelfEventLog.stopBackgroundActivities();
+
+        List<Order> orders = ShelfEventLogReader.readOrders(directory);
+        assertEquals(ImmutableList.of(delivered, stored, noSpace, cameExpired), orders);
+        for (int i = 0; i < orders.size(); i++) {
+            Order expected = ImmutableList.of(delivered, stored, noSpace, cameExpired).get(i);
+            assertEquals(expected.toString(), orders.get(i).toString());
+        }
+    }
+
+    @Test public void testRuntimeDefinedTemperatureIsReproduced() throws IOException, InterruptedException {
+        Temperature chilled = Temperature.define("EventLogChilled");
+        ShelfEventLog shelfEventLog = new ShelfEventLog(directory);
+        shelfEventLog.startBackgroundActivities();
+        Order order = createOrder(chilled, 100);
+        shelfEventLog.postAddOrder(order, null);
+        shelfEventLog.stopBackgroundActivities();
+
+        List<Order> orders = ShelfEventLogReader.readOrders(directory);
+        assertEquals(ImmutableList.of(order), orders);
+        assertSame(chilled, orders.get(0).getTemperature());
+    }
+
+    @Test public void testTemperaturesAreMappedByName() throws IOException {
+        // A file written by another process, where the temperature was defined at an ordinal which is not defined in this one.
+        int ordinal = Temperature.MAX_TEMPERATURES - 1;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(directory, "shelf-events.0.bin")))) {
+            out.writeInt(RollingEventFileWriter.MAGIC);
+            out.writeByte(RollingEventFileWriter.NAME_RECORD);
+            out.writeInt(7);
+            out.writeUTF("Gelato");
+            out.writeByte(RollingEventFileWriter.TEMPERATURE_RECORD);
+            out.writeByte(ordinal);
+            out.writeUTF("EventLogDeepFrozen");
+            out.writeBoolean(false);
+            out.writeByte(RollingEventFileWriter.EVENT_RECORD);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(42);
+            out.writeByte(ShelfOperation.Add.ordinal());
+            out.writeByte(OrderState.StoredInRegularShelf.ordinal());
+            out.writeByte(ordinal);
+            out.writeInt(7);
+            out.writeInt(300);
+            out.writeDouble(.45);
+        }
+
+        List<Order> orders = ShelfEventLogReader.readOrders(directory);
+        assertEquals(1, orders.size());
+        assertSame(Temperature.valueOf("EventLogDeepFrozen"), orders.get(0).getTemperature());
+        assertEquals("Gelato", orders.get(0).getName());
+        assertEquals(OrderState.StoredInRegularShelf, orders.get(0).getOrderState());
+    }
+
+    @Test public void testRollingFiles() throws IOException, InterruptedException {
+        // Every file holds a single event, and only the last two files are kept.
+        ShelfEventLog shelfEventLog = new ShelfEventLog(directory, 16, 1, 2);
+        shelfEventLog.startBackgroundActivities();
+        List<Order> orders = ImmutableList
+            .of(createOrder(Temperature.Hot, 100), createOrder(Temperature.Cold, 100), createOrder(Temperature.Frozen, 100));
+        for (Order order : orders)
+            shelfEventLog.postAddOrder(order, null);
+        shelfEventLog.stopBackgroundActivities();
+
+        assertEquals(2, RollingEventFileWriter.listEventLogFiles(directory).size());
+        List<Order> actual = ShelfEventLogReader.readOrders(directory);
+        assertEquals(orders.subList(1, 3), actual);
+        assertEquals(orders.get(2).getName(), actual.get(1).getName());
+    }
+}
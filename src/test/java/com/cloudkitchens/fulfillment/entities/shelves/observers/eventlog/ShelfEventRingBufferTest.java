@@ -0,0 +1,95 @@
+package com.cloudkitchens.fulfillment.entities.shelves.observers.eventlog;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ShelfEventRingBufferTest {
+
+    @Test public void testOfferAndPoll() {
+        ShelfEventRingBuffer ringBuffer = new ShelfEventRingBuffer(3);
+        assertEquals(4, ringBuffer.getCapacity());
+
+        Order order = createOrder(Temperature.Frozen, 300);
+        order.setOrderState(OrderState.DeliveredFromOverflowShelf);
+        assertTrue(ringBuffer.offer(123, ShelfOperation.Poll, order));
+
+        ShelfEvent event = new ShelfEvent();
+        assertTrue(ringBuffer.poll(event));
+        assertEquals(123, event.getTimestampInMs());
+        assertEquals(ShelfOperation.Poll, event.getShelfOperation());
+        assertEquals(order.getId(), event.getOrderId());
+        assertEquals(order.getNameId(), event.getNameId());
+        assertEquals(Temperature.Frozen, event.getTemperature());
+        assertEquals(300, event.getShelfLifeInSecs());
+        assertEquals(order.getDecayRate(), event.getDecayRate());
+        assertEquals(OrderState.DeliveredFromOverflowShelf, event.getOrderState());
+        assertFalse(ringBuffer.poll(event));
+    }
+
+    @Test public void testDropsWhenFull() {
+        ShelfEventRingBuffer ringBuffer = new ShelfEventRingBuffer(2);
+        Order order = createOrder(Temperature.Hot, 300);
+        assertTrue(ringBuffer.offer(1, ShelfOperation.Add, order));
+        assertTrue(ringBuffer.offer(2, ShelfOperation.Add, order));
+        assertFalse(ringBuffer.offer(3, ShelfOperation.Add, order));
+        assertEquals(1, ringBuffer.getDroppedCount());
+
+        ShelfEvent event = new ShelfEvent();
+        assertTrue(ringBuffer.poll(event));
+        assertEquals(1, event.getTimestampInMs());
+        assertTrue(ringBuffer.offer(4, ShelfOperation.Add, order));
+        assertTrue(ringBuffer.poll(event));
+        assertEquals(2, event.getTimestampInMs());
+        assertTrue(ringBuffer.poll(event));
+        assertEquals(4, event.getTimestampInMs());
+    }
+
+    @Test public void testConcurrentWriters() throws InterruptedException {
+        int writers = 4, eventsPerWriter = 20000;
+        ShelfEventRingBuffer ringBuffer = new ShelfEventRingBuffer(1024);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            int writer = i;
+            threads.add(new Thread(() -> {
+                Order order = createOrder(Temperature.Cold, 300);
+                for (int j = 0; j < eventsPerWriter; j++) {
+                    // Timestamp carries the writer and the event number, so the reader can check nothing is lost or duplicated.
+                    while (!ringBuffer.offer((long) writer * eventsPerWriter + j, ShelfOperation.Add, order))
+                        Thread.yield();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        Set<Long> seen = new HashSet<>();
+        long[] lastSeenPerWriter = new long[writers];
+        Arrays.fill(lastSeenPerWriter, -1);
+        ShelfEvent event = new ShelfEvent();
+        while (seen.size() < writers * eventsPerWriter) {
+            if (ringBuffer.poll(event)) {
+                long timestamp = event.getTimestampInMs();
+                assertTrue(seen.add(timestamp), "Duplicate event.");
+                int writer = (int) (timestamp / eventsPerWriter);
+                assertTrue(timestamp > lastSeenPerWriter[writer], "Events of a writer are expected in order.");
+                lastSeenPerWriter[writer] = timestamp;
+            }
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertFalse(ringBuffer.poll(event));
+    }
+}
@@ -0,0 +1,104 @@
+package com.cloudkitchens.fulfillment.entities.shelves.pending;
+
+import com.cloudkitchens.fulfillment.common.VirtualClock;
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.shelves.AddResult;
+import com.cloudkitchens.fulfillment.entities.shelves.Shelf;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PendingOrderQueueTest {
+
+    private static final Shelf SHELF = new Shelf(1, 1, 1, Temperature.Hot);
+
+    private final VirtualClock clock = new VirtualClock(0);
+    // Free spaces by temperature, an order takes a space of its temperature.
+    private final Map<Temperature, Integer> spaces = new HashMap<>();
+    private final List<Order> addedOrders = new ArrayList<>();
+    private final PendingOrderQueue pendingOrders = new PendingOrderQueue(this::tryAdd, this::add, clock, Temperature.count());
+
+    private AddResult tryAdd(Order order) {
+        if (spaces.getOrDefault(order.getTemperature(), 0) == 0)
+            return null;
+        spaces.merge(order.getTemperature(), -1, Integer::sum);
+        addedOrders.add(order);
+        order.setOrderState(OrderState.StoredInRegularShelf);
+        return new AddResult(true, OrderState.StoredInRegularShelf, SHELF);
+    }
+
+    private AddResult add(Order order) {
+        AddResult addResult = tryAdd(order);
+        if (addResult != null)
+            return addResult;
+        order.setOrderState(OrderState.ExpiredOnNoSpace);
+        return new AddResult(false, OrderState.ExpiredOnNoSpace, SHELF);
+    }
+
+    private static Order createOrder(long id, Temperature temperature) {
+        return new Order(id, "Item", temperature, 300, .45);
+    }
+
+    @Test public void testOrdersAreAdmittedByDeadline() throws ExecutionException, InterruptedException {
+        PendingOrder lateDeadline = pendingOrders.enqueue(createOrder(1, Temperature.Hot), 2000);
+        PendingOrder earlyDeadline = pendingOrders.enqueue(createOrder(2, Temperature.Hot), 1000);
+        pendingOrders.admit();
+        assertEquals(2, pendingOrders.size(), "No space is released yet.");
+        assertEquals(1000, pendingOrders.getEarliestDeadlineInMs());
+
+        spaces.put(Temperature.Hot, 1);
+        pendingOrders.admit();
+        assertTrue(earlyDeadline.getFuture().get().isAdded());
+        assertFalse(lateDeadline.getFuture().isDone());
+        assertEquals(ImmutableList.of(earlyDeadline.getOrder()), addedOrders);
+    }
+
+    @Test public void testBlockedTemperatureDoesNotBlockOthers() {
+        PendingOrder hotOrder = pendingOrders.enqueue(createOrder(1, Temperature.Hot), 1000);
+        PendingOrder coldOrder = pendingOrders.enqueue(createOrder(2, Temperature.Cold), 2000);
+        spaces.put(Temperature.Cold, 1);
+        pendingOrders.admit();
+
+        assertFalse(hotOrder.getFuture().isDone());
+        assertTrue(coldOrder.getFuture().isDone());
+        assertEquals(1, pendingOrders.size());
+    }
+
+    @Test public void testOrderIsRejectedAtDeadline() throws ExecutionException, InterruptedException {
+        PendingOrder pendingOrder = pendingOrders.enqueue(createOrder(1, Temperature.Hot), 1000);
+        PendingOrder noWaitOrder = pendingOrders.enqueue(createOrder(2, Temperature.Cold), 0);
+        pendingOrders.admit();
+        assertTrue(noWaitOrder.getFuture().isDone(), "An order without wait is added or rejected right away.");
+        assertEquals(OrderState.ExpiredOnNoSpace, noWaitOrder.getFuture().get().getOrderState());
+        assertFalse(pendingOrder.getFuture().isDone());
+
+        clock.advanceTo(1000);
+        pendingOrders.admit();
+        assertEquals(OrderState.ExpiredOnNoSpace, pendingOrder.getFuture().get().getOrderState());
+        assertTrue(pendingOrders.isEmpty());
+        assertEquals(Long.MAX_VALUE, pendingOrders.getEarliestDeadlineInMs());
+    }
+
+    @Test public void testCancelledOrderIsDropped() {
+        PendingOrder pendingOrder = pendingOrders.enqueue(createOrder(1, Temperature.Hot), 1000);
+        pendingOrder.getFuture().cancel(false);
+        spaces.put(Temperature.Hot, 1);
+        pendingOrders.admit();
+
+        assertTrue(pendingOrders.isEmpty());
+        assertTrue(addedOrders.isEmpty(), "A cancelled order does not take the space.");
+        assertThrows(IllegalArgumentException.class, () -> pendingOrders.enqueue(createOrder(2, Temperature.Hot), -1));
+    }
+}
@@ -0,0 +1,89 @@
+package com.cloudkitchens.fulfillment.entities.shelves.strategies;
+
+import com.cloudkitchens.fulfillment.entities.Temperature;
+import com.cloudkitchens.fulfillment.entities.orders.Order;
+import com.cloudkitchens.fulfillment.entities.orders.OrderState;
+import com.cloudkitchens.fulfillment.entities.pickup.CourierArrivals;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPod;
+import com.cloudkitchens.fulfillment.entities.shelves.ShelfPodOptions;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.createOrder;
+import static com.cloudkitchens.fulfillment.entities.shelves.BaseShelfPodTest.generateRegularShelfInfosAndOverflowShelfInfo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PickupStrategyTest {
+
+    private static ShelfPod createShelfPod(IPickupStrategy pickupStrategy, List<Order> orders) {
+        ShelfPodOptions shelfPodOptions = ShelfPodOptions.builder().pickupStrategy(pickupStrategy).build();
+        ShelfPod shelfPod = new ShelfPod(generateRegularShelfInfosAndOverflowShelfInfo(5, 2, 1), shelfPodOptions);
+        for (Order order : orders)
+            shelfPod.addOrder(order);
+        return shelfPod;
+    }
+
+    private static List<Order> pollOrders(ShelfPod shelfPod, int count) {
+        ImmutableList.Builder<Order> result = ImmutableList.builder();
+        for (int i = 0; i < count; i++)
+            result.add(shelfPod.pollOrder());
+        return result.build();
+    }
+
+    @Test public void testEarliestDeadline() {
+        Order first = createOrder(Temperature.Hot, 100);
+        Order second = createOrder(Temperature.Cold, 200);
+        Order third = createOrder(Temperature.Frozen, 300);
+        ShelfPod shelfPod = createShelfPod(new EarliestDeadlinePickupStrategy(), ImmutableList.of(third, first, second));
+
+        assertEquals(ImmutableList.of(first, second, third), pollOrders(shelfPod, 3));
+        assertEquals(OrderState.DeliveredFromRegularShelf, first.getOrderState());
+        assertNull(shelfPod.pollOrder());
+    }
+
+    @Test public void testHighestValue() {
+        Order third = createOrder(Temperature.Hot, 100);
+        Order second = createOrder(Temperature.Cold, 200);
+        Order first = createOrder(Temperature.Frozen, 300);
+        ShelfPod shelfPod = createShelfPod(new HighestValuePickupStrategy(), ImmutableList.of(second, third, first));
+
+        assertEquals(ImmutableList.of(first, second, third), pollOrders(shelfPod, 3));
+        assertNull(shelfPod.pollOrder());
+    }
+
+    @Test public void testFifo() {
+        Order first = createOrder(Temperature.Frozen, 300);
+        Order second = createOrder(Temperature.Hot, 100);
+        Order third = createOrder(Temperature.Cold, 200);
+        ShelfPod shelfPod = createShelfPod(new FifoPickupStrategy(), ImmutableList.of(third, first, second));
+
+        assertEquals(ImmutableList.of(first, second, third), pollOrders(shelfPod, 3));
+        assertNull(shelfPod.pollOrder());
+    }
+
+    @Test public void testDeadlineAware() {
+        CourierArrivals courierArrivals = new CourierArrivals();
+        Order soonest = createOrder(Temperature.Hot, 10);
+        Order beforeNextCourier = createOrder(Temperature.Cold, 20);
+        Order afterNextCourier = createOrder(Temperature.Frozen, 300);
+        ShelfPod shelfPod =
+            createShelfPod(new DeadlineAwarePickupStrategy(courierArrivals), ImmutableList.of(afterNextCourier, soonest, beforeNextCourier));
+
+        // Without any known courier, the order expiring soonest is picked up.
+        assertEquals(soonest, shelfPod.pollOrder());
+
+        // The next courier arrives in 60 seconds, the order expiring last among the ones which can't wait for it is picked up.
+        Order expiringSoon = createOrder(Temperature.Hot, 10);
+        shelfPod.addOrder(expiringSoon);
+        courierArrivals.addArrival(System.currentTimeMillis() + 60000);
+        assertEquals(beforeNextCourier, shelfPod.pollOrder());
+        assertEquals(expiringSoon, shelfPod.pollOrder());
+
+        // Every order can wait for the next courier, so the order expiring soonest is picked up.
+        assertEquals(afterNextCourier, shelfPod.pollOrder());
+        assertNull(shelfPod.pollOrder());
+    }
+}